@@ -0,0 +1,93 @@
+package edu.ucla.cens.FocusGame;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draws one region of a shared atlas Bitmap. Every stimulus is one of these
+ * over the same Bitmap, so switching stimuli never decodes or uploads a new
+ * image.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class AtlasDrawable extends Drawable
+{
+	private final Bitmap atlas;
+	private final Rect region;
+	private final Paint paint;
+	
+	/**
+	 * Creates a Drawable for a region of an atlas.
+	 * 
+	 * @param atlas The atlas.
+	 * 
+	 * @param region The region of the atlas to draw. It is not copied.
+	 */
+	public AtlasDrawable(Bitmap atlas, Rect region)
+	{
+		this.atlas = atlas;
+		this.region = region;
+		
+		paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+	}
+	
+	/**
+	 * Returns the atlas this draws from.
+	 * 
+	 * @return The atlas.
+	 */
+	public Bitmap getAtlas()
+	{
+		return atlas;
+	}
+	
+	/**
+	 * Draws the region scaled to this Drawable's bounds.
+	 */
+	@Override
+	public void draw(Canvas canvas)
+	{
+		canvas.drawBitmap(atlas, region, getBounds(), paint);
+	}
+	
+	@Override
+	public int getIntrinsicWidth()
+	{
+		return region.width();
+	}
+	
+	@Override
+	public int getIntrinsicHeight()
+	{
+		return region.height();
+	}
+	
+	@Override
+	public void setAlpha(int alpha)
+	{
+		paint.setAlpha(alpha);
+		invalidateSelf();
+	}
+	
+	@Override
+	public void setColorFilter(ColorFilter colorFilter)
+	{
+		paint.setColorFilter(colorFilter);
+		invalidateSelf();
+	}
+	
+	/**
+	 * The stimuli are photographs without transparency.
+	 */
+	@Override
+	public int getOpacity()
+	{
+		return PixelFormat.OPAQUE;
+	}
+}
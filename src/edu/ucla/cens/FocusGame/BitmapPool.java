@@ -0,0 +1,362 @@
+package edu.ucla.cens.FocusGame;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.annotation.TargetApi;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Keeps decoded Bitmaps within a fixed number of bytes. Each Bitmap is kept
+ * under a key and counts the references to it. Bitmaps that are referenced
+ * are never taken away. Once nothing references a Bitmap, it is kept for the
+ * next user for as long as it fits in the budget. When it no longer fits, the
+ * least recently used one is recycled.
+ * 
+ * Images without transparency are decoded as RGB_565, which takes half the
+ * memory of ARGB_8888. Where the platform allows it, a new Bitmap is decoded
+ * into the pixels of an unreferenced one rather than into a new allocation,
+ * so replacing one image with another doesn't grow the heap.
+ * 
+ * All of the methods may be called from any thread.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class BitmapPool
+{
+	private static final String TAG = "FocusGame.BitmapPool";
+	
+	/**
+	 * One pooled Bitmap and the number of references to it.
+	 */
+	private static class Entry
+	{
+		private final Bitmap bitmap;
+		private final long bytes;
+		private int references;
+		
+		/**
+		 * Creates an unreferenced entry.
+		 * 
+		 * @param bitmap The Bitmap.
+		 */
+		private Entry(Bitmap bitmap)
+		{
+			this.bitmap = bitmap;
+			bytes = getBytes(bitmap);
+		}
+	}
+	
+	// The entries in order from least to most recently used.
+	private final LinkedHashMap<Object, Entry> entries;
+	
+	private long budgetBytes;
+	private long sizeBytes;
+	
+	/**
+	 * Creates an empty pool.
+	 * 
+	 * @param budgetBytes The most bytes of unreferenced Bitmaps to keep.
+	 * 					  Referenced Bitmaps may take it over budget.
+	 */
+	public BitmapPool(long budgetBytes)
+	{
+		this.budgetBytes = budgetBytes;
+		
+		entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+	}
+	
+	/**
+	 * Changes the budget, recycling unreferenced Bitmaps until the pool fits.
+	 * 
+	 * @param budgetBytes The most bytes to keep.
+	 */
+	public synchronized void setBudget(long budgetBytes)
+	{
+		this.budgetBytes = budgetBytes;
+		trim();
+	}
+	
+	/**
+	 * Returns the budget.
+	 * 
+	 * @return The most bytes to keep.
+	 */
+	public synchronized long getBudget()
+	{
+		return budgetBytes;
+	}
+	
+	/**
+	 * Returns how many bytes the pooled Bitmaps take up, whether or not they
+	 * are referenced.
+	 * 
+	 * @return The number of bytes.
+	 */
+	public synchronized long getSize()
+	{
+		return sizeBytes;
+	}
+	
+	/**
+	 * Adds a reference to a Bitmap if it is still pooled under a key.
+	 * 
+	 * @param key The Bitmap's key.
+	 * 
+	 * @param bitmap The Bitmap that is expected to be under the key.
+	 * 
+	 * @return Whether or not the reference was added. If not, the Bitmap has
+	 * 		   been recycled or reused and must be decoded again.
+	 */
+	public synchronized boolean acquire(Object key, Bitmap bitmap)
+	{
+		Entry entry = entries.get(key);
+		if((entry == null) || (entry.bitmap != bitmap))
+		{
+			return false;
+		}
+		
+		entry.references++;
+		return true;
+	}
+	
+	/**
+	 * Removes a reference to the Bitmap under a key. If it was the last one,
+	 * the Bitmap is kept only if it fits in the budget.
+	 * 
+	 * @param key The Bitmap's key.
+	 */
+	public synchronized void release(Object key)
+	{
+		Entry entry = entries.get(key);
+		if((entry == null) || (entry.references == 0))
+		{
+			Log.w(TAG, "Released a Bitmap that wasn't acquired: " + key);
+			return;
+		}
+		
+		entry.references--;
+		trim();
+	}
+	
+	/**
+	 * Decodes an image resource at its full size and pools it under a key in
+	 * place of whatever was under the key.
+	 * 
+	 * @param key The key.
+	 * 
+	 * @param resources The Resources with the image.
+	 * 
+	 * @param id The image's resource identifier.
+	 * 
+	 * @param acquire Whether the caller takes a reference to it. If not, it
+	 * 				  is only kept if it fits in the budget.
+	 * 
+	 * @return The Bitmap or null if it could not be decoded.
+	 */
+	public Bitmap decodeResource(Object key, Resources resources, int id, boolean acquire)
+	{
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inScaled = false;
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeResource(resources, id, options);
+		if((options.outWidth <= 0) || (options.outHeight <= 0))
+		{
+			return null;
+		}
+		
+		options.inJustDecodeBounds = false;
+		options.inPreferredConfig = "image/jpeg".equals(options.outMimeType) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+		
+		Bitmap bitmap = null;
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+		{
+			bitmap = decodeReusing(resources, id, options);
+		}
+		if(bitmap == null)
+		{
+			bitmap = BitmapFactory.decodeResource(resources, id, options);
+		}
+		if(bitmap == null)
+		{
+			return null;
+		}
+		
+		synchronized(this)
+		{
+			remove(key);
+			Entry entry = new Entry(bitmap);
+			if(acquire)
+			{
+				entry.references = 1;
+			}
+			entries.put(key, entry);
+			sizeBytes += entry.bytes;
+			trim();
+		}
+		return bitmap;
+	}
+	
+	/**
+	 * Decodes an image into the pixels of an unreferenced Bitmap that is
+	 * large enough, if there is one.
+	 * 
+	 * @param resources The Resources with the image.
+	 * 
+	 * @param id The image's resource identifier.
+	 * 
+	 * @param options The decoding options with the image's size.
+	 * 
+	 * @return The Bitmap or null if nothing could be reused, in which case
+	 * 		   the options are left set to decode a mutable Bitmap.
+	 */
+	@TargetApi(Build.VERSION_CODES.HONEYCOMB)
+	private Bitmap decodeReusing(Resources resources, int id, BitmapFactory.Options options)
+	{
+		// Only mutable Bitmaps can be decoded into later.
+		options.inMutable = true;
+		
+		Bitmap reusable = takeReusable(options.outWidth, options.outHeight, options.inPreferredConfig);
+		if(reusable == null)
+		{
+			return null;
+		}
+		
+		options.inBitmap = reusable;
+		try
+		{
+			return BitmapFactory.decodeResource(resources, id, options);
+		}
+		catch(IllegalArgumentException e)
+		{
+			Log.w(TAG, "A Bitmap could not be reused.", e);
+			reusable.recycle();
+			return null;
+		}
+		finally
+		{
+			options.inBitmap = null;
+		}
+	}
+	
+	/**
+	 * Removes and returns the least recently used unreferenced Bitmap whose
+	 * pixels can be decoded into. Before KitKat, this must be the same size
+	 * and configuration; since then it only has to be large enough.
+	 * 
+	 * @param width The width of the image to decode.
+	 * 
+	 * @param height The height of the image to decode.
+	 * 
+	 * @param config The configuration it will be decoded with.
+	 * 
+	 * @return The Bitmap or null if there isn't one.
+	 */
+	private synchronized Bitmap takeReusable(int width, int height, Bitmap.Config config)
+	{
+		long needed = (long) width * height * ((config == Bitmap.Config.RGB_565) ? 2 : 4);
+		
+		Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+		while(iterator.hasNext())
+		{
+			Entry entry = iterator.next().getValue();
+			if((entry.references > 0) || (! entry.bitmap.isMutable()))
+			{
+				continue;
+			}
+			
+			boolean fits;
+			if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+			{
+				fits = entry.bytes >= needed;
+			}
+			else
+			{
+				fits = (entry.bitmap.getWidth() == width) && (entry.bitmap.getHeight() == height) && (entry.bitmap.getConfig() == config);
+			}
+			
+			if(fits)
+			{
+				iterator.remove();
+				sizeBytes -= entry.bytes;
+				return entry.bitmap;
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Recycles the least recently used unreferenced Bitmaps until the pool
+	 * fits in its budget or only referenced ones are left.
+	 */
+	private synchronized void trim()
+	{
+		Iterator<Map.Entry<Object, Entry>> iterator = entries.entrySet().iterator();
+		while((sizeBytes > budgetBytes) && iterator.hasNext())
+		{
+			Entry entry = iterator.next().getValue();
+			if(entry.references == 0)
+			{
+				iterator.remove();
+				sizeBytes -= entry.bytes;
+				entry.bitmap.recycle();
+			}
+		}
+	}
+	
+	/**
+	 * Removes whatever is under a key. If it is still referenced, it is left
+	 * for its users and the garbage collector rather than being recycled.
+	 * 
+	 * @param key The key.
+	 */
+	private synchronized void remove(Object key)
+	{
+		Entry entry = entries.remove(key);
+		if(entry != null)
+		{
+			sizeBytes -= entry.bytes;
+			if(entry.references == 0)
+			{
+				entry.bitmap.recycle();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes a Bitmap's pixels take up.
+	 * 
+	 * @param bitmap The Bitmap.
+	 * 
+	 * @return The number of bytes.
+	 */
+	private static long getBytes(Bitmap bitmap)
+	{
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT)
+		{
+			return getAllocationByteCount(bitmap);
+		}
+		return (long) bitmap.getRowBytes() * bitmap.getHeight();
+	}
+	
+	/**
+	 * Returns the number of bytes allocated for a Bitmap's pixels, which may
+	 * be more than it uses if it was decoded into a larger Bitmap.
+	 * 
+	 * @param bitmap The Bitmap.
+	 * 
+	 * @return The number of bytes.
+	 */
+	@TargetApi(Build.VERSION_CODES.KITKAT)
+	private static long getAllocationByteCount(Bitmap bitmap)
+	{
+		return bitmap.getAllocationByteCount();
+	}
+}
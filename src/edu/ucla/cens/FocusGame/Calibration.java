@@ -0,0 +1,260 @@
+package edu.ucla.cens.FocusGame;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.TextView;
+import android.widget.Toast;
+
+/**
+ * Measures this device's touch-to-display latency with a LatencyCalibration
+ * and keeps it for every game played on it from then on.
+ * 
+ * Once the screen is tapped, a square flashes at a steady beat and the
+ * player taps along with it. The flashes are scheduled, and their times
+ * taken, the same way as the game's stimuli, and the taps are timed the same
+ * way as the game's, so the estimate covers exactly the delay that is in the
+ * game's response times. It also includes how far ahead of the flashes the
+ * person calibrating tapped, which LatencyCalibration describes, so the
+ * estimate is biased low and depends on who calibrated.
+ * 
+ * The estimate is kept in the application's preferences along with the
+ * device's build fingerprint, so it is thrown out if the calibration is
+ * read on another build. Running the calibration again replaces it.
+ * 
+ * It is launched from Main or by launching the Game with the "calibrate"
+ * extra set to true, in which case this replaces the Game and its result is
+ * returned to the Game's caller: the latency and its standard deviation in
+ * milliseconds and the number of taps it was estimated from, under the
+ * Game's REPORT_LATENCY_* keys.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class Calibration extends Activity implements Scheduler.Target, View.OnTouchListener
+{
+	private static final String TAG = "FocusGame.Calibration";
+	
+	// Scheduler event types.
+	private static final int EVENT_FLASH = 1;
+	private static final int EVENT_CLEAR = 2;
+	private static final int EVENT_DONE = 3;
+	
+	// The time between the first tap and the first flash and how long each
+	// flash is visible.
+	private static final long FIRST_DELAY_MILLIS = 1500;
+	private static final long FLASH_MILLIS = 100;
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	// Where the estimate is kept.
+	private static final String PREFERENCES = "calibration";
+	private static final String PREFERENCE_DEVICE = "device";
+	private static final String PREFERENCE_LATENCY = "latency_ms";
+	private static final String PREFERENCE_STANDARD_DEVIATION = "latency_sd_ms";
+	private static final String PREFERENCE_SAMPLES = "latency_samples";
+	private static final String PREFERENCE_CALIBRATED = "calibrated";
+	
+	private Scheduler scheduler;
+	private LatencyCalibration calibration;
+	
+	private View target;
+	private TextView instructions;
+	
+	private boolean started;
+	private long firstFlashNanos;
+	private int numFlashes;
+	
+	/**
+	 * Returns this device's latency if it has been calibrated.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return The estimate or null if it hasn't been calibrated on this
+	 * 		   build.
+	 */
+	public static LatencyCalibration.Estimate getEstimate(Context context)
+	{
+		SharedPreferences preferences = getPreferences(context);
+		String device = preferences.getString(PREFERENCE_DEVICE, null);
+		float latencyMillis = preferences.getFloat(PREFERENCE_LATENCY, 0.0f);
+		if((device == null) || (! device.equals(Build.FINGERPRINT)) || (latencyMillis <= 0.0f))
+		{
+			return null;
+		}
+		
+		return new LatencyCalibration.Estimate(
+			latencyMillis,
+			preferences.getFloat(PREFERENCE_STANDARD_DEVIATION, 0.0f),
+			preferences.getInt(PREFERENCE_SAMPLES, 0));
+	}
+	
+	/**
+	 * Sets up the flashing square and waits for the first tap.
+	 */
+	@Override
+	public void onCreate(Bundle savedInstance)
+	{
+		Log.i(TAG, "onCreate()");
+		
+		super.onCreate(savedInstance);
+		setContentView(R.layout.calibration);
+		
+		instructions = (TextView) findViewById(R.id.calibration_instructions);
+		target = findViewById(R.id.calibration_target);
+		target.setBackgroundColor(android.graphics.Color.BLACK);
+		target.setOnTouchListener(this);
+		
+		if(FrameScheduler.isSupported())
+		{
+			scheduler = new FrameScheduler(getWindowManager().getDefaultDisplay().getRefreshRate());
+		}
+		else
+		{
+			scheduler = new HandlerScheduler(Clock.SYSTEM);
+		}
+		scheduler.setTarget(this);
+		
+		calibration = new LatencyCalibration();
+	}
+	
+	/**
+	 * Cancels the flashes that are still pending.
+	 */
+	@Override
+	public void onDestroy()
+	{
+		Log.i(TAG, "onDestroy()");
+		
+		if(scheduler != null)
+		{
+			scheduler.cancelAll();
+			scheduler.setTarget(null);
+		}
+		
+		super.onDestroy();
+	}
+	
+	/**
+	 * Starts the flashes on the first tap and passes every tap after that on
+	 * to the calibration, timed from when the finger went down.
+	 */
+	@Override
+	public boolean onTouch(View view, MotionEvent event)
+	{
+		int action = event.getActionMasked();
+		if((action == MotionEvent.ACTION_DOWN) || (action == MotionEvent.ACTION_POINTER_DOWN))
+		{
+			if(started)
+			{
+				calibration.addTap(TouchInput.getEventTimeNanos(event));
+			}
+			else
+			{
+				started = true;
+				instructions.setText(R.string.calibration_running);
+				
+				// The flashes are on a fixed timeline so that the beat doesn't
+				// drift with late frames.
+				firstFlashNanos = Clock.SYSTEM.nanoTime() + (FIRST_DELAY_MILLIS * NANOS_PER_MILLI);
+				numFlashes = 0;
+				scheduler.schedule(EVENT_FLASH, firstFlashNanos);
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Shows and hides each flash and finishes once they have all been shown.
+	 */
+	@Override
+	public void onEvent(int event, long timeNanos)
+	{
+		switch(event)
+		{
+		case EVENT_FLASH:
+			target.setBackgroundColor(android.graphics.Color.WHITE);
+			calibration.addBeat(timeNanos);
+			numFlashes++;
+			
+			scheduler.schedule(EVENT_CLEAR, timeNanos + (FLASH_MILLIS * NANOS_PER_MILLI));
+			long nextNanos = firstFlashNanos + (numFlashes * calibration.getPeriodMillis() * NANOS_PER_MILLI);
+			scheduler.schedule(calibration.isComplete() ? EVENT_DONE : EVENT_FLASH, nextNanos);
+			break;
+		
+		case EVENT_CLEAR:
+			target.setBackgroundColor(android.graphics.Color.BLACK);
+			break;
+		
+		case EVENT_DONE:
+			done();
+			break;
+		
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Keeps the estimate and returns it or, if too few taps were in time with
+	 * the flashes or they were too far ahead of them, tells the player to
+	 * try again.
+	 */
+	private void done()
+	{
+		LatencyCalibration.Estimate estimate = calibration.estimate();
+		if(estimate == null)
+		{
+			if(calibration.getNumSamples() < LatencyCalibration.MIN_SAMPLES)
+			{
+				Log.i(TAG, "Only " + calibration.getNumSamples() + " taps were in time with the flashes.");
+				Toast.makeText(this, "Not enough taps were in time with the flashes. Please try again.", Toast.LENGTH_LONG).show();
+			}
+			else
+			{
+				Log.i(TAG, "The taps were ahead of the flashes by more than the latency.");
+				Toast.makeText(this, "The taps were ahead of the flashes. Please try again, tapping with each flash rather than before it.", Toast.LENGTH_LONG).show();
+			}
+			setResult(Activity.RESULT_CANCELED);
+			finish();
+			return;
+		}
+		
+		getPreferences(this).edit()
+			.putString(PREFERENCE_DEVICE, Build.FINGERPRINT)
+			.putFloat(PREFERENCE_LATENCY, (float) estimate.getLatencyMillis())
+			.putFloat(PREFERENCE_STANDARD_DEVIATION, (float) estimate.getStandardDeviationMillis())
+			.putInt(PREFERENCE_SAMPLES, estimate.getNumSamples())
+			.putLong(PREFERENCE_CALIBRATED, System.currentTimeMillis())
+			.apply();
+		
+		Log.i(TAG, "Latency: " + estimate.getLatencyMillis() + " ms, SD: " + estimate.getStandardDeviationMillis() + " ms, from " + estimate.getNumSamples() + " taps.");
+		Toast.makeText(this, "Touch latency: " + Math.round(estimate.getLatencyMillis()) + " ms", Toast.LENGTH_LONG).show();
+		
+		Intent result = new Intent();
+		result.putExtra(Game.REPORT_LATENCY_MS, estimate.getLatencyMillis());
+		result.putExtra(Game.REPORT_LATENCY_SD_MS, estimate.getStandardDeviationMillis());
+		result.putExtra(Game.REPORT_LATENCY_SAMPLES, estimate.getNumSamples());
+		setResult(Activity.RESULT_OK, result);
+		finish();
+	}
+	
+	/**
+	 * Returns the preferences that the estimate is kept in.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return The preferences.
+	 */
+	private static SharedPreferences getPreferences(Context context)
+	{
+		return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+	}
+}
@@ -0,0 +1,35 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * A source of monotonic time for the game's trial logic. All times are in
+ * nanoseconds on a single, arbitrary but monotonic timeline.
+ * 
+ * The Game Activity uses the system clock while headless runs, such as
+ * simulations, use a virtual clock that only advances when an event is
+ * dispatched.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public interface Clock
+{
+	/**
+	 * The system's monotonic clock. On Android this is the same timeline as
+	 * SystemClock.uptimeMillis(), only at a finer resolution.
+	 */
+	public static final Clock SYSTEM = new Clock()
+	{
+		@Override
+		public long nanoTime()
+		{
+			return System.nanoTime();
+		}
+	};
+	
+	/**
+	 * Returns the current time.
+	 * 
+	 * @return The current time in nanoseconds.
+	 */
+	public long nanoTime();
+}
@@ -0,0 +1,198 @@
+package edu.ucla.cens.FocusGame;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * A Scheduler driven by the display's frames. Rather than dispatching an
+ * event whenever its message comes up, each event is dispatched during the
+ * frame whose start is nearest to its scheduled time, and the event's time is
+ * reported as that frame's start. Whatever the Target changes on screen in
+ * response is drawn in that same frame, so a stimulus' onset and offset
+ * always land on whole frames and the reported time is the time the frame
+ * containing the change was started rather than whenever a message happened
+ * to be handled.
+ * 
+ * Frame times are on the same timeline as System.nanoTime(), i.e.
+ * Clock.SYSTEM. While anything is pending this sees every frame, so a gap
+ * between two of them of more than one and a half frames is counted as
+ * dropped frames.
+ * 
+ * Requires Jelly Bean (API 16) or later.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class FrameScheduler implements Scheduler, Choreographer.FrameCallback
+{
+	// Marks an event that is not pending.
+	private static final long NOT_PENDING = Long.MIN_VALUE;
+	
+	// The largest event that may be scheduled.
+	private static final int MAX_EVENT = 15;
+	
+	private final Choreographer choreographer;
+	private final long frameNanos;
+	private final long halfFrameNanos;
+	
+	private final long[] pending;
+	
+	private Target target;
+	private boolean callbackPosted;
+	
+	// The time of the last frame while the callback was posted continuously
+	// or 0 if it wasn't.
+	private long lastFrameTimeNanos;
+	private int droppedFrames;
+	
+	/**
+	 * Creates a new Scheduler on the current thread, which must have a
+	 * Looper.
+	 * 
+	 * @param refreshRate The display's refresh rate in frames per second.
+	 */
+	public FrameScheduler(float refreshRate)
+	{
+		choreographer = Choreographer.getInstance();
+		
+		if((refreshRate < 1.0f) || Float.isNaN(refreshRate))
+		{
+			refreshRate = 60.0f;
+		}
+		frameNanos = (long) (1000000000.0 / refreshRate);
+		halfFrameNanos = frameNanos / 2;
+		
+		pending = new long[MAX_EVENT + 1];
+		for(int i = 0; i <= MAX_EVENT; i++)
+		{
+			pending[i] = NOT_PENDING;
+		}
+	}
+	
+	/**
+	 * Returns whether or not this platform supports this Scheduler.
+	 * 
+	 * @return Whether or not a FrameScheduler may be created.
+	 */
+	public static boolean isSupported()
+	{
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN;
+	}
+	
+	@Override
+	public void setTarget(Target target)
+	{
+		this.target = target;
+	}
+	
+	@Override
+	public void schedule(int event, long timeNanos)
+	{
+		if((event < 0) || (event > MAX_EVENT))
+		{
+			throw new IllegalArgumentException("Event out of range: " + event);
+		}
+		
+		pending[event] = timeNanos;
+		
+		if(! callbackPosted)
+		{
+			choreographer.postFrameCallback(this);
+			callbackPosted = true;
+		}
+	}
+	
+	@Override
+	public void cancel(int event)
+	{
+		if((event >= 0) && (event <= MAX_EVENT))
+		{
+			pending[event] = NOT_PENDING;
+		}
+	}
+	
+	@Override
+	public void cancelAll()
+	{
+		for(int i = 0; i <= MAX_EVENT; i++)
+		{
+			pending[i] = NOT_PENDING;
+		}
+		
+		if(callbackPosted)
+		{
+			choreographer.removeFrameCallback(this);
+			callbackPosted = false;
+		}
+		lastFrameTimeNanos = 0;
+	}
+	
+	@Override
+	public int getDroppedFrames()
+	{
+		return droppedFrames;
+	}
+	
+	/**
+	 * Dispatches, in order, every event whose time is nearer to this frame
+	 * than to the next one and then waits for the next frame if anything is
+	 * still pending.
+	 */
+	@Override
+	public void doFrame(long frameTimeNanos)
+	{
+		callbackPosted = false;
+		
+		if((lastFrameTimeNanos != 0) && ((frameTimeNanos - lastFrameTimeNanos) > (frameNanos + halfFrameNanos)))
+		{
+			droppedFrames += (int) (((frameTimeNanos - lastFrameTimeNanos) + halfFrameNanos) / frameNanos) - 1;
+		}
+		lastFrameTimeNanos = frameTimeNanos;
+		
+		long limit = frameTimeNanos + halfFrameNanos;
+		while(true)
+		{
+			int next = -1;
+			long earliest = Long.MAX_VALUE;
+			for(int i = 0; i <= MAX_EVENT; i++)
+			{
+				if((pending[i] != NOT_PENDING) && (pending[i] < earliest))
+				{
+					earliest = pending[i];
+					next = i;
+				}
+			}
+			
+			if((next == -1) || (earliest > limit))
+			{
+				break;
+			}
+			
+			pending[next] = NOT_PENDING;
+			if(target != null)
+			{
+				target.onEvent(next, frameTimeNanos);
+			}
+		}
+		
+		if(! callbackPosted)
+		{
+			for(int i = 0; i <= MAX_EVENT; i++)
+			{
+				if(pending[i] != NOT_PENDING)
+				{
+					choreographer.postFrameCallback(this);
+					callbackPosted = true;
+					break;
+				}
+			}
+		}
+		
+		if(! callbackPosted)
+		{
+			lastFrameTimeNanos = 0;
+		}
+	}
+}
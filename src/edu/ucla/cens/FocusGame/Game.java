@@ -1,32 +1,27 @@
 package edu.ucla.cens.FocusGame;
 
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
 import java.util.Random;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
 import android.app.Activity;
+import android.content.ContentValues;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Message;
-import android.os.SystemClock;
 import android.util.Log;
-import android.view.Gravity;
 import android.view.KeyEvent;
 import android.view.View;
-import android.view.View.OnClickListener;
 import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
 import android.widget.LinearLayout;
 import android.widget.LinearLayout.LayoutParams;
-import android.widget.TextView;
 import android.widget.Toast;
 
 /**
@@ -39,46 +34,114 @@ import android.widget.Toast;
  * The game has multiple rounds which change the frequency and length of time
  * displayed for each letter.
  * 
- * Nothing is passed into or returned from this Activity. It calls the Results
- * Activity after the game is over.
+ * The trial logic itself lives in the TrialEngine; this Activity only shows
+ * what the engine asks it to, forwards the taps, and reports the results. The
+ * characters and images come from the stimulus catalog, and the "input" extra
+ * is the name of the set to use. Taps are taken from when the finger goes
+ * down, and ones that miss the character or image are reported separately.
+ * 
+ * It is launched by Main or, through its exported LAUNCH action, by other
+ * apps. Every setting is an optional Intent extra: "input", "participant",
+ * "protocol", "seed", "legacy_response_times", "batch", "calibrate", and
+ * "stall_diagnostics", as described here. Once the game is over, its results are returned with
+ * setResult() under the REPORT_* keys and this finishes; showing them is up
+ * to the caller, as Main does with the Results Activity. A single game that
+ * can't be started returns RESULT_CANCELED; a batch returns the games played
+ * before it. The "participant" extra, who is playing, is saved with the
+ * session in the SessionStore.
+ * 
+ * A caller that runs several games in a row may pass them all at once in
+ * the "batch" extra, a list of Bundles that each hold the extras of one game
+ * that differ from the Intent's, e.g. its "input" and "seed". The games are
+ * played back to back in this one Activity, which keeps the engine, the
+ * Views, and the decoded images between them, and each is saved as usual.
+ * The results of every game that was played are returned together, in
+ * order, in the "batch" extra, along with whether or not every game was
+ * played in "batch_complete".
+ * 
+ * The game follows the protocol in res/raw/protocol.txt unless the caller
+ * passes the text of another one in the "protocol" extra. Each game's trials
+ * are laid out from a seed, which is returned in the "seed" extra and saved
+ * with the session. Passing a "seed" extra replays that exact game. If the
+ * protocol stops games once they are precise enough, the number of trials
+ * that were used and the precision that was reached are returned as well.
+ * The mean GO RT of a game that stopped early is biased slightly low, as
+ * Protocol describes, so "precise" games may need to be told apart.
+ * 
+ * The trials are returned in the binary TrialCodec format. The original
+ * JSON "response_times" is only returned as well if the caller sets the
+ * "legacy_response_times" extra to true.
+ * 
+ * If there are population norms for the game type, the mean GO RT and the
+ * % inhibition are ranked against them, and the ranks are returned and
+ * added to the feedback.
+ * 
+ * If the app was built with an upload URL, every game that is saved is
+ * uploaded there by the UploadService in the background.
+ * 
+ * Each trial is journaled by a TrialJournal as it happens, so a game that is
+ * cut short, by the process dying or this being destroyed before the game
+ * is over, is recovered into the SessionStore the next time the app or a
+ * game is launched.
+ * 
+ * While the game is played, a LooperMonitor times the UI thread from the
+ * display's frames. Trials that overlapped a stall are flagged in the
+ * trials, and the stalls, GCs, and dropped frames are summarized in the
+ * "performance" extra, saved with the session, and printed by "adb shell
+ * dumpsys activity" while the game is running. With the "stall_diagnostics"
+ * extra set to true, every message is timed on its own instead, which
+ * allocates on the UI thread and so inflates the GC count.
+ * 
+ * Once the device's touch latency has been measured by the Calibration,
+ * the raw results are returned as always and the latency, its spread, the
+ * trials with it taken off of each response, and the score and GO RT
+ * metrics from those trials are returned as well. The latency includes how
+ * far ahead of the beat whoever calibrated the device tapped, so it is
+ * biased low and depends on who that was, not on who is playing. The
+ * corrected results are for comparing devices rather than true reaction
+ * times, and the raw ones remain the primary results. Launching this with the
+ * "calibrate" extra set to true runs the Calibration in place of a game
+ * and returns its result instead.
  * 
  * @author John Jenkins
  * @version 1.0
  */
-public class Game extends Activity implements OnClickListener
+public class Game extends Activity implements TouchInput.HitTest, TrialEngine.Display, LooperMonitor.Listener
 {
 	private static final String TAG = "FocusGame.Game";
 	
 	// Key to use to retrieve the input from the user.
 	private static final String KEY_INPUT = "input";
 	
-	// Key to assign a value when the game type is unknown.
-	private static final String KEY_UNKNOWN = "unknown";
+	// Key to use to retrieve who is playing, if the caller knows.
+	private static final String KEY_PARTICIPANT = "participant";
 	
-	// Possible game types.
-	private static enum GameType { LETTER, IMAGE };
+	// Key to use to retrieve whether or not the caller wants the JSON
+	// response times.
+	public static final String KEY_LEGACY_RESPONSE_TIMES = "legacy_response_times";
 	
-	// Handler message types.
-	private static final int NEW_CHAR_MESSAGE = 1;
-	private static final int CLEAR_CHAR_MESSAGE = 2;
+	// Key to use to retrieve the text of the protocol to follow, if not the
+	// default one.
+	public static final String KEY_PROTOCOL = "protocol";
 	
-	private static final int NEW_IMAGE_MESSAGE = 3;
-	private static final int CLEAR_IMAGE_MESSAGE = 4;
+	// Key to use to retrieve the seed of the game's schedule, if the caller
+	// wants to replay a game.
+	public static final String KEY_SEED = "seed";
 	
-	private static final int END_GAME_MESSAGE = 5;
+	// Key to use to retrieve whether or not the caller wants the device's
+	// latency calibrated instead of a game.
+	public static final String KEY_CALIBRATE = "calibrate";
 	
-	// Visibility constants.
-	private static final long FIRST_DELAY = 2000;
-	private static final long VISIBLE_MILLIS = 500;
-	private static final long[] DELAYS_MILLIS = { 1000, 2000 };
-	public static final int NUM_ITEMS_PER_ROUND = 30;
+	// Key to use to retrieve whether or not the caller wants every message
+	// on the UI thread timed on its own, at the cost of skewing the GCs.
+	public static final String KEY_STALL_DIAGNOSTICS = "stall_diagnostics";
 	
-	// The frequency at which a bad image/character will be shown.
-	private static final float BAD_FREQUENCY = 0.1f;
+	// Key to use to retrieve the games to play back to back, each a Bundle of
+	// the extras above that differ from this Intent's, if the caller wants a
+	// batch.
+	public static final String KEY_BATCH = "batch";
 	
-	// Possible good images/characters.
-	private static final char[] AVAILABLE_CHARS = { 'B', 'C', 'D', 'F', 'G', 'H', 'J', 'K', 'L', 'M', 'N', 'P', 'R', 'S', 'T' };
-	private Bitmap[] imageReferences;
+	public static final int NUM_ITEMS_PER_ROUND = TrialEngine.NUM_ITEMS_PER_ROUND;
 	
 	// Result keys.
 	public static final String REPORT_GOOD_CHAR_HITS = "good_char_hits";
@@ -86,90 +149,117 @@ public class Game extends Activity implements OnClickListener
 	public static final String REPORT_GOOD_CHAR_MISSES = "good_char_misses";
 	public static final String REPORT_BAD_CHAR_SKIPS = "bad_char_skips";
 	public static final String REPORT_REPEAT_TAPS = "repeat_taps";
+	public static final String REPORT_OFF_STIMULUS_TAPS = "off_stimulus_taps";
 	public static final String REPORT_RESPONSE_TIMES = "response_times";
+	public static final String REPORT_TRIALS = "trials";
+	public static final String REPORT_TIMING = "timing";
+	public static final String REPORT_PERFORMANCE = "performance";
+	public static final String REPORT_STALLED_TRIALS = "stalled_trials";
+	public static final String REPORT_SEED = "seed";
+	public static final String REPORT_TRIALS_USED = "trials_used";
+	public static final String REPORT_PRECISE = "precise";
+	public static final String REPORT_GO_RT_PRECISION = "go_rt_precision";
+	public static final String REPORT_INHIBITION_PRECISION = "inhibition_precision";
 	public static final String REPORT_SINGLE_VALUE_RESULT = "score";
 	public static final String REPORT_FEEDBACK = "feedback";
-	
-	// A dummy, empty image.
-	private Bitmap emptyImage;
-	
-	// The bad character/image.
-	private static final char BAD_CHAR = 'X';
-	private Bitmap badImage;
-	
-	/**
-	 * This should be computed rather than being a constant.
-	 */
-	private static final float TEXT_SIZE = 250.0f;
-	
-	private GameType gameType;
-	
-	private TextView charText;
+	public static final String REPORT_GO_RT_PERCENTILE = "go_rt_percentile";
+	public static final String REPORT_INHIBITION_PERCENTILE = "inhibition_percentile";
+	public static final String REPORT_GO_RT_SD = "go_rt_sd";
+	public static final String REPORT_GO_RT_MEDIAN = "go_rt_median";
+	public static final String REPORT_GO_RT_P90 = "go_rt_p90";
+	public static final String REPORT_COMMISSION_RATE = "commission_rate";
+	public static final String REPORT_OMISSION_RATE = "omission_rate";
+	public static final String REPORT_PERCENT_INHIBITION = "percent_inhibition";
+	public static final String REPORT_D_PRIME = "d_prime";
+	public static final String REPORT_CRITERION = "criterion";
+	public static final String REPORT_LATENCY_MS = "latency_ms";
+	public static final String REPORT_LATENCY_SD_MS = "latency_sd_ms";
+	public static final String REPORT_LATENCY_SAMPLES = "latency_samples";
+	public static final String REPORT_CORRECTED_TRIALS = "corrected_trials";
+	public static final String REPORT_CORRECTED_SCORE = "corrected_score";
+	public static final String REPORT_CORRECTED_GO_RT_MEDIAN = "corrected_go_rt_median";
+	public static final String REPORT_CORRECTED_GO_RT_P90 = "corrected_go_rt_p90";
+	public static final String REPORT_BATCH = "batch";
+	public static final String REPORT_BATCH_COMPLETE = "batch_complete";
+	
+	// The longest the UI thread will wait for the images that are still being
+	// loaded before loading them itself.
+	private static final long MAX_IMAGE_WAIT_MILLIS = 500;
+	
+	// The pause between the games in a batch.
+	private static final long BATCH_GAP_MILLIS = 1000;
+	
+	private StimulusLoader stimulusLoader;
+	private StimulusSet stimulusSet;
+	private PopulationNorms norms;
+	
+	private LinearLayout layout;
+	private GlyphView charText;
 	private ImageView imageView;
 	
-	private Random randomGenerator;
-	
-	private char currChar;
-	private Bitmap currImage;
-	private Map<Bitmap, String> imageLookup;
-	
-	private int numBadItemHits;
-	private int numGoodItemHits;
-	private int numGoodItemMisses;
-	private int numBadItemSkips;
-	private int numRepeatTaps;
-	private int numItems;
-	
-	private boolean currItemMissed;
-	
-	private long timeCurrItemDisplayed;
-	private JSONArray responseTimes;
-	
-	private int round;
-	private long delay;
-	
-	/**
-	 * Used to catch "tick" events when what is being displayed changes.
-	 */
-	Handler switcher = new Handler()
+	// The images for each stimulus, indexed by the stimulus' identifier, and
+	// what is shown between them. These are built from the atlas once it is
+	// needed, and the atlas is held until this is destroyed.
+	private StimulusAtlas atlas;
+	private Drawable[] images;
+	private Drawable blankImage;
+	private boolean destroyed;
+	
+	// The last image shown that wasn't the blank, so that a tap while the
+	// blank is showing is judged against the stimulus it responds to.
+	private Drawable lastImage;
+	
+	// Everything that was built for one game and is reused by the games
+	// after it that use the same stimulus set, keyed by the set's name.
+	private final HashMap<String, GlyphView> glyphViews = new HashMap<String, GlyphView>();
+	private final HashMap<String, Drawable[]> imageSets = new HashMap<String, Drawable[]>();
+	private final HashMap<String, Drawable> blankImages = new HashMap<String, Drawable>();
+	
+	// Reused when deciding whether or not a tap landed on the stimulus.
+	private final RectF imageBounds = new RectF();
+	private final RectF viewBounds = new RectF();
+	private final Matrix imageMatrix = new Matrix();
+	
+	private TrialEngine engine;
+	private TouchInput touchInput;
+	private Scheduler switcher;
+	private Random random;
+	private TrialJournal journal;
+	private LooperMonitor looperMonitor;
+	
+	// This device's touch latency or null if it hasn't been calibrated.
+	private LatencyCalibration.Estimate latency;
+	
+	// The options of each game to play, the index of the one being played
+	// and its options, and, if this is running a batch, the results of the
+	// games that are over.
+	private ArrayList<Bundle> games;
+	private int gameIndex;
+	private Bundle options;
+	private ArrayList<Bundle> batchResults;
+	
+	// Set once the player backs out, so that no more games are started.
+	private boolean stopped;
+	
+	// Starts the next game in the batch.
+	private final Runnable nextGame = new Runnable()
 	{
-		/**
-		 * Handles the message by calling its respective local function.
-		 */
 		@Override
-		public void handleMessage(Message msg)
+		public void run()
 		{
-			switch(msg.what)
-			{
-			case NEW_CHAR_MESSAGE:
-				printNewChar();
-				break;
-				
-			case CLEAR_CHAR_MESSAGE:
-				clearChar();
-				break;
-				
-			case NEW_IMAGE_MESSAGE:
-				showNewImage();
-				break;
-				
-			case CLEAR_IMAGE_MESSAGE:
-				clearImage();
-				break;
-				
-			case END_GAME_MESSAGE:
-				endGame();
-				break;
-				
-			default:
-				break;
-			}
+			gameIndex++;
+			startGame();
 		}
 	};
 	
+	// When the game started, for the SessionStore.
+	private long startedMillis;
+	private long startedNanos;
+	
 	/**
-	 * Sets up the TextView on the screen and local variables. It then begins
-	 * the flow of the program by starting the first round, round 0.
+	 * Sets up the View on the screen, the Scheduler, and everything else that
+	 * is shared by every game this plays. It then begins the flow of the
+	 * program by starting the first game.
 	 */
 	@Override
 	public void onCreate(Bundle savedInstance)
@@ -177,427 +267,662 @@ public class Game extends Activity implements OnClickListener
 		Log.i(TAG, "onCreate()");
 		
 		super.onCreate(savedInstance);
+		
+		if(getIntent().getBooleanExtra(KEY_CALIBRATE, false))
+		{
+			// The Calibration answers this Activity's caller directly.
+			Intent calibration = new Intent(this, Calibration.class);
+			calibration.addFlags(Intent.FLAG_ACTIVITY_FORWARD_RESULT);
+			startActivity(calibration);
+			finish();
+			return;
+		}
+		
 		setContentView(R.layout.game);
-		LinearLayout layout = (LinearLayout) findViewById(R.id.main_layout);
+		layout = (LinearLayout) findViewById(R.id.main_layout);
 		
-		String tGameType = getIntent().getStringExtra(KEY_INPUT);
+		stimulusLoader = StimulusLoader.getInstance(this);
+		norms = stimulusLoader.getNorms();
+		latency = Calibration.getEstimate(this);
 		
-		if((tGameType == null) || (tGameType.toLowerCase().equals(GameType.LETTER.name().toLowerCase()))) {
-			charText = new TextView(this);
-			charText.setGravity(Gravity.CENTER_VERTICAL | Gravity.CENTER_HORIZONTAL);
-			charText.setTextSize(TEXT_SIZE);
-			charText.setOnClickListener(this);
-			
-			layout.setBackgroundColor(0x000000);
-			layout.addView(charText, new LinearLayout.LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.FILL_PARENT));
-			
-			gameType = GameType.LETTER;
-			
-			switcher.sendMessageAtTime(switcher.obtainMessage(NEW_CHAR_MESSAGE), SystemClock.uptimeMillis() + FIRST_DELAY);
+		if(getIntent().hasExtra(KEY_BATCH))
+		{
+			games = getIntent().getParcelableArrayListExtra(KEY_BATCH);
+			if((games == null) || games.isEmpty())
+			{
+				Toast.makeText(this, "The batch has no games in it.", Toast.LENGTH_LONG).show();
+				finish();
+				return;
+			}
+			batchResults = new ArrayList<Bundle>(games.size());
 		}
-		else if(tGameType.toLowerCase().equals(GameType.IMAGE.name().toLowerCase())) {
-			layout.setBackgroundColor(android.graphics.Color.WHITE);
-			emptyImage = BitmapFactory.decodeResource(getResources(), R.drawable.hole);
-
-			imageView = new ImageView(this);
-			imageView.setScaleType(ScaleType.FIT_CENTER);
-			imageView.setBackgroundColor(android.graphics.Color.TRANSPARENT);
-			imageView.setOnClickListener(this);
-			imageView.setImageBitmap(emptyImage);
-			layout.addView(imageView, new LinearLayout.LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.FILL_PARENT));
-			
-			imageReferences = new Bitmap[11];
-			imageReferences[0] = BitmapFactory.decodeResource(getResources(), R.drawable.bighair);
-			imageReferences[1] = BitmapFactory.decodeResource(getResources(), R.drawable.blonde);
-			imageReferences[2] = BitmapFactory.decodeResource(getResources(), R.drawable.brunette);
-			imageReferences[3] = BitmapFactory.decodeResource(getResources(), R.drawable.cowboy);
-			imageReferences[4] = BitmapFactory.decodeResource(getResources(), R.drawable.eyeball);
-			imageReferences[5] = BitmapFactory.decodeResource(getResources(), R.drawable.fez);
-			imageReferences[6] = BitmapFactory.decodeResource(getResources(), R.drawable.french);
-			imageReferences[7] = BitmapFactory.decodeResource(getResources(), R.drawable.hair);
-			imageReferences[8] = BitmapFactory.decodeResource(getResources(), R.drawable.hawaiin);
-			imageReferences[9] = BitmapFactory.decodeResource(getResources(), R.drawable.sombraro);
-			imageReferences[10] = BitmapFactory.decodeResource(getResources(), R.drawable.space);
-			
-			badImage = BitmapFactory.decodeResource(getResources(), R.drawable.aubergine);
-			
-			imageLookup = new HashMap<Bitmap, String>();
-			imageLookup.put(imageReferences[0], "bighair");
-			imageLookup.put(imageReferences[1], "blonde");
-			imageLookup.put(imageReferences[2], "brunette");
-			imageLookup.put(imageReferences[3], "cowboy");
-			imageLookup.put(imageReferences[4], "eyeball");
-			imageLookup.put(imageReferences[5], "fez");
-			imageLookup.put(imageReferences[6], "french");
-			imageLookup.put(imageReferences[7], "hair");
-			imageLookup.put(imageReferences[8], "hawaiin");
-			imageLookup.put(imageReferences[9], "sombraro");
-			imageLookup.put(imageReferences[10], "space");
-			imageLookup.put(badImage, "aubergine");
-			
-			gameType = GameType.IMAGE;
-			
-			switcher.sendMessageAtTime(switcher.obtainMessage(NEW_IMAGE_MESSAGE), SystemClock.uptimeMillis() + FIRST_DELAY);
+		else
+		{
+			games = new ArrayList<Bundle>(1);
+			games.add(new Bundle());
+		}
+		
+		// Line the stimuli up with the display's frames where possible.
+		if(FrameScheduler.isSupported())
+		{
+			switcher = new FrameScheduler(getWindowManager().getDefaultDisplay().getRefreshRate());
+		}
+		else
+		{
+			switcher = new HandlerScheduler(Clock.SYSTEM);
+		}
+		looperMonitor = new LooperMonitor(
+			Clock.SYSTEM,
+			switcher,
+			getWindowManager().getDefaultDisplay().getRefreshRate(),
+			new PerformanceStats(),
+			this,
+			getIntent().getBooleanExtra(KEY_STALL_DIAGNOSTICS, false));
+		random = new Random();
+		
+		// Anything left behind by an earlier game is recovered first, and this
+		// game's journal isn't recovered while it is being written.
+		SessionStore.getInstance(this).recoverAsync(TrialJournal.getDirectory(this), stimulusLoader);
+		
+		gameIndex = 0;
+		startGame();
+	}
+	
+	/**
+	 * Starts the game at gameIndex, reusing the engine, the Views, and the
+	 * images from the games before it. If the game can't be started, the
+	 * user is told and this finishes with whatever has been played so far.
+	 */
+	private void startGame()
+	{
+		options = getOptions(gameIndex);
+		
+		String tGameType = options.getString(KEY_INPUT);
+		if(tGameType == null)
+		{
+			stimulusSet = stimulusLoader.getCatalog().getDefaultSet();
 		}
-		else {
+		else
+		{
+			stimulusSet = stimulusLoader.getCatalog().getSet(tGameType);
+		}
+		
+		if(stimulusSet == null)
+		{
 			Toast.makeText(this, "Unknown game type: " + tGameType, Toast.LENGTH_LONG).show();
-			finish();
+			finishGames();
+			return;
 		}
 		
-		randomGenerator = new Random();
+		Protocol protocol = readProtocol();
+		if(protocol == null)
+		{
+			finishGames();
+			return;
+		}
 		
-		numBadItemHits = 0;
-		numGoodItemHits = 0;
-		numGoodItemMisses = 0;
-		numBadItemSkips = 0;
-		numRepeatTaps = 0;
+		showStimulusSet();
 		
-		responseTimes = new JSONArray();
+		if(engine == null)
+		{
+			engine = new TrialEngine(Clock.SYSTEM, switcher, this, stimulusSet, protocol, random);
+			touchInput = new TouchInput(engine, this);
+		}
+		else
+		{
+			engine.setGame(stimulusSet, protocol);
+		}
+		if(charText != null)
+		{
+			charText.setOnTouchListener(touchInput);
+		}
+		else if(imageView != null)
+		{
+			imageView.setOnTouchListener(touchInput);
+		}
 		
-		round = 0;
-		delay = DELAYS_MILLIS[round];
+		startedMillis = System.currentTimeMillis();
+		startedNanos = Clock.SYSTEM.nanoTime();
+		long seed = options.containsKey(KEY_SEED) ? options.getLong(KEY_SEED) : random.nextLong();
+		
+		journal = new TrialJournal(TrialJournal.getDirectory(this), stimulusSet.getName(), options.getString(KEY_PARTICIPANT), startedMillis, startedNanos, seed, protocol.getMaxTrials());
+		engine.setListener(journal);
+		journal.start();
+		
+		looperMonitor.start();
+		
+		engine.start(seed);
 	}
 	
 	/**
-	 * Called when a character is clicked but keeps track of state such that
-	 * the exact same character is never clicked twice.
+	 * Returns the options of one of the games: the extras this was launched
+	 * with, overridden by that game's own Bundle in the batch, if any.
+	 * 
+	 * @param index The game's index.
+	 * 
+	 * @return The game's options.
 	 */
-	@Override
-	public void onClick(View v)
+	private Bundle getOptions(int index)
 	{
-		if(currItemMissed)
+		Bundle gameOptions = new Bundle();
+		Bundle extras = getIntent().getExtras();
+		if(extras != null)
 		{
-			try
+			gameOptions.putAll(extras);
+			gameOptions.remove(KEY_BATCH);
+		}
+		gameOptions.putAll(games.get(index));
+		return gameOptions;
+	}
+	
+	/**
+	 * Shows the View for the current stimulus set, creating it if no game
+	 * before this one used it, and hides the rest. Each text set has its own
+	 * GlyphView, so its glyphs are only ever drawn once, and every image set
+	 * shares the one ImageView.
+	 */
+	private void showStimulusSet()
+	{
+		charText = null;
+		for(GlyphView glyphView : glyphViews.values())
+		{
+			glyphView.setVisibility(View.GONE);
+		}
+		if(imageView != null)
+		{
+			imageView.setVisibility(View.GONE);
+		}
+		images = null;
+		blankImage = null;
+		lastImage = null;
+		
+		if(StimulusSet.Kind.TEXT.equals(stimulusSet.getKind())) {
+			// The characters are drawn ahead of time at a size that fits the
+			// screen so that showing one is a single draw.
+			charText = glyphViews.get(stimulusSet.getName());
+			if(charText == null)
 			{
-				String key = KEY_UNKNOWN;
-				if((gameType == null) || GameType.LETTER.equals(gameType))
-				{
-					key = Character.toString(currChar);
-				}
-				else if(GameType.IMAGE.equals(gameType))
-				{
-					key = imageLookup.get(currImage);
-				}
-				
-				JSONObject response = new JSONObject();
-				response.put(key, SystemClock.uptimeMillis() - timeCurrItemDisplayed);
-				responseTimes.put(response);
+				charText = new GlyphView(this, stimulusSet, android.graphics.Color.WHITE);
+				glyphViews.put(stimulusSet.getName(), charText);
+				layout.addView(charText, new LinearLayout.LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.FILL_PARENT));
 			}
-			catch(JSONException e)
+			
+			layout.setBackgroundColor(0x000000);
+			charText.reset();
+			charText.setVisibility(View.VISIBLE);
+		}
+		else if(StimulusSet.Kind.IMAGE.equals(stimulusSet.getKind())) {
+			layout.setBackgroundColor(android.graphics.Color.WHITE);
+			
+			if(imageView == null)
 			{
-				Log.e(TAG, "Error while adding response to the list of responses.", e);
+				// The images are usually already being loaded by now, but if
+				// this was launched directly that starts here.
+				stimulusLoader.start();
+				
+				imageView = new ImageView(this);
+				imageView.setScaleType(ScaleType.FIT_CENTER);
+				imageView.setBackgroundColor(android.graphics.Color.TRANSPARENT);
+				layout.addView(imageView, new LinearLayout.LayoutParams(LayoutParams.FILL_PARENT, LayoutParams.FILL_PARENT));
 			}
+			imageView.setVisibility(View.VISIBLE);
 			
-			if((gameType == null) || GameType.LETTER.equals(gameType))
+			if(loadImages(0))
 			{
-				if(currChar == BAD_CHAR)
-				{
-					numBadItemHits++;
-				}
-				else
-				{
-					numGoodItemHits++;
-				}
+				imageView.setImageDrawable(blankImage);
 			}
-			else if(GameType.IMAGE.equals(gameType))
+			else
 			{
-				if(currImage.equals(badImage))
-				{
-					numBadItemHits++;
-				}
-				else
+				// Don't hold up the first frame for it.
+				imageView.setImageDrawable(null);
+				imageView.post(new Runnable()
 				{
-					numGoodItemHits++;
-				}
+					@Override
+					public void run()
+					{
+						clearStimulus();
+					}
+				});
 			}
-	
-			currItemMissed = false;
-		}
-		else
-		{
-			numRepeatTaps++;
 		}
 	}
 	
 	/**
-	 * Force-'finish()'s this without calling the Results Activity and cancels
-	 * all related Handlers.
+	 * Returns the results of every game in the batch that has been played
+	 * and finishes. If this isn't running a batch, this only finishes, as the
+	 * result of a single game is set when it is over.
 	 */
-	@Override
-	public boolean onKeyDown(int keyCode, KeyEvent event)
+	private void finishGames()
 	{
-		if(keyCode == KeyEvent.KEYCODE_BACK)
+		if(batchResults != null)
 		{
-			switcher.removeMessages(END_GAME_MESSAGE);
-			
-			switcher.removeMessages(CLEAR_IMAGE_MESSAGE);
-			switcher.removeMessages(NEW_IMAGE_MESSAGE);
-			
-			switcher.removeMessages(CLEAR_CHAR_MESSAGE);
-			switcher.removeMessages(NEW_CHAR_MESSAGE);
-			
-			endGame();
-			
-			return true;
+			Intent results = new Intent();
+			results.putParcelableArrayListExtra(REPORT_BATCH, batchResults);
+			results.putExtra(REPORT_BATCH_COMPLETE, batchResults.size() == games.size());
+			setResult(Activity.RESULT_OK, results);
 		}
 		
-		return super.onKeyDown(keyCode, event);
+		finish();
 	}
 	
 	/**
-	 * Checks if the letter was missed then generates a new letter for the 
-	 * user. It also calculates and sets the timer for when the letter should
-	 * be hidden and when to switch to the next letter or end the game.
+	 * Cancels anything the engine still has pending and gives the atlas back
+	 * to the loader. Pending events hold the scheduler, which holds the
+	 * engine and, through it, this Activity, so they would otherwise keep
+	 * this and its images alive until they fired. The journal of a game that
+	 * isn't over is closed and left to be recovered.
 	 */
-	private void printNewChar()
+	@Override
+	public void onDestroy()
 	{
-		checkMiss();
+		Log.i(TAG, "onDestroy()");
+		
+		destroyed = true;
 		
-		if(numItems >= NUM_ITEMS_PER_ROUND)
+		if(layout != null)
 		{
-			round++;
-			delay = DELAYS_MILLIS[round];
-			numItems = 1;
+			layout.removeCallbacks(nextGame);
 		}
-		else
+		if(switcher != null)
 		{
-			numItems++;
+			switcher.cancelAll();
+			switcher.setTarget(null);
 		}
-
-		currItemMissed = true;
 		
-		currChar = newChar();
-		charText.setText((new StringBuilder()).append(currChar).toString());
+		if((journal != null) && (! journal.isFinished()))
+		{
+			journal.close();
+		}
+		if(looperMonitor != null)
+		{
+			looperMonitor.stop();
+		}
 		
-		timeCurrItemDisplayed = SystemClock.uptimeMillis();
-		switcher.sendMessageAtTime(switcher.obtainMessage(CLEAR_CHAR_MESSAGE), timeCurrItemDisplayed + VISIBLE_MILLIS);
-		if((numItems < NUM_ITEMS_PER_ROUND) || (round < (DELAYS_MILLIS.length - 1)))
+		if(imageView != null)
 		{
-			switcher.sendMessageAtTime(switcher.obtainMessage(NEW_CHAR_MESSAGE), timeCurrItemDisplayed + delay);
+			imageView.setImageDrawable(null);
 		}
-		else
+		images = null;
+		blankImage = null;
+		lastImage = null;
+		imageSets.clear();
+		blankImages.clear();
+		if(stimulusLoader != null)
 		{
-			switcher.sendMessageAtTime(switcher.obtainMessage(END_GAME_MESSAGE), timeCurrItemDisplayed + delay);
+			stimulusLoader.release(atlas);
 		}
+		atlas = null;
+		
+		super.onDestroy();
 	}
 	
 	/**
-	 * Checks if the image was missed then generates a new image for the user.
-	 * It also calculates and sets the timer for when the image should be
-	 * hidden and when to switch to the next image or end the game.
+	 * Returns the protocol passed in by the caller or the default one if
+	 * none was.
+	 * 
+	 * @return The Protocol or null if the caller's protocol is malformed, in
+	 * 		   which case the user has been told.
 	 */
-	private void showNewImage()
+	private Protocol readProtocol()
 	{
-		checkMiss();
+		String text = options.getString(KEY_PROTOCOL);
+		if(text == null)
+		{
+			return stimulusLoader.getProtocol();
+		}
 		
-		if(numItems >= NUM_ITEMS_PER_ROUND)
+		try
 		{
-			round++;
-			delay = DELAYS_MILLIS[round];
-			numItems = 1;
+			return Protocol.read(new StringReader(text));
 		}
-		else 
+		catch(IOException e)
 		{
-			numItems++;
+			Log.e(TAG, "The protocol could not be read.", e);
+			Toast.makeText(this, "Invalid protocol: " + e.getMessage(), Toast.LENGTH_LONG).show();
+			return null;
 		}
-
-		currItemMissed = true;
-		
-		currImage = newImage();
-		imageView.setImageBitmap(currImage);
-		
-		timeCurrItemDisplayed = SystemClock.uptimeMillis();
-		switcher.sendMessageAtTime(switcher.obtainMessage(CLEAR_IMAGE_MESSAGE), timeCurrItemDisplayed + VISIBLE_MILLIS);
-		if((numItems < NUM_ITEMS_PER_ROUND) || (round < (DELAYS_MILLIS.length - 1)))
+	}
+	
+	/**
+	 * Returns whether or not a tap landed on the character or image that is
+	 * or was most recently shown. While the blank is showing, that is the
+	 * stimulus before it, since a late response is still aimed at it. A
+	 * character's bounds are its glyph centered in the View, and an image's
+	 * are the image as it is scaled to fit, the same way the ImageView's
+	 * FIT_CENTER does.
+	 */
+	@Override
+	public boolean isOnStimulus(View view, float x, float y)
+	{
+		if(view == charText)
 		{
-			switcher.sendMessageAtTime(switcher.obtainMessage(NEW_IMAGE_MESSAGE), timeCurrItemDisplayed + delay);
+			return charText.isOnStimulus(x, y);
 		}
-		else
+		else if(view == imageView)
 		{
-			switcher.sendMessageAtTime(switcher.obtainMessage(END_GAME_MESSAGE), timeCurrItemDisplayed + delay);
+			if(lastImage == null)
+			{
+				return false;
+			}
+			
+			// The bounds are worked out rather than taken from the ImageView's
+			// matrix, which is for whatever it is showing now.
+			imageBounds.set(0, 0, lastImage.getIntrinsicWidth(), lastImage.getIntrinsicHeight());
+			viewBounds.set(0, 0,
+				imageView.getWidth() - imageView.getPaddingLeft() - imageView.getPaddingRight(),
+				imageView.getHeight() - imageView.getPaddingTop() - imageView.getPaddingBottom());
+			if((imageBounds.right > 0) && (imageBounds.bottom > 0))
+			{
+				imageMatrix.setRectToRect(imageBounds, viewBounds, Matrix.ScaleToFit.CENTER);
+				imageMatrix.mapRect(imageBounds);
+			}
+			return imageBounds.contains(x - imageView.getPaddingLeft(), y - imageView.getPaddingTop());
 		}
+		
+		return true;
 	}
-
+	
 	/**
-	 * Hides the current letter.
+	 * Force-'finish()'s this without calling the Results Activity and cancels
+	 * all related Handlers. In a batch, the games that haven't been started
+	 * are skipped.
 	 */
-	private void clearChar()
+	@Override
+	public boolean onKeyDown(int keyCode, KeyEvent event)
 	{
-		charText.setText("");
+		if(keyCode == KeyEvent.KEYCODE_BACK)
+		{
+			stopped = true;
+			if((engine != null) && (! engine.isGameOver()))
+			{
+				engine.finish();
+			}
+			else if((batchResults != null) && (layout != null))
+			{
+				// Between games.
+				layout.removeCallbacks(nextGame);
+				finishGames();
+			}
+			
+			return true;
+		}
+		
+		return super.onKeyDown(keyCode, event);
 	}
 	
 	/**
-	 * Hides the current image.
+	 * Flags the trials that a stall on the UI thread overlapped.
 	 */
-	private void clearImage()
+	@Override
+	public void onStall(long startNanos, long endNanos)
 	{
-		imageView.setImageBitmap(emptyImage);
+		looperMonitor.getStats().recordStalledTrials(engine.markStall(startNanos, endNanos));
 	}
 	
 	/**
-	 * Packs the results into a Bundle, sets them as the result Intent, and
-	 * calls finish().
+	 * Adds the performance of the game so far to the Activity's debug dump.
 	 */
-	private void endGame()
-	{		
-		checkMiss();
-		
-		Bundle extras = new Bundle();
-		extras.putInt(REPORT_GOOD_CHAR_HITS, numGoodItemHits);
-		extras.putInt(REPORT_BAD_CHAR_HITS, numBadItemHits);
-		extras.putInt(REPORT_GOOD_CHAR_MISSES, numGoodItemMisses);
-		extras.putInt(REPORT_BAD_CHAR_SKIPS, numBadItemSkips);
-		extras.putInt(REPORT_REPEAT_TAPS, numRepeatTaps);
-		extras.putString(REPORT_RESPONSE_TIMES, responseTimes.toString());
-		
-		double score = calculateScore();
-		extras.putDouble(REPORT_SINGLE_VALUE_RESULT, score);
-		extras.putString(REPORT_FEEDBACK, "Your score for this game was: " + score);
-
-		Intent results = new Intent();
-		results.putExtras(extras);
-		setResult(Activity.RESULT_OK, results);
+	@Override
+	public void dump(String prefix, FileDescriptor fd, PrintWriter writer, String[] args)
+	{
+		super.dump(prefix, fd, writer, args);
 		
-		finish();
+		if(looperMonitor != null)
+		{
+			looperMonitor.update();
+			writer.print(prefix);
+			writer.println("Performance:");
+			looperMonitor.getStats().dump(prefix + "  ", writer);
+		}
 	}
 	
 	/**
-	 * Generates a new character or a BAD_CHAR based on a random choice from
-	 * the pseudo-random number generator.
-	 * 
-	 * @return A pseudo-random character to be displayed to the user.
+	 * Shows the character or image that the engine chose.
 	 */
-	private char newChar()
+	@Override
+	public void showStimulus(int stimulus)
 	{
-		char returnChar;
-		if(randomGenerator.nextDouble() <= BAD_FREQUENCY)
+		if(charText != null)
 		{
-			returnChar = BAD_CHAR;
+			charText.showStimulus(stimulus);
 		}
-		else
+		else if(imageView != null)
 		{
-			returnChar = AVAILABLE_CHARS[randomGenerator.nextInt(AVAILABLE_CHARS.length)];
+			loadImages(MAX_IMAGE_WAIT_MILLIS);
+			lastImage = images[stimulus];
+			imageView.setImageDrawable(lastImage);
 		}
-		return returnChar;
 	}
 	
 	/**
-	 * Generates a new image reference or a BAD_IMAGE based on a random choice
-	 * from the pseudo-random number generator.
-	 * 
-	 * @return A pseudo-random image reference to be displayed to the user.
+	 * Hides the current character or image.
 	 */
-	private Bitmap newImage()
+	@Override
+	public void clearStimulus()
 	{
-		Bitmap image;
-		if(randomGenerator.nextDouble() <= BAD_FREQUENCY)
+		if(charText != null)
 		{
-			image = badImage;
+			charText.clearStimulus();
 		}
-		else
+		else if(imageView != null)
 		{
-			image = imageReferences[randomGenerator.nextInt(imageReferences.length)];
+			loadImages(MAX_IMAGE_WAIT_MILLIS);
+			imageView.setImageDrawable(blankImage);
 		}
-		return image;
 	}
 	
 	/**
-	 * If the character was a good character then it increases the number of
-	 * good character misses; if it was a bad character, then it increases the
-	 * number of bad character skips.
+	 * Packs the results into a Bundle and sets them as the result Intent, or
+	 * adds them to the batch's, and calls finish() unless there is another
+	 * game in the batch to play.
 	 */
-	private void checkMiss()
+	@Override
+	public void onGameOver()
 	{
-		if(currItemMissed)
+		looperMonitor.stop();
+		PerformanceStats performance = looperMonitor.getStats();
+		
+		Bundle extras = new Bundle();
+		extras.putInt(REPORT_GOOD_CHAR_HITS, engine.getNumGoodItemHits());
+		extras.putInt(REPORT_BAD_CHAR_HITS, engine.getNumBadItemHits());
+		extras.putInt(REPORT_GOOD_CHAR_MISSES, engine.getNumGoodItemMisses());
+		extras.putInt(REPORT_BAD_CHAR_SKIPS, engine.getNumBadItemSkips());
+		extras.putInt(REPORT_REPEAT_TAPS, engine.getNumRepeatTaps());
+		extras.putInt(REPORT_OFF_STIMULUS_TAPS, engine.getNumOffStimulusTaps());
+		extras.putByteArray(REPORT_TRIALS, TrialCodec.encode(engine.getTrialLog(), stimulusSet.getStimulusNames()));
+		if(options.getBoolean(KEY_LEGACY_RESPONSE_TIMES, false))
 		{
-			if((gameType == null) || GameType.LETTER.equals(gameType))
-			{
-				if(currChar == BAD_CHAR)
-				{
-					numBadItemSkips++;
-				}
-				else
-				{
-					numGoodItemMisses++;
-				}
-			}
-			else if(GameType.IMAGE.equals(gameType))
-			{
-				if(currImage.equals(badImage))
-				{
-					numBadItemSkips++;
-				}
-				else
-				{
-					numGoodItemMisses++;
-				}
-			}
-			
-			try
-			{
-				String key = KEY_UNKNOWN;
-				if((gameType == null) || GameType.LETTER.equals(gameType))
-				{
-					key = Character.toString(currChar);
-				}
-				else if(GameType.IMAGE.equals(gameType))
-				{
-					key = imageLookup.get(currImage);
-				}
-				
-				JSONObject response = new JSONObject();
-				response.put(key, SystemClock.uptimeMillis() - timeCurrItemDisplayed);
-				responseTimes.put(response);
-			}
-			catch(JSONException e)
-			{
-				Log.e(TAG, "Error while adding response to the list of respones.", e);
-			}
+			extras.putString(REPORT_RESPONSE_TIMES, engine.getTrialLog().toJson(stimulusSet.getStimulusNames()));
+		}
+		extras.putString(REPORT_TIMING, engine.getTimingStats().toJson());
+		extras.putString(REPORT_PERFORMANCE, performance.toJson());
+		extras.putInt(REPORT_STALLED_TRIALS, performance.getNumStalledTrials());
+		extras.putLong(REPORT_SEED, engine.getSchedule().getSeed());
+		extras.putInt(REPORT_TRIALS_USED, engine.getTrialLog().size());
+		extras.putBoolean(REPORT_PRECISE, engine.isPrecise());
+		
+		ScoreAggregator scores = engine.getScores();
+		extras.putDouble(REPORT_GO_RT_SD, scores.getGoRtStandardDeviation());
+		extras.putDouble(REPORT_GO_RT_MEDIAN, scores.getGoRtMedian());
+		extras.putDouble(REPORT_GO_RT_P90, scores.getGoRtP90());
+		extras.putDouble(REPORT_COMMISSION_RATE, scores.getCommissionRate());
+		extras.putDouble(REPORT_OMISSION_RATE, scores.getOmissionRate());
+		extras.putDouble(REPORT_PERCENT_INHIBITION, scores.getPercentInhibition());
+		extras.putDouble(REPORT_D_PRIME, scores.getDPrime());
+		extras.putDouble(REPORT_CRITERION, scores.getCriterion());
+		extras.putDouble(REPORT_GO_RT_PRECISION, scores.getGoRtPrecision());
+		extras.putDouble(REPORT_INHIBITION_PRECISION, scores.getInhibitionPrecision());
+		
+		double goRtPercentile = norms.getGoRtPercentile(stimulusSet.getName(), scores.getGoRtMean());
+		double inhibitionPercentile = norms.getInhibitionPercentile(stimulusSet.getName(), scores.getPercentInhibition());
+		extras.putDouble(REPORT_GO_RT_PERCENTILE, goRtPercentile);
+		extras.putDouble(REPORT_INHIBITION_PERCENTILE, inhibitionPercentile);
+		
+		double score = engine.calculateScore();
+		extras.putDouble(REPORT_SINGLE_VALUE_RESULT, score);
+		extras.putString(REPORT_FEEDBACK, getFeedback(score, goRtPercentile, inhibitionPercentile));
+		
+		if(latency != null)
+		{
+			TrialLog corrected = LatencyCalibration.correct(engine.getTrialLog(), latency.getLatencyMillis());
+			ScoreAggregator correctedScores = new ScoreAggregator();
+			correctedScores.addAll(corrected);
 			
-			currItemMissed = false;
+			extras.putDouble(REPORT_LATENCY_MS, latency.getLatencyMillis());
+			extras.putDouble(REPORT_LATENCY_SD_MS, latency.getStandardDeviationMillis());
+			extras.putInt(REPORT_LATENCY_SAMPLES, latency.getNumSamples());
+			extras.putByteArray(REPORT_CORRECTED_TRIALS, TrialCodec.encode(corrected, stimulusSet.getStimulusNames()));
+			extras.putDouble(REPORT_CORRECTED_SCORE, correctedScores.getGoRtMean());
+			extras.putDouble(REPORT_CORRECTED_GO_RT_MEDIAN, correctedScores.getGoRtMedian());
+			extras.putDouble(REPORT_CORRECTED_GO_RT_P90, correctedScores.getGoRtP90());
+		}
+		
+		if(batchResults == null)
+		{
+			Intent results = new Intent();
+			results.putExtras(extras);
+			setResult(Activity.RESULT_OK, results);
+		}
+		else
+		{
+			batchResults.add(extras);
+		}
+		
+		journal.finish();
+		saveSession(score, scores, performance);
+		
+		if((batchResults == null) || stopped || (gameIndex + 1 == games.size()))
+		{
+			finishGames();
+		}
+		else
+		{
+			// The next game is started once the engine is done with this one.
+			clearStimulus();
+			layout.postDelayed(nextGame, BATCH_GAP_MILLIS);
+		}
+	}
+	
+	/**
+	 * Builds the feedback for the player.
+	 * 
+	 * @param score The single value result.
+	 * 
+	 * @param goRtPercentile The rank of the mean GO RT or NaN.
+	 * 
+	 * @param inhibitionPercentile The rank of the % inhibition or NaN.
+	 * 
+	 * @return The feedback.
+	 */
+	private static String getFeedback(double score, double goRtPercentile, double inhibitionPercentile)
+	{
+		StringBuilder feedback = new StringBuilder();
+		feedback.append("Your score for this game was: ").append(score);
+		if(! Double.isNaN(goRtPercentile))
+		{
+			feedback.append("\nYou were faster than ").append(Math.round(goRtPercentile)).append("% of players.");
+		}
+		if(! Double.isNaN(inhibitionPercentile))
+		{
+			feedback.append("\nYou held back more often than ").append(Math.round(inhibitionPercentile)).append("% of players.");
 		}
+		return feedback.toString();
 	}
 	
 	/**
-	 * Calculates a score to be returned as a single value.
+	 * Saves this game and a copy of its trials to the SessionStore in the
+	 * background and then deletes its journal.
 	 * 
-	 * There are two "best scores", and this returns the "GO RT" version.
+	 * @param score The single value result.
 	 * 
-	 * GO RT - Mean response for every non-"bad character" response.
+	 * @param scores The game's metrics.
 	 * 
-	 * % Inhibition - Number of BAD_CHAR_HITS divided by the total number of
-	 * 				  BAD_CHARs shown.
+	 * @param performance How busy the UI thread was.
+	 */
+	private void saveSession(double score, ScoreAggregator scores, PerformanceStats performance)
+	{
+		ContentValues session = new ContentValues();
+		session.put(SessionContract.Sessions.PARTICIPANT, options.getString(KEY_PARTICIPANT));
+		session.put(SessionContract.Sessions.GAME_TYPE, stimulusSet.getName());
+		session.put(SessionContract.Sessions.STARTED, startedMillis);
+		session.put(SessionContract.Sessions.DURATION_MILLIS, (Clock.SYSTEM.nanoTime() - startedNanos) / 1000000L);
+		session.put(SessionContract.Sessions.GOOD_HITS, engine.getNumGoodItemHits());
+		session.put(SessionContract.Sessions.BAD_HITS, engine.getNumBadItemHits());
+		session.put(SessionContract.Sessions.GOOD_MISSES, engine.getNumGoodItemMisses());
+		session.put(SessionContract.Sessions.BAD_SKIPS, engine.getNumBadItemSkips());
+		session.put(SessionContract.Sessions.REPEAT_TAPS, engine.getNumRepeatTaps());
+		session.put(SessionContract.Sessions.OFF_STIMULUS_TAPS, engine.getNumOffStimulusTaps());
+		session.put(SessionContract.Sessions.SCORE, score);
+		session.put(SessionContract.Sessions.GO_RT_SD, scores.getGoRtStandardDeviation());
+		session.put(SessionContract.Sessions.GO_RT_MEDIAN, scores.getGoRtMedian());
+		session.put(SessionContract.Sessions.GO_RT_P90, scores.getGoRtP90());
+		session.put(SessionContract.Sessions.COMMISSION_RATE, scores.getCommissionRate());
+		session.put(SessionContract.Sessions.OMISSION_RATE, scores.getOmissionRate());
+		session.put(SessionContract.Sessions.PERCENT_INHIBITION, scores.getPercentInhibition());
+		session.put(SessionContract.Sessions.D_PRIME, scores.getDPrime());
+		session.put(SessionContract.Sessions.CRITERION, scores.getCriterion());
+		session.put(SessionContract.Sessions.TIMING, engine.getTimingStats().toJson());
+		session.put(SessionContract.Sessions.SEED, engine.getSchedule().getSeed());
+		session.put(SessionContract.Sessions.PERFORMANCE, performance.toJson());
+		if(latency != null)
+		{
+			session.put(SessionContract.Sessions.LATENCY_MS, latency.getLatencyMillis());
+			session.put(SessionContract.Sessions.LATENCY_SD_MS, latency.getStandardDeviationMillis());
+		}
+		
+		SessionStore.getInstance(this).saveAsync(session, new TrialLog(engine.getTrialLog()), stimulusSet.getStimulusNames(), journal);
+	}
+	
+	/**
+	 * Builds the images for the stimulus set from the atlas if that hasn't
+	 * been done yet. The atlas is only taken once, and each set's images are
+	 * only built once, however many games use them.
+	 * 
+	 * @param timeoutMillis The longest to wait for the atlas to be loaded in
+	 * 						the background. If this is 0 and the atlas isn't
+	 * 						ready, nothing is done; otherwise, it is loaded on
+	 * 						this thread once the time is up.
 	 * 
-	 * @return A single score for the game.
+	 * @return Whether or not the images are ready. They never are once this
+	 * 		   has been destroyed.
 	 */
-	private double calculateScore()
+	private boolean loadImages(long timeoutMillis)
 	{
-		if(responseTimes.length() == 0) {
-			return 0.0;
+		if(images != null)
+		{
+			return true;
+		}
+		if(destroyed)
+		{
+			return false;
 		}
 		
-		double totalResponseTime = 0.0;
-		for(int i = 0; i < responseTimes.length(); i++)
+		if(atlas == null)
 		{
-			try
+			if(timeoutMillis <= 0)
 			{
-				JSONObject currResponse = responseTimes.getJSONObject(i);
-				Iterator<?> keys = currResponse.keys();
-				while(keys.hasNext())
+				atlas = stimulusLoader.getAtlas(0);
+				if(atlas == null)
 				{
-					String key = (String) keys.next();
-					if(! Character.toString(BAD_CHAR).equals(key))
-					{
-						totalResponseTime += currResponse.getDouble(key);
-					}
+					return false;
 				}
 			}
-			catch(JSONException e)
+			else
 			{
-				Log.e(TAG, "Error while reading response times object.", e);
+				atlas = stimulusLoader.getAtlasOrLoad(timeoutMillis);
 			}
 		}
 		
-		return totalResponseTime / responseTimes.length();
+		String name = stimulusSet.getName();
+		images = imageSets.get(name);
+		if(images == null)
+		{
+			images = atlas.newDrawables(stimulusSet);
+			String blank = stimulusSet.getBlankDisplay();
+			imageSets.put(name, images);
+			blankImages.put(name, (blank == null) ? null : atlas.newDrawable(blank));
+		}
+		blankImage = blankImages.get(name);
+		return true;
 	}
 }
@@ -0,0 +1,273 @@
+package edu.ucla.cens.FocusGame;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.view.View;
+
+/**
+ * Shows the stimuli of a text game. Every stimulus, and the blank between
+ * them, is drawn once into its own Bitmap whenever the View changes size, at
+ * the largest size that fits the screen. Showing a stimulus afterwards only
+ * invalidates this View and draws that Bitmap, so there is no text to measure
+ * or layout to redo at the moment it appears, as there was when a TextView's
+ * text was changed.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class GlyphView extends View
+{
+	// The text size that the glyphs are measured at before they are scaled to
+	// fit the View.
+	private static final float REFERENCE_TEXT_SIZE = 100.0f;
+	
+	// The most of the View's shorter side that the largest glyph may fill.
+	private static final float MAX_FILL = 0.6f;
+	
+	// Marks that nothing is being shown, not even a blank.
+	private static final int NONE = -1;
+	
+	private final String[] displays;
+	private final Paint textPaint;
+	private final Paint bitmapPaint;
+	private final Rect textBounds;
+	
+	// The pre-drawn glyphs, indexed by stimulus with the blank last, and
+	// where each is drawn within the View.
+	private final Bitmap[] glyphs;
+	private final int[] glyphLefts;
+	private final int[] glyphTops;
+	
+	private int shown;
+	
+	// The last stimulus shown, not counting the blank, so that a tap while
+	// the blank is showing is judged against the stimulus before it.
+	private int lastStimulus;
+	
+	/**
+	 * Creates a View that shows the stimuli of a text game.
+	 * 
+	 * @param context The Context the View is running in.
+	 * 
+	 * @param stimulusSet The stimuli to show. It must be a TEXT set.
+	 * 
+	 * @param color The color of the text.
+	 */
+	public GlyphView(Context context, StimulusSet stimulusSet, int color)
+	{
+		super(context);
+		
+		int size = stimulusSet.size();
+		displays = new String[size + 1];
+		for(int i = 0; i < size; i++)
+		{
+			displays[i] = stimulusSet.getDisplay(i);
+		}
+		displays[size] = stimulusSet.getBlankDisplay();
+		
+		textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+		bitmapPaint = new Paint();
+		bitmapPaint.setColor(color);
+		textBounds = new Rect();
+		
+		glyphs = new Bitmap[displays.length];
+		glyphLefts = new int[displays.length];
+		glyphTops = new int[displays.length];
+		
+		shown = NONE;
+		lastStimulus = NONE;
+	}
+	
+	/**
+	 * Shows a stimulus in place of whatever is being shown.
+	 * 
+	 * @param stimulus The stimulus' identifier.
+	 */
+	public void showStimulus(int stimulus)
+	{
+		show(stimulus);
+	}
+	
+	/**
+	 * Shows the blank, if there is one, in place of whatever is being shown.
+	 */
+	public void clearStimulus()
+	{
+		show(displays.length - 1);
+	}
+	
+	/**
+	 * Shows the blank and forgets the last stimulus, for the start of a game.
+	 */
+	public void reset()
+	{
+		lastStimulus = NONE;
+		clearStimulus();
+	}
+	
+	/**
+	 * Returns whether or not a point is on the stimulus being shown or, while
+	 * the blank is showing, the last one that was. The blank itself is never
+	 * a stimulus.
+	 * 
+	 * @param x The horizontal position within this View.
+	 * 
+	 * @param y The vertical position within this View.
+	 * 
+	 * @return Whether or not the point is on the stimulus' glyph.
+	 */
+	public boolean isOnStimulus(float x, float y)
+	{
+		if((lastStimulus == NONE) || (glyphs[lastStimulus] == null))
+		{
+			return false;
+		}
+		
+		float left = glyphLefts[lastStimulus];
+		float top = glyphTops[lastStimulus];
+		return (x >= left) && (x < left + glyphs[lastStimulus].getWidth()) && (y >= top) && (y < top + glyphs[lastStimulus].getHeight());
+	}
+	
+	/**
+	 * Draws the glyphs again at the largest size that fits the new size.
+	 */
+	@Override
+	protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight)
+	{
+		super.onSizeChanged(width, height, oldWidth, oldHeight);
+		
+		drawGlyphs(width, height);
+	}
+	
+	/**
+	 * Draws the glyphs again if they were freed when this View was last
+	 * detached.
+	 */
+	@Override
+	protected void onAttachedToWindow()
+	{
+		super.onAttachedToWindow();
+		
+		drawGlyphs(getWidth(), getHeight());
+	}
+	
+	/**
+	 * Draws the glyph being shown, if any.
+	 */
+	@Override
+	protected void onDraw(Canvas canvas)
+	{
+		if((shown != NONE) && (glyphs[shown] != null))
+		{
+			canvas.drawBitmap(glyphs[shown], glyphLefts[shown], glyphTops[shown], bitmapPaint);
+		}
+	}
+	
+	/**
+	 * Frees the glyphs once this View is no longer shown.
+	 */
+	@Override
+	protected void onDetachedFromWindow()
+	{
+		super.onDetachedFromWindow();
+		
+		releaseGlyphs();
+	}
+	
+	/**
+	 * Switches what is shown and redraws this View if it changed. Nothing is
+	 * measured or laid out.
+	 * 
+	 * @param index The index of the glyph to show.
+	 */
+	private void show(int index)
+	{
+		if(index < displays.length - 1)
+		{
+			lastStimulus = index;
+		}
+		if(index != shown)
+		{
+			shown = index;
+			invalidate();
+		}
+	}
+	
+	/**
+	 * Draws every glyph into its own Bitmap at the largest size at which
+	 * the largest of them fills no more than MAX_FILL of the shorter side,
+	 * centered in the View.
+	 * 
+	 * @param width The View's width.
+	 * 
+	 * @param height The View's height.
+	 */
+	private void drawGlyphs(int width, int height)
+	{
+		releaseGlyphs();
+		if((width <= 0) || (height <= 0))
+		{
+			return;
+		}
+		
+		// Measure every glyph at the same size so that they keep their
+		// relative sizes once they are scaled.
+		textPaint.setTextSize(REFERENCE_TEXT_SIZE);
+		int largest = 0;
+		for(String display : displays)
+		{
+			if((display != null) && (display.length() > 0))
+			{
+				textPaint.getTextBounds(display, 0, display.length(), textBounds);
+				largest = Math.max(largest, Math.max(textBounds.width(), textBounds.height()));
+			}
+		}
+		if(largest == 0)
+		{
+			return;
+		}
+		textPaint.setTextSize(REFERENCE_TEXT_SIZE * (MAX_FILL * Math.min(width, height)) / largest);
+		
+		for(int i = 0; i < displays.length; i++)
+		{
+			String display = displays[i];
+			if((display == null) || (display.length() == 0))
+			{
+				continue;
+			}
+			
+			textPaint.getTextBounds(display, 0, display.length(), textBounds);
+			if((textBounds.width() <= 0) || (textBounds.height() <= 0))
+			{
+				continue;
+			}
+			
+			// Only the coverage is kept; the color is applied when it is
+			// drawn.
+			Bitmap glyph = Bitmap.createBitmap(textBounds.width(), textBounds.height(), Bitmap.Config.ALPHA_8);
+			new Canvas(glyph).drawText(display, -textBounds.left, -textBounds.top, textPaint);
+			
+			glyphs[i] = glyph;
+			glyphLefts[i] = (width - textBounds.width()) / 2;
+			glyphTops[i] = (height - textBounds.height()) / 2;
+		}
+	}
+	
+	/**
+	 * Recycles every glyph.
+	 */
+	private void releaseGlyphs()
+	{
+		for(int i = 0; i < glyphs.length; i++)
+		{
+			if(glyphs[i] != null)
+			{
+				glyphs[i].recycle();
+				glyphs[i] = null;
+			}
+		}
+	}
+}
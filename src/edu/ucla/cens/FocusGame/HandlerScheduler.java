@@ -0,0 +1,77 @@
+package edu.ucla.cens.FocusGame;
+
+import android.os.Handler;
+import android.os.Message;
+
+/**
+ * A Scheduler that uses the message queue of the thread that created it. Each
+ * event is sent as a Message whose "what" is the event.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class HandlerScheduler extends Handler implements Scheduler
+{
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	private final Clock clock;
+	
+	private Target target;
+	
+	/**
+	 * Creates a new Scheduler on the current thread's Looper.
+	 * 
+	 * @param clock The Clock whose time is reported with each event. It must
+	 * 				be on the same timeline as SystemClock.uptimeMillis().
+	 */
+	public HandlerScheduler(Clock clock)
+	{
+		this.clock = clock;
+	}
+	
+	@Override
+	public void setTarget(Target target)
+	{
+		this.target = target;
+	}
+	
+	@Override
+	public void schedule(int event, long timeNanos)
+	{
+		removeMessages(event);
+		sendMessageAtTime(obtainMessage(event), timeNanos / NANOS_PER_MILLI);
+	}
+	
+	@Override
+	public void cancel(int event)
+	{
+		removeMessages(event);
+	}
+	
+	@Override
+	public void cancelAll()
+	{
+		removeCallbacksAndMessages(null);
+	}
+	
+	/**
+	 * Messages aren't tied to the display, so dropped frames aren't seen.
+	 */
+	@Override
+	public int getDroppedFrames()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Hands the event to the Target with the time it was dispatched.
+	 */
+	@Override
+	public void handleMessage(Message msg)
+	{
+		if(target != null)
+		{
+			target.onEvent(msg.what, clock.nanoTime());
+		}
+	}
+}
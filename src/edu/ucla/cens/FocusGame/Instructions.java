@@ -15,7 +15,8 @@ public class Instructions extends Activity
 	private static final String TAG = "FocusGame.Instructions";
 	
 	/**
-	 * Creates the content view and displays it.
+	 * Creates the content view and displays it. While the user reads it, the
+	 * images for the image game are decoded in the background.
 	 */
 	@Override
 	public void onCreate(Bundle savedInstance)
@@ -24,5 +25,7 @@ public class Instructions extends Activity
 		
 		super.onCreate(savedInstance);
 		setContentView(R.layout.instructions);
+		
+		StimulusLoader.prewarm(this);
 	}
 }
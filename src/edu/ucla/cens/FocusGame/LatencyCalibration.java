@@ -0,0 +1,334 @@
+package edu.ucla.cens.FocusGame;
+
+import java.util.Arrays;
+
+/**
+ * Estimates how much of every response time is the device rather than the
+ * player: the time from a frame being started to its reaching the screen
+ * plus the time from a finger landing to the touch being stamped.
+ * 
+ * The player taps along with a square that flashes at a steady beat. Once
+ * the beat is learned, people tap in time with what they see rather than
+ * reacting to it, so each tap's time minus the time its flash's frame was
+ * started is the device's latency plus the player's own asynchrony. The
+ * first few beats, while the beat is being learned, are left out, as are
+ * taps more than a third of a beat from any flash and any tap after the
+ * first for the same flash.
+ * 
+ * The latency is the median of the remaining asynchronies, which isn't
+ * thrown off by the odd late tap, and its spread is their standard
+ * deviation.
+ * 
+ * The player's asynchrony is not small. People usually tap ahead of a beat,
+ * typically by tens of milliseconds, and by how much varies a lot from one
+ * person to the next. So the estimate is biased low by however far ahead the
+ * person who calibrated tapped, and it would differ if someone else did it.
+ * It is a lower bound on the device's latency, suited to lining devices up
+ * with each other more than to recovering true reaction times. An estimate
+ * that isn't positive can only be anticipation, and is rejected.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class LatencyCalibration
+{
+	// The default procedure: a flash every 750 milliseconds, the first 4 of
+	// which are practice, for 40 flashes in all.
+	public static final long DEFAULT_PERIOD_MILLIS = 750;
+	public static final int DEFAULT_NUM_PRACTICE_BEATS = 4;
+	public static final int DEFAULT_NUM_BEATS = 40;
+	
+	// The fewest taps that an estimate may be made from.
+	public static final int MIN_SAMPLES = 20;
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	// Marks a beat that wasn't tapped or the lack of a held tap.
+	private static final long NONE = Long.MIN_VALUE;
+	
+	/**
+	 * A device's estimated latency.
+	 * 
+	 * @author John Jenkins
+	 * @version 1.0
+	 */
+	public static class Estimate
+	{
+		private final double latencyMillis;
+		private final double standardDeviationMillis;
+		private final int numSamples;
+		
+		/**
+		 * Creates an estimate.
+		 * 
+		 * @param latencyMillis The latency in milliseconds.
+		 * 
+		 * @param standardDeviationMillis Its spread in milliseconds.
+		 * 
+		 * @param numSamples The number of taps it was estimated from.
+		 */
+		public Estimate(double latencyMillis, double standardDeviationMillis, int numSamples)
+		{
+			this.latencyMillis = latencyMillis;
+			this.standardDeviationMillis = standardDeviationMillis;
+			this.numSamples = numSamples;
+		}
+		
+		/**
+		 * Returns the latency that is subtracted from response times.
+		 * 
+		 * @return The latency in milliseconds.
+		 */
+		public double getLatencyMillis()
+		{
+			return latencyMillis;
+		}
+		
+		/**
+		 * Returns the standard deviation of the taps' asynchronies.
+		 * 
+		 * @return The spread in milliseconds.
+		 */
+		public double getStandardDeviationMillis()
+		{
+			return standardDeviationMillis;
+		}
+		
+		/**
+		 * Returns the number of taps the latency was estimated from.
+		 * 
+		 * @return The number of taps.
+		 */
+		public int getNumSamples()
+		{
+			return numSamples;
+		}
+	}
+	
+	private final long periodNanos;
+	private final long limitNanos;
+	private final int numPracticeBeats;
+	
+	// When each flash's frame was started.
+	private final long[] beats;
+	private int numBeats;
+	
+	// Each beat's asynchrony or NONE if it wasn't tapped.
+	private final long[] asynchronies;
+	
+	// A tap for the flash that is due next or NONE.
+	private long pendingTapNanos;
+	
+	/**
+	 * Creates a calibration with the default procedure.
+	 */
+	public LatencyCalibration()
+	{
+		this(DEFAULT_PERIOD_MILLIS, DEFAULT_NUM_PRACTICE_BEATS, DEFAULT_NUM_BEATS);
+	}
+	
+	/**
+	 * Creates a calibration.
+	 * 
+	 * @param periodMillis The time between flashes.
+	 * 
+	 * @param numPracticeBeats The number of flashes at the start that are
+	 * 						   left out.
+	 * 
+	 * @param maxBeats The most flashes there will be.
+	 */
+	public LatencyCalibration(long periodMillis, int numPracticeBeats, int maxBeats)
+	{
+		periodNanos = periodMillis * NANOS_PER_MILLI;
+		limitNanos = periodNanos / 3;
+		this.numPracticeBeats = numPracticeBeats;
+		
+		beats = new long[maxBeats];
+		asynchronies = new long[maxBeats];
+		numBeats = 0;
+		pendingTapNanos = NONE;
+	}
+	
+	/**
+	 * Returns the time between flashes.
+	 * 
+	 * @return The period in milliseconds.
+	 */
+	public long getPeriodMillis()
+	{
+		return periodNanos / NANOS_PER_MILLI;
+	}
+	
+	/**
+	 * Returns whether or not every flash has been shown.
+	 * 
+	 * @return Whether or not the procedure is over.
+	 */
+	public boolean isComplete()
+	{
+		return numBeats == beats.length;
+	}
+	
+	/**
+	 * Records a flash. Those past the most there may be are ignored.
+	 * 
+	 * @param onsetNanos When the flash's frame was started.
+	 */
+	public void addBeat(long onsetNanos)
+	{
+		if(numBeats == beats.length)
+		{
+			return;
+		}
+		
+		beats[numBeats] = onsetNanos;
+		asynchronies[numBeats] = NONE;
+		if(pendingTapNanos != NONE)
+		{
+			long asynchrony = pendingTapNanos - onsetNanos;
+			if((numBeats >= numPracticeBeats) && (Math.abs(asynchrony) <= limitNanos))
+			{
+				asynchronies[numBeats] = asynchrony;
+			}
+			pendingTapNanos = NONE;
+		}
+		numBeats++;
+	}
+	
+	/**
+	 * Records a tap, matching it to the nearest flash. A tap that comes just
+	 * before a flash may be handled before the flash is, so one that is
+	 * nearest to when the next flash is due is held until it is shown.
+	 * 
+	 * @param tapNanos When the tap happened.
+	 * 
+	 * @return Whether or not it was matched to a flash.
+	 */
+	public boolean addTap(long tapNanos)
+	{
+		if(numBeats == 0)
+		{
+			return false;
+		}
+		
+		if((numBeats < beats.length) && (Math.abs(tapNanos - (beats[numBeats - 1] + periodNanos)) <= limitNanos))
+		{
+			if(pendingTapNanos != NONE)
+			{
+				return false;
+			}
+			pendingTapNanos = tapNanos;
+			return true;
+		}
+		
+		for(int i = numBeats - 1; i >= numPracticeBeats; i--)
+		{
+			long asynchrony = tapNanos - beats[i];
+			if(asynchrony > limitNanos)
+			{
+				return false;
+			}
+			if(asynchrony >= -limitNanos)
+			{
+				if(asynchronies[i] != NONE)
+				{
+					return false;
+				}
+				asynchronies[i] = asynchrony;
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Returns the number of taps that will be used.
+	 * 
+	 * @return The number of taps.
+	 */
+	public int getNumSamples()
+	{
+		int numSamples = 0;
+		for(int i = 0; i < numBeats; i++)
+		{
+			if(asynchronies[i] != NONE)
+			{
+				numSamples++;
+			}
+		}
+		return numSamples;
+	}
+	
+	/**
+	 * Estimates the latency from the taps so far.
+	 * 
+	 * @return The estimate or null if there are fewer than MIN_SAMPLES taps
+	 * 		   or the latency isn't positive, i.e. the taps were ahead of the
+	 * 		   flashes by more than the device's latency.
+	 */
+	public Estimate estimate()
+	{
+		int numSamples = getNumSamples();
+		if(numSamples < MIN_SAMPLES)
+		{
+			return null;
+		}
+		
+		long[] samples = new long[numSamples];
+		double sum = 0.0;
+		int count = 0;
+		for(int i = 0; i < numBeats; i++)
+		{
+			if(asynchronies[i] != NONE)
+			{
+				samples[count++] = asynchronies[i];
+				sum += asynchronies[i];
+			}
+		}
+		Arrays.sort(samples);
+		
+		double median = ((numSamples % 2) == 1) ? samples[numSamples / 2] : ((samples[(numSamples / 2) - 1] + samples[numSamples / 2]) / 2.0);
+		if(median <= 0.0)
+		{
+			// Subtracting it would make every response time longer.
+			return null;
+		}
+		
+		double mean = sum / numSamples;
+		double squares = 0.0;
+		for(int i = 0; i < numSamples; i++)
+		{
+			squares += (samples[i] - mean) * (samples[i] - mean);
+		}
+		double standardDeviation = Math.sqrt(squares / (numSamples - 1));
+		
+		return new Estimate(median / NANOS_PER_MILLI, standardDeviation / NANOS_PER_MILLI, numSamples);
+	}
+	
+	/**
+	 * Returns a copy of a log with the latency taken off of every response
+	 * that was tapped. A response is never moved before its onset, and a
+	 * latency that isn't positive leaves every response as it was.
+	 * 
+	 * @param trials The log.
+	 * 
+	 * @param latencyMillis The latency.
+	 * 
+	 * @return The corrected copy.
+	 */
+	public static TrialLog correct(TrialLog trials, double latencyMillis)
+	{
+		long latencyNanos = Math.max(0L, Math.round(latencyMillis * NANOS_PER_MILLI));
+		
+		TrialLog corrected = new TrialLog(trials);
+		for(int i = 0; i < corrected.size(); i++)
+		{
+			if(corrected.isResponded(i))
+			{
+				long responseNanos = Math.max(corrected.getOnsetNanos(i), corrected.getResponseNanos(i) - latencyNanos);
+				corrected.respond(i, responseNanos, (corrected.getFlags(i) & TrialLog.FLAG_OFF_STIMULUS) == 0);
+			}
+		}
+		return corrected;
+	}
+}
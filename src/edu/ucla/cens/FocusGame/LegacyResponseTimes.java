@@ -0,0 +1,252 @@
+package edu.ucla.cens.FocusGame;
+
+import java.util.List;
+
+/**
+ * Reads the original "response_times" format back into a TrialLog so that it
+ * may be scored by the same ScoreAggregator as a live game. The format is a
+ * JSON array with one object per trial whose only key is the stimulus' name
+ * and whose value is the time in milliseconds between it being shown and it
+ * being tapped or, if it wasn't, the next stimulus being shown.
+ * 
+ * Whether or not a trial was tapped isn't in the format, so it is inferred:
+ * a time within MISS_TOLERANCE_MILLIS of the time until the next stimulus,
+ * which is set by the trial's round, is a miss. The onsets are rebuilt from
+ * the schedule in TrialEngine.
+ * 
+ * The parser works directly on the text without building any objects, since
+ * it is run over exports with many thousands of sessions.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public final class LegacyResponseTimes
+{
+	// How much sooner than scheduled the next stimulus may have been shown.
+	public static final long MISS_TOLERANCE_MILLIS = 50;
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	/**
+	 * Only static methods.
+	 */
+	private LegacyResponseTimes()
+	{
+		// Only static methods.
+	}
+	
+	/**
+	 * Finds the set that a session was played with from the name of its
+	 * first stimulus.
+	 * 
+	 * @param json The text that contains the array.
+	 * 
+	 * @param start The index of the array's opening bracket or any
+	 * 				whitespace before it.
+	 * 
+	 * @param end The index after the array's closing bracket.
+	 * 
+	 * @param sets The sets to choose from.
+	 * 
+	 * @return The first set that contains the first stimulus or null if
+	 * 		   there are no trials or no set contains it.
+	 * 
+	 * @throws IllegalArgumentException The text isn't in the format.
+	 */
+	public static StimulusSet findSet(CharSequence json, int start, int end, List<StimulusSet> sets)
+	{
+		int i = expect(json, skipWhitespace(json, start, end), end, '[');
+		i = skipWhitespace(json, i, end);
+		if((i < end) && (json.charAt(i) == ']'))
+		{
+			return null;
+		}
+		
+		i = expect(json, i, end, '{');
+		i = expect(json, skipWhitespace(json, i, end), end, '"');
+		int nameEnd = findQuote(json, i, end);
+		
+		for(StimulusSet set : sets)
+		{
+			if(set.indexOf(json, i, nameEnd) != -1)
+			{
+				return set;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads an array into a log, replacing whatever was in it.
+	 * 
+	 * @param json The text that contains the array.
+	 * 
+	 * @param start The index of the array's opening bracket or any
+	 * 				whitespace before it.
+	 * 
+	 * @param end The index after the array's closing bracket.
+	 * 
+	 * @param set The set that the session was played with.
+	 * 
+	 * @param log The log to read into.
+	 * 
+	 * @throws IllegalArgumentException The text isn't in the format or names
+	 * 									a stimulus that isn't in the set.
+	 */
+	public static void read(CharSequence json, int start, int end, StimulusSet set, TrialLog log)
+	{
+		log.clear();
+		
+		long onsetMillis = TrialEngine.FIRST_DELAY;
+		int i = expect(json, skipWhitespace(json, start, end), end, '[');
+		i = skipWhitespace(json, i, end);
+		if((i < end) && (json.charAt(i) == ']'))
+		{
+			return;
+		}
+		
+		while(true)
+		{
+			i = expect(json, skipWhitespace(json, i, end), end, '{');
+			i = expect(json, skipWhitespace(json, i, end), end, '"');
+			int nameEnd = findQuote(json, i, end);
+			int stimulus = set.indexOf(json, i, nameEnd);
+			if(stimulus == -1)
+			{
+				throw new IllegalArgumentException("Unknown stimulus '" + json.subSequence(i, nameEnd) + "' for the set '" + set.getName() + "'.");
+			}
+			i = expect(json, skipWhitespace(json, nameEnd + 1, end), end, ':');
+			
+			// The number.
+			i = skipWhitespace(json, i, end);
+			boolean negative = false;
+			if((i < end) && (json.charAt(i) == '-'))
+			{
+				negative = true;
+				i++;
+			}
+			int digits = i;
+			long millis = 0;
+			while((i < end) && (json.charAt(i) >= '0') && (json.charAt(i) <= '9'))
+			{
+				millis = (millis * 10) + (json.charAt(i) - '0');
+				i++;
+			}
+			if(i == digits)
+			{
+				throw new IllegalArgumentException("Expected a number at " + digits + ".");
+			}
+			if(negative)
+			{
+				millis = -millis;
+			}
+			
+			i = expect(json, skipWhitespace(json, i, end), end, '}');
+			
+			int index = log.size();
+			int round = Math.min(index / TrialEngine.NUM_ITEMS_PER_ROUND, TrialEngine.DELAYS_MILLIS.length - 1);
+			long soaMillis = TrialEngine.DELAYS_MILLIS[round];
+			
+			long onsetNanos = onsetMillis * NANOS_PER_MILLI;
+			int trial = log.begin(stimulus, set.isNoGo(stimulus), onsetNanos, round);
+			if(millis < (soaMillis - MISS_TOLERANCE_MILLIS))
+			{
+				log.respond(trial, onsetNanos + (millis * NANOS_PER_MILLI), true);
+			}
+			else
+			{
+				log.close(trial, onsetNanos + (millis * NANOS_PER_MILLI));
+			}
+			onsetMillis += soaMillis;
+			
+			i = skipWhitespace(json, i, end);
+			if(i >= end)
+			{
+				throw new IllegalArgumentException("Unterminated array.");
+			}
+			else if(json.charAt(i) == ']')
+			{
+				return;
+			}
+			i = expect(json, i, end, ',');
+		}
+	}
+	
+	/**
+	 * Returns the index of the first character at or after some index that
+	 * isn't whitespace.
+	 * 
+	 * @param json The text.
+	 * 
+	 * @param i The index to start at.
+	 * 
+	 * @param end The index to stop at.
+	 * 
+	 * @return The index of the character or end.
+	 */
+	private static int skipWhitespace(CharSequence json, int i, int end)
+	{
+		while((i < end) && (json.charAt(i) <= ' '))
+		{
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * Checks that a character is where it is expected.
+	 * 
+	 * @param json The text.
+	 * 
+	 * @param i The index of the character.
+	 * 
+	 * @param end The end of the text.
+	 * 
+	 * @param c The expected character.
+	 * 
+	 * @return The index after the character.
+	 * 
+	 * @throws IllegalArgumentException The character isn't there.
+	 */
+	private static int expect(CharSequence json, int i, int end, char c)
+	{
+		if((i >= end) || (json.charAt(i) != c))
+		{
+			throw new IllegalArgumentException("Expected '" + c + "' at " + i + ".");
+		}
+		return i + 1;
+	}
+	
+	/**
+	 * Finds the quote that ends a name. Names never need to be escaped, so an
+	 * escape is treated as malformed.
+	 * 
+	 * @param json The text.
+	 * 
+	 * @param i The index after the opening quote.
+	 * 
+	 * @param end The end of the text.
+	 * 
+	 * @return The index of the closing quote.
+	 * 
+	 * @throws IllegalArgumentException There is no closing quote or there is
+	 * 									an escape.
+	 */
+	private static int findQuote(CharSequence json, int i, int end)
+	{
+		while(i < end)
+		{
+			char c = json.charAt(i);
+			if(c == '"')
+			{
+				return i;
+			}
+			else if(c == '\\')
+			{
+				throw new IllegalArgumentException("Unsupported escape at " + i + ".");
+			}
+			i++;
+		}
+		throw new IllegalArgumentException("Unterminated name.");
+	}
+}
@@ -0,0 +1,456 @@
+package edu.ucla.cens.FocusGame;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Looper;
+import android.util.Printer;
+import android.view.Choreographer;
+
+/**
+ * Watches the UI thread while a game is played and keeps what it sees in a
+ * PerformanceStats.
+ * 
+ * By default, the UI thread is timed from the display's frames, which
+ * allocates nothing: a frame callback is posted for every frame, and how
+ * late each one starts, past one frame after the one before it, is recorded
+ * as its dispatch. A frame that is late enough to be a stall is passed on to
+ * the Listener, so that the trials between it and the frame before it may
+ * be flagged. This needs Jelly Bean (API 16) or later; before that, nothing
+ * is timed unless dispatches are logged.
+ * 
+ * For stall diagnostics, this may instead be made the main Looper's message
+ * logging Printer, which it calls before and after dispatching each
+ * message, so every message is timed on its own. The Looper builds several
+ * Strings for each message it logs, hundreds a second during a game, so
+ * this adds garbage to the UI thread and inflates the GC count that is
+ * being measured. Any Printer that was installed before is passed every
+ * line while this is installed and is put back once this stops.
+ * 
+ * Garbage collections are counted with an object that is only reachable
+ * through its finalizer, which replaces itself each time it is collected.
+ * On Marshmallow (API 23) and later, the runtime's own GC count and time
+ * are used instead. Dropped frames come from the Scheduler.
+ * 
+ * A monitor may be stopped and started again for each of several games.
+ * Everything but the GC count is only touched on the UI thread.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class LooperMonitor implements Printer
+{
+	/**
+	 * Is told about each stall on the UI thread.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called on the UI thread once a stall has finished.
+		 * 
+		 * @param startNanos When the stalled dispatch started.
+		 * 
+		 * @param endNanos When it finished.
+		 */
+		public void onStall(long startNanos, long endNanos);
+	}
+	
+	// The runtime's statistics on Marshmallow and later.
+	private static final String STAT_GC_COUNT = "art.gc.gc-count";
+	private static final String STAT_GC_TIME = "art.gc.gc-time";
+	
+	private final Clock clock;
+	private final Scheduler scheduler;
+	private final PerformanceStats stats;
+	private final Listener listener;
+	private final boolean logDispatches;
+	private final long frameNanos;
+	
+	// Times the frames, if they are used and this platform has them.
+	private final FrameTimer frameTimer;
+	
+	// The Printer that was installed before this one or null.
+	private Printer previousPrinter;
+	
+	// The GCs seen by the sentinel, which is finalized on another thread.
+	private final AtomicInteger sentinelGcs;
+	private volatile boolean running;
+	
+	// Incremented each time this is started so that a sentinel left over
+	// from an earlier start doesn't keep counting alongside the new one.
+	private volatile int generation;
+	
+	// When the current dispatch started or 0 if there isn't one.
+	private long dispatchStartNanos;
+	
+	// What the runtime's and the Scheduler's counters were when this started.
+	private long gcCountAtStart;
+	private long gcMillisAtStart;
+	private int droppedFramesAtStart;
+	
+	/**
+	 * An object that counts a GC when it is finalized and replaces itself.
+	 */
+	private static class GcSentinel
+	{
+		private final LooperMonitor monitor;
+		private final int generation;
+		
+		/**
+		 * Creates a sentinel that is only reachable through its finalizer.
+		 * 
+		 * @param monitor The monitor to count GCs for.
+		 */
+		GcSentinel(LooperMonitor monitor)
+		{
+			this.monitor = monitor;
+			generation = monitor.generation;
+		}
+		
+		/**
+		 * Counts a GC and, if the monitor is still running the same start,
+		 * leaves another sentinel for the next one.
+		 */
+		@Override
+		protected void finalize() throws Throwable
+		{
+			try
+			{
+				if(monitor.running && (generation == monitor.generation))
+				{
+					monitor.sentinelGcs.incrementAndGet();
+					new GcSentinel(monitor);
+				}
+			}
+			finally
+			{
+				super.finalize();
+			}
+		}
+	}
+	
+	/**
+	 * Times the display's frames and records how late each one is.
+	 */
+	@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+	private class FrameTimer implements Choreographer.FrameCallback
+	{
+		private final Choreographer choreographer;
+		
+		// The time of the last frame or 0 if there hasn't been one since
+		// this started.
+		private long lastFrameNanos;
+		
+		/**
+		 * Creates a timer on the current thread, which must be the UI thread.
+		 */
+		FrameTimer()
+		{
+			choreographer = Choreographer.getInstance();
+		}
+		
+		/**
+		 * Starts timing from the next frame.
+		 */
+		void start()
+		{
+			lastFrameNanos = 0;
+			choreographer.postFrameCallback(this);
+		}
+		
+		/**
+		 * Stops timing.
+		 */
+		void stop()
+		{
+			choreographer.removeFrameCallback(this);
+		}
+		
+		/**
+		 * Records how late this frame is and waits for the next one.
+		 */
+		@Override
+		public void doFrame(long frameTimeNanos)
+		{
+			if(! running)
+			{
+				return;
+			}
+			
+			if(lastFrameNanos != 0)
+			{
+				long dueNanos = Math.min(lastFrameNanos + frameNanos, frameTimeNanos);
+				if(stats.recordDispatch(dueNanos, frameTimeNanos) && (listener != null))
+				{
+					listener.onStall(lastFrameNanos, frameTimeNanos);
+				}
+			}
+			lastFrameNanos = frameTimeNanos;
+			
+			choreographer.postFrameCallback(this);
+		}
+	}
+	
+	/**
+	 * Creates a monitor on the UI thread. Nothing is watched until start()
+	 * is called.
+	 * 
+	 * @param clock The source of time, which must be on the same timeline as
+	 * 				the trials. Frame times are on Clock.SYSTEM's.
+	 * 
+	 * @param scheduler The Scheduler whose dropped frames are counted.
+	 * 
+	 * @param refreshRate The display's refresh rate in frames per second.
+	 * 
+	 * @param stats Where to keep what is seen.
+	 * 
+	 * @param listener What to tell about each stall or null.
+	 * 
+	 * @param logDispatches Whether to time each message with a Printer,
+	 * 						for stall diagnostics, rather than the frames.
+	 */
+	public LooperMonitor(Clock clock, Scheduler scheduler, float refreshRate, PerformanceStats stats, Listener listener, boolean logDispatches)
+	{
+		this.clock = clock;
+		this.scheduler = scheduler;
+		this.stats = stats;
+		this.listener = listener;
+		this.logDispatches = logDispatches;
+		
+		if((refreshRate < 1.0f) || Float.isNaN(refreshRate))
+		{
+			refreshRate = 60.0f;
+		}
+		frameNanos = (long) (1000000000.0 / refreshRate);
+		
+		if((! logDispatches) && (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN))
+		{
+			frameTimer = new FrameTimer();
+		}
+		else
+		{
+			frameTimer = null;
+		}
+		
+		sentinelGcs = new AtomicInteger();
+	}
+	
+	/**
+	 * Resets the statistics and starts watching the main Looper. This must
+	 * be called on the UI thread.
+	 */
+	public void start()
+	{
+		stats.reset();
+		dispatchStartNanos = 0;
+		
+		sentinelGcs.set(0);
+		if(hasRuntimeStats())
+		{
+			gcCountAtStart = getRuntimeStat(STAT_GC_COUNT);
+			gcMillisAtStart = getRuntimeStat(STAT_GC_TIME);
+		}
+		droppedFramesAtStart = scheduler.getDroppedFrames();
+		
+		generation++;
+		running = true;
+		new GcSentinel(this);
+		
+		if(logDispatches)
+		{
+			Looper looper = Looper.getMainLooper();
+			previousPrinter = getMessageLogging(looper);
+			if(previousPrinter == this)
+			{
+				previousPrinter = null;
+			}
+			looper.setMessageLogging(this);
+		}
+		else if(frameTimer != null)
+		{
+			frameTimer.start();
+		}
+	}
+	
+	/**
+	 * Stops watching, bringing the statistics up to date first. This must be
+	 * called on the UI thread. If this isn't running, this does nothing.
+	 */
+	public void stop()
+	{
+		if(! running)
+		{
+			return;
+		}
+		
+		update();
+		running = false;
+		
+		if(logDispatches)
+		{
+			// If something else replaced this since, it is left in place.
+			Looper looper = Looper.getMainLooper();
+			Printer current = getMessageLogging(looper);
+			if((current == this) || (current == null))
+			{
+				looper.setMessageLogging(previousPrinter);
+			}
+			previousPrinter = null;
+		}
+		else if(frameTimer != null)
+		{
+			frameTimer.stop();
+		}
+	}
+	
+	/**
+	 * Brings the GC and dropped frame counts in the statistics up to date.
+	 * This must be called on the UI thread. If this isn't running, this does
+	 * nothing.
+	 */
+	public void update()
+	{
+		if(! running)
+		{
+			return;
+		}
+		
+		if(hasRuntimeStats())
+		{
+			long gcCount = getRuntimeStat(STAT_GC_COUNT);
+			long gcMillis = getRuntimeStat(STAT_GC_TIME);
+			if((gcCountAtStart >= 0) && (gcMillisAtStart >= 0) && (gcCount >= 0) && (gcMillis >= 0))
+			{
+				stats.setGcs((int) (gcCount - gcCountAtStart), gcMillis - gcMillisAtStart);
+			}
+			else
+			{
+				stats.setGcs(sentinelGcs.get(), -1);
+			}
+		}
+		else
+		{
+			stats.setGcs(sentinelGcs.get(), -1);
+		}
+		stats.setDroppedFrames(scheduler.getDroppedFrames() - droppedFramesAtStart);
+	}
+	
+	/**
+	 * Returns the statistics that are being kept.
+	 * 
+	 * @return The PerformanceStats.
+	 */
+	public PerformanceStats getStats()
+	{
+		return stats;
+	}
+	
+	/**
+	 * Times each dispatch from the Looper's ">>>>> Dispatching" line to its
+	 * "<<<<< Finished" line and passes the line on to the Printer that was
+	 * installed before this, if any.
+	 */
+	@Override
+	public void println(String line)
+	{
+		if(previousPrinter != null)
+		{
+			previousPrinter.println(line);
+		}
+		
+		if(line.length() == 0)
+		{
+			return;
+		}
+		
+		char first = line.charAt(0);
+		if(first == '>')
+		{
+			dispatchStartNanos = clock.nanoTime();
+		}
+		else if((first == '<') && (dispatchStartNanos != 0))
+		{
+			long startNanos = dispatchStartNanos;
+			long endNanos = clock.nanoTime();
+			dispatchStartNanos = 0;
+			
+			if(stats.recordDispatch(startNanos, endNanos) && (listener != null))
+			{
+				listener.onStall(startNanos, endNanos);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the Printer that a Looper is logging its messages to. The
+	 * Looper has no way to ask, so its field is read directly.
+	 * 
+	 * @param looper The Looper.
+	 * 
+	 * @return Its Printer or null if it has none or it couldn't be read, in
+	 * 		   which case a Printer installed before this one is lost.
+	 */
+	private static Printer getMessageLogging(Looper looper)
+	{
+		try
+		{
+			Field field = Looper.class.getDeclaredField("mLogging");
+			field.setAccessible(true);
+			return (Printer) field.get(looper);
+		}
+		catch(NoSuchFieldException e)
+		{
+			return null;
+		}
+		catch(IllegalAccessException e)
+		{
+			return null;
+		}
+		catch(SecurityException e)
+		{
+			return null;
+		}
+		catch(ClassCastException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns whether or not the runtime reports its own GC statistics.
+	 * 
+	 * @return Whether or not getRuntimeStat() may be used.
+	 */
+	private static boolean hasRuntimeStats()
+	{
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+	}
+	
+	/**
+	 * Returns one of the runtime's statistics as a number.
+	 * 
+	 * @param name The statistic's name.
+	 * 
+	 * @return Its value or -1 if it isn't available.
+	 */
+	private static long getRuntimeStat(String name)
+	{
+		String value = Debug.getRuntimeStat(name);
+		if(value == null)
+		{
+			return -1;
+		}
+		
+		try
+		{
+			return Long.parseLong(value);
+		}
+		catch(NumberFormatException e)
+		{
+			return -1;
+		}
+	}
+}
@@ -12,8 +12,8 @@ import android.view.View.OnClickListener;
 import android.widget.Button;
 
 /**
- * The main Activity of the program, it instructs the user to begin the game
- * or to view the instructions.
+ * The main Activity of the program, it instructs the user to begin the game,
+ * to view the instructions, or to calibrate the device's touch latency.
  * 
  * @author John Jenkins
  * @version 1.0
@@ -37,6 +37,12 @@ public class Main extends Activity implements OnClickListener
         
         ((Button) findViewById(R.id.begin_button)).setOnClickListener(this);
         ((Button) findViewById(R.id.instructions_button)).setOnClickListener(this);
+        ((Button) findViewById(R.id.calibrate_button)).setOnClickListener(this);
+        
+        // Save any game that was cut short, then send anything that is still
+        // waiting from earlier games.
+        SessionStore.getInstance(this).recoverAsync(TrialJournal.getDirectory(this), StimulusLoader.getInstance(this));
+        UploadService.start(this);
     }
     
     /**
@@ -67,12 +73,20 @@ public class Main extends Activity implements OnClickListener
     				   }
     			   });
     		builder.create().show();
+    		
+    		// Get the images ready in case they choose them.
+    		StimulusLoader.prewarm(this);
     	}
     	else if(v.getId() == R.id.instructions_button)
     	{
     		Intent instructions = new Intent(this, Instructions.class);
     		startActivity(instructions);
     	}
+    	else if(v.getId() == R.id.calibrate_button)
+    	{
+    		Intent calibration = new Intent(this, Calibration.class);
+    		startActivity(calibration);
+    	}
     }
     
     /**
@@ -0,0 +1,216 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * Estimates a single quantile of a stream of values in constant time and
+ * memory using the P-Square algorithm of Jain and Chlamtac, "The P-Square
+ * Algorithm for Dynamic Calculation of Quantiles and Histograms Without
+ * Storing Observations", CACM 28(10), 1985.
+ * 
+ * Until five values have been seen the estimate is the exact quantile of
+ * those values.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class P2Quantile
+{
+	private static final int NUM_MARKERS = 5;
+	
+	private final double quantile;
+	
+	// Marker heights, actual positions, desired positions, and the increments
+	// of the desired positions.
+	private final double[] heights;
+	private final double[] positions;
+	private final double[] desired;
+	private final double[] increments;
+	
+	private int count;
+	
+	/**
+	 * Creates a new estimator.
+	 * 
+	 * @param quantile The quantile to estimate, between 0 and 1 exclusive.
+	 */
+	public P2Quantile(double quantile)
+	{
+		if((quantile <= 0.0) || (quantile >= 1.0))
+		{
+			throw new IllegalArgumentException("The quantile must be between 0 and 1: " + quantile);
+		}
+		
+		this.quantile = quantile;
+		
+		heights = new double[NUM_MARKERS];
+		positions = new double[NUM_MARKERS];
+		desired = new double[NUM_MARKERS];
+		increments = new double[NUM_MARKERS];
+		
+		reset();
+	}
+	
+	/**
+	 * Forgets every value that has been added.
+	 */
+	public void reset()
+	{
+		count = 0;
+		
+		for(int i = 0; i < NUM_MARKERS; i++)
+		{
+			positions[i] = i + 1;
+		}
+		
+		desired[0] = 1;
+		desired[1] = 1 + (2 * quantile);
+		desired[2] = 1 + (4 * quantile);
+		desired[3] = 3 + (2 * quantile);
+		desired[4] = 5;
+		
+		increments[0] = 0;
+		increments[1] = quantile / 2;
+		increments[2] = quantile;
+		increments[3] = (1 + quantile) / 2;
+		increments[4] = 1;
+	}
+	
+	/**
+	 * Returns the quantile that is being estimated.
+	 * 
+	 * @return The quantile, between 0 and 1.
+	 */
+	public double getQuantile()
+	{
+		return quantile;
+	}
+	
+	/**
+	 * Returns the number of values that have been added.
+	 * 
+	 * @return The number of values.
+	 */
+	public int getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * Adds a value to the stream.
+	 * 
+	 * @param value The value to add.
+	 */
+	public void add(double value)
+	{
+		if(count < NUM_MARKERS)
+		{
+			// Keep the first few values sorted in the heights.
+			int i = count;
+			while((i > 0) && (heights[i - 1] > value))
+			{
+				heights[i] = heights[i - 1];
+				i--;
+			}
+			heights[i] = value;
+			count++;
+			return;
+		}
+		
+		int cell;
+		if(value < heights[0])
+		{
+			heights[0] = value;
+			cell = 0;
+		}
+		else if(value >= heights[4])
+		{
+			heights[4] = value;
+			cell = 3;
+		}
+		else
+		{
+			cell = 0;
+			while(value >= heights[cell + 1])
+			{
+				cell++;
+			}
+		}
+		
+		for(int i = cell + 1; i < NUM_MARKERS; i++)
+		{
+			positions[i]++;
+		}
+		for(int i = 0; i < NUM_MARKERS; i++)
+		{
+			desired[i] += increments[i];
+		}
+		
+		for(int i = 1; i < (NUM_MARKERS - 1); i++)
+		{
+			double d = desired[i] - positions[i];
+			if(((d >= 1) && ((positions[i + 1] - positions[i]) > 1)) ||
+			   ((d <= -1) && ((positions[i - 1] - positions[i]) < -1)))
+			{
+				int sign = (d >= 0) ? 1 : -1;
+				
+				double height = parabolic(i, sign);
+				if((heights[i - 1] < height) && (height < heights[i + 1]))
+				{
+					heights[i] = height;
+				}
+				else
+				{
+					heights[i] = linear(i, sign);
+				}
+				positions[i] += sign;
+			}
+		}
+		
+		count++;
+	}
+	
+	/**
+	 * Returns the current estimate of the quantile.
+	 * 
+	 * @return The estimate or NaN if no values have been added.
+	 */
+	public double getValue()
+	{
+		if(count == 0)
+		{
+			return Double.NaN;
+		}
+		else if(count <= NUM_MARKERS)
+		{
+			// The heights are exactly the sorted values, so interpolate.
+			double rank = quantile * (count - 1);
+			int lower = (int) Math.floor(rank);
+			int upper = Math.min(lower + 1, count - 1);
+			return heights[lower] + ((rank - lower) * (heights[upper] - heights[lower]));
+		}
+		
+		return heights[2];
+	}
+	
+	/**
+	 * The piecewise-parabolic prediction of a marker's new height.
+	 */
+	private double parabolic(int i, int sign)
+	{
+		double n = positions[i];
+		double nPrev = positions[i - 1];
+		double nNext = positions[i + 1];
+		
+		return heights[i] + ((sign / (nNext - nPrev)) *
+			(((n - nPrev + sign) * (heights[i + 1] - heights[i]) / (nNext - n)) +
+			 ((nNext - n - sign) * (heights[i] - heights[i - 1]) / (n - nPrev))));
+	}
+	
+	/**
+	 * The linear prediction of a marker's new height, used when the parabolic
+	 * one would leave the markers out of order.
+	 */
+	private double linear(int i, int sign)
+	{
+		return heights[i] + (sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]));
+	}
+}
@@ -0,0 +1,314 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.PrintWriter;
+
+/**
+ * How busy the UI thread was during a game. Response times are only as good
+ * as the UI thread's ability to show each stimulus and take each touch when
+ * it happens, so this keeps:
+ * 
+ * Dispatches - How long each message on the UI thread's Looper took or,
+ * 				when the LooperMonitor times frames, how late each frame
+ * 				was, in a TimingHistogram, and how many of them ran long
+ * 				enough to be stalls, how long they ran in all, and the
+ * 				longest.
+ * 
+ * Stalled trials - How many trials were shown or awaiting a response during
+ * 					a stall. Each one is also flagged in the TrialLog.
+ * 
+ * GCs - How many garbage collections were seen and, where the platform
+ * 		 says, how long they took.
+ * 
+ * Dropped frames - How many display frames the Scheduler dropped.
+ * 
+ * Like the TimingStats, the summary is meant to be sent along with the
+ * results so that sessions that were measured poorly may be flagged or
+ * thrown out.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class PerformanceStats
+{
+	// A dispatch that takes longer than a frame at 60 Hz.
+	public static final long DEFAULT_STALL_NANOS = 16L * 1000000L;
+	
+	private static final long NANOS_PER_MICRO = 1000L;
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	private static final double MICROS_PER_MILLI = 1000.0;
+	
+	// The longest dispatch that is told apart.
+	private static final long MAX_MICROS = 60L * 1000L * 1000L;
+	
+	private final long stallNanos;
+	
+	private final TimingHistogram dispatches;
+	
+	private int numStalls;
+	private long stalledNanos;
+	private long longestDispatchNanos;
+	private int numStalledTrials;
+	
+	private int numGcs;
+	private long gcMillis;
+	
+	private int droppedFrames;
+	
+	/**
+	 * Creates a new, empty set of statistics with the default stall.
+	 */
+	public PerformanceStats()
+	{
+		this(DEFAULT_STALL_NANOS);
+	}
+	
+	/**
+	 * Creates a new, empty set of statistics.
+	 * 
+	 * @param stallNanos The shortest dispatch that counts as a stall.
+	 */
+	public PerformanceStats(long stallNanos)
+	{
+		this.stallNanos = stallNanos;
+		
+		dispatches = new TimingHistogram(MAX_MICROS);
+		
+		reset();
+	}
+	
+	/**
+	 * Removes everything that has been recorded.
+	 */
+	public void reset()
+	{
+		dispatches.reset();
+		
+		numStalls = 0;
+		stalledNanos = 0;
+		longestDispatchNanos = 0;
+		numStalledTrials = 0;
+		
+		numGcs = 0;
+		gcMillis = -1;
+		
+		droppedFrames = 0;
+	}
+	
+	/**
+	 * Records a message being dispatched on the UI thread.
+	 * 
+	 * @param startNanos When the dispatch started.
+	 * 
+	 * @param endNanos When it finished.
+	 * 
+	 * @return Whether or not it was a stall.
+	 */
+	public boolean recordDispatch(long startNanos, long endNanos)
+	{
+		long durationNanos = endNanos - startNanos;
+		dispatches.record(durationNanos / NANOS_PER_MICRO);
+		if(durationNanos > longestDispatchNanos)
+		{
+			longestDispatchNanos = durationNanos;
+		}
+		
+		if(durationNanos < stallNanos)
+		{
+			return false;
+		}
+		
+		numStalls++;
+		stalledNanos += durationNanos;
+		return true;
+	}
+	
+	/**
+	 * Records trials being flagged for overlapping a stall.
+	 * 
+	 * @param numTrials The number of trials that were newly flagged.
+	 */
+	public void recordStalledTrials(int numTrials)
+	{
+		numStalledTrials += numTrials;
+	}
+	
+	/**
+	 * Sets the garbage collections that have been seen so far.
+	 * 
+	 * @param numGcs The number of collections.
+	 * 
+	 * @param gcMillis How long they took in all or -1 if that isn't known.
+	 */
+	public void setGcs(int numGcs, long gcMillis)
+	{
+		this.numGcs = numGcs;
+		this.gcMillis = gcMillis;
+	}
+	
+	/**
+	 * Sets the number of display frames that have been dropped so far.
+	 * 
+	 * @param droppedFrames The number of frames.
+	 */
+	public void setDroppedFrames(int droppedFrames)
+	{
+		this.droppedFrames = droppedFrames;
+	}
+	
+	/**
+	 * Returns how long each dispatch took in microseconds.
+	 * 
+	 * @return The dispatch durations.
+	 */
+	public TimingHistogram getDispatches()
+	{
+		return dispatches;
+	}
+	
+	/**
+	 * Returns the number of dispatches that were stalls.
+	 * 
+	 * @return The number of stalls.
+	 */
+	public int getNumStalls()
+	{
+		return numStalls;
+	}
+	
+	/**
+	 * Returns how long the stalls took in all.
+	 * 
+	 * @return The total in nanoseconds.
+	 */
+	public long getStalledNanos()
+	{
+		return stalledNanos;
+	}
+	
+	/**
+	 * Returns how long the longest dispatch took.
+	 * 
+	 * @return The longest dispatch in nanoseconds.
+	 */
+	public long getLongestDispatchNanos()
+	{
+		return longestDispatchNanos;
+	}
+	
+	/**
+	 * Returns the number of trials that overlapped a stall.
+	 * 
+	 * @return The number of stalled trials.
+	 */
+	public int getNumStalledTrials()
+	{
+		return numStalledTrials;
+	}
+	
+	/**
+	 * Returns the number of garbage collections that were seen.
+	 * 
+	 * @return The number of collections.
+	 */
+	public int getNumGcs()
+	{
+		return numGcs;
+	}
+	
+	/**
+	 * Returns how long the garbage collections took in all.
+	 * 
+	 * @return The total in milliseconds or -1 if it isn't known.
+	 */
+	public long getGcMillis()
+	{
+		return gcMillis;
+	}
+	
+	/**
+	 * Returns the number of display frames that were dropped.
+	 * 
+	 * @return The number of frames.
+	 */
+	public int getDroppedFrames()
+	{
+		return droppedFrames;
+	}
+	
+	/**
+	 * Serializes the statistics as a JSON object whose times are in
+	 * milliseconds, e.g.
+	 * 
+	 * {"dispatch_ms":{"count":412,"mean":0.8,...},"stalls":2,
+	 *  "stalled_ms":51.3,"longest_dispatch_ms":33.1,"stalled_trials":1,
+	 *  "gcs":3,"gc_ms":12,"dropped_frames":4}
+	 * 
+	 * where "gc_ms" is null if it isn't known.
+	 * 
+	 * @return The JSON object as a String.
+	 */
+	public String toJson()
+	{
+		StringBuilder builder = new StringBuilder(256);
+		builder.append("{\"dispatch_ms\":");
+		dispatches.appendSummary(builder, MICROS_PER_MILLI);
+		builder.append(",\"stalls\":").append(numStalls);
+		builder.append(",\"stalled_ms\":").append(toMillis(stalledNanos));
+		builder.append(",\"longest_dispatch_ms\":").append(toMillis(longestDispatchNanos));
+		builder.append(",\"stalled_trials\":").append(numStalledTrials);
+		builder.append(",\"gcs\":").append(numGcs);
+		builder.append(",\"gc_ms\":").append((gcMillis < 0) ? "null" : Long.toString(gcMillis));
+		builder.append(",\"dropped_frames\":").append(droppedFrames);
+		builder.append('}');
+		return builder.toString();
+	}
+	
+	/**
+	 * Prints the statistics for a debug dump, one per line.
+	 * 
+	 * @param prefix What to start each line with.
+	 * 
+	 * @param writer Where to print them.
+	 */
+	public void dump(String prefix, PrintWriter writer)
+	{
+		writer.print(prefix);
+		writer.print("dispatches=");
+		writer.print(dispatches.getTotalCount());
+		writer.print(" longest=");
+		writer.print(toMillis(longestDispatchNanos));
+		writer.println("ms");
+		
+		writer.print(prefix);
+		writer.print("stalls=");
+		writer.print(numStalls);
+		writer.print(" stalled=");
+		writer.print(toMillis(stalledNanos));
+		writer.print("ms stalledTrials=");
+		writer.println(numStalledTrials);
+		
+		writer.print(prefix);
+		writer.print("gcs=");
+		writer.print(numGcs);
+		if(gcMillis >= 0)
+		{
+			writer.print(" gcTime=");
+			writer.print(gcMillis);
+			writer.print("ms");
+		}
+		writer.print(" droppedFrames=");
+		writer.println(droppedFrames);
+	}
+	
+	/**
+	 * Converts nanoseconds to milliseconds rounded to two decimal places.
+	 * 
+	 * @param nanos The nanoseconds.
+	 * 
+	 * @return The milliseconds.
+	 */
+	private static double toMillis(long nanos)
+	{
+		return Math.round(nanos / (NANOS_PER_MILLI / 100.0)) / 100.0;
+	}
+}
@@ -0,0 +1,314 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * How a reference population scored, as one TDigest per game type per metric,
+ * so that a game's metrics can be ranked against everyone else's who played
+ * the same game type. A rank takes time proportional to the digest's
+ * compression, no matter how large the population was.
+ * 
+ * GO RT - Each session's mean GO RT in milliseconds, which is the game's
+ * 		   score. Its percentile is the percentage of sessions that were
+ * 		   slower, so higher is better.
+ * 
+ * % Inhibition - Each session's % inhibition. Its percentile is the
+ * 				  percentage of sessions that held back less often, so higher
+ * 				  is better.
+ * 
+ * Sessions that tie count as half above and half below.
+ * 
+ * Norms are built from exported sessions by the SessionAnalyzer tool, and
+ * norms built from different exports may be merged. They may be read from
+ * and written to text with one digest per line. Blank lines and lines
+ * starting with '#' are ignored:
+ * 
+ * 	sketch GAME_TYPE METRIC COMPRESSION MIN MAX MEAN:WEIGHT...
+ * 
+ * with the centroids in order of their means.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class PopulationNorms
+{
+	public static final String METRIC_GO_RT = "go_rt";
+	public static final String METRIC_PERCENT_INHIBITION = "percent_inhibition";
+	
+	private final double compression;
+	
+	// The digests keyed by game type then metric.
+	private final Map<String, Map<String, TDigest>> digests;
+	
+	/**
+	 * Creates empty norms with the default compression.
+	 */
+	public PopulationNorms()
+	{
+		this(TDigest.DEFAULT_COMPRESSION);
+	}
+	
+	/**
+	 * Creates empty norms.
+	 * 
+	 * @param compression The compression of any new digests.
+	 */
+	public PopulationNorms(double compression)
+	{
+		this.compression = compression;
+		
+		digests = new TreeMap<String, Map<String, TDigest>>();
+	}
+	
+	/**
+	 * Adds a session's metrics.
+	 * 
+	 * @param gameType The name of the session's stimulus set.
+	 * 
+	 * @param scores The session's scores.
+	 */
+	public void addSession(String gameType, ScoreAggregator scores)
+	{
+		add(gameType, METRIC_GO_RT, scores.getGoRtMean());
+		add(gameType, METRIC_PERCENT_INHIBITION, scores.getPercentInhibition());
+	}
+	
+	/**
+	 * Adds one value of a metric. NaNs and infinities are ignored, e.g. the
+	 * GO RT of a session without any hits.
+	 * 
+	 * @param gameType The game type.
+	 * 
+	 * @param metric The metric.
+	 * 
+	 * @param value The value.
+	 */
+	public void add(String gameType, String metric, double value)
+	{
+		if(Double.isNaN(value) || Double.isInfinite(value))
+		{
+			return;
+		}
+		
+		getOrCreate(gameType, metric, compression).add(value);
+	}
+	
+	/**
+	 * Adds every session of other norms.
+	 * 
+	 * @param other The other norms. They are left as they are.
+	 */
+	public void merge(PopulationNorms other)
+	{
+		for(Map.Entry<String, Map<String, TDigest>> gameType : other.digests.entrySet())
+		{
+			for(Map.Entry<String, TDigest> metric : gameType.getValue().entrySet())
+			{
+				TDigest digest = metric.getValue();
+				getOrCreate(gameType.getKey(), metric.getKey(), digest.getCompression()).merge(digest);
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether or not there are any norms at all.
+	 * 
+	 * @return True if nothing has been added.
+	 */
+	public boolean isEmpty()
+	{
+		return digests.isEmpty();
+	}
+	
+	/**
+	 * Returns the digest of a metric.
+	 * 
+	 * @param gameType The game type.
+	 * 
+	 * @param metric The metric.
+	 * 
+	 * @return The digest or null if there are no values for it.
+	 */
+	public TDigest getDigest(String gameType, String metric)
+	{
+		Map<String, TDigest> metrics = digests.get(gameType);
+		return (metrics == null) ? null : metrics.get(metric);
+	}
+	
+	/**
+	 * Ranks a mean GO RT.
+	 * 
+	 * @param gameType The game type.
+	 * 
+	 * @param goRtMean The mean GO RT in milliseconds.
+	 * 
+	 * @return The percentage of the population that was slower or NaN if
+	 * 		   there are no norms for the game type or the RT is NaN.
+	 */
+	public double getGoRtPercentile(String gameType, double goRtMean)
+	{
+		return 100.0 * (1.0 - cdf(gameType, METRIC_GO_RT, goRtMean));
+	}
+	
+	/**
+	 * Ranks a % inhibition.
+	 * 
+	 * @param gameType The game type.
+	 * 
+	 * @param percentInhibition The % inhibition.
+	 * 
+	 * @return The percentage of the population that held back less often or
+	 * 		   NaN if there are no norms for the game type or the % inhibition
+	 * 		   is NaN.
+	 */
+	public double getInhibitionPercentile(String gameType, double percentInhibition)
+	{
+		return 100.0 * cdf(gameType, METRIC_PERCENT_INHIBITION, percentInhibition);
+	}
+	
+	/**
+	 * Reads norms from text.
+	 * 
+	 * @param input The norms' text. It is not closed.
+	 * 
+	 * @return The norms.
+	 * 
+	 * @throws IOException The norms could not be read or are malformed.
+	 */
+	public static PopulationNorms read(Reader input) throws IOException
+	{
+		PopulationNorms norms = new PopulationNorms();
+		
+		BufferedReader reader = new BufferedReader(input);
+		int lineNumber = 0;
+		String line;
+		try
+		{
+			while((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				line = line.trim();
+				if((line.length() == 0) || line.startsWith("#"))
+				{
+					continue;
+				}
+				
+				String[] fields = line.split("\\s+");
+				if((! "sketch".equals(fields[0])) || (fields.length < 6))
+				{
+					throw new IOException("Line " + lineNumber + ": expected 'sketch GAME_TYPE METRIC COMPRESSION MIN MAX MEAN:WEIGHT...'.");
+				}
+				
+				double[] means = new double[fields.length - 6];
+				double[] weights = new double[means.length];
+				for(int i = 0; i < means.length; i++)
+				{
+					String centroid = fields[i + 6];
+					int colon = centroid.indexOf(':');
+					if(colon == -1)
+					{
+						throw new IOException("Line " + lineNumber + ": expected 'MEAN:WEIGHT', not '" + centroid + "'.");
+					}
+					means[i] = Double.parseDouble(centroid.substring(0, colon));
+					weights[i] = Double.parseDouble(centroid.substring(colon + 1));
+				}
+				
+				TDigest digest = TDigest.fromCentroids(Double.parseDouble(fields[3]), Double.parseDouble(fields[4]), Double.parseDouble(fields[5]), means, weights);
+				if(norms.getDigest(fields[1], fields[2]) != null)
+				{
+					throw new IOException("Line " + lineNumber + ": duplicate sketch '" + fields[1] + " " + fields[2] + "'.");
+				}
+				norms.getOrCreate(fields[1], fields[2], digest.getCompression()).merge(digest);
+			}
+			
+			return norms;
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Writes the norms as text that read() can read back.
+	 * 
+	 * @param output Where to write the norms. It is not closed.
+	 * 
+	 * @throws IOException The norms could not be written.
+	 */
+	public void write(Writer output) throws IOException
+	{
+		StringBuilder line = new StringBuilder();
+		for(Map.Entry<String, Map<String, TDigest>> gameType : digests.entrySet())
+		{
+			for(Map.Entry<String, TDigest> metric : gameType.getValue().entrySet())
+			{
+				TDigest digest = metric.getValue();
+				
+				line.setLength(0);
+				line.append("sketch ").append(gameType.getKey()).append(' ').append(metric.getKey());
+				line.append(' ').append(digest.getCompression());
+				line.append(' ').append(digest.getMin());
+				line.append(' ').append(digest.getMax());
+				int numCentroids = digest.getNumCentroids();
+				for(int i = 0; i < numCentroids; i++)
+				{
+					line.append(' ').append(digest.getMean(i)).append(':').append(digest.getWeight(i));
+				}
+				line.append('\n');
+				output.write(line.toString());
+			}
+		}
+	}
+	
+	/**
+	 * Estimates the fraction of a metric's values that are below a value.
+	 * 
+	 * @param gameType The game type.
+	 * 
+	 * @param metric The metric.
+	 * 
+	 * @param value The value.
+	 * 
+	 * @return The fraction or NaN if there are no values for the metric.
+	 */
+	private double cdf(String gameType, String metric, double value)
+	{
+		TDigest digest = getDigest(gameType, metric);
+		return (digest == null) ? Double.NaN : digest.cdf(value);
+	}
+	
+	/**
+	 * Returns the digest of a metric, creating it if necessary.
+	 * 
+	 * @param gameType The game type.
+	 * 
+	 * @param metric The metric.
+	 * 
+	 * @param compression The compression if it is created.
+	 * 
+	 * @return The digest.
+	 */
+	private TDigest getOrCreate(String gameType, String metric, double compression)
+	{
+		Map<String, TDigest> metrics = digests.get(gameType);
+		if(metrics == null)
+		{
+			metrics = new TreeMap<String, TDigest>();
+			digests.put(gameType, metrics);
+		}
+		
+		TDigest digest = metrics.get(metric);
+		if(digest == null)
+		{
+			digest = new TDigest(compression);
+			metrics.put(metric, digest);
+		}
+		return digest;
+	}
+}
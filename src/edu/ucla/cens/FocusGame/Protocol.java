@@ -0,0 +1,764 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Random;
+
+/**
+ * The definition of a game: how long before the first stimulus, how long
+ * each stimulus is visible, the rounds with their number of trials and time
+ * between onsets (SOA), how the no-go trials are chosen, and any constraints
+ * on the order of the trials.
+ * 
+ * A protocol is compiled with a seed into a TrialSchedule that lists every
+ * trial up front. The same protocol, stimulus set, and seed always compile
+ * to the same schedule, so any game may be reproduced exactly from its seed.
+ * 
+ * No-go trials are either drawn independently with some frequency or, if a
+ * round gives an exact count, placed at random within the round. Either way,
+ * the number of no-go trials in a row may be limited, in which case a drawn
+ * no-go that would break the limit becomes a go. Go stimuli may also be kept
+ * from repeating back to back.
+ * 
+ * A protocol may also stop a game early once the mean GO RT and the %
+ * inhibition are known precisely enough, i.e. once half the width of their
+ * 95% confidence intervals is at most a target. The game never stops before
+ * its minimum number of trials and never runs past its maximum, which is
+ * every trial in the rounds unless it is set lower.
+ * 
+ * Stopping early biases the mean GO RT low. The GO RT precision target is
+ * met sooner in games that happen to have had none of the slow responses in
+ * the tail of the RT distribution yet, and those are exactly the games whose
+ * mean is lowest so far. In ParticipantSimulator, a 25 ms target with a
+ * minimum of 30 trials lowered the mean GO RT of a typical player by about
+ * 2 ms more than playing every trial did. Games that stopped early are
+ * reported as "precise" and with the number of trials they used, so they may
+ * be told apart or left out when a few milliseconds matter. The % inhibition
+ * needs many no-go trials to be known precisely: within 15 percentage points
+ * takes about 20 at 90% inhibition and about 40 at 50%.
+ * 
+ * Protocols may be read from text with one setting per line. Blank lines and
+ * lines starting with '#' are ignored:
+ * 
+ * 	first_delay MILLIS
+ * 	visible MILLIS
+ * 	round TRIALS SOA_MILLIS [NOGO_COUNT]	(SOA longer than visible)
+ * 	nogo_frequency FRACTION
+ * 	max_consecutive_nogo COUNT		(0 means no limit)
+ * 	no_repeats true|false
+ * 	min_trials COUNT
+ * 	max_trials COUNT				(0 means every trial)
+ * 	target_rt_precision MILLIS		(0 means no target)
+ * 	target_inhibition_precision PERCENT	(0 means no target)
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class Protocol
+{
+	// Marks a round whose no-go trials are drawn with the frequency.
+	private static final int NO_COUNT = -1;
+	
+	/**
+	 * The original protocol: 2 seconds before the first stimulus, 500
+	 * milliseconds visible, 30 trials 1 second apart then 30 trials 2
+	 * seconds apart, each of which is a no-go 10% of the time.
+	 */
+	public static final Protocol DEFAULT = new Builder()
+		.setFirstDelay(TrialEngine.FIRST_DELAY)
+		.setVisible(TrialEngine.VISIBLE_MILLIS)
+		.addRound(TrialEngine.NUM_ITEMS_PER_ROUND, TrialEngine.DELAYS_MILLIS[0])
+		.addRound(TrialEngine.NUM_ITEMS_PER_ROUND, TrialEngine.DELAYS_MILLIS[1])
+		.setNoGoFrequency(TrialEngine.BAD_FREQUENCY)
+		.build();
+	
+	/**
+	 * Builds a Protocol.
+	 * 
+	 * @author John Jenkins
+	 * @version 1.0
+	 */
+	public static class Builder
+	{
+		private long firstDelayMillis = TrialEngine.FIRST_DELAY;
+		private long visibleMillis = TrialEngine.VISIBLE_MILLIS;
+		private int[] roundTrials = new int[0];
+		private long[] roundSoaMillis = new long[0];
+		private int[] roundNoGoCounts = new int[0];
+		private double noGoFrequency = TrialEngine.BAD_FREQUENCY;
+		private int maxConsecutiveNoGo = 0;
+		private boolean noRepeats = false;
+		private int minTrials = 0;
+		private int maxTrials = 0;
+		private double targetRtPrecisionMillis = 0.0;
+		private double targetInhibitionPrecision = 0.0;
+		
+		/**
+		 * Sets the time between the game starting and the first stimulus.
+		 * 
+		 * @param millis The time in milliseconds.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setFirstDelay(long millis)
+		{
+			firstDelayMillis = millis;
+			return this;
+		}
+		
+		/**
+		 * Sets how long each stimulus is visible.
+		 * 
+		 * @param millis The time in milliseconds.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setVisible(long millis)
+		{
+			visibleMillis = millis;
+			return this;
+		}
+		
+		/**
+		 * Adds a round whose no-go trials are drawn with the frequency.
+		 * 
+		 * @param trials The number of trials in the round.
+		 * 
+		 * @param soaMillis The time between the onsets of its trials.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder addRound(int trials, long soaMillis)
+		{
+			return addRound(trials, soaMillis, NO_COUNT);
+		}
+		
+		/**
+		 * Adds a round with an exact number of no-go trials.
+		 * 
+		 * @param trials The number of trials in the round.
+		 * 
+		 * @param soaMillis The time between the onsets of its trials.
+		 * 
+		 * @param noGoCount The number of no-go trials.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder addRound(int trials, long soaMillis, int noGoCount)
+		{
+			int rounds = roundTrials.length;
+			
+			int[] newRoundTrials = new int[rounds + 1];
+			System.arraycopy(roundTrials, 0, newRoundTrials, 0, rounds);
+			newRoundTrials[rounds] = trials;
+			roundTrials = newRoundTrials;
+			
+			long[] newRoundSoaMillis = new long[rounds + 1];
+			System.arraycopy(roundSoaMillis, 0, newRoundSoaMillis, 0, rounds);
+			newRoundSoaMillis[rounds] = soaMillis;
+			roundSoaMillis = newRoundSoaMillis;
+			
+			int[] newRoundNoGoCounts = new int[rounds + 1];
+			System.arraycopy(roundNoGoCounts, 0, newRoundNoGoCounts, 0, rounds);
+			newRoundNoGoCounts[rounds] = noGoCount;
+			roundNoGoCounts = newRoundNoGoCounts;
+			
+			return this;
+		}
+		
+		/**
+		 * Sets the chance that a trial in a round without an exact count is a
+		 * no-go.
+		 * 
+		 * @param frequency The chance between 0 and 1.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setNoGoFrequency(double frequency)
+		{
+			noGoFrequency = frequency;
+			return this;
+		}
+		
+		/**
+		 * Sets the most no-go trials that may be in a row.
+		 * 
+		 * @param count The limit or 0 for no limit.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setMaxConsecutiveNoGo(int count)
+		{
+			maxConsecutiveNoGo = count;
+			return this;
+		}
+		
+		/**
+		 * Sets whether or not a go stimulus may be shown twice in a row.
+		 * 
+		 * @param noRepeats True to keep go stimuli from repeating.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setNoRepeats(boolean noRepeats)
+		{
+			this.noRepeats = noRepeats;
+			return this;
+		}
+		
+		/**
+		 * Sets the fewest trials to show before stopping early.
+		 * 
+		 * @param count The number of trials.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setMinTrials(int count)
+		{
+			minTrials = count;
+			return this;
+		}
+		
+		/**
+		 * Sets the most trials to show.
+		 * 
+		 * @param count The number of trials or 0 for every trial in the
+		 * 				rounds.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setMaxTrials(int count)
+		{
+			maxTrials = count;
+			return this;
+		}
+		
+		/**
+		 * Sets how precisely the mean GO RT must be known to stop early.
+		 * 
+		 * @param millis Half the width of its 95% confidence interval or 0 for
+		 * 				 no target.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setTargetRtPrecision(double millis)
+		{
+			targetRtPrecisionMillis = millis;
+			return this;
+		}
+		
+		/**
+		 * Sets how precisely the % inhibition must be known to stop early.
+		 * 
+		 * @param percent Half the width of its 95% confidence interval in
+		 * 				  percentage points or 0 for no target.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setTargetInhibitionPrecision(double percent)
+		{
+			targetInhibitionPrecision = percent;
+			return this;
+		}
+		
+		/**
+		 * Builds the Protocol.
+		 * 
+		 * @return The Protocol.
+		 * 
+		 * @throws IllegalArgumentException The protocol is invalid or its
+		 * 									no-go counts can't meet its
+		 * 									constraints.
+		 */
+		public Protocol build()
+		{
+			if((firstDelayMillis < 0) || (visibleMillis <= 0))
+			{
+				throw new IllegalArgumentException("The delays must be positive.");
+			}
+			if(roundTrials.length == 0)
+			{
+				throw new IllegalArgumentException("There must be at least one round.");
+			}
+			if((noGoFrequency < 0.0) || (noGoFrequency > 1.0))
+			{
+				throw new IllegalArgumentException("The no-go frequency must be between 0 and 1.");
+			}
+			if(maxConsecutiveNoGo < 0)
+			{
+				throw new IllegalArgumentException("The most no-go trials in a row must not be negative.");
+			}
+			if((minTrials < 0) || (maxTrials < 0) || ((maxTrials > 0) && (minTrials > maxTrials)))
+			{
+				throw new IllegalArgumentException("The minimum and maximum number of trials must not be negative and the minimum must not be more than the maximum.");
+			}
+			if((targetRtPrecisionMillis < 0.0) || (targetInhibitionPrecision < 0.0))
+			{
+				throw new IllegalArgumentException("The target precisions must not be negative.");
+			}
+			
+			for(int i = 0; i < roundTrials.length; i++)
+			{
+				if((roundTrials[i] <= 0) || (roundSoaMillis[i] <= 0))
+				{
+					throw new IllegalArgumentException("Round " + i + " must have trials and a positive SOA.");
+				}
+				if(roundSoaMillis[i] <= visibleMillis)
+				{
+					// Otherwise a stimulus would be cleared after the next
+					// one was shown.
+					throw new IllegalArgumentException("Round " + i + " must have an SOA longer than the " + visibleMillis + " milliseconds each stimulus is visible.");
+				}
+				if((roundNoGoCounts[i] < NO_COUNT) || (roundNoGoCounts[i] > roundTrials[i]))
+				{
+					throw new IllegalArgumentException("Round " + i + " has an invalid number of no-go trials.");
+				}
+				if((maxConsecutiveNoGo > 0) && (roundNoGoCounts[i] > 0))
+				{
+					// The worst case is the previous round ending in as many
+					// no-go trials as are allowed.
+					int gaps = roundTrials[i] - roundNoGoCounts[i] + 1;
+					if(roundNoGoCounts[i] > ((gaps * maxConsecutiveNoGo) - maxConsecutiveNoGo))
+					{
+						throw new IllegalArgumentException("Round " + i + " has too many no-go trials to keep fewer than " + (maxConsecutiveNoGo + 1) + " in a row.");
+					}
+				}
+			}
+			
+			return new Protocol(this);
+		}
+	}
+	
+	private final long firstDelayMillis;
+	private final long visibleMillis;
+	private final int[] roundTrials;
+	private final long[] roundSoaMillis;
+	private final int[] roundNoGoCounts;
+	private final double noGoFrequency;
+	private final int maxConsecutiveNoGo;
+	private final boolean noRepeats;
+	private final int numTrials;
+	private final int minTrials;
+	private final int maxTrials;
+	private final double targetRtPrecisionMillis;
+	private final double targetInhibitionPrecision;
+	
+	/**
+	 * Creates a Protocol from a Builder.
+	 * 
+	 * @param builder The Builder.
+	 */
+	private Protocol(Builder builder)
+	{
+		firstDelayMillis = builder.firstDelayMillis;
+		visibleMillis = builder.visibleMillis;
+		roundTrials = builder.roundTrials.clone();
+		roundSoaMillis = builder.roundSoaMillis.clone();
+		roundNoGoCounts = builder.roundNoGoCounts.clone();
+		noGoFrequency = builder.noGoFrequency;
+		maxConsecutiveNoGo = builder.maxConsecutiveNoGo;
+		noRepeats = builder.noRepeats;
+		
+		int total = 0;
+		for(int trials : roundTrials)
+		{
+			total += trials;
+		}
+		numTrials = total;
+		
+		minTrials = Math.min(builder.minTrials, numTrials);
+		maxTrials = ((builder.maxTrials == 0) || (builder.maxTrials > numTrials)) ? numTrials : builder.maxTrials;
+		targetRtPrecisionMillis = builder.targetRtPrecisionMillis;
+		targetInhibitionPrecision = builder.targetInhibitionPrecision;
+	}
+	
+	/**
+	 * Reads a protocol from text.
+	 * 
+	 * @param input The protocol's text. It is not closed.
+	 * 
+	 * @return The protocol.
+	 * 
+	 * @throws IOException The protocol could not be read or is malformed.
+	 */
+	public static Protocol read(Reader input) throws IOException
+	{
+		Builder builder = new Builder();
+		
+		BufferedReader reader = new BufferedReader(input);
+		int lineNumber = 0;
+		String line;
+		try
+		{
+			while((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				line = line.trim();
+				if((line.length() == 0) || line.startsWith("#"))
+				{
+					continue;
+				}
+				
+				String[] fields = line.split("\\s+");
+				if("round".equals(fields[0]))
+				{
+					if(fields.length == 3)
+					{
+						builder.addRound(Integer.parseInt(fields[1]), Long.parseLong(fields[2]));
+					}
+					else if(fields.length == 4)
+					{
+						builder.addRound(Integer.parseInt(fields[1]), Long.parseLong(fields[2]), Integer.parseInt(fields[3]));
+					}
+					else
+					{
+						throw new IOException("Line " + lineNumber + ": expected 'round TRIALS SOA [NOGO_COUNT]'.");
+					}
+					continue;
+				}
+				
+				if(fields.length != 2)
+				{
+					throw new IOException("Line " + lineNumber + ": expected 'SETTING VALUE'.");
+				}
+				if("first_delay".equals(fields[0]))
+				{
+					builder.setFirstDelay(Long.parseLong(fields[1]));
+				}
+				else if("visible".equals(fields[0]))
+				{
+					builder.setVisible(Long.parseLong(fields[1]));
+				}
+				else if("nogo_frequency".equals(fields[0]))
+				{
+					builder.setNoGoFrequency(Double.parseDouble(fields[1]));
+				}
+				else if("max_consecutive_nogo".equals(fields[0]))
+				{
+					builder.setMaxConsecutiveNoGo(Integer.parseInt(fields[1]));
+				}
+				else if("no_repeats".equals(fields[0]))
+				{
+					builder.setNoRepeats(Boolean.parseBoolean(fields[1]));
+				}
+				else if("min_trials".equals(fields[0]))
+				{
+					builder.setMinTrials(Integer.parseInt(fields[1]));
+				}
+				else if("max_trials".equals(fields[0]))
+				{
+					builder.setMaxTrials(Integer.parseInt(fields[1]));
+				}
+				else if("target_rt_precision".equals(fields[0]))
+				{
+					builder.setTargetRtPrecision(Double.parseDouble(fields[1]));
+				}
+				else if("target_inhibition_precision".equals(fields[0]))
+				{
+					builder.setTargetInhibitionPrecision(Double.parseDouble(fields[1]));
+				}
+				else
+				{
+					throw new IOException("Line " + lineNumber + ": unknown setting '" + fields[0] + "'.");
+				}
+			}
+			
+			return builder.build();
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the time between the game starting and the first stimulus.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getFirstDelayMillis()
+	{
+		return firstDelayMillis;
+	}
+	
+	/**
+	 * Returns how long each stimulus is visible.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getVisibleMillis()
+	{
+		return visibleMillis;
+	}
+	
+	/**
+	 * Returns the number of rounds.
+	 * 
+	 * @return The number of rounds.
+	 */
+	public int getNumRounds()
+	{
+		return roundTrials.length;
+	}
+	
+	/**
+	 * Returns the number of trials in a round.
+	 * 
+	 * @param round The round.
+	 * 
+	 * @return The number of trials.
+	 */
+	public int getRoundTrials(int round)
+	{
+		return roundTrials[round];
+	}
+	
+	/**
+	 * Returns the time between onsets in a round.
+	 * 
+	 * @param round The round.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getRoundSoaMillis(int round)
+	{
+		return roundSoaMillis[round];
+	}
+	
+	/**
+	 * Returns the total number of trials in every round.
+	 * 
+	 * @return The number of trials.
+	 */
+	public int getNumTrials()
+	{
+		return numTrials;
+	}
+	
+	/**
+	 * Returns the fewest trials to show before stopping early.
+	 * 
+	 * @return The number of trials.
+	 */
+	public int getMinTrials()
+	{
+		return minTrials;
+	}
+	
+	/**
+	 * Returns the most trials to show.
+	 * 
+	 * @return The number of trials. It is never more than getNumTrials().
+	 */
+	public int getMaxTrials()
+	{
+		return maxTrials;
+	}
+	
+	/**
+	 * Returns how precisely the mean GO RT must be known to stop early.
+	 * 
+	 * @return Half the width of its 95% confidence interval in milliseconds
+	 * 		   or 0 if there is no target.
+	 */
+	public double getTargetRtPrecisionMillis()
+	{
+		return targetRtPrecisionMillis;
+	}
+	
+	/**
+	 * Returns how precisely the % inhibition must be known to stop early.
+	 * 
+	 * @return Half the width of its 95% confidence interval in percentage
+	 * 		   points or 0 if there is no target.
+	 */
+	public double getTargetInhibitionPrecision()
+	{
+		return targetInhibitionPrecision;
+	}
+	
+	/**
+	 * Returns whether or not games may stop before their maximum number of
+	 * trials once they are precise enough.
+	 * 
+	 * @return True if there is at least one target precision.
+	 */
+	public boolean isAdaptive()
+	{
+		return (targetRtPrecisionMillis > 0.0) || (targetInhibitionPrecision > 0.0);
+	}
+	
+	/**
+	 * Lays out every trial of a game.
+	 * 
+	 * @param stimulusSet The stimuli to choose from.
+	 * 
+	 * @param seed The seed of the pseudo-random number generator.
+	 * 
+	 * @return The schedule.
+	 */
+	public TrialSchedule compile(StimulusSet stimulusSet, long seed)
+	{
+		Random random = new Random(seed);
+		
+		int[] stimuli = new int[numTrials];
+		int[] rounds = new int[numTrials];
+		long[] onsetMillis = new long[numTrials];
+		boolean[] noGo = new boolean[numTrials];
+		
+		// Which trials are no-go.
+		int run = 0;
+		int start = 0;
+		for(int round = 0; round < roundTrials.length; round++)
+		{
+			int trials = roundTrials[round];
+			if(roundNoGoCounts[round] == NO_COUNT)
+			{
+				for(int i = start; i < start + trials; i++)
+				{
+					noGo[i] = (random.nextDouble() <= noGoFrequency) && ((maxConsecutiveNoGo == 0) || (run < maxConsecutiveNoGo));
+					run = noGo[i] ? (run + 1) : 0;
+				}
+			}
+			else
+			{
+				placeNoGo(noGo, start, trials, roundNoGoCounts[round], run, random);
+				for(int i = start; i < start + trials; i++)
+				{
+					run = noGo[i] ? (run + 1) : 0;
+				}
+			}
+			start += trials;
+		}
+		
+		// Which stimulus each trial shows and when.
+		int numGo = stimulusSet.getNumGoStimuli();
+		int numNoGo = stimulusSet.getNumNoGoStimuli();
+		int previousGo = -1;
+		long onset = firstDelayMillis;
+		int trial = 0;
+		for(int round = 0; round < roundTrials.length; round++)
+		{
+			for(int i = 0; i < roundTrials[round]; i++)
+			{
+				if(noGo[trial])
+				{
+					stimuli[trial] = stimulusSet.getNoGoStimulus((numNoGo == 1) ? 0 : random.nextInt(numNoGo));
+					previousGo = -1;
+				}
+				else if(noRepeats && (previousGo != -1) && (numGo > 1))
+				{
+					int index = random.nextInt(numGo - 1);
+					if(index >= previousGo)
+					{
+						index++;
+					}
+					stimuli[trial] = stimulusSet.getGoStimulus(index);
+					previousGo = index;
+				}
+				else
+				{
+					previousGo = random.nextInt(numGo);
+					stimuli[trial] = stimulusSet.getGoStimulus(previousGo);
+				}
+				
+				rounds[trial] = round;
+				onsetMillis[trial] = onset;
+				onset += roundSoaMillis[round];
+				trial++;
+			}
+		}
+		
+		return new TrialSchedule(seed, stimuli, rounds, onsetMillis, onset, visibleMillis);
+	}
+	
+	/**
+	 * Places an exact number of no-go trials at random within a round. With
+	 * no limit on how many may be in a row, the round is shuffled. Otherwise,
+	 * each no-go is put in one of the gaps around the go trials that still
+	 * has room.
+	 * 
+	 * @param noGo Whether or not each trial is a no-go.
+	 * 
+	 * @param start The round's first trial.
+	 * 
+	 * @param trials The number of trials in the round.
+	 * 
+	 * @param count The number of no-go trials.
+	 * 
+	 * @param run The number of no-go trials in a row at the end of the
+	 * 			  previous round.
+	 * 
+	 * @param random The pseudo-random number generator.
+	 */
+	private void placeNoGo(boolean[] noGo, int start, int trials, int count, int run, Random random)
+	{
+		if(maxConsecutiveNoGo == 0)
+		{
+			for(int i = 0; i < trials; i++)
+			{
+				noGo[start + i] = (i < count);
+			}
+			for(int i = trials - 1; i > 0; i--)
+			{
+				int j = random.nextInt(i + 1);
+				boolean swap = noGo[start + i];
+				noGo[start + i] = noGo[start + j];
+				noGo[start + j] = swap;
+			}
+			return;
+		}
+		
+		int numGaps = trials - count + 1;
+		int[] gapCounts = new int[numGaps];
+		int[] open = new int[numGaps];
+		int numOpen = 0;
+		for(int gap = 0; gap < numGaps; gap++)
+		{
+			if(capacity(gap, run) > 0)
+			{
+				open[numOpen++] = gap;
+			}
+		}
+		
+		for(int i = 0; i < count; i++)
+		{
+			int choice = random.nextInt(numOpen);
+			int gap = open[choice];
+			gapCounts[gap]++;
+			if(gapCounts[gap] == capacity(gap, run))
+			{
+				open[choice] = open[--numOpen];
+			}
+		}
+		
+		int trial = start;
+		for(int gap = 0; gap < numGaps; gap++)
+		{
+			for(int i = 0; i < gapCounts[gap]; i++)
+			{
+				noGo[trial++] = true;
+			}
+			if(gap < numGaps - 1)
+			{
+				noGo[trial++] = false;
+			}
+		}
+	}
+	
+	/**
+	 * Returns how many no-go trials fit in a gap.
+	 * 
+	 * @param gap The gap, where 0 is before the round's first go trial.
+	 * 
+	 * @param run The number of no-go trials in a row at the end of the
+	 * 			  previous round.
+	 * 
+	 * @return The number of no-go trials that fit.
+	 */
+	private int capacity(int gap, int run)
+	{
+		return (gap == 0) ? Math.max(0, maxConsecutiveNoGo - run) : maxConsecutiveNoGo;
+	}
+}
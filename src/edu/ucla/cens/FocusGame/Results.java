@@ -1,14 +1,13 @@
 package edu.ucla.cens.FocusGame;
 
-import java.util.Iterator;
-
 import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
 import android.app.Activity;
 import android.os.Bundle;
 import android.util.Log;
+import android.view.View;
+import android.widget.ListView;
 import android.widget.TextView;
 
 /**
@@ -16,6 +15,8 @@ import android.widget.TextView;
  * the Bundle. Whoever calls this should use the public constants as the
  * Strings in the Bundle they package with the Intent.
  * 
+ * The summary stays at the top while the trials scroll in a list below it.
+ * 
  * @author John Jenkins
  * @version 1.0
  */
@@ -28,9 +29,19 @@ public class Results extends Activity
 	private int numGoodCharMisses;
 	private int numBadCharSkips;
 	private int numRepeatTaps;
+	private int numOffStimulusTaps;
 	private double score;
-	
-	private JSONArray responseTimes;
+	private double correctedScore;
+	private double goRtSd;
+	private double goRtMedian;
+	private double goRtP90;
+	private double commissionRate;
+	private double omissionRate;
+	private double percentInhibition;
+	private double dPrime;
+	private double criterion;
+	private double goRtPercentile;
+	private double inhibitionPercentile;
 	
 	/**
 	 * Called when the Activity is first created. Shows all the stats as
@@ -49,34 +60,84 @@ public class Results extends Activity
 		numGoodCharMisses = extras.getInt(Game.REPORT_GOOD_CHAR_MISSES);
 		numBadCharSkips = extras.getInt(Game.REPORT_BAD_CHAR_SKIPS);
 		numRepeatTaps = extras.getInt(Game.REPORT_REPEAT_TAPS);
+		numOffStimulusTaps = extras.getInt(Game.REPORT_OFF_STIMULUS_TAPS);
 		score = extras.getDouble(Game.REPORT_SINGLE_VALUE_RESULT);
+		correctedScore = extras.getDouble(Game.REPORT_CORRECTED_SCORE, Double.NaN);
+		goRtSd = extras.getDouble(Game.REPORT_GO_RT_SD);
+		goRtMedian = extras.getDouble(Game.REPORT_GO_RT_MEDIAN);
+		goRtP90 = extras.getDouble(Game.REPORT_GO_RT_P90);
+		commissionRate = extras.getDouble(Game.REPORT_COMMISSION_RATE);
+		omissionRate = extras.getDouble(Game.REPORT_OMISSION_RATE);
+		percentInhibition = extras.getDouble(Game.REPORT_PERCENT_INHIBITION);
+		dPrime = extras.getDouble(Game.REPORT_D_PRIME);
+		criterion = extras.getDouble(Game.REPORT_CRITERION);
+		goRtPercentile = extras.getDouble(Game.REPORT_GO_RT_PERCENTILE, Double.NaN);
+		inhibitionPercentile = extras.getDouble(Game.REPORT_INHIBITION_PERCENTILE, Double.NaN);
 		
 		((TextView) findViewById(R.id.num_bad_chars)).setText((new StringBuilder()).append("Number of times a bad item was tapped: ").append(numBadCharHits).toString());
 		((TextView) findViewById(R.id.num_good_chars)).setText((new StringBuilder()).append("Number of times a good item was tapped: ").append(numGoodCharHits).toString());
 		((TextView) findViewById(R.id.num_good_char_misses)).setText((new StringBuilder()).append("Number of times a good item was missed: ").append(numGoodCharMisses).toString());
 		((TextView) findViewById(R.id.num_bad_char_skips)).setText((new StringBuilder()).append("Number of times a bad item was missed: ").append(numBadCharSkips).toString());
 		((TextView) findViewById(R.id.num_repeats)).setText((new StringBuilder()).append("Number of duplicate taps: ").append(numRepeatTaps).toString());
-		((TextView) findViewById(R.id.score)).setText((new StringBuilder()).append("Score: ").append(score).toString());
+		((TextView) findViewById(R.id.num_off_stimulus)).setText((new StringBuilder()).append("Number of taps that missed the item: ").append(numOffStimulusTaps).toString());
+		// Once the device has been calibrated, the score without its latency
+		// is shown as well.
+		StringBuilder scoreText = (new StringBuilder()).append("Score: ").append(score);
+		if(! Double.isNaN(correctedScore))
+		{
+			scoreText.append(" (").append(correctedScore).append(" without touch latency)");
+		}
+		((TextView) findViewById(R.id.score)).setText(scoreText.toString());
+		((TextView) findViewById(R.id.go_rt_spread)).setText((new StringBuilder()).append("GO RT standard deviation: ").append(goRtSd).append(", median: ").append(goRtMedian).append(", 90th percentile: ").append(goRtP90).toString());
+		((TextView) findViewById(R.id.error_rates)).setText((new StringBuilder()).append("Commission rate: ").append(commissionRate).append(", omission rate: ").append(omissionRate).toString());
+		((TextView) findViewById(R.id.percent_inhibition)).setText((new StringBuilder()).append("% Inhibition: ").append(percentInhibition).toString());
+		((TextView) findViewById(R.id.signal_detection)).setText((new StringBuilder()).append("d': ").append(dPrime).append(", criterion: ").append(criterion).toString());
 		
-		try
+		// Without norms for the game type there is nothing to rank against.
+		StringBuilder percentiles = new StringBuilder();
+		if(! Double.isNaN(goRtPercentile))
+		{
+			percentiles.append("Faster than ").append(Math.round(goRtPercentile)).append("% of players");
+		}
+		if(! Double.isNaN(inhibitionPercentile))
+		{
+			percentiles.append((percentiles.length() == 0) ? "Held" : ", held").append(" back more often than ").append(Math.round(inhibitionPercentile)).append("% of players");
+		}
+		TextView percentilesText = (TextView) findViewById(R.id.percentiles);
+		if(percentiles.length() == 0)
+		{
+			percentilesText.setVisibility(View.GONE);
+		}
+		else
 		{
-			responseTimes = new JSONArray(extras.getString(Game.REPORT_RESPONSE_TIMES));
-			
-			StringBuilder responseTimesString = new StringBuilder();
-			responseTimesString.append("Response times for each item:\n");
-			for(int i = 0; i < responseTimes.length(); i++)
+			percentilesText.setText(percentiles.toString());
+		}
+		
+		// Only the rows that are on screen are ever decoded and formatted.
+		ListView responseTimesList = (ListView) findViewById(R.id.response_times);
+		byte[] trials = extras.getByteArray(Game.REPORT_TRIALS);
+		if(trials != null)
+		{
+			try
 			{
-				JSONObject currResponse = responseTimes.getJSONObject(i);
-				Iterator<?> keys = currResponse.keys();
-				while(keys.hasNext())
-				{
-					String key = (String) keys.next();
-					
-					responseTimesString.append("\t").append(key).append(": ")
-					   				   .append(currResponse.getLong(key)).append(" milliseconds\n");
-				}
+				responseTimesList.setAdapter(new TrialListAdapter(this, trials));
 			}
-			((TextView) findViewById(R.id.response_times)).setText(responseTimesString.toString());
+			catch(IllegalArgumentException e)
+			{
+				Log.e(TAG, "Error while reading the trials.", e);
+			}
+			return;
+		}
+		
+		// Whoever called this may have only passed the JSON response times.
+		String legacyResponseTimes = extras.getString(Game.REPORT_RESPONSE_TIMES);
+		if(legacyResponseTimes == null)
+		{
+			return;
+		}
+		try
+		{
+			responseTimesList.setAdapter(new TrialListAdapter(this, new JSONArray(legacyResponseTimes)));
 		}
 		catch(JSONException e) 
 		{
@@ -0,0 +1,64 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * Delivers timed events to a Target. There is at most one pending instance of
+ * any one event; scheduling an event that is already pending replaces it.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public interface Scheduler
+{
+	/**
+	 * Receives the events from a Scheduler.
+	 */
+	public interface Target
+	{
+		/**
+		 * Called when an event's time has come.
+		 * 
+		 * @param event The event that was scheduled.
+		 * 
+		 * @param timeNanos The time at which the event is being dispatched.
+		 */
+		public void onEvent(int event, long timeNanos);
+	}
+	
+	/**
+	 * Sets the Target that all events will be delivered to.
+	 * 
+	 * @param target The Target to deliver events to.
+	 */
+	public void setTarget(Target target);
+	
+	/**
+	 * Schedules an event to be delivered at some absolute time.
+	 * 
+	 * @param event The event to deliver.
+	 * 
+	 * @param timeNanos The time at which to deliver the event on the same
+	 * 					timeline as the Clock in use.
+	 */
+	public void schedule(int event, long timeNanos);
+	
+	/**
+	 * Removes any pending instance of an event.
+	 * 
+	 * @param event The event to remove.
+	 */
+	public void cancel(int event);
+	
+	/**
+	 * Removes all pending events.
+	 */
+	public void cancelAll();
+	
+	/**
+	 * Returns the number of display frames that have been dropped since this
+	 * was created while any event was pending.
+	 * 
+	 * @return The number of dropped frames or 0 if this Scheduler isn't
+	 * 		   driven by the display.
+	 */
+	public int getDroppedFrames();
+}
@@ -0,0 +1,436 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * Keeps the Go/No-Go metrics of a game up to date as each trial finishes, in
+ * constant time and memory per trial. Nothing is recomputed at the end of the
+ * game; the getters simply read the current values.
+ * 
+ * GO RT - Mean response time of every tapped good stimulus, along with its
+ * 		   standard deviation, median, and 90th percentile. The percentiles
+ * 		   are P-Square estimates once there are more than five responses.
+ * 
+ * Commission rate - Number of times the bad stimulus was tapped divided by
+ * 					 the number of times it was shown.
+ * 
+ * Omission rate - Number of good stimuli that were not tapped divided by the
+ * 				   number of good stimuli that were shown.
+ * 
+ * % Inhibition - Percentage of bad stimuli that were not tapped.
+ * 
+ * d' and criterion - Signal detection measures with a good stimulus being
+ * 					  the signal. The hit and false alarm rates use the
+ * 					  log-linear correction, (count + 0.5) / (trials + 1),
+ * 					  so that they are defined even for perfect games.
+ * 
+ * Precision - Half the width of the 95% confidence intervals of the mean GO
+ * 			   RT and the % inhibition. The latter is the Agresti-Coull
+ * 			   interval so that it is neither zero nor undefined when every
+ * 			   bad stimulus, or none, was tapped.
+ * 
+ * All times are in milliseconds.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class ScoreAggregator
+{
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	// The z-score of a two-sided 95% confidence interval.
+	private static final double CONFIDENCE_Z = 1.959964;
+	
+	private final P2Quantile goRtMedian;
+	private final P2Quantile goRtP90;
+	
+	private int numGoTrials;
+	private int numGoHits;
+	private int numNoGoTrials;
+	private int numNoGoHits;
+	
+	// Welford's running mean and sum of squared differences of the GO RTs.
+	private double goRtMean;
+	private double goRtSumSquares;
+	
+	/**
+	 * Creates a new, empty aggregator.
+	 */
+	public ScoreAggregator()
+	{
+		goRtMedian = new P2Quantile(0.5);
+		goRtP90 = new P2Quantile(0.9);
+		
+		reset();
+	}
+	
+	/**
+	 * Forgets every trial that has been added.
+	 */
+	public void reset()
+	{
+		goRtMedian.reset();
+		goRtP90.reset();
+		
+		numGoTrials = 0;
+		numGoHits = 0;
+		numNoGoTrials = 0;
+		numNoGoHits = 0;
+		
+		goRtMean = 0.0;
+		goRtSumSquares = 0.0;
+	}
+	
+	/**
+	 * Adds a trial whose stimulus was tapped.
+	 * 
+	 * @param noGo Whether or not the stimulus was the bad stimulus.
+	 * 
+	 * @param responseNanos The time between the stimulus being shown and it
+	 * 						being tapped.
+	 */
+	public void addResponse(boolean noGo, long responseNanos)
+	{
+		if(noGo)
+		{
+			numNoGoTrials++;
+			numNoGoHits++;
+			return;
+		}
+		
+		numGoTrials++;
+		numGoHits++;
+		
+		double rt = responseNanos / NANOS_PER_MILLI;
+		double delta = rt - goRtMean;
+		goRtMean += delta / numGoHits;
+		goRtSumSquares += delta * (rt - goRtMean);
+		
+		goRtMedian.add(rt);
+		goRtP90.add(rt);
+	}
+	
+	/**
+	 * Adds a trial whose stimulus went by without being tapped.
+	 * 
+	 * @param noGo Whether or not the stimulus was the bad stimulus.
+	 */
+	public void addNoResponse(boolean noGo)
+	{
+		if(noGo)
+		{
+			numNoGoTrials++;
+		}
+		else
+		{
+			numGoTrials++;
+		}
+	}
+	
+	/**
+	 * Changes a trial that was added as not being responded to into one that
+	 * was. This is for a tap that happened before the trial was closed but
+	 * wasn't delivered until after.
+	 * 
+	 * @param noGo Whether or not the stimulus was the bad stimulus.
+	 * 
+	 * @param responseNanos The time between the stimulus being shown and it
+	 * 						being tapped.
+	 */
+	public void reviseNoResponse(boolean noGo, long responseNanos)
+	{
+		if(noGo)
+		{
+			numNoGoTrials--;
+		}
+		else
+		{
+			numGoTrials--;
+		}
+		
+		addResponse(noGo, responseNanos);
+	}
+	
+	/**
+	 * Adds every trial in a log.
+	 * 
+	 * @param trialLog The log whose trials will be added.
+	 */
+	public void addAll(TrialLog trialLog)
+	{
+		for(int i = 0; i < trialLog.size(); i++)
+		{
+			if(trialLog.isResponded(i))
+			{
+				addResponse(trialLog.isNoGo(i), trialLog.getElapsedNanos(i));
+			}
+			else
+			{
+				addNoResponse(trialLog.isNoGo(i));
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of trials that have been added.
+	 * 
+	 * @return The number of trials.
+	 */
+	public int getNumTrials()
+	{
+		return numGoTrials + numNoGoTrials;
+	}
+	
+	/**
+	 * Returns the number of good stimuli that were shown.
+	 * 
+	 * @return The number of good stimuli.
+	 */
+	public int getNumGoTrials()
+	{
+		return numGoTrials;
+	}
+	
+	/**
+	 * Returns the number of good stimuli that were tapped.
+	 * 
+	 * @return The number of tapped good stimuli.
+	 */
+	public int getNumGoHits()
+	{
+		return numGoHits;
+	}
+	
+	/**
+	 * Returns the number of times the bad stimulus was shown.
+	 * 
+	 * @return The number of bad stimuli.
+	 */
+	public int getNumNoGoTrials()
+	{
+		return numNoGoTrials;
+	}
+	
+	/**
+	 * Returns the number of times the bad stimulus was tapped.
+	 * 
+	 * @return The number of tapped bad stimuli.
+	 */
+	public int getNumNoGoHits()
+	{
+		return numNoGoHits;
+	}
+	
+	/**
+	 * Returns the mean GO RT.
+	 * 
+	 * @return The mean GO RT or 0 if no good stimulus was tapped.
+	 */
+	public double getGoRtMean()
+	{
+		return goRtMean;
+	}
+	
+	/**
+	 * Returns the sample variance of the GO RTs.
+	 * 
+	 * @return The variance or 0 if fewer than two good stimuli were tapped.
+	 */
+	public double getGoRtVariance()
+	{
+		if(numGoHits < 2)
+		{
+			return 0.0;
+		}
+		return goRtSumSquares / (numGoHits - 1);
+	}
+	
+	/**
+	 * Returns the sample standard deviation of the GO RTs.
+	 * 
+	 * @return The standard deviation or 0 if fewer than two good stimuli were
+	 * 		   tapped.
+	 */
+	public double getGoRtStandardDeviation()
+	{
+		return Math.sqrt(getGoRtVariance());
+	}
+	
+	/**
+	 * Returns half the width of the 95% confidence interval of the mean GO
+	 * RT.
+	 * 
+	 * @return The precision in milliseconds or positive infinity if fewer
+	 * 		   than two good stimuli were tapped.
+	 */
+	public double getGoRtPrecision()
+	{
+		if(numGoHits < 2)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		return CONFIDENCE_Z * Math.sqrt(getGoRtVariance() / numGoHits);
+	}
+	
+	/**
+	 * Returns the median GO RT.
+	 * 
+	 * @return The median or NaN if no good stimulus was tapped.
+	 */
+	public double getGoRtMedian()
+	{
+		return goRtMedian.getValue();
+	}
+	
+	/**
+	 * Returns the 90th percentile of the GO RTs.
+	 * 
+	 * @return The 90th percentile or NaN if no good stimulus was tapped.
+	 */
+	public double getGoRtP90()
+	{
+		return goRtP90.getValue();
+	}
+	
+	/**
+	 * Returns the fraction of bad stimuli that were tapped.
+	 * 
+	 * @return The commission rate or 0 if the bad stimulus was never shown.
+	 */
+	public double getCommissionRate()
+	{
+		if(numNoGoTrials == 0)
+		{
+			return 0.0;
+		}
+		return ((double) numNoGoHits) / numNoGoTrials;
+	}
+	
+	/**
+	 * Returns the fraction of good stimuli that were not tapped.
+	 * 
+	 * @return The omission rate or 0 if no good stimulus was shown.
+	 */
+	public double getOmissionRate()
+	{
+		if(numGoTrials == 0)
+		{
+			return 0.0;
+		}
+		return ((double) (numGoTrials - numGoHits)) / numGoTrials;
+	}
+	
+	/**
+	 * Returns the percentage of bad stimuli that were not tapped.
+	 * 
+	 * @return The % inhibition or 100 if the bad stimulus was never shown.
+	 */
+	public double getPercentInhibition()
+	{
+		return 100.0 * (1.0 - getCommissionRate());
+	}
+	
+	/**
+	 * Returns half the width of the 95% Agresti-Coull confidence interval of
+	 * the % inhibition.
+	 * 
+	 * @return The precision in percentage points. It is 50 if the bad
+	 * 		   stimulus was never shown.
+	 */
+	public double getInhibitionPrecision()
+	{
+		double z2 = CONFIDENCE_Z * CONFIDENCE_Z;
+		double n = numNoGoTrials + z2;
+		double p = ((numNoGoTrials - numNoGoHits) + (z2 / 2.0)) / n;
+		return 100.0 * CONFIDENCE_Z * Math.sqrt((p * (1.0 - p)) / n);
+	}
+	
+	/**
+	 * Returns the sensitivity, d', of the responses.
+	 * 
+	 * @return z(hit rate) - z(false alarm rate).
+	 */
+	public double getDPrime()
+	{
+		return inverseNormal(getCorrectedHitRate()) - inverseNormal(getCorrectedFalseAlarmRate());
+	}
+	
+	/**
+	 * Returns the response bias, c, of the responses. Negative values mean a
+	 * tendency to tap.
+	 * 
+	 * @return -(z(hit rate) + z(false alarm rate)) / 2.
+	 */
+	public double getCriterion()
+	{
+		return -(inverseNormal(getCorrectedHitRate()) + inverseNormal(getCorrectedFalseAlarmRate())) / 2.0;
+	}
+	
+	/**
+	 * Returns the log-linear corrected rate of tapping a good stimulus.
+	 */
+	private double getCorrectedHitRate()
+	{
+		return (numGoHits + 0.5) / (numGoTrials + 1.0);
+	}
+	
+	/**
+	 * Returns the log-linear corrected rate of tapping the bad stimulus.
+	 */
+	private double getCorrectedFalseAlarmRate()
+	{
+		return (numNoGoHits + 0.5) / (numNoGoTrials + 1.0);
+	}
+	
+	/**
+	 * Returns the quantile function of the standard normal distribution
+	 * using Acklam's rational approximation, which has a relative error of
+	 * less than 1.15e-9.
+	 * 
+	 * @param p A probability between 0 and 1 exclusive.
+	 * 
+	 * @return The z-score whose lower tail probability is p.
+	 */
+	public static double inverseNormal(double p)
+	{
+		if(p <= 0.0)
+		{
+			return Double.NEGATIVE_INFINITY;
+		}
+		else if(p >= 1.0)
+		{
+			return Double.POSITIVE_INFINITY;
+		}
+		
+		final double a1 = -3.969683028665376e+01, a2 = 2.209460984245205e+02,
+					 a3 = -2.759285104469687e+02, a4 = 1.383577518672690e+02,
+					 a5 = -3.066479806614716e+01, a6 = 2.506628277459239e+00;
+		final double b1 = -5.447609879822406e+01, b2 = 1.615858368580409e+02,
+					 b3 = -1.556989798598866e+02, b4 = 6.680131188771972e+01,
+					 b5 = -1.328068155288572e+01;
+		final double c1 = -7.784894002430293e-03, c2 = -3.223964580411365e-01,
+					 c3 = -2.400758277161838e+00, c4 = -2.549732539343734e+00,
+					 c5 = 4.374664141464968e+00, c6 = 2.938163982698783e+00;
+		final double d1 = 7.784695709041462e-03, d2 = 3.224671290700398e-01,
+					 d3 = 2.445134137142996e+00, d4 = 3.754408661907416e+00;
+		final double pLow = 0.02425;
+		
+		if(p < pLow)
+		{
+			double q = Math.sqrt(-2 * Math.log(p));
+			return (((((c1 * q + c2) * q + c3) * q + c4) * q + c5) * q + c6) /
+				   ((((d1 * q + d2) * q + d3) * q + d4) * q + 1);
+		}
+		else if(p <= (1 - pLow))
+		{
+			double q = p - 0.5;
+			double r = q * q;
+			return (((((a1 * r + a2) * r + a3) * r + a4) * r + a5) * r + a6) * q /
+				   (((((b1 * r + b2) * r + b3) * r + b4) * r + b5) * r + 1);
+		}
+		else
+		{
+			double q = Math.sqrt(-2 * Math.log(1 - p));
+			return -(((((c1 * q + c2) * q + c3) * q + c4) * q + c5) * q + c6) /
+					((((d1 * q + d2) * q + d3) * q + d4) * q + 1);
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package edu.ucla.cens.FocusGame;
+
+import android.net.Uri;
+
+/**
+ * The names of everything that the SessionProvider exposes. Callers outside
+ * of this application should use these rather than their literal values.
+ * 
+ * There is one row in "sessions" for each game that was played to the end,
+ * or that was recovered from its TrialJournal after it was cut short, and
+ * one row in "trials" for each stimulus that was shown in it. Sessions
+ * are indexed by participant, game type, and start time and trials by their
+ * session, so filtering on those is cheap.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public final class SessionContract
+{
+	public static final String AUTHORITY = "edu.ucla.cens.FocusGame.sessions";
+	
+	public static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY);
+	
+	// The permission that is required to read from the provider.
+	public static final String PERMISSION_READ = "edu.ucla.cens.FocusGame.permission.READ_SESSIONS";
+	
+	/**
+	 * One row per game.
+	 * 
+	 * @author John Jenkins
+	 * @version 1.0
+	 */
+	public static final class Sessions
+	{
+		public static final String TABLE = "sessions";
+		
+		public static final Uri CONTENT_URI = Uri.withAppendedPath(SessionContract.CONTENT_URI, TABLE);
+		
+		public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.edu.ucla.cens.FocusGame.session";
+		public static final String CONTENT_ITEM_TYPE = "vnd.android.cursor.item/vnd.edu.ucla.cens.FocusGame.session";
+		
+		public static final String _ID = "_id";
+		public static final String PARTICIPANT = "participant";
+		public static final String GAME_TYPE = "game_type";
+		// Wall-clock milliseconds since the epoch.
+		public static final String STARTED = "started";
+		public static final String DURATION_MILLIS = "duration_ms";
+		public static final String GOOD_HITS = "good_hits";
+		public static final String BAD_HITS = "bad_hits";
+		public static final String GOOD_MISSES = "good_misses";
+		public static final String BAD_SKIPS = "bad_skips";
+		public static final String REPEAT_TAPS = "repeat_taps";
+		public static final String OFF_STIMULUS_TAPS = "off_stimulus_taps";
+		public static final String SCORE = "score";
+		public static final String GO_RT_SD = "go_rt_sd";
+		public static final String GO_RT_MEDIAN = "go_rt_median";
+		public static final String GO_RT_P90 = "go_rt_p90";
+		public static final String COMMISSION_RATE = "commission_rate";
+		public static final String OMISSION_RATE = "omission_rate";
+		public static final String PERCENT_INHIBITION = "percent_inhibition";
+		public static final String D_PRIME = "d_prime";
+		public static final String CRITERION = "criterion";
+		// The TimingStats summary as JSON.
+		public static final String TIMING = "timing";
+		// The seed that the game's trials were laid out from.
+		public static final String SEED = "seed";
+		// 1 if the session was rebuilt from its TrialJournal the next time the
+		// app was launched, in which case the taps that didn't respond to a
+		// stimulus and the timing are unknown.
+		public static final String RECOVERED = "recovered";
+		// The PerformanceStats summary as JSON.
+		public static final String PERFORMANCE = "performance";
+		// The device's touch latency and its standard deviation in
+		// milliseconds, from the Calibration, or null if it hadn't been
+		// calibrated. The trials are as they were measured, not corrected.
+		// The latency is biased low by how far ahead of the beat whoever
+		// calibrated the device tapped; see LatencyCalibration.
+		public static final String LATENCY_MS = "latency_ms";
+		public static final String LATENCY_SD_MS = "latency_sd_ms";
+		
+		/**
+		 * Returns the Uri of a session's trials.
+		 * 
+		 * @param sessionId The session's _ID.
+		 * 
+		 * @return The Uri of its trials.
+		 */
+		public static Uri getTrialsUri(long sessionId)
+		{
+			return Uri.withAppendedPath(Uri.withAppendedPath(CONTENT_URI, Long.toString(sessionId)), Trials.TABLE);
+		}
+		
+		private Sessions()
+		{
+			// Only constants.
+		}
+	}
+	
+	/**
+	 * One row per stimulus shown.
+	 * 
+	 * @author John Jenkins
+	 * @version 1.0
+	 */
+	public static final class Trials
+	{
+		public static final String TABLE = "trials";
+		
+		public static final Uri CONTENT_URI = Uri.withAppendedPath(SessionContract.CONTENT_URI, TABLE);
+		
+		public static final String CONTENT_TYPE = "vnd.android.cursor.dir/vnd.edu.ucla.cens.FocusGame.trial";
+		
+		public static final String _ID = "_id";
+		public static final String SESSION_ID = "session_id";
+		// The trial's position within its session starting at 0.
+		public static final String TRIAL_INDEX = "trial_index";
+		public static final String STIMULUS = "stimulus";
+		public static final String NO_GO = "no_go";
+		public static final String ROUND = "round";
+		// Milliseconds since the session's first onset.
+		public static final String ONSET_MILLIS = "onset_ms";
+		// Milliseconds between the onset and the response or, if there was
+		// none, the end of the trial.
+		public static final String RESPONSE_MILLIS = "response_ms";
+		// The TrialLog.FLAG_* values.
+		public static final String FLAGS = "flags";
+		
+		private Trials()
+		{
+			// Only constants.
+		}
+	}
+	
+	private SessionContract()
+	{
+		// Only constants.
+	}
+}
@@ -0,0 +1,153 @@
+package edu.ucla.cens.FocusGame;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.net.Uri;
+
+import edu.ucla.cens.FocusGame.SessionContract.Sessions;
+import edu.ucla.cens.FocusGame.SessionContract.Trials;
+
+/**
+ * Exposes the SessionStore to other applications read-only. The Uris are:
+ * 
+ * sessions - Every session. Filter with a selection on the participant, game
+ * 			  type, or start time, which are all indexed.
+ * sessions/# - One session.
+ * sessions/#/trials - One session's trials in order.
+ * trials - Every trial. Filter with a selection on the session's _ID.
+ * 
+ * The Cursors are the database's own, so the rows are read a window at a
+ * time as the caller moves through them rather than all being copied into
+ * one reply.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class SessionProvider extends ContentProvider
+{
+	private static final int SESSIONS = 1;
+	private static final int SESSION = 2;
+	private static final int SESSION_TRIALS = 3;
+	private static final int TRIALS = 4;
+	
+	private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+	static
+	{
+		URI_MATCHER.addURI(SessionContract.AUTHORITY, Sessions.TABLE, SESSIONS);
+		URI_MATCHER.addURI(SessionContract.AUTHORITY, Sessions.TABLE + "/#", SESSION);
+		URI_MATCHER.addURI(SessionContract.AUTHORITY, Sessions.TABLE + "/#/" + Trials.TABLE, SESSION_TRIALS);
+		URI_MATCHER.addURI(SessionContract.AUTHORITY, Trials.TABLE, TRIALS);
+	}
+	
+	private SessionStore store;
+	
+	/**
+	 * Gets the store but doesn't open the database.
+	 */
+	@Override
+	public boolean onCreate()
+	{
+		store = SessionStore.getInstance(getContext());
+		return true;
+	}
+	
+	/**
+	 * Queries the sessions or trials depending on the Uri.
+	 */
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder)
+	{
+		SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+		String defaultOrder;
+		
+		switch(URI_MATCHER.match(uri))
+		{
+		case SESSIONS:
+			builder.setTables(Sessions.TABLE);
+			defaultOrder = Sessions.STARTED;
+			break;
+			
+		case SESSION:
+			builder.setTables(Sessions.TABLE);
+			builder.appendWhere(Sessions._ID + " = " + Long.parseLong(uri.getPathSegments().get(1)));
+			defaultOrder = null;
+			break;
+			
+		case SESSION_TRIALS:
+			builder.setTables(Trials.TABLE);
+			builder.appendWhere(Trials.SESSION_ID + " = " + Long.parseLong(uri.getPathSegments().get(1)));
+			defaultOrder = Trials.TRIAL_INDEX;
+			break;
+			
+		case TRIALS:
+			builder.setTables(Trials.TABLE);
+			defaultOrder = Trials.SESSION_ID + ", " + Trials.TRIAL_INDEX;
+			break;
+			
+		default:
+			throw new IllegalArgumentException("Unknown Uri: " + uri);
+		}
+		
+		return builder.query(
+				store.getReadableDatabase(),
+				projection,
+				selection,
+				selectionArgs,
+				null,
+				null,
+				(sortOrder == null) ? defaultOrder : sortOrder);
+	}
+	
+	/**
+	 * Returns the MIME type of the rows at the Uri.
+	 */
+	@Override
+	public String getType(Uri uri)
+	{
+		switch(URI_MATCHER.match(uri))
+		{
+		case SESSIONS:
+			return Sessions.CONTENT_TYPE;
+			
+		case SESSION:
+			return Sessions.CONTENT_ITEM_TYPE;
+			
+		case SESSION_TRIALS:
+		case TRIALS:
+			return Trials.CONTENT_TYPE;
+			
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Sessions are only ever written by the game itself.
+	 */
+	@Override
+	public Uri insert(Uri uri, ContentValues values)
+	{
+		throw new UnsupportedOperationException("The sessions are read-only.");
+	}
+	
+	/**
+	 * Sessions are only ever written by the game itself.
+	 */
+	@Override
+	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs)
+	{
+		throw new UnsupportedOperationException("The sessions are read-only.");
+	}
+	
+	/**
+	 * Sessions are only ever written by the game itself.
+	 */
+	@Override
+	public int delete(Uri uri, String selection, String[] selectionArgs)
+	{
+		throw new UnsupportedOperationException("The sessions are read-only.");
+	}
+}
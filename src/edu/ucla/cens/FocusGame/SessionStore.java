@@ -0,0 +1,591 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.os.Process;
+import android.util.Log;
+
+import edu.ucla.cens.FocusGame.SessionContract.Sessions;
+import edu.ucla.cens.FocusGame.SessionContract.Trials;
+
+/**
+ * The on-device database of every game that was played to the end. It is
+ * written to by the Game Activity and read through the SessionProvider.
+ * 
+ * Sessions are saved on a background thread, each in a single transaction
+ * with its trials inserted through one compiled statement, so the UI thread
+ * never touches the disk.
+ * 
+ * If uploads are set up, each session is also added to an outbox in the same
+ * transaction and the UploadService is started once it is saved. The outbox
+ * holds each session's upload JSON until the server has accepted it. Sessions
+ * are claimed from it in batches under a batch ID that is kept until the
+ * batch is accepted, so a retried batch always has the same ID and sessions.
+ * 
+ * A game's TrialJournal is deleted once its session is saved. Journals that
+ * are left behind, by games that were cut short, are rebuilt into sessions
+ * by recoverAsync() on the same thread, so they are always handled after any
+ * save that was already waiting.
+ * 
+ * There is one store per process.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class SessionStore extends SQLiteOpenHelper
+{
+	private static final String TAG = "FocusGame.SessionStore";
+	
+	private static final String DATABASE_NAME = "sessions.db";
+	private static final int DATABASE_VERSION = 2;
+	
+	// The sessions that are waiting to be uploaded.
+	private static final String OUTBOX = "outbox";
+	private static final String OUTBOX_ID = "_id";
+	private static final String OUTBOX_SESSION_ID = "session_id";
+	private static final String OUTBOX_BATCH_ID = "batch_id";
+	private static final String OUTBOX_PAYLOAD = "payload";
+	
+	private static final String CLAIM_BATCH =
+		"UPDATE " + OUTBOX + " SET " + OUTBOX_BATCH_ID + " = ? WHERE " + OUTBOX_ID + " IN " +
+			"(SELECT " + OUTBOX_ID + " FROM " + OUTBOX + " WHERE " + OUTBOX_BATCH_ID + " IS NULL ORDER BY " + OUTBOX_ID + " LIMIT ?)";
+	
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	private static final String INSERT_TRIAL =
+		"INSERT INTO " + Trials.TABLE + " (" +
+			Trials.SESSION_ID + ", " +
+			Trials.TRIAL_INDEX + ", " +
+			Trials.STIMULUS + ", " +
+			Trials.NO_GO + ", " +
+			Trials.ROUND + ", " +
+			Trials.ONSET_MILLIS + ", " +
+			Trials.RESPONSE_MILLIS + ", " +
+			Trials.FLAGS +
+		") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+	
+	private static SessionStore instance;
+	
+	private final Context context;
+	private final ExecutorService executor;
+	
+	/**
+	 * Returns the process' store, creating it if necessary. The database
+	 * itself isn't opened until it is first used.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return The store.
+	 */
+	public static synchronized SessionStore getInstance(Context context)
+	{
+		if(instance == null)
+		{
+			instance = new SessionStore(context.getApplicationContext());
+		}
+		return instance;
+	}
+	
+	/**
+	 * Creates the store and the thread that writes to it.
+	 * 
+	 * @param context The application's Context.
+	 */
+	private SessionStore(Context context)
+	{
+		super(context, DATABASE_NAME, null, DATABASE_VERSION);
+		
+		this.context = context;
+		
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			/**
+			 * Creates a daemon thread that runs below the UI thread's priority
+			 * so that it never competes with it.
+			 */
+			@Override
+			public Thread newThread(final Runnable runnable)
+			{
+				Thread thread = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, "SessionStore");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Creates the tables and their indices.
+	 */
+	@Override
+	public void onCreate(SQLiteDatabase db)
+	{
+		db.execSQL("CREATE TABLE " + Sessions.TABLE + " (" +
+			Sessions._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+			Sessions.PARTICIPANT + " TEXT, " +
+			Sessions.GAME_TYPE + " TEXT NOT NULL, " +
+			Sessions.STARTED + " INTEGER NOT NULL, " +
+			Sessions.DURATION_MILLIS + " INTEGER, " +
+			Sessions.GOOD_HITS + " INTEGER, " +
+			Sessions.BAD_HITS + " INTEGER, " +
+			Sessions.GOOD_MISSES + " INTEGER, " +
+			Sessions.BAD_SKIPS + " INTEGER, " +
+			Sessions.REPEAT_TAPS + " INTEGER, " +
+			Sessions.OFF_STIMULUS_TAPS + " INTEGER, " +
+			Sessions.SCORE + " REAL, " +
+			Sessions.GO_RT_SD + " REAL, " +
+			Sessions.GO_RT_MEDIAN + " REAL, " +
+			Sessions.GO_RT_P90 + " REAL, " +
+			Sessions.COMMISSION_RATE + " REAL, " +
+			Sessions.OMISSION_RATE + " REAL, " +
+			Sessions.PERCENT_INHIBITION + " REAL, " +
+			Sessions.D_PRIME + " REAL, " +
+			Sessions.CRITERION + " REAL, " +
+			Sessions.TIMING + " TEXT, " +
+			Sessions.SEED + " INTEGER, " +
+			Sessions.RECOVERED + " INTEGER, " +
+			Sessions.PERFORMANCE + " TEXT, " +
+			Sessions.LATENCY_MS + " REAL, " +
+			Sessions.LATENCY_SD_MS + " REAL)");
+		db.execSQL("CREATE INDEX sessions_participant ON " + Sessions.TABLE + " (" + Sessions.PARTICIPANT + ", " + Sessions.STARTED + ")");
+		db.execSQL("CREATE INDEX sessions_game_type ON " + Sessions.TABLE + " (" + Sessions.GAME_TYPE + ", " + Sessions.STARTED + ")");
+		db.execSQL("CREATE INDEX sessions_started ON " + Sessions.TABLE + " (" + Sessions.STARTED + ")");
+		
+		db.execSQL("CREATE TABLE " + Trials.TABLE + " (" +
+			Trials._ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+			Trials.SESSION_ID + " INTEGER NOT NULL REFERENCES " + Sessions.TABLE + " (" + Sessions._ID + "), " +
+			Trials.TRIAL_INDEX + " INTEGER NOT NULL, " +
+			Trials.STIMULUS + " TEXT NOT NULL, " +
+			Trials.NO_GO + " INTEGER NOT NULL, " +
+			Trials.ROUND + " INTEGER NOT NULL, " +
+			Trials.ONSET_MILLIS + " REAL NOT NULL, " +
+			Trials.RESPONSE_MILLIS + " REAL NOT NULL, " +
+			Trials.FLAGS + " INTEGER NOT NULL)");
+		db.execSQL("CREATE UNIQUE INDEX trials_session ON " + Trials.TABLE + " (" + Trials.SESSION_ID + ", " + Trials.TRIAL_INDEX + ")");
+		
+		createOutbox(db);
+	}
+	
+	/**
+	 * Creates the outbox and its index.
+	 * 
+	 * @param db The database.
+	 */
+	private static void createOutbox(SQLiteDatabase db)
+	{
+		db.execSQL("CREATE TABLE " + OUTBOX + " (" +
+			OUTBOX_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, " +
+			OUTBOX_SESSION_ID + " INTEGER NOT NULL, " +
+			OUTBOX_BATCH_ID + " TEXT, " +
+			OUTBOX_PAYLOAD + " BLOB NOT NULL)");
+		db.execSQL("CREATE INDEX outbox_batch ON " + OUTBOX + " (" + OUTBOX_BATCH_ID + ")");
+	}
+	
+	/**
+	 * Brings an older database up to date.
+	 */
+	@Override
+	public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion)
+	{
+		// Version 2 added the seed, whether or not the session was recovered,
+		// the performance summary, the device's touch latency, and the
+		// outbox. Sessions saved before it are not uploaded.
+		if(oldVersion < 2)
+		{
+			db.execSQL("ALTER TABLE " + Sessions.TABLE + " ADD COLUMN " + Sessions.SEED + " INTEGER");
+			db.execSQL("ALTER TABLE " + Sessions.TABLE + " ADD COLUMN " + Sessions.RECOVERED + " INTEGER");
+			db.execSQL("ALTER TABLE " + Sessions.TABLE + " ADD COLUMN " + Sessions.PERFORMANCE + " TEXT");
+			db.execSQL("ALTER TABLE " + Sessions.TABLE + " ADD COLUMN " + Sessions.LATENCY_MS + " REAL");
+			db.execSQL("ALTER TABLE " + Sessions.TABLE + " ADD COLUMN " + Sessions.LATENCY_SD_MS + " REAL");
+			createOutbox(db);
+		}
+	}
+	
+	/**
+	 * Saves a session and its trials on the background thread, adding it to
+	 * the outbox and starting the upload if uploads are set up. This returns
+	 * immediately.
+	 * 
+	 * @param session The session's columns from SessionContract.Sessions. It
+	 * 				  must not be changed afterwards.
+	 * 
+	 * @param trials The session's trials. It must not be changed afterwards.
+	 * 
+	 * @param names The name of each stimulus, indexed by its identifier.
+	 */
+	public void saveAsync(ContentValues session, TrialLog trials, String[] names)
+	{
+		saveAsync(session, trials, names, null);
+	}
+	
+	/**
+	 * Saves a session and its trials on the background thread, adding it to
+	 * the outbox and starting the upload if uploads are set up, then deletes
+	 * its journal. If it can't be saved, the journal is kept so that the
+	 * session is recovered the next time the app is launched. This returns
+	 * immediately.
+	 * 
+	 * @param session The session's columns from SessionContract.Sessions. It
+	 * 				  must not be changed afterwards.
+	 * 
+	 * @param trials The session's trials. It must not be changed afterwards.
+	 * 
+	 * @param names The name of each stimulus, indexed by its identifier.
+	 * 
+	 * @param journal The session's journal, which must have been finished,
+	 * 				  or null if it has none.
+	 */
+	public void saveAsync(final ContentValues session, final TrialLog trials, final String[] names, final TrialJournal journal)
+	{
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				boolean upload = UploadService.isConfigured(context);
+				try
+				{
+					save(session, trials, names, upload);
+				}
+				catch(SQLiteException e)
+				{
+					Log.e(TAG, "Error while saving the session.", e);
+					return;
+				}
+				
+				if(journal != null)
+				{
+					journal.delete();
+				}
+				
+				if(upload)
+				{
+					UploadService.start(context);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Rebuilds a session from each journal in a directory that isn't being
+	 * written by this process, saves it as recovered, and deletes the journal,
+	 * all on the background thread. Journals that can't be read, or that don't
+	 * have any trials, are deleted without saving anything. This returns
+	 * immediately.
+	 * 
+	 * @param directory The directory of the journals.
+	 * 
+	 * @param loader The loader of the stimulus sets that the journals refer
+	 * 				 to by name.
+	 */
+	public void recoverAsync(final File directory, final StimulusLoader loader)
+	{
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				boolean upload = UploadService.isConfigured(context);
+				int numRecovered = 0;
+				for(File file : TrialJournal.getRecoverable(directory))
+				{
+					ContentValues session = null;
+					TrialJournal.Recovered journal = null;
+					StimulusSet stimulusSet = null;
+					try
+					{
+						journal = TrialJournal.read(file);
+						stimulusSet = loader.getCatalog().getSet(journal.getGameType());
+						session = getRecoveredSession(journal, stimulusSet);
+					}
+					catch(IOException e)
+					{
+						Log.w(TAG, "The journal could not be read: " + file, e);
+					}
+					
+					if(session != null)
+					{
+						try
+						{
+							save(session, journal.getTrials(), stimulusSet.getStimulusNames(), upload);
+						}
+						catch(SQLiteException e)
+						{
+							Log.e(TAG, "Error while saving a recovered session.", e);
+							return;
+						}
+						numRecovered++;
+					}
+					else
+					{
+						Log.w(TAG, "Discarding a journal that can't be recovered: " + file);
+					}
+					
+					if(! file.delete())
+					{
+						Log.w(TAG, "The journal could not be deleted: " + file);
+					}
+				}
+				
+				if(numRecovered > 0)
+				{
+					Log.i(TAG, "Recovered " + numRecovered + " sessions.");
+					if(upload)
+					{
+						UploadService.start(context);
+					}
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Builds the columns of a recovered session, scoring its trials the same
+	 * way the game does.
+	 * 
+	 * @param journal The journal that was read back.
+	 * 
+	 * @param stimulusSet The journal's stimulus set or null if there isn't
+	 * 					  one by its name anymore.
+	 * 
+	 * @return The session's columns or null if it has no trials or they
+	 * 		   don't fit the stimulus set.
+	 */
+	private static ContentValues getRecoveredSession(TrialJournal.Recovered journal, StimulusSet stimulusSet)
+	{
+		TrialLog trials = journal.getTrials();
+		if((stimulusSet == null) || (trials.size() == 0))
+		{
+			return null;
+		}
+		int numStimuli = stimulusSet.getStimulusNames().length;
+		for(int i = 0; i < trials.size(); i++)
+		{
+			if((trials.getStimulus(i) < 0) || (trials.getStimulus(i) >= numStimuli))
+			{
+				return null;
+			}
+		}
+		
+		ScoreAggregator scores = new ScoreAggregator();
+		scores.addAll(trials);
+		
+		ContentValues session = new ContentValues();
+		session.put(Sessions.PARTICIPANT, journal.getParticipant());
+		session.put(Sessions.GAME_TYPE, journal.getGameType());
+		session.put(Sessions.STARTED, journal.getStartedMillis());
+		session.put(Sessions.DURATION_MILLIS, (trials.getResponseNanos(trials.size() - 1) - journal.getStartedNanos()) / 1000000L);
+		session.put(Sessions.GOOD_HITS, scores.getNumGoHits());
+		session.put(Sessions.BAD_HITS, scores.getNumNoGoHits());
+		session.put(Sessions.GOOD_MISSES, scores.getNumGoTrials() - scores.getNumGoHits());
+		session.put(Sessions.BAD_SKIPS, scores.getNumNoGoTrials() - scores.getNumNoGoHits());
+		session.put(Sessions.REPEAT_TAPS, journal.getNumRepeatTaps());
+		session.put(Sessions.OFF_STIMULUS_TAPS, journal.getNumOffStimulusTaps());
+		session.put(Sessions.SCORE, scores.getGoRtMean());
+		session.put(Sessions.GO_RT_SD, scores.getGoRtStandardDeviation());
+		session.put(Sessions.GO_RT_MEDIAN, scores.getGoRtMedian());
+		session.put(Sessions.GO_RT_P90, scores.getGoRtP90());
+		session.put(Sessions.COMMISSION_RATE, scores.getCommissionRate());
+		session.put(Sessions.OMISSION_RATE, scores.getOmissionRate());
+		session.put(Sessions.PERCENT_INHIBITION, scores.getPercentInhibition());
+		session.put(Sessions.D_PRIME, scores.getDPrime());
+		session.put(Sessions.CRITERION, scores.getCriterion());
+		session.put(Sessions.SEED, journal.getSeed());
+		session.put(Sessions.RECOVERED, 1);
+		return session;
+	}
+	
+	/**
+	 * Saves a session and its trials in one transaction on the calling
+	 * thread.
+	 * 
+	 * @param session The session's columns from SessionContract.Sessions.
+	 * 
+	 * @param trials The session's trials.
+	 * 
+	 * @param names The name of each stimulus, indexed by its identifier.
+	 * 
+	 * @param upload Whether or not to add the session to the outbox.
+	 * 
+	 * @return The session's _ID.
+	 * 
+	 * @throws SQLiteException The session couldn't be saved.
+	 */
+	public long save(ContentValues session, TrialLog trials, String[] names, boolean upload)
+	{
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try
+		{
+			long sessionId = db.insertOrThrow(Sessions.TABLE, null, session);
+			
+			SQLiteStatement insert = db.compileStatement(INSERT_TRIAL);
+			try
+			{
+				long firstOnset = (trials.size() == 0) ? 0 : trials.getOnsetNanos(0);
+				for(int i = 0; i < trials.size(); i++)
+				{
+					insert.bindLong(1, sessionId);
+					insert.bindLong(2, i);
+					insert.bindString(3, names[trials.getStimulus(i)]);
+					insert.bindLong(4, trials.isNoGo(i) ? 1 : 0);
+					insert.bindLong(5, trials.getRound(i));
+					insert.bindDouble(6, (trials.getOnsetNanos(i) - firstOnset) / NANOS_PER_MILLI);
+					insert.bindDouble(7, trials.getElapsedNanos(i) / NANOS_PER_MILLI);
+					insert.bindLong(8, trials.getFlags(i));
+					insert.executeInsert();
+				}
+			}
+			finally
+			{
+				insert.close();
+			}
+			
+			if(upload)
+			{
+				Map<String, Object> columns = new LinkedHashMap<String, Object>();
+				columns.put(Sessions._ID, sessionId);
+				for(Map.Entry<String, Object> column : session.valueSet())
+				{
+					columns.put(column.getKey(), column.getValue());
+				}
+				
+				ContentValues outbox = new ContentValues();
+				outbox.put(OUTBOX_SESSION_ID, sessionId);
+				outbox.put(OUTBOX_PAYLOAD, UploadBatch.encodeSession(columns, trials, names));
+				db.insertOrThrow(OUTBOX, null, outbox);
+			}
+			
+			db.setTransactionSuccessful();
+			return sessionId;
+		}
+		finally
+		{
+			db.endTransaction();
+		}
+	}
+	
+	/**
+	 * Returns the batch to upload next. A batch that was claimed before but
+	 * not yet accepted comes first, so that it is retried with the same ID
+	 * and sessions. Otherwise, the oldest sessions in the outbox are claimed
+	 * under a new ID.
+	 * 
+	 * @param maxSessions The most sessions to claim for a new batch.
+	 * 
+	 * @return The batch's ID or null if the outbox is empty.
+	 * 
+	 * @throws SQLiteException The outbox couldn't be read or written.
+	 */
+	public String claimBatch(int maxSessions)
+	{
+		SQLiteDatabase db = getWritableDatabase();
+		db.beginTransaction();
+		try
+		{
+			String batchId = null;
+			Cursor claimed = db.query(OUTBOX, new String[] { OUTBOX_BATCH_ID }, OUTBOX_BATCH_ID + " IS NOT NULL", null, null, null, OUTBOX_ID, "1");
+			try
+			{
+				if(claimed.moveToFirst())
+				{
+					batchId = claimed.getString(0);
+				}
+			}
+			finally
+			{
+				claimed.close();
+			}
+			
+			if(batchId == null)
+			{
+				Cursor waiting = db.query(OUTBOX, new String[] { OUTBOX_ID }, OUTBOX_BATCH_ID + " IS NULL", null, null, null, null, "1");
+				try
+				{
+					if(waiting.moveToFirst())
+					{
+						batchId = UploadBatch.newBatchId();
+					}
+				}
+				finally
+				{
+					waiting.close();
+				}
+				
+				if(batchId != null)
+				{
+					db.execSQL(CLAIM_BATCH, new Object[] { batchId, maxSessions });
+				}
+			}
+			
+			db.setTransactionSuccessful();
+			return batchId;
+		}
+		finally
+		{
+			db.endTransaction();
+		}
+	}
+	
+	/**
+	 * Returns the upload JSON of every session in a batch.
+	 * 
+	 * @param batchId The batch's ID.
+	 * 
+	 * @return The sessions' JSON in the order they were saved.
+	 * 
+	 * @throws SQLiteException The outbox couldn't be read.
+	 */
+	public List<byte[]> getBatch(String batchId)
+	{
+		List<byte[]> payloads = new ArrayList<byte[]>();
+		Cursor cursor = getReadableDatabase().query(OUTBOX, new String[] { OUTBOX_PAYLOAD }, OUTBOX_BATCH_ID + " = ?", new String[] { batchId }, null, null, OUTBOX_ID);
+		try
+		{
+			while(cursor.moveToNext())
+			{
+				payloads.add(cursor.getBlob(0));
+			}
+		}
+		finally
+		{
+			cursor.close();
+		}
+		return payloads;
+	}
+	
+	/**
+	 * Removes a batch from the outbox once it no longer needs to be sent. The
+	 * sessions themselves are kept.
+	 * 
+	 * @param batchId The batch's ID.
+	 * 
+	 * @throws SQLiteException The outbox couldn't be written.
+	 */
+	public void removeBatch(String batchId)
+	{
+		getWritableDatabase().delete(OUTBOX, OUTBOX_BATCH_ID + " = ?", new String[] { batchId });
+	}
+}
@@ -0,0 +1,116 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * The decoded stimulus atlas and the index of where each image is within it,
+ * as generated by the AtlasPacker tool.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class StimulusAtlas
+{
+	private final Bitmap bitmap;
+	private final Map<String, Rect> regions;
+	
+	/**
+	 * Creates an atlas from its Bitmap and its index.
+	 * 
+	 * @param bitmap The decoded atlas.
+	 * 
+	 * @param index The index's text. It is not closed.
+	 * 
+	 * @throws IOException The index could not be read or is malformed.
+	 */
+	public StimulusAtlas(Bitmap bitmap, Reader index) throws IOException
+	{
+		this.bitmap = bitmap;
+		
+		regions = new HashMap<String, Rect>();
+		
+		BufferedReader reader = new BufferedReader(index);
+		String line;
+		while((line = reader.readLine()) != null)
+		{
+			line = line.trim();
+			if((line.length() == 0) || line.startsWith("#"))
+			{
+				continue;
+			}
+			
+			String[] fields = line.split("\\s+");
+			if(fields.length != 5)
+			{
+				throw new IOException("Malformed stimulus atlas index line: " + line);
+			}
+			
+			try
+			{
+				int left = Integer.parseInt(fields[1]);
+				int top = Integer.parseInt(fields[2]);
+				int width = Integer.parseInt(fields[3]);
+				int height = Integer.parseInt(fields[4]);
+				regions.put(fields[0], new Rect(left, top, left + width, top + height));
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IOException("Malformed stimulus atlas index line: " + line);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the decoded atlas.
+	 * 
+	 * @return The atlas' Bitmap.
+	 */
+	public Bitmap getBitmap()
+	{
+		return bitmap;
+	}
+	
+	/**
+	 * Creates a Drawable for one of the images in the atlas.
+	 * 
+	 * @param name The image's name.
+	 * 
+	 * @return A Drawable that draws the image from the shared Bitmap.
+	 * 
+	 * @throws IllegalArgumentException There is no such image in the atlas.
+	 */
+	public Drawable newDrawable(String name)
+	{
+		Rect region = regions.get(name);
+		if(region == null)
+		{
+			throw new IllegalArgumentException("The stimulus atlas has no image named: " + name);
+		}
+		return new AtlasDrawable(bitmap, region);
+	}
+	
+	/**
+	 * Creates a Drawable for every stimulus in a set.
+	 * 
+	 * @param set An image StimulusSet.
+	 * 
+	 * @return The Drawables indexed by the stimuli's identifiers.
+	 */
+	public Drawable[] newDrawables(StimulusSet set)
+	{
+		Drawable[] drawables = new Drawable[set.size()];
+		for(int i = 0; i < drawables.length; i++)
+		{
+			drawables[i] = newDrawable(set.getDisplay(i));
+		}
+		return drawables;
+	}
+}
@@ -0,0 +1,216 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every StimulusSet that is available, as read from a plain text catalog.
+ * The application's catalog is res/raw/stimuli.txt, so a new set of stimuli
+ * only needs a change to that file (and, for images, the stimulus atlas).
+ * 
+ * The catalog is line based. Blank lines and lines beginning with '#' are
+ * ignored. A set is declared with:
+ * 
+ * 	set NAME KIND
+ * 
+ * where KIND is "text" or "image". The lines that follow, until the next
+ * set, are its stimuli:
+ * 
+ * 	NAME go|nogo DISPLAY
+ * 
+ * or its blank, which is shown between stimuli:
+ * 
+ * 	blank DISPLAY
+ * 
+ * The display data is the text to draw or the name of the image in the atlas.
+ * If it is left off, the stimulus' name is used.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class StimulusCatalog
+{
+	private final Map<String, StimulusSet> sets;
+	
+	/**
+	 * Creates a catalog from some sets.
+	 * 
+	 * @param sets The sets in the order they were declared.
+	 */
+	private StimulusCatalog(Map<String, StimulusSet> sets)
+	{
+		this.sets = Collections.unmodifiableMap(sets);
+	}
+	
+	/**
+	 * Reads a catalog.
+	 * 
+	 * @param input The catalog's text. It is not closed.
+	 * 
+	 * @return The catalog.
+	 * 
+	 * @throws IOException The catalog could not be read or is malformed.
+	 */
+	public static StimulusCatalog read(Reader input) throws IOException
+	{
+		Map<String, StimulusSet> sets = new LinkedHashMap<String, StimulusSet>();
+		
+		BufferedReader reader = new BufferedReader(input);
+		StimulusSet.Builder builder = null;
+		int lineNumber = 0;
+		String line;
+		try
+		{
+			while((line = reader.readLine()) != null)
+			{
+				lineNumber++;
+				line = line.trim();
+				if((line.length() == 0) || line.startsWith("#"))
+				{
+					continue;
+				}
+				
+				String[] fields = line.split("\\s+");
+				if("set".equals(fields[0]))
+				{
+					if(fields.length != 3)
+					{
+						throw new IOException("Line " + lineNumber + ": expected 'set NAME KIND'.");
+					}
+					
+					add(sets, builder);
+					if(sets.containsKey(fields[1]))
+					{
+						throw new IOException("Line " + lineNumber + ": duplicate set '" + fields[1] + "'.");
+					}
+					builder = new StimulusSet.Builder(fields[1], parseKind(fields[2], lineNumber));
+				}
+				else if(builder == null)
+				{
+					throw new IOException("Line " + lineNumber + ": stimulus before any set.");
+				}
+				else if("blank".equals(fields[0]))
+				{
+					if(fields.length != 2)
+					{
+						throw new IOException("Line " + lineNumber + ": expected 'blank DISPLAY'.");
+					}
+					builder.setBlank(fields[1]);
+				}
+				else
+				{
+					if((fields.length < 2) || (fields.length > 3))
+					{
+						throw new IOException("Line " + lineNumber + ": expected 'NAME go|nogo [DISPLAY]'.");
+					}
+					
+					boolean noGo;
+					if("go".equals(fields[1]))
+					{
+						noGo = false;
+					}
+					else if("nogo".equals(fields[1]))
+					{
+						noGo = true;
+					}
+					else
+					{
+						throw new IOException("Line " + lineNumber + ": unknown class '" + fields[1] + "'.");
+					}
+					
+					builder.add(fields[0], (fields.length == 3) ? fields[2] : fields[0], noGo);
+				}
+			}
+			add(sets, builder);
+		}
+		catch(IllegalArgumentException e)
+		{
+			throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+		}
+		
+		return new StimulusCatalog(sets);
+	}
+	
+	/**
+	 * Returns a set.
+	 * 
+	 * @param name The set's name, ignoring case.
+	 * 
+	 * @return The set or null if there is no such set.
+	 */
+	public StimulusSet getSet(String name)
+	{
+		if(name == null)
+		{
+			return null;
+		}
+		
+		StimulusSet set = sets.get(name);
+		if(set == null)
+		{
+			for(StimulusSet curr : sets.values())
+			{
+				if(curr.getName().equalsIgnoreCase(name))
+				{
+					return curr;
+				}
+			}
+		}
+		return set;
+	}
+	
+	/**
+	 * Returns the first set in the catalog, which is used when no set is
+	 * asked for.
+	 * 
+	 * @return The default set.
+	 */
+	public StimulusSet getDefaultSet()
+	{
+		return sets.values().iterator().next();
+	}
+	
+	/**
+	 * Returns every set in the order they were declared.
+	 * 
+	 * @return The sets.
+	 */
+	public List<StimulusSet> getSets()
+	{
+		return new ArrayList<StimulusSet>(sets.values());
+	}
+	
+	/**
+	 * Builds a set and adds it to the map if there is one.
+	 */
+	private static void add(Map<String, StimulusSet> sets, StimulusSet.Builder builder)
+	{
+		if(builder != null)
+		{
+			StimulusSet set = builder.build();
+			sets.put(set.getName(), set);
+		}
+	}
+	
+	/**
+	 * Parses a set's kind.
+	 */
+	private static StimulusSet.Kind parseKind(String kind, int lineNumber) throws IOException
+	{
+		if("text".equals(kind))
+		{
+			return StimulusSet.Kind.TEXT;
+		}
+		else if("image".equals(kind))
+		{
+			return StimulusSet.Kind.IMAGE;
+		}
+		throw new IOException("Line " + lineNumber + ": unknown kind '" + kind + "'.");
+	}
+}
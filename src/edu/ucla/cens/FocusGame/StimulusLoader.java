@@ -0,0 +1,423 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Loads the stimulus catalog, the game's protocol, the population norms, and
+ * the images for the image games. The images are loaded on a background
+ * thread, which may be started speculatively, e.g. while the user is choosing
+ * a game type or reading the instructions, so that they are usually ready
+ * by the time the Game Activity needs them.
+ * 
+ * All of the images are packed at build time into a single atlas per density
+ * bucket by the AtlasPacker tool, so loading is one decode of one Bitmap plus
+ * reading the index of where each image is within it.
+ * 
+ * There is one loader per process. The catalog, protocol, and norms are kept
+ * for the life of the process, but the atlas' Bitmap lives in a BitmapPool
+ * with a byte budget. Whoever gets the atlas holds a reference to it until
+ * it calls release(); after that it is only kept while it fits in the budget,
+ * so back to back games reuse it without any one game's images outliving the
+ * budget.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class StimulusLoader
+{
+	private static final String TAG = "FocusGame.StimulusLoader";
+	
+	// The fraction of the heap that unreferenced Bitmaps may take up.
+	private static final int HEAP_FRACTION = 8;
+	
+	// The atlas' key in the BitmapPool.
+	private static final Integer ATLAS_KEY = Integer.valueOf(R.drawable.stimulus_atlas);
+	
+	private static StimulusLoader instance;
+	
+	private final Resources resources;
+	private final ExecutorService executor;
+	private final BitmapPool bitmapPool;
+	
+	private StimulusCatalog catalog;
+	private Protocol protocol;
+	private PopulationNorms norms;
+	private Future<StimulusAtlas> load;
+	
+	/**
+	 * Returns the process' loader, creating it if necessary.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return The loader.
+	 */
+	public static synchronized StimulusLoader getInstance(Context context)
+	{
+		if(instance == null)
+		{
+			instance = new StimulusLoader(context.getApplicationContext().getResources());
+		}
+		return instance;
+	}
+	
+	/**
+	 * Starts loading the images in the background if that has not already
+	 * been started. This returns immediately.
+	 * 
+	 * @param context Any Context in this application.
+	 */
+	public static void prewarm(Context context)
+	{
+		getInstance(context).start();
+	}
+	
+	/**
+	 * Creates the loader and its thread. Nothing is loaded until start() is
+	 * called.
+	 * 
+	 * @param resources The application's Resources.
+	 */
+	private StimulusLoader(Resources resources)
+	{
+		this.resources = resources;
+		
+		bitmapPool = new BitmapPool(Runtime.getRuntime().maxMemory() / HEAP_FRACTION);
+		
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+		{
+			/**
+			 * Creates a daemon thread that runs below the UI thread's priority
+			 * so that it never competes with it.
+			 */
+			@Override
+			public Thread newThread(final Runnable runnable)
+			{
+				Thread thread = new Thread(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+						runnable.run();
+					}
+				}, "StimulusLoader");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+	
+	/**
+	 * Returns the stimulus catalog, reading it on the calling thread the
+	 * first time. It is a small text file.
+	 * 
+	 * @return The catalog.
+	 * 
+	 * @throws IllegalStateException The catalog is missing or malformed.
+	 */
+	public synchronized StimulusCatalog getCatalog()
+	{
+		if(catalog == null)
+		{
+			try
+			{
+				Reader reader = new InputStreamReader(resources.openRawResource(R.raw.stimuli), "UTF-8");
+				try
+				{
+					catalog = StimulusCatalog.read(reader);
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+			catch(IOException e)
+			{
+				throw new IllegalStateException("The stimulus catalog could not be read.", e);
+			}
+		}
+		return catalog;
+	}
+	
+	/**
+	 * Returns the protocol that games follow unless they are given another
+	 * one, reading it on the calling thread the first time. It is a small
+	 * text file.
+	 * 
+	 * @return The protocol.
+	 * 
+	 * @throws IllegalStateException The protocol is missing or malformed.
+	 */
+	public synchronized Protocol getProtocol()
+	{
+		if(protocol == null)
+		{
+			try
+			{
+				Reader reader = new InputStreamReader(resources.openRawResource(R.raw.protocol), "UTF-8");
+				try
+				{
+					protocol = Protocol.read(reader);
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+			catch(IOException e)
+			{
+				throw new IllegalStateException("The protocol could not be read.", e);
+			}
+		}
+		return protocol;
+	}
+	
+	/**
+	 * Returns the norms that games are ranked against, reading them on the
+	 * calling thread the first time. They are a small text file. Games can
+	 * be played without them, so if they can't be read they are empty.
+	 * 
+	 * @return The norms.
+	 */
+	public synchronized PopulationNorms getNorms()
+	{
+		if(norms == null)
+		{
+			try
+			{
+				Reader reader = new InputStreamReader(resources.openRawResource(R.raw.norms), "UTF-8");
+				try
+				{
+					norms = PopulationNorms.read(reader);
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+			catch(IOException e)
+			{
+				Log.e(TAG, "The norms could not be read.", e);
+				norms = new PopulationNorms();
+			}
+		}
+		return norms;
+	}
+	
+	/**
+	 * Returns the pool that the atlas' Bitmap is kept in, e.g. to change its
+	 * budget.
+	 * 
+	 * @return The BitmapPool.
+	 */
+	public BitmapPool getBitmapPool()
+	{
+		return bitmapPool;
+	}
+	
+	/**
+	 * Queues the load if it has not been queued yet or if the atlas it loaded
+	 * has since been recycled.
+	 * 
+	 * @return The load's Future.
+	 */
+	public synchronized Future<StimulusAtlas> start()
+	{
+		if((load != null) && load.isDone() && (! isPooled(load)))
+		{
+			load = null;
+		}
+		
+		if(load == null)
+		{
+			load = executor.submit(new Callable<StimulusAtlas>()
+			{
+				@Override
+				public StimulusAtlas call() throws IOException
+				{
+					return loadAtlas(false);
+				}
+			});
+		}
+		return load;
+	}
+	
+	/**
+	 * Returns the atlas, waiting up to some amount of time for it to be
+	 * loaded. If it has not been queued yet, it is queued now. The atlas
+	 * must be given back with release() once it is no longer used.
+	 * 
+	 * @param timeoutMillis The longest to wait. 0 means to not wait at all.
+	 * 
+	 * @return The atlas or null if it was not ready in time.
+	 */
+	public StimulusAtlas getAtlas(long timeoutMillis)
+	{
+		Future<StimulusAtlas> atlas = start();
+		
+		try
+		{
+			StimulusAtlas result;
+			if(timeoutMillis <= 0)
+			{
+				result = atlas.isDone() ? atlas.get() : null;
+			}
+			else
+			{
+				result = atlas.get(timeoutMillis, TimeUnit.MILLISECONDS);
+			}
+			
+			// It may have been recycled between being loaded and now.
+			if((result != null) && (! bitmapPool.acquire(ATLAS_KEY, result.getBitmap())))
+			{
+				return null;
+			}
+			return result;
+		}
+		catch(TimeoutException e)
+		{
+			return null;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch(ExecutionException e)
+		{
+			Log.e(TAG, "Error while loading the stimulus atlas.", e.getCause());
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the atlas, waiting up to some amount of time for it to be
+	 * loaded. If it is not ready by then, it is loaded on the calling thread
+	 * so that something can always be shown. The atlas must be given back
+	 * with release() once it is no longer used.
+	 * 
+	 * @param timeoutMillis The longest to wait for the background load.
+	 * 
+	 * @return The atlas.
+	 */
+	public StimulusAtlas getAtlasOrLoad(long timeoutMillis)
+	{
+		StimulusAtlas atlas = getAtlas(timeoutMillis);
+		if(atlas == null)
+		{
+			Log.w(TAG, "The stimulus atlas was not ready in time; loading it on the calling thread.");
+			try
+			{
+				atlas = loadAtlas(true);
+			}
+			catch(IOException e)
+			{
+				throw new IllegalStateException("The stimulus atlas could not be loaded.", e);
+			}
+		}
+		return atlas;
+	}
+	
+	/**
+	 * Gives back an atlas that was returned by getAtlas() or
+	 * getAtlasOrLoad(). It must not be drawn from afterwards.
+	 * 
+	 * @param atlas The atlas.
+	 */
+	public void release(StimulusAtlas atlas)
+	{
+		if(atlas != null)
+		{
+			bitmapPool.release(ATLAS_KEY);
+		}
+	}
+	
+	/**
+	 * Returns whether or not the atlas from a finished load is still in the
+	 * pool.
+	 * 
+	 * @param load The finished load.
+	 * 
+	 * @return False if the load failed or its atlas has been recycled.
+	 */
+	private boolean isPooled(Future<StimulusAtlas> load)
+	{
+		try
+		{
+			StimulusAtlas atlas = load.get();
+			if(bitmapPool.acquire(ATLAS_KEY, atlas.getBitmap()))
+			{
+				bitmapPool.release(ATLAS_KEY);
+				return true;
+			}
+			return false;
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			return true;
+		}
+		catch(ExecutionException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Decodes the atlas into the pool and reads its index on the calling
+	 * thread.
+	 * 
+	 * @param acquire Whether the caller takes a reference to the atlas. If
+	 * 				  not, it is only kept if it fits in the pool's budget.
+	 * 
+	 * @return The atlas.
+	 * 
+	 * @throws IOException The atlas or its index could not be read.
+	 */
+	private StimulusAtlas loadAtlas(boolean acquire) throws IOException
+	{
+		// The atlas is already scaled for this density bucket.
+		Bitmap bitmap = bitmapPool.decodeResource(ATLAS_KEY, resources, R.drawable.stimulus_atlas, acquire);
+		if(bitmap == null)
+		{
+			throw new IOException("The stimulus atlas could not be decoded.");
+		}
+		
+		try
+		{
+			Reader reader = new InputStreamReader(resources.openRawResource(R.raw.stimulus_atlas_index), "UTF-8");
+			try
+			{
+				return new StimulusAtlas(bitmap, reader);
+			}
+			finally
+			{
+				reader.close();
+			}
+		}
+		catch(IOException e)
+		{
+			if(acquire)
+			{
+				bitmapPool.release(ATLAS_KEY);
+			}
+			throw e;
+		}
+	}
+}
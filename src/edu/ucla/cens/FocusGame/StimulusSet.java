@@ -0,0 +1,352 @@
+package edu.ucla.cens.FocusGame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A named group of stimuli that make up one type of game, e.g. letters or
+ * images. Each stimulus has a dense integer identifier, 0 through size() - 1,
+ * which is all that the trial logic and the TrialLog ever deal with. The
+ * names are only needed when reporting results.
+ * 
+ * Each stimulus is either a "go" stimulus, which should be tapped, or a
+ * "no-go" stimulus, which should not. Each also has display data whose
+ * meaning depends on the set's kind: the text to draw for a text set, or the
+ * name of the image in the stimulus atlas for an image set. A set may also
+ * have a blank, which is shown between stimuli.
+ * 
+ * Sets are immutable once built and are usually loaded by a StimulusCatalog.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class StimulusSet
+{
+	/**
+	 * How the stimuli in a set are shown.
+	 */
+	public static enum Kind { TEXT, IMAGE };
+	
+	private final String name;
+	private final Kind kind;
+	
+	private final String[] names;
+	private final String[] displays;
+	private final boolean[] noGo;
+	
+	private final int[] goStimuli;
+	private final int[] noGoStimuli;
+	
+	private final String blankDisplay;
+	
+	/**
+	 * Builds a StimulusSet one stimulus at a time.
+	 */
+	public static class Builder
+	{
+		private final String name;
+		private final Kind kind;
+		
+		private final List<String> names = new ArrayList<String>();
+		private final List<String> displays = new ArrayList<String>();
+		private final List<Boolean> noGo = new ArrayList<Boolean>();
+		
+		private String blankDisplay;
+		
+		/**
+		 * Starts a new set.
+		 * 
+		 * @param name The set's name.
+		 * 
+		 * @param kind How the stimuli are shown.
+		 */
+		public Builder(String name, Kind kind)
+		{
+			this.name = name;
+			this.kind = kind;
+		}
+		
+		/**
+		 * Adds a stimulus. Its identifier is the number of stimuli added
+		 * before it.
+		 * 
+		 * @param stimulusName The name used when reporting results.
+		 * 
+		 * @param display The text or image to show.
+		 * 
+		 * @param isNoGo Whether or not this is a stimulus that should not be
+		 * 				 tapped.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder add(String stimulusName, String display, boolean isNoGo)
+		{
+			if(names.contains(stimulusName))
+			{
+				throw new IllegalArgumentException("Duplicate stimulus in set '" + name + "': " + stimulusName);
+			}
+			
+			names.add(stimulusName);
+			displays.add(display);
+			noGo.add(isNoGo);
+			return this;
+		}
+		
+		/**
+		 * Sets what to show between stimuli.
+		 * 
+		 * @param display The text or image to show.
+		 * 
+		 * @return This Builder.
+		 */
+		public Builder setBlank(String display)
+		{
+			blankDisplay = display;
+			return this;
+		}
+		
+		/**
+		 * Builds the set.
+		 * 
+		 * @return The new StimulusSet.
+		 * 
+		 * @throws IllegalArgumentException The set doesn't have at least one
+		 * 									go and one no-go stimulus.
+		 */
+		public StimulusSet build()
+		{
+			return new StimulusSet(this);
+		}
+	}
+	
+	/**
+	 * Creates the set from a Builder.
+	 */
+	private StimulusSet(Builder builder)
+	{
+		name = builder.name;
+		kind = builder.kind;
+		blankDisplay = builder.blankDisplay;
+		
+		int size = builder.names.size();
+		names = builder.names.toArray(new String[size]);
+		displays = builder.displays.toArray(new String[size]);
+		noGo = new boolean[size];
+		
+		int numNoGo = 0;
+		for(int i = 0; i < size; i++)
+		{
+			noGo[i] = builder.noGo.get(i);
+			if(noGo[i])
+			{
+				numNoGo++;
+			}
+		}
+		
+		if((numNoGo == 0) || (numNoGo == size))
+		{
+			throw new IllegalArgumentException("The set '" + name + "' must have at least one go and one no-go stimulus.");
+		}
+		
+		goStimuli = new int[size - numNoGo];
+		noGoStimuli = new int[numNoGo];
+		int numGoAdded = 0;
+		int numNoGoAdded = 0;
+		for(int i = 0; i < size; i++)
+		{
+			if(noGo[i])
+			{
+				noGoStimuli[numNoGoAdded++] = i;
+			}
+			else
+			{
+				goStimuli[numGoAdded++] = i;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the set's name.
+	 * 
+	 * @return The set's name.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * Returns how the stimuli are shown.
+	 * 
+	 * @return The set's Kind.
+	 */
+	public Kind getKind()
+	{
+		return kind;
+	}
+	
+	/**
+	 * Returns the number of stimuli.
+	 * 
+	 * @return The number of stimuli.
+	 */
+	public int size()
+	{
+		return names.length;
+	}
+	
+	/**
+	 * Returns whether or not a stimulus should not be tapped.
+	 * 
+	 * @param stimulus The stimulus' identifier.
+	 * 
+	 * @return Whether or not it is a no-go stimulus.
+	 */
+	public boolean isNoGo(int stimulus)
+	{
+		return noGo[stimulus];
+	}
+	
+	/**
+	 * Returns the number of go stimuli.
+	 * 
+	 * @return The number of go stimuli.
+	 */
+	public int getNumGoStimuli()
+	{
+		return goStimuli.length;
+	}
+	
+	/**
+	 * Returns one of the go stimuli.
+	 * 
+	 * @param index Between 0 and getNumGoStimuli() - 1.
+	 * 
+	 * @return The stimulus' identifier.
+	 */
+	public int getGoStimulus(int index)
+	{
+		return goStimuli[index];
+	}
+	
+	/**
+	 * Returns the number of no-go stimuli.
+	 * 
+	 * @return The number of no-go stimuli.
+	 */
+	public int getNumNoGoStimuli()
+	{
+		return noGoStimuli.length;
+	}
+	
+	/**
+	 * Returns one of the no-go stimuli.
+	 * 
+	 * @param index Between 0 and getNumNoGoStimuli() - 1.
+	 * 
+	 * @return The stimulus' identifier.
+	 */
+	public int getNoGoStimulus(int index)
+	{
+		return noGoStimuli[index];
+	}
+	
+	/**
+	 * Returns a stimulus' name.
+	 * 
+	 * @param stimulus The stimulus' identifier.
+	 * 
+	 * @return The name used when reporting results.
+	 */
+	public String getStimulusName(int stimulus)
+	{
+		return names[stimulus];
+	}
+	
+	/**
+	 * Returns every stimulus' name indexed by its identifier.
+	 * 
+	 * @return A copy of the names.
+	 */
+	public String[] getStimulusNames()
+	{
+		return names.clone();
+	}
+	
+	/**
+	 * Returns a stimulus' display data.
+	 * 
+	 * @param stimulus The stimulus' identifier.
+	 * 
+	 * @return The text or image to show.
+	 */
+	public String getDisplay(int stimulus)
+	{
+		return displays[stimulus];
+	}
+	
+	/**
+	 * Returns what to show between stimuli.
+	 * 
+	 * @return The text or image to show, or null if nothing is shown.
+	 */
+	public String getBlankDisplay()
+	{
+		return blankDisplay;
+	}
+	
+	/**
+	 * Returns the identifier of a stimulus given its name.
+	 * 
+	 * @param stimulusName The stimulus' name.
+	 * 
+	 * @return The stimulus' identifier or -1 if there is no such stimulus.
+	 */
+	public int indexOf(String stimulusName)
+	{
+		for(int i = 0; i < names.length; i++)
+		{
+			if(names[i].equals(stimulusName))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Returns the identifier of a stimulus given its name as part of some
+	 * longer text without copying it out.
+	 * 
+	 * @param text The text that contains the name.
+	 * 
+	 * @param start The index of the name's first character.
+	 * 
+	 * @param end The index after the name's last character.
+	 * 
+	 * @return The stimulus' identifier or -1 if there is no such stimulus.
+	 */
+	public int indexOf(CharSequence text, int start, int end)
+	{
+		int length = end - start;
+		for(int i = 0; i < names.length; i++)
+		{
+			String name = names[i];
+			if(name.length() != length)
+			{
+				continue;
+			}
+			
+			int j = 0;
+			while((j < length) && (name.charAt(j) == text.charAt(start + j)))
+			{
+				j++;
+			}
+			if(j == length)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,538 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * A compact sketch of the distribution of a stream of values from which any
+ * quantile or the fraction of values below any value can be estimated, using
+ * the merging t-digest of Dunning and Ertl, "Computing Extremely Accurate
+ * Quantiles Using t-Digests", 2019.
+ * 
+ * The values are summarized as at most about compression centroids, each a
+ * mean and a weight. Centroids near the tails hold few values and centroids
+ * near the median hold many, so the estimates are most accurate at the
+ * extremes, which is where percentile ranks matter most. Two digests of the
+ * same compression can be merged into one that summarizes both streams, in
+ * any order, so digests of parts of a population can be built separately and
+ * combined.
+ * 
+ * New values are buffered and folded into the centroids once the buffer is
+ * full, so adding a value takes constant amortized time. The estimates take
+ * time proportional to the number of centroids, which is bounded by the
+ * compression and not by the number of values.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TDigest
+{
+	// The compression used unless another is given.
+	public static final double DEFAULT_COMPRESSION = 100.0;
+	
+	// The buffer holds this many times the compression values.
+	private static final int BUFFER_FACTOR = 5;
+	
+	private final double compression;
+	
+	// The centroids in order of their means.
+	private double[] means;
+	private double[] weights;
+	private int numCentroids;
+	
+	// Values and centroids that have been added since the last compress().
+	private double[] bufferMeans;
+	private double[] bufferWeights;
+	private int numBuffered;
+	
+	private double totalWeight;
+	private double min;
+	private double max;
+	
+	/**
+	 * Creates an empty digest with the default compression.
+	 */
+	public TDigest()
+	{
+		this(DEFAULT_COMPRESSION);
+	}
+	
+	/**
+	 * Creates an empty digest.
+	 * 
+	 * @param compression Roughly the most centroids to keep. Larger values
+	 * 					  are more accurate and take more memory.
+	 */
+	public TDigest(double compression)
+	{
+		if(! (compression >= 10.0))
+		{
+			throw new IllegalArgumentException("The compression must be at least 10: " + compression);
+		}
+		
+		this.compression = compression;
+		
+		int capacity = (int) Math.ceil(compression) + 10;
+		means = new double[capacity];
+		weights = new double[capacity];
+		
+		int bufferCapacity = BUFFER_FACTOR * capacity;
+		bufferMeans = new double[bufferCapacity];
+		bufferWeights = new double[bufferCapacity];
+		
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+	
+	/**
+	 * Returns the compression.
+	 * 
+	 * @return The compression.
+	 */
+	public double getCompression()
+	{
+		return compression;
+	}
+	
+	/**
+	 * Adds a value. NaNs and infinities are ignored.
+	 * 
+	 * @param value The value.
+	 */
+	public void add(double value)
+	{
+		add(value, 1.0);
+	}
+	
+	/**
+	 * Adds a value some number of times or a centroid. NaNs and infinities
+	 * are ignored.
+	 * 
+	 * @param value The value or the centroid's mean.
+	 * 
+	 * @param weight The number of times or the centroid's weight, more than
+	 * 				 zero.
+	 */
+	public void add(double value, double weight)
+	{
+		if(Double.isNaN(value) || Double.isInfinite(value))
+		{
+			return;
+		}
+		if(! (weight > 0.0))
+		{
+			throw new IllegalArgumentException("The weight must be more than zero: " + weight);
+		}
+		
+		if(numBuffered == bufferMeans.length)
+		{
+			compress();
+		}
+		
+		bufferMeans[numBuffered] = value;
+		bufferWeights[numBuffered] = weight;
+		numBuffered++;
+		
+		totalWeight += weight;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+	}
+	
+	/**
+	 * Adds every value that another digest summarizes.
+	 * 
+	 * @param other The other digest. It is compressed but otherwise left as
+	 * 				it is.
+	 */
+	public void merge(TDigest other)
+	{
+		other.compress();
+		for(int i = 0; i < other.numCentroids; i++)
+		{
+			add(other.means[i], other.weights[i]);
+		}
+		
+		// The centroids' means are within the other's range but needn't reach
+		// its ends.
+		if(other.numCentroids > 0)
+		{
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+		}
+	}
+	
+	/**
+	 * Recreates a digest from its range and centroids, e.g. as they were
+	 * written out from another digest's getters.
+	 * 
+	 * @param compression The digest's compression.
+	 * 
+	 * @param min The smallest value.
+	 * 
+	 * @param max The largest value.
+	 * 
+	 * @param means The centroids' means.
+	 * 
+	 * @param weights The centroids' weights.
+	 * 
+	 * @return The digest.
+	 * 
+	 * @throws IllegalArgumentException The centroids are outside the range or
+	 * 									don't match up.
+	 */
+	public static TDigest fromCentroids(double compression, double min, double max, double[] means, double[] weights)
+	{
+		if(means.length != weights.length)
+		{
+			throw new IllegalArgumentException("There must be a weight for every mean.");
+		}
+		
+		TDigest digest = new TDigest(compression);
+		for(int i = 0; i < means.length; i++)
+		{
+			if(! ((means[i] >= min) && (means[i] <= max)))
+			{
+				throw new IllegalArgumentException("A centroid is outside of the range: " + means[i]);
+			}
+			digest.add(means[i], weights[i]);
+		}
+		
+		if(means.length > 0)
+		{
+			digest.min = min;
+			digest.max = max;
+		}
+		return digest;
+	}
+	
+	/**
+	 * Returns the number of values that have been added.
+	 * 
+	 * @return The total weight of the values.
+	 */
+	public double getCount()
+	{
+		return totalWeight;
+	}
+	
+	/**
+	 * Returns the smallest value that has been added.
+	 * 
+	 * @return The smallest value or NaN if there are none.
+	 */
+	public double getMin()
+	{
+		return (totalWeight == 0.0) ? Double.NaN : min;
+	}
+	
+	/**
+	 * Returns the largest value that has been added.
+	 * 
+	 * @return The largest value or NaN if there are none.
+	 */
+	public double getMax()
+	{
+		return (totalWeight == 0.0) ? Double.NaN : max;
+	}
+	
+	/**
+	 * Returns the number of centroids once the buffer has been folded in.
+	 * 
+	 * @return The number of centroids.
+	 */
+	public int getNumCentroids()
+	{
+		compress();
+		return numCentroids;
+	}
+	
+	/**
+	 * Returns the mean of a centroid.
+	 * 
+	 * @param index The centroid's index, in order of the means.
+	 * 
+	 * @return The mean.
+	 */
+	public double getMean(int index)
+	{
+		compress();
+		return means[index];
+	}
+	
+	/**
+	 * Returns the weight of a centroid.
+	 * 
+	 * @param index The centroid's index, in order of the means.
+	 * 
+	 * @return The weight.
+	 */
+	public double getWeight(int index)
+	{
+		compress();
+		return weights[index];
+	}
+	
+	/**
+	 * Estimates the fraction of the values that are below a value, counting
+	 * half of those that are equal to it.
+	 * 
+	 * @param value The value.
+	 * 
+	 * @return The fraction, between 0 and 1, or NaN if there are no values.
+	 */
+	public double cdf(double value)
+	{
+		compress();
+		if((numCentroids == 0) || Double.isNaN(value))
+		{
+			return Double.NaN;
+		}
+		if(value < min)
+		{
+			return 0.0;
+		}
+		if(value > max)
+		{
+			return 1.0;
+		}
+		if(min == max)
+		{
+			return 0.5;
+		}
+		
+		// The cumulative weight is interpolated between the minimum, the
+		// middle of each centroid, and the maximum.
+		double previousValue = min;
+		double previousWeight = 0.0;
+		double weightBelow = 0.0;
+		int i = 0;
+		while(i < numCentroids)
+		{
+			if(means[i] == value)
+			{
+				// Centroids with exactly this mean are usually repeats of it.
+				double equal = 0.0;
+				while((i < numCentroids) && (means[i] == value))
+				{
+					equal += weights[i];
+					i++;
+				}
+				return (weightBelow + (equal / 2.0)) / totalWeight;
+			}
+			
+			double middleWeight = weightBelow + (weights[i] / 2.0);
+			if(means[i] > value)
+			{
+				return interpolate(value, previousValue, previousWeight, means[i], middleWeight) / totalWeight;
+			}
+			
+			previousValue = means[i];
+			previousWeight = middleWeight;
+			weightBelow += weights[i];
+			i++;
+		}
+		
+		return interpolate(value, previousValue, previousWeight, max, totalWeight) / totalWeight;
+	}
+	
+	/**
+	 * Estimates a quantile.
+	 * 
+	 * @param quantile The quantile, between 0 and 1.
+	 * 
+	 * @return The estimated value or NaN if there are no values.
+	 */
+	public double quantile(double quantile)
+	{
+		if((quantile < 0.0) || (quantile > 1.0))
+		{
+			throw new IllegalArgumentException("The quantile must be between 0 and 1: " + quantile);
+		}
+		
+		compress();
+		if(numCentroids == 0)
+		{
+			return Double.NaN;
+		}
+		
+		double target = quantile * totalWeight;
+		double previousValue = min;
+		double previousWeight = 0.0;
+		double weightBelow = 0.0;
+		for(int i = 0; i < numCentroids; i++)
+		{
+			double middleWeight = weightBelow + (weights[i] / 2.0);
+			if(target <= middleWeight)
+			{
+				return interpolate(target, previousWeight, previousValue, middleWeight, means[i]);
+			}
+			
+			previousValue = means[i];
+			previousWeight = middleWeight;
+			weightBelow += weights[i];
+		}
+		
+		return interpolate(target, previousWeight, previousValue, totalWeight, max);
+	}
+	
+	/**
+	 * Folds the buffered values into the centroids. This is done whenever the
+	 * buffer fills and before anything is estimated, but it may be called at
+	 * any time, e.g. before the digest is written out.
+	 */
+	public void compress()
+	{
+		if(numBuffered == 0)
+		{
+			return;
+		}
+		
+		// Sort the buffer and merge it with the centroids, which are already
+		// sorted.
+		sort(bufferMeans, bufferWeights, numBuffered);
+		int total = numCentroids + numBuffered;
+		double[] sortedMeans = new double[total];
+		double[] sortedWeights = new double[total];
+		int c = 0;
+		int b = 0;
+		for(int i = 0; i < total; i++)
+		{
+			if((b == numBuffered) || ((c < numCentroids) && (means[c] <= bufferMeans[b])))
+			{
+				sortedMeans[i] = means[c];
+				sortedWeights[i] = weights[c];
+				c++;
+			}
+			else
+			{
+				sortedMeans[i] = bufferMeans[b];
+				sortedWeights[i] = bufferWeights[b];
+				b++;
+			}
+		}
+		numBuffered = 0;
+		
+		// Merge neighbors for as long as the merged centroid spans no more
+		// than one unit of the scale function. Equal values are always
+		// merged since a centroid of them loses nothing, which keeps metrics
+		// with few distinct values, like percentages of a few trials, small.
+		numCentroids = 0;
+		double weightSoFar = 0.0;
+		double mean = sortedMeans[0];
+		double weight = sortedWeights[0];
+		double lowerK = scale(0.0);
+		for(int i = 1; i < total; i++)
+		{
+			double proposed = weight + sortedWeights[i];
+			if((sortedMeans[i] == mean) || ((scale((weightSoFar + proposed) / totalWeight) - lowerK) <= 1.0))
+			{
+				weight = proposed;
+				mean += (sortedMeans[i] - mean) * (sortedWeights[i] / weight);
+			}
+			else
+			{
+				appendCentroid(mean, weight);
+				weightSoFar += weight;
+				lowerK = scale(weightSoFar / totalWeight);
+				mean = sortedMeans[i];
+				weight = sortedWeights[i];
+			}
+		}
+		appendCentroid(mean, weight);
+	}
+	
+	/**
+	 * Appends a centroid, growing the arrays if it is needed.
+	 * 
+	 * @param mean The centroid's mean.
+	 * 
+	 * @param weight The centroid's weight.
+	 */
+	private void appendCentroid(double mean, double weight)
+	{
+		if(numCentroids == means.length)
+		{
+			double[] newMeans = new double[means.length * 2];
+			double[] newWeights = new double[weights.length * 2];
+			System.arraycopy(means, 0, newMeans, 0, numCentroids);
+			System.arraycopy(weights, 0, newWeights, 0, numCentroids);
+			means = newMeans;
+			weights = newWeights;
+		}
+		
+		means[numCentroids] = mean;
+		weights[numCentroids] = weight;
+		numCentroids++;
+	}
+	
+	/**
+	 * The k1 scale function, which makes centroids smaller towards the tails.
+	 * 
+	 * @param quantile The quantile.
+	 * 
+	 * @return Its position on the scale, in units of centroids.
+	 */
+	private double scale(double quantile)
+	{
+		double q = Math.min(1.0, Math.max(0.0, quantile));
+		return (compression / (2.0 * Math.PI)) * Math.asin((2.0 * q) - 1.0);
+	}
+	
+	/**
+	 * Linearly interpolates between two points.
+	 * 
+	 * @param x Where to interpolate.
+	 * 
+	 * @param x0 The first point's x.
+	 * 
+	 * @param y0 The first point's y.
+	 * 
+	 * @param x1 The second point's x.
+	 * 
+	 * @param y1 The second point's y.
+	 * 
+	 * @return The y at x.
+	 */
+	private static double interpolate(double x, double x0, double y0, double x1, double y1)
+	{
+		if(x1 <= x0)
+		{
+			return (y0 + y1) / 2.0;
+		}
+		return y0 + ((y1 - y0) * ((x - x0) / (x1 - x0)));
+	}
+	
+	/**
+	 * Sorts the first values of two arrays by the first array with a Shell
+	 * sort, which sorts in place without any allocation.
+	 * 
+	 * @param keys The values to sort by.
+	 * 
+	 * @param values The values that go with them.
+	 * 
+	 * @param length The number of values to sort.
+	 */
+	private static void sort(double[] keys, double[] values, int length)
+	{
+		int gap = 1;
+		while(gap < (length / 3))
+		{
+			gap = (3 * gap) + 1;
+		}
+		
+		for(; gap > 0; gap /= 3)
+		{
+			for(int i = gap; i < length; i++)
+			{
+				double key = keys[i];
+				double value = values[i];
+				int j = i;
+				while((j >= gap) && (keys[j - gap] > key))
+				{
+					keys[j] = keys[j - gap];
+					values[j] = values[j - gap];
+					j -= gap;
+				}
+				keys[j] = key;
+				values[j] = value;
+			}
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * A histogram of non-negative values in a fixed amount of memory in the style
+ * of HdrHistogram. Values are counted in buckets whose width grows with the
+ * value so that every value is kept to within 1/64th of itself no matter how
+ * large it is. The counts are allocated once when the histogram is created,
+ * and recording a value is a few shifts and an increment.
+ * 
+ * Negative values are counted as 0, but the exact minimum, maximum, and mean
+ * are also kept so that values that are early rather than late aren't lost.
+ * Values larger than the largest trackable value are counted in the last
+ * bucket.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TimingHistogram
+{
+	// The number of bits of precision in each bucket. Values below
+	// 2^(SUB_BUCKET_BITS + 1) are counted exactly.
+	private static final int SUB_BUCKET_BITS = 6;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	private static final int LINEAR_COUNT = SUB_BUCKET_COUNT * 2;
+	
+	private final long highestTrackableValue;
+	private final int[] counts;
+	
+	private long totalCount;
+	private long sum;
+	private long min;
+	private long max;
+	
+	/**
+	 * Creates a new, empty histogram.
+	 * 
+	 * @param highestTrackableValue The largest value that can be told apart
+	 * 								from a larger one.
+	 */
+	public TimingHistogram(long highestTrackableValue)
+	{
+		if(highestTrackableValue < LINEAR_COUNT)
+		{
+			highestTrackableValue = LINEAR_COUNT;
+		}
+		this.highestTrackableValue = highestTrackableValue;
+		
+		counts = new int[indexOf(highestTrackableValue) + 1];
+		
+		reset();
+	}
+	
+	/**
+	 * Removes all of the values but keeps the counts for reuse.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < counts.length; i++)
+		{
+			counts[i] = 0;
+		}
+		
+		totalCount = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = Long.MIN_VALUE;
+	}
+	
+	/**
+	 * Records a value.
+	 * 
+	 * @param value The value to record.
+	 */
+	public void record(long value)
+	{
+		if(value < min)
+		{
+			min = value;
+		}
+		if(value > max)
+		{
+			max = value;
+		}
+		sum += value;
+		totalCount++;
+		
+		long clamped = value;
+		if(clamped < 0)
+		{
+			clamped = 0;
+		}
+		else if(clamped > highestTrackableValue)
+		{
+			clamped = highestTrackableValue;
+		}
+		counts[indexOf(clamped)]++;
+	}
+	
+	/**
+	 * Returns the number of values that have been recorded.
+	 * 
+	 * @return The number of values.
+	 */
+	public long getTotalCount()
+	{
+		return totalCount;
+	}
+	
+	/**
+	 * Returns the smallest value that was recorded.
+	 * 
+	 * @return The smallest value or 0 if none have been recorded.
+	 */
+	public long getMin()
+	{
+		return (totalCount == 0) ? 0 : min;
+	}
+	
+	/**
+	 * Returns the largest value that was recorded.
+	 * 
+	 * @return The largest value or 0 if none have been recorded.
+	 */
+	public long getMax()
+	{
+		return (totalCount == 0) ? 0 : max;
+	}
+	
+	/**
+	 * Returns the mean of the recorded values.
+	 * 
+	 * @return The mean or NaN if no values have been recorded.
+	 */
+	public double getMean()
+	{
+		return (totalCount == 0) ? Double.NaN : ((double) sum / totalCount);
+	}
+	
+	/**
+	 * Returns the value that the given percentage of recorded values are at
+	 * or below. The value is the middle of the bucket that it falls in, so it
+	 * is within 1/128th of the real value.
+	 * 
+	 * @param percentile The percentage between 0 and 100.
+	 * 
+	 * @return The value or 0 if no values have been recorded.
+	 */
+	public long getValueAtPercentile(double percentile)
+	{
+		if(totalCount == 0)
+		{
+			return 0;
+		}
+		
+		if(percentile > 100.0)
+		{
+			percentile = 100.0;
+		}
+		long target = (long) Math.ceil((percentile / 100.0) * totalCount);
+		if(target < 1)
+		{
+			target = 1;
+		}
+		
+		long seen = 0;
+		for(int i = 0; i < counts.length; i++)
+		{
+			seen += counts[i];
+			if(seen >= target)
+			{
+				long value = lowestValueAt(i) + ((widthAt(i) - 1) / 2);
+				return Math.min(Math.max(value, getMin()), getMax());
+			}
+		}
+		
+		return getMax();
+	}
+	
+	/**
+	 * Appends a JSON object with the count, mean, minimum, median, 90th, 99th
+	 * percentiles, and maximum of the values to a builder.
+	 * 
+	 * @param builder The builder to append to.
+	 * 
+	 * @param scale What to divide each value by before it is written, e.g. to
+	 * 				turn microseconds into milliseconds.
+	 */
+	public void appendSummary(StringBuilder builder, double scale)
+	{
+		builder.append("{\"count\":").append(totalCount);
+		if(totalCount > 0)
+		{
+			builder.append(",\"mean\":").append(round(getMean() / scale));
+			builder.append(",\"min\":").append(round(getMin() / scale));
+			builder.append(",\"p50\":").append(round(getValueAtPercentile(50.0) / scale));
+			builder.append(",\"p90\":").append(round(getValueAtPercentile(90.0) / scale));
+			builder.append(",\"p99\":").append(round(getValueAtPercentile(99.0) / scale));
+			builder.append(",\"max\":").append(round(getMax() / scale));
+		}
+		builder.append('}');
+	}
+	
+	/**
+	 * Returns the index of the bucket that a non-negative value is counted in.
+	 * The first LINEAR_COUNT buckets each hold a single value; after that,
+	 * every doubling of the value is split into SUB_BUCKET_COUNT buckets.
+	 * 
+	 * @param value The value.
+	 * 
+	 * @return The bucket's index.
+	 */
+	private static int indexOf(long value)
+	{
+		if(value < LINEAR_COUNT)
+		{
+			return (int) value;
+		}
+		
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return LINEAR_COUNT + ((shift - 1) * SUB_BUCKET_COUNT) + (int) ((value >> shift) - SUB_BUCKET_COUNT);
+	}
+	
+	/**
+	 * Returns the smallest value counted in a bucket.
+	 * 
+	 * @param index The bucket's index.
+	 * 
+	 * @return The smallest value in the bucket.
+	 */
+	private static long lowestValueAt(int index)
+	{
+		if(index < LINEAR_COUNT)
+		{
+			return index;
+		}
+		
+		int shift = ((index - LINEAR_COUNT) / SUB_BUCKET_COUNT) + 1;
+		long subBucket = ((index - LINEAR_COUNT) % SUB_BUCKET_COUNT) + SUB_BUCKET_COUNT;
+		return subBucket << shift;
+	}
+	
+	/**
+	 * Returns the number of values counted in a bucket.
+	 * 
+	 * @param index The bucket's index.
+	 * 
+	 * @return The width of the bucket.
+	 */
+	private static long widthAt(int index)
+	{
+		if(index < LINEAR_COUNT)
+		{
+			return 1;
+		}
+		
+		return 1L << (((index - LINEAR_COUNT) / SUB_BUCKET_COUNT) + 1);
+	}
+	
+	/**
+	 * Rounds a value to two decimal places for output.
+	 * 
+	 * @param value The value.
+	 * 
+	 * @return The rounded value.
+	 */
+	private static double round(double value)
+	{
+		return Math.round(value * 100.0) / 100.0;
+	}
+}
@@ -0,0 +1,129 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * How closely the stimuli were shown when they were supposed to be. For each
+ * trial this records how late the stimulus appeared compared to when it was
+ * scheduled, how long it was actually visible, and how many display frames
+ * were dropped while it was. Each is kept in a TimingHistogram, so the memory
+ * used doesn't depend on the length of the game.
+ * 
+ * The summary is meant to be sent along with the results so that sessions
+ * from devices that can't keep time may be flagged or thrown out.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TimingStats
+{
+	private static final long NANOS_PER_MICRO = 1000L;
+	private static final double MICROS_PER_MILLI = 1000.0;
+	
+	// The largest times and frame counts that are told apart.
+	private static final long MAX_MICROS = 60L * 1000L * 1000L;
+	private static final long MAX_FRAMES = 10000L;
+	
+	private final TimingHistogram onsetDelay;
+	private final TimingHistogram exposure;
+	private final TimingHistogram droppedFrames;
+	
+	/**
+	 * Creates a new, empty set of statistics.
+	 */
+	public TimingStats()
+	{
+		onsetDelay = new TimingHistogram(MAX_MICROS);
+		exposure = new TimingHistogram(MAX_MICROS);
+		droppedFrames = new TimingHistogram(MAX_FRAMES);
+	}
+	
+	/**
+	 * Removes everything that has been recorded.
+	 */
+	public void reset()
+	{
+		onsetDelay.reset();
+		exposure.reset();
+		droppedFrames.reset();
+	}
+	
+	/**
+	 * Records a stimulus appearing.
+	 * 
+	 * @param scheduledNanos When it was supposed to appear.
+	 * 
+	 * @param actualNanos When it did appear.
+	 */
+	public void recordOnset(long scheduledNanos, long actualNanos)
+	{
+		onsetDelay.record((actualNanos - scheduledNanos) / NANOS_PER_MICRO);
+	}
+	
+	/**
+	 * Records a stimulus being hidden.
+	 * 
+	 * @param onsetNanos When it appeared.
+	 * 
+	 * @param offsetNanos When it was hidden.
+	 * 
+	 * @param frames The number of display frames that were dropped while it
+	 * 				 was visible.
+	 */
+	public void recordOffset(long onsetNanos, long offsetNanos, int frames)
+	{
+		exposure.record((offsetNanos - onsetNanos) / NANOS_PER_MICRO);
+		droppedFrames.record(frames);
+	}
+	
+	/**
+	 * Returns the delay between when each stimulus was scheduled and when it
+	 * appeared in microseconds. Early stimuli have negative delays.
+	 * 
+	 * @return The onset delays.
+	 */
+	public TimingHistogram getOnsetDelay()
+	{
+		return onsetDelay;
+	}
+	
+	/**
+	 * Returns how long each stimulus was visible in microseconds.
+	 * 
+	 * @return The exposure durations.
+	 */
+	public TimingHistogram getExposure()
+	{
+		return exposure;
+	}
+	
+	/**
+	 * Returns the number of frames dropped while each stimulus was visible.
+	 * 
+	 * @return The dropped frames.
+	 */
+	public TimingHistogram getDroppedFrames()
+	{
+		return droppedFrames;
+	}
+	
+	/**
+	 * Serializes a summary of the statistics as a JSON object whose times are
+	 * in milliseconds, e.g.
+	 * 
+	 * {"onset_delay_ms":{"count":60,"mean":1.2,...},"exposure_ms":{...},
+	 *  "dropped_frames":{...}}
+	 * 
+	 * @return The JSON object as a String.
+	 */
+	public String toJson()
+	{
+		StringBuilder builder = new StringBuilder(384);
+		builder.append("{\"onset_delay_ms\":");
+		onsetDelay.appendSummary(builder, MICROS_PER_MILLI);
+		builder.append(",\"exposure_ms\":");
+		exposure.appendSummary(builder, MICROS_PER_MILLI);
+		builder.append(",\"dropped_frames\":");
+		droppedFrames.appendSummary(builder, 1.0);
+		builder.append('}');
+		return builder.toString();
+	}
+}
@@ -0,0 +1,115 @@
+package edu.ucla.cens.FocusGame;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Passes touches on to the TrialEngine as soon as the finger goes down using
+ * the time at which the touch actually happened rather than the time at which
+ * it was delivered. A click isn't reported until the finger comes back up and
+ * then only after the event has gone through the message queue, so using it
+ * added the length of the tap and any delay on the UI thread to every
+ * response time.
+ * 
+ * Every finger that goes down is a tap, so a second finger doesn't have to
+ * wait for the first one to come back up.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TouchInput implements View.OnTouchListener
+{
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	/**
+	 * Decides whether or not a touch landed on the stimulus.
+	 * 
+	 * @author John Jenkins
+	 * @version 1.0
+	 */
+	public interface HitTest
+	{
+		/**
+		 * Returns whether or not a point is on the stimulus being shown or,
+		 * while the blank is showing, the one shown before it.
+		 * 
+		 * @param view The View that was touched.
+		 * 
+		 * @param x The horizontal position of the touch within the View.
+		 * 
+		 * @param y The vertical position of the touch within the View.
+		 * 
+		 * @return Whether or not the point is on the stimulus.
+		 */
+		public boolean isOnStimulus(View view, float x, float y);
+	}
+	
+	private final TrialEngine engine;
+	private final HitTest hitTest;
+	
+	/**
+	 * Creates a new listener.
+	 * 
+	 * @param engine The engine to pass the taps to.
+	 * 
+	 * @param hitTest Decides whether or not each tap landed on the stimulus.
+	 * 				  If this is null, every tap is on the stimulus.
+	 */
+	public TouchInput(TrialEngine engine, HitTest hitTest)
+	{
+		this.engine = engine;
+		this.hitTest = hitTest;
+	}
+	
+	/**
+	 * Passes each finger that goes down on to the engine and consumes every
+	 * event so that no click is generated.
+	 */
+	@Override
+	public boolean onTouch(View view, MotionEvent event)
+	{
+		int action = event.getActionMasked();
+		if((action == MotionEvent.ACTION_DOWN) || (action == MotionEvent.ACTION_POINTER_DOWN))
+		{
+			int index = event.getActionIndex();
+			boolean onStimulus = (hitTest == null) || hitTest.isOnStimulus(view, event.getX(index), event.getY(index));
+			engine.tap(getEventTimeNanos(event), onStimulus);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Returns the time of an event in nanoseconds on the same timeline as
+	 * SystemClock.uptimeMillis(). Newer versions report the time with full
+	 * precision; older ones only have it in milliseconds.
+	 * 
+	 * @param event The event.
+	 * 
+	 * @return The time at which the event happened.
+	 */
+	static long getEventTimeNanos(MotionEvent event)
+	{
+		if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+		{
+			return getEventTimeNanosApi34(event);
+		}
+		
+		return event.getEventTime() * NANOS_PER_MILLI;
+	}
+	
+	/**
+	 * Returns the time of an event with full precision.
+	 * 
+	 * @param event The event.
+	 * 
+	 * @return The time at which the event happened.
+	 */
+	@TargetApi(Build.VERSION_CODES.UPSIDE_DOWN_CAKE)
+	private static long getEventTimeNanosApi34(MotionEvent event)
+	{
+		return event.getEventTimeNanos();
+	}
+}
@@ -0,0 +1,418 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A compact, versioned binary encoding of a TrialLog that is small enough to
+ * be passed around in Intents no matter how long the game is. Version 1 is:
+ * 
+ * 	magic			'F' 'G'
+ * 	version			1 byte
+ * 	name count		varint
+ * 	names			varint length then UTF-8 bytes, indexed by stimulus
+ * 	trial count		varint
+ * 	first onset		zig-zag varint, microseconds
+ * 	trials			stimulus varint, round varint, flags byte,
+ * 					onset delta from the previous trial's onset as a
+ * 					zig-zag varint, elapsed time as a zig-zag varint, all in
+ * 					microseconds
+ * 
+ * Varints are 7 bits per byte, least significant first, with the high bit
+ * set on every byte but the last. Times are kept to the microsecond. Onsets
+ * are a second or two apart and response times are well under a second, so
+ * a trial is usually 8 or 9 bytes.
+ * 
+ * Encoded trials are read back with a Reader, which walks them one at a time
+ * without decoding the whole payload up front.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public final class TrialCodec
+{
+	public static final int VERSION = 1;
+	
+	private static final byte MAGIC_0 = 'F';
+	private static final byte MAGIC_1 = 'G';
+	
+	private static final long NANOS_PER_MICRO = 1000L;
+	
+	/**
+	 * Walks the trials in an encoded payload.
+	 * 
+	 * @author John Jenkins
+	 * @version 1.0
+	 */
+	public static class Reader
+	{
+		private final byte[] data;
+		private final int version;
+		private final String[] names;
+		private final int numTrials;
+		
+		private int position;
+		private int trial;
+		
+		private int stimulus;
+		private int round;
+		private int flags;
+		private long onsetMicros;
+		private long elapsedMicros;
+		
+		/**
+		 * Reads the header of a payload. The trials aren't read until next()
+		 * is called.
+		 * 
+		 * @param data The payload. It must not be changed while it is being
+		 * 			   read.
+		 * 
+		 * @throws IllegalArgumentException The payload isn't a version of
+		 * 									this encoding that is understood.
+		 */
+		public Reader(byte[] data)
+		{
+			this.data = data;
+			
+			if((data == null) || (data.length < 3) || (data[0] != MAGIC_0) || (data[1] != MAGIC_1))
+			{
+				throw new IllegalArgumentException("Not an encoded trial log.");
+			}
+			version = data[2] & 0xFF;
+			if(version != VERSION)
+			{
+				throw new IllegalArgumentException("Unsupported version: " + version);
+			}
+			position = 3;
+			
+			int numNames = (int) readVarint();
+			names = new String[numNames];
+			for(int i = 0; i < numNames; i++)
+			{
+				int length = (int) readVarint();
+				if((length < 0) || (position + length > data.length))
+				{
+					throw new IllegalArgumentException("Truncated payload.");
+				}
+				try
+				{
+					names[i] = new String(data, position, length, "UTF-8");
+				}
+				catch(UnsupportedEncodingException e)
+				{
+					throw new IllegalStateException("UTF-8 is not supported.", e);
+				}
+				position += length;
+			}
+			
+			numTrials = (int) readVarint();
+			onsetMicros = unzigzag(readVarint());
+			trial = -1;
+		}
+		
+		/**
+		 * Returns the payload's version.
+		 * 
+		 * @return The version.
+		 */
+		public int getVersion()
+		{
+			return version;
+		}
+		
+		/**
+		 * Returns the name of each stimulus, indexed by its identifier.
+		 * 
+		 * @return The names.
+		 */
+		public String[] getStimulusNames()
+		{
+			return names;
+		}
+		
+		/**
+		 * Returns the number of trials.
+		 * 
+		 * @return The number of trials.
+		 */
+		public int getNumTrials()
+		{
+			return numTrials;
+		}
+		
+		/**
+		 * Moves to the next trial.
+		 * 
+		 * @return Whether or not there was another trial.
+		 * 
+		 * @throws IllegalArgumentException The payload is truncated.
+		 */
+		public boolean next()
+		{
+			if(trial + 1 >= numTrials)
+			{
+				return false;
+			}
+			
+			stimulus = (int) readVarint();
+			round = (int) readVarint();
+			if(position >= data.length)
+			{
+				throw new IllegalArgumentException("Truncated payload.");
+			}
+			flags = data[position++] & 0xFF;
+			long delta = unzigzag(readVarint());
+			if(trial >= 0)
+			{
+				onsetMicros += delta;
+			}
+			elapsedMicros = unzigzag(readVarint());
+			
+			if((stimulus < 0) || (stimulus >= names.length))
+			{
+				throw new IllegalArgumentException("Stimulus out of range: " + stimulus);
+			}
+			
+			trial++;
+			return true;
+		}
+		
+		/**
+		 * Returns the current trial's index.
+		 * 
+		 * @return The index.
+		 */
+		public int getTrial()
+		{
+			return trial;
+		}
+		
+		/**
+		 * Returns the current trial's stimulus.
+		 * 
+		 * @return The stimulus' identifier.
+		 */
+		public int getStimulus()
+		{
+			return stimulus;
+		}
+		
+		/**
+		 * Returns the current trial's stimulus' name.
+		 * 
+		 * @return The stimulus' name.
+		 */
+		public String getStimulusName()
+		{
+			return names[stimulus];
+		}
+		
+		/**
+		 * Returns the current trial's round.
+		 * 
+		 * @return The round.
+		 */
+		public int getRound()
+		{
+			return round;
+		}
+		
+		/**
+		 * Returns the current trial's flags.
+		 * 
+		 * @return The TrialLog.FLAG_* values that apply to the trial.
+		 */
+		public int getFlags()
+		{
+			return flags;
+		}
+		
+		/**
+		 * Returns the time the current trial's stimulus was shown.
+		 * 
+		 * @return The onset time in nanoseconds.
+		 */
+		public long getOnsetNanos()
+		{
+			return onsetMicros * NANOS_PER_MICRO;
+		}
+		
+		/**
+		 * Returns the time between the current trial's stimulus being shown
+		 * and it being responded to or closed.
+		 * 
+		 * @return The elapsed time in nanoseconds.
+		 */
+		public long getElapsedNanos()
+		{
+			return elapsedMicros * NANOS_PER_MICRO;
+		}
+		
+		/**
+		 * Reads every remaining trial into a log, replacing whatever was in
+		 * it.
+		 * 
+		 * @param log The log to read into.
+		 */
+		public void readInto(TrialLog log)
+		{
+			log.clear();
+			while(next())
+			{
+				int index = log.begin(stimulus, (flags & TrialLog.FLAG_NO_GO) != 0, getOnsetNanos(), round);
+				long responseNanos = getOnsetNanos() + getElapsedNanos();
+				if((flags & TrialLog.FLAG_RESPONDED) != 0)
+				{
+					log.respond(index, responseNanos, (flags & TrialLog.FLAG_OFF_STIMULUS) == 0);
+				}
+				else
+				{
+					log.close(index, responseNanos);
+				}
+				log.addFlags(index, flags & TrialLog.FLAG_STALLED);
+			}
+		}
+		
+		/**
+		 * Reads a varint.
+		 * 
+		 * @return The value.
+		 * 
+		 * @throws IllegalArgumentException The payload is truncated.
+		 */
+		private long readVarint()
+		{
+			long value = 0;
+			int shift = 0;
+			while(true)
+			{
+				if((position >= data.length) || (shift > 63))
+				{
+					throw new IllegalArgumentException("Truncated payload.");
+				}
+				int b = data[position++];
+				value |= ((long) (b & 0x7F)) << shift;
+				if((b & 0x80) == 0)
+				{
+					return value;
+				}
+				shift += 7;
+			}
+		}
+	}
+	
+	/**
+	 * Only static methods.
+	 */
+	private TrialCodec()
+	{
+		// Only static methods.
+	}
+	
+	/**
+	 * Encodes a log.
+	 * 
+	 * @param log The log.
+	 * 
+	 * @param names The name of each stimulus, indexed by its identifier.
+	 * 
+	 * @return The payload.
+	 */
+	public static byte[] encode(TrialLog log, String[] names)
+	{
+		byte[][] encodedNames = new byte[names.length][];
+		int size = 3 + 5 + 5 + 10;
+		for(int i = 0; i < names.length; i++)
+		{
+			try
+			{
+				encodedNames[i] = names[i].getBytes("UTF-8");
+			}
+			catch(UnsupportedEncodingException e)
+			{
+				throw new IllegalStateException("UTF-8 is not supported.", e);
+			}
+			size += 5 + encodedNames[i].length;
+		}
+		// The worst case for each trial.
+		size += log.size() * (5 + 5 + 1 + 10 + 10);
+		
+		byte[] buffer = new byte[size];
+		int position = 0;
+		buffer[position++] = MAGIC_0;
+		buffer[position++] = MAGIC_1;
+		buffer[position++] = VERSION;
+		
+		position = writeVarint(buffer, position, names.length);
+		for(int i = 0; i < encodedNames.length; i++)
+		{
+			position = writeVarint(buffer, position, encodedNames[i].length);
+			System.arraycopy(encodedNames[i], 0, buffer, position, encodedNames[i].length);
+			position += encodedNames[i].length;
+		}
+		
+		position = writeVarint(buffer, position, log.size());
+		long previousOnset = (log.size() == 0) ? 0 : (log.getOnsetNanos(0) / NANOS_PER_MICRO);
+		position = writeVarint(buffer, position, zigzag(previousOnset));
+		for(int i = 0; i < log.size(); i++)
+		{
+			long onset = log.getOnsetNanos(i) / NANOS_PER_MICRO;
+			position = writeVarint(buffer, position, log.getStimulus(i));
+			position = writeVarint(buffer, position, log.getRound(i));
+			buffer[position++] = (byte) log.getFlags(i);
+			position = writeVarint(buffer, position, zigzag(onset - previousOnset));
+			position = writeVarint(buffer, position, zigzag(log.getElapsedNanos(i) / NANOS_PER_MICRO));
+			previousOnset = onset;
+		}
+		
+		byte[] result = new byte[position];
+		System.arraycopy(buffer, 0, result, 0, position);
+		return result;
+	}
+	
+	/**
+	 * Writes a value as an unsigned varint.
+	 * 
+	 * @param buffer The buffer to write to.
+	 * 
+	 * @param position Where to write it.
+	 * 
+	 * @param value The value.
+	 * 
+	 * @return The position after the varint.
+	 */
+	private static int writeVarint(byte[] buffer, int position, long value)
+	{
+		while((value & ~0x7FL) != 0)
+		{
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+		return position;
+	}
+	
+	/**
+	 * Maps a signed value onto an unsigned one so that small magnitudes stay
+	 * small.
+	 * 
+	 * @param value The signed value.
+	 * 
+	 * @return The unsigned value.
+	 */
+	private static long zigzag(long value)
+	{
+		return (value << 1) ^ (value >> 63);
+	}
+	
+	/**
+	 * Undoes zigzag().
+	 * 
+	 * @param value The unsigned value.
+	 * 
+	 * @return The signed value.
+	 */
+	private static long unzigzag(long value)
+	{
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
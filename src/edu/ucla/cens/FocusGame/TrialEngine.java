@@ -0,0 +1,776 @@
+package edu.ucla.cens.FocusGame;
+
+import java.util.Random;
+
+/**
+ * The trial logic of the game without any of the Android machinery. It
+ * decides which stimulus to show and when, and keeps track of the number of
+ * times and how quickly each stimulus was tapped, if the stimulus was a bad
+ * stimulus or not, and how many times stimuli were missed.
+ * 
+ * Stimuli come from a StimulusSet and are only ever dealt with by their
+ * integer identifiers. It is up to the Display to map these to something that
+ * can be shown. Which stimulus is shown when is laid out before the game
+ * starts by compiling a Protocol with a seed into a TrialSchedule, which the
+ * engine then steps through, so a game may be reproduced from its seed. If
+ * the protocol is adaptive, the game ends at the first onset at which the
+ * metrics are precise enough rather than at the end of the schedule, which
+ * biases the mean GO RT slightly low, as Protocol describes.
+ * 
+ * Every trial is recorded in a TrialLog, which is allocated once when the
+ * engine is created and reused for every game it runs, and is added to a
+ * ScoreAggregator as soon as it is decided, so the metrics are ready the
+ * moment the game ends. How far each onset and offset strayed from the
+ * schedule is kept in TimingStats. A Listener may be told each time a
+ * trial is begun, responded to, or closed, and each time a tap is counted
+ * as a repeat or off the stimulus, e.g. to journal them as they happen.
+ * Between games, the engine may be given another StimulusSet and Protocol,
+ * so games of different types may be run back to back without a new one.
+ * 
+ * Time comes from a Clock and the "ticks" of the game come from a Scheduler,
+ * so the engine may be driven by the Android message queue, the display's
+ * frames, or by a virtual clock on a plain JVM. The time an event is
+ * dispatched with is taken to be when the stimulus actually appeared and is
+ * what response times are measured from. Onsets, though, are scheduled
+ * against a fixed timeline that starts when the game does, so a late onset
+ * doesn't push back every onset after it.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TrialEngine implements Scheduler.Target
+{
+	/**
+	 * Shows and hides stimuli on behalf of the engine.
+	 */
+	public interface Display
+	{
+		/**
+		 * Shows a stimulus.
+		 * 
+		 * @param stimulus The stimulus' identifier.
+		 */
+		public void showStimulus(int stimulus);
+		
+		/**
+		 * Hides whatever stimulus is being shown.
+		 */
+		public void clearStimulus();
+		
+		/**
+		 * Called once when the game is over, either because all of the trials
+		 * have been shown or because it was stopped early.
+		 */
+		public void onGameOver();
+	}
+	
+	/**
+	 * Is told about each change to a trial as it happens. It is called on the
+	 * engine's thread in the middle of a tick, so it must be quick.
+	 */
+	public interface Listener
+	{
+		/**
+		 * Called after a trial has been begun, responded to, or closed.
+		 * 
+		 * @param trialLog The current game's trials.
+		 * 
+		 * @param index The index of the trial that changed.
+		 */
+		public void onTrialChanged(TrialLog trialLog, int index);
+		
+		/**
+		 * Called after a tap that was counted as a repeat tap, one that
+		 * missed the stimulus, or both.
+		 * 
+		 * @param numRepeatTaps The game's repeat taps so far.
+		 * 
+		 * @param numOffStimulusTaps The game's taps that missed the stimulus
+		 * 							 so far.
+		 */
+		public void onTapsCounted(int numRepeatTaps, int numOffStimulusTaps);
+	}
+	
+	// Scheduler event types.
+	public static final int EVENT_NEW_STIMULUS = 1;
+	public static final int EVENT_CLEAR_STIMULUS = 2;
+	public static final int EVENT_END_GAME = 3;
+	
+	// Visibility constants of the default protocol.
+	public static final long FIRST_DELAY = 2000;
+	public static final long VISIBLE_MILLIS = 500;
+	public static final long[] DELAYS_MILLIS = { 1000, 2000 };
+	public static final int NUM_ITEMS_PER_ROUND = 30;
+	
+	// The frequency at which a no-go stimulus will be shown.
+	public static final float BAD_FREQUENCY = 0.1f;
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	private final Clock clock;
+	private final Scheduler scheduler;
+	private final Display display;
+	private final Random randomGenerator;
+	
+	private Listener listener;
+	
+	private StimulusSet stimulusSet;
+	private Protocol protocol;
+	
+	// The current or most recent game's trials and the next one to show.
+	private TrialSchedule schedule;
+	private int nextTrial;
+	
+	private final TrialLog trialLog;
+	private final TimingStats timingStats;
+	private final ScoreAggregator scorer;
+	
+	private int currStimulus;
+	private int currTrial;
+	
+	// The previous trial, in case a tap that happened before it was closed is
+	// delivered after.
+	private int prevStimulus;
+	private int prevTrial;
+	private long timePrevItemDisplayed;
+	private boolean prevItemMissed;
+	
+	// The Scheduler's dropped frame count when the current stimulus appeared.
+	private int droppedFramesAtOnset;
+	
+	private int numBadItemHits;
+	private int numGoodItemHits;
+	private int numGoodItemMisses;
+	private int numBadItemSkips;
+	private int numRepeatTaps;
+	private int numOffStimulusTaps;
+	
+	private boolean currItemMissed;
+	private boolean gameOver;
+	private boolean precise;
+	
+	private long timeStarted;
+	private long timeCurrItemDisplayed;
+	private long timeCurrItemScheduled;
+	
+	/**
+	 * Creates a new engine. Nothing happens until start() is called.
+	 * 
+	 * @param clock The source of time.
+	 * 
+	 * @param scheduler The source of the game's "ticks". This engine will set
+	 * 					itself as its Target.
+	 * 
+	 * @param display The Display that shows and hides the stimuli.
+	 * 
+	 * @param stimulusSet The stimuli to choose from.
+	 * 
+	 * @param randomGenerator The source of the seeds for games that are
+	 * 						  started without one.
+	 */
+	public TrialEngine(Clock clock, Scheduler scheduler, Display display, StimulusSet stimulusSet, Random randomGenerator)
+	{
+		this(clock, scheduler, display, stimulusSet, Protocol.DEFAULT, randomGenerator);
+	}
+	
+	/**
+	 * Creates a new engine. Nothing happens until start() is called.
+	 * 
+	 * @param clock The source of time.
+	 * 
+	 * @param scheduler The source of the game's "ticks". This engine will set
+	 * 					itself as its Target.
+	 * 
+	 * @param display The Display that shows and hides the stimuli.
+	 * 
+	 * @param stimulusSet The stimuli to choose from.
+	 * 
+	 * @param protocol The protocol that each game follows.
+	 * 
+	 * @param randomGenerator The source of the seeds for games that are
+	 * 						  started without one.
+	 */
+	public TrialEngine(Clock clock, Scheduler scheduler, Display display, StimulusSet stimulusSet, Protocol protocol, Random randomGenerator)
+	{
+		this.clock = clock;
+		this.scheduler = scheduler;
+		this.display = display;
+		this.stimulusSet = stimulusSet;
+		this.protocol = protocol;
+		this.randomGenerator = randomGenerator;
+		
+		trialLog = new TrialLog(protocol.getNumTrials());
+		scorer = new ScoreAggregator();
+		timingStats = new TimingStats();
+		
+		scheduler.setTarget(this);
+	}
+	
+	/**
+	 * Sets what is told about each change to a trial.
+	 * 
+	 * @param listener The Listener or null for none.
+	 */
+	public void setListener(Listener listener)
+	{
+		this.listener = listener;
+	}
+	
+	/**
+	 * Changes the stimuli and the protocol that the games started from now on
+	 * use. Everything else, including the TrialLog, is kept for them.
+	 * 
+	 * @param stimulusSet The stimuli to choose from.
+	 * 
+	 * @param protocol The protocol that each game follows.
+	 * 
+	 * @throws IllegalStateException A game is running.
+	 */
+	public void setGame(StimulusSet stimulusSet, Protocol protocol)
+	{
+		if((schedule != null) && (! gameOver))
+		{
+			throw new IllegalStateException("The game can't be changed while one is running.");
+		}
+		
+		this.stimulusSet = stimulusSet;
+		this.protocol = protocol;
+	}
+	
+	/**
+	 * Starts a game with a new seed.
+	 */
+	public void start()
+	{
+		start(randomGenerator.nextLong());
+	}
+	
+	/**
+	 * Compiles the protocol with a seed, resets all of the counters, and
+	 * begins the flow of the game by scheduling the first trial.
+	 * 
+	 * @param seed The seed of the game's schedule. The same seed always
+	 * 			   shows the same stimuli at the same times.
+	 */
+	public void start(long seed)
+	{
+		schedule = protocol.compile(stimulusSet, seed);
+		nextTrial = 0;
+		
+		numBadItemHits = 0;
+		numGoodItemHits = 0;
+		numGoodItemMisses = 0;
+		numBadItemSkips = 0;
+		numRepeatTaps = 0;
+		numOffStimulusTaps = 0;
+		
+		currItemMissed = false;
+		prevItemMissed = false;
+		gameOver = false;
+		precise = false;
+		
+		trialLog.clear();
+		scorer.reset();
+		timingStats.reset();
+		
+		timeStarted = clock.nanoTime();
+		timeCurrItemScheduled = timeStarted + (schedule.getOnsetMillis(0) * NANOS_PER_MILLI);
+		scheduler.schedule(EVENT_NEW_STIMULUS, timeCurrItemScheduled);
+	}
+	
+	/**
+	 * Handles the events from the Scheduler by calling their respective local
+	 * functions.
+	 */
+	@Override
+	public void onEvent(int event, long timeNanos)
+	{
+		switch(event)
+		{
+		case EVENT_NEW_STIMULUS:
+			showNewStimulus(timeNanos);
+			break;
+			
+		case EVENT_CLEAR_STIMULUS:
+			display.clearStimulus();
+			timingStats.recordOffset(timeCurrItemDisplayed, timeNanos, scheduler.getDroppedFrames() - droppedFramesAtOnset);
+			break;
+			
+		case EVENT_END_GAME:
+			endGame(timeNanos);
+			break;
+			
+		default:
+			break;
+		}
+	}
+	
+	/**
+	 * Called when the stimulus is tapped but keeps track of state such that
+	 * the exact same stimulus is never counted twice.
+	 */
+	public void tap()
+	{
+		tap(clock.nanoTime(), true);
+	}
+	
+	/**
+	 * Called when the stimulus is tapped but keeps track of state such that
+	 * the exact same stimulus is never counted twice.
+	 * 
+	 * @param timeNanos The time of the tap.
+	 */
+	public void tap(long timeNanos)
+	{
+		tap(timeNanos, true);
+	}
+	
+	/**
+	 * Called when the screen is touched but keeps track of state such that
+	 * the exact same stimulus is never counted twice. Any touch counts as a
+	 * response, but one that lands outside of the stimulus is flagged as
+	 * such.
+	 * 
+	 * The time should be when the touch actually happened, not when it was
+	 * delivered. If that is before the current stimulus appeared, the touch
+	 * is a response to the previous stimulus.
+	 * 
+	 * @param timeNanos The time of the touch.
+	 * 
+	 * @param onStimulus Whether or not the touch landed on the stimulus.
+	 */
+	public void tap(long timeNanos, boolean onStimulus)
+	{
+		if(gameOver)
+		{
+			return;
+		}
+		
+		int numCountedTaps = numRepeatTaps + numOffStimulusTaps;
+		if(! onStimulus)
+		{
+			numOffStimulusTaps++;
+		}
+		
+		if(timeNanos < timeCurrItemDisplayed)
+		{
+			tapPrevious(timeNanos, onStimulus);
+		}
+		else if(currItemMissed)
+		{
+			trialLog.respond(currTrial, timeNanos, onStimulus);
+			scorer.addResponse(stimulusSet.isNoGo(currStimulus), timeNanos - timeCurrItemDisplayed);
+			trialChanged(currTrial);
+			
+			if(stimulusSet.isNoGo(currStimulus))
+			{
+				numBadItemHits++;
+			}
+			else
+			{
+				numGoodItemHits++;
+			}
+	
+			currItemMissed = false;
+		}
+		else
+		{
+			numRepeatTaps++;
+		}
+		
+		if((numRepeatTaps + numOffStimulusTaps != numCountedTaps) && (listener != null))
+		{
+			listener.onTapsCounted(numRepeatTaps, numOffStimulusTaps);
+		}
+	}
+	
+	/**
+	 * Stops the game early, cancelling anything that is still pending. If the
+	 * game is already over, this does nothing.
+	 */
+	public void finish()
+	{
+		if(gameOver)
+		{
+			return;
+		}
+		
+		scheduler.cancelAll();
+		endGame(clock.nanoTime());
+	}
+	
+	/**
+	 * Flags every trial that was shown, or was still awaiting a response,
+	 * during a stall of the thread that the engine runs on. A trial that is
+	 * still awaiting its response is taken to overlap any stall that started
+	 * after it was shown.
+	 * 
+	 * @param startNanos When the stall started.
+	 * 
+	 * @param endNanos When it ended.
+	 * 
+	 * @return The number of trials that were newly flagged.
+	 */
+	public int markStall(long startNanos, long endNanos)
+	{
+		int numMarked = 0;
+		
+		// Each trial ends before the next one's does, so the search can stop
+		// at the first one that ended before the stall started.
+		for(int i = trialLog.size() - 1; i >= 0; i--)
+		{
+			boolean awaiting = (i == currTrial) && currItemMissed;
+			if((! awaiting) && (trialLog.getResponseNanos(i) < startNanos))
+			{
+				break;
+			}
+			
+			if((trialLog.getOnsetNanos(i) <= endNanos) && ((trialLog.getFlags(i) & TrialLog.FLAG_STALLED) == 0))
+			{
+				trialLog.addFlags(i, TrialLog.FLAG_STALLED);
+				trialChanged(i);
+				numMarked++;
+			}
+		}
+		
+		return numMarked;
+	}
+	
+	/**
+	 * Returns whether or not the game has ended.
+	 * 
+	 * @return Whether or not the game has ended.
+	 */
+	public boolean isGameOver()
+	{
+		return gameOver;
+	}
+	
+	/**
+	 * Returns whether or not the game ended early because its metrics were
+	 * precise enough.
+	 * 
+	 * @return Whether or not the game reached the protocol's target
+	 * 		   precision.
+	 */
+	public boolean isPrecise()
+	{
+		return precise;
+	}
+	
+	/**
+	 * Returns the log of every trial in the current or most recent game.
+	 * 
+	 * @return The TrialLog.
+	 */
+	public TrialLog getTrialLog()
+	{
+		return trialLog;
+	}
+	
+	/**
+	 * Returns the metrics of the current or most recent game.
+	 * 
+	 * @return The ScoreAggregator.
+	 */
+	public ScoreAggregator getScores()
+	{
+		return scorer;
+	}
+	
+	/**
+	 * Returns how closely the current or most recent game kept to its
+	 * schedule.
+	 * 
+	 * @return The TimingStats.
+	 */
+	public TimingStats getTimingStats()
+	{
+		return timingStats;
+	}
+	
+	/**
+	 * Returns the protocol that each game follows.
+	 * 
+	 * @return The Protocol.
+	 */
+	public Protocol getProtocol()
+	{
+		return protocol;
+	}
+	
+	/**
+	 * Returns the schedule of the current or most recent game.
+	 * 
+	 * @return The TrialSchedule or null if no game has been started.
+	 */
+	public TrialSchedule getSchedule()
+	{
+		return schedule;
+	}
+	
+	/**
+	 * Returns the stimuli that this engine chooses from.
+	 * 
+	 * @return The StimulusSet.
+	 */
+	public StimulusSet getStimulusSet()
+	{
+		return stimulusSet;
+	}
+	
+	/**
+	 * Returns the identifier of the stimulus that was shown last.
+	 * 
+	 * @return The identifier of the stimulus that was shown last.
+	 */
+	public int getCurrentStimulus()
+	{
+		return currStimulus;
+	}
+	
+	/**
+	 * Returns the number of times the bad stimulus was tapped.
+	 * 
+	 * @return The number of times the bad stimulus was tapped.
+	 */
+	public int getNumBadItemHits()
+	{
+		return numBadItemHits;
+	}
+	
+	/**
+	 * Returns the number of times a good stimulus was tapped.
+	 * 
+	 * @return The number of times a good stimulus was tapped.
+	 */
+	public int getNumGoodItemHits()
+	{
+		return numGoodItemHits;
+	}
+	
+	/**
+	 * Returns the number of times a good stimulus was missed.
+	 * 
+	 * @return The number of times a good stimulus was missed.
+	 */
+	public int getNumGoodItemMisses()
+	{
+		return numGoodItemMisses;
+	}
+	
+	/**
+	 * Returns the number of times the bad stimulus was not tapped.
+	 * 
+	 * @return The number of times the bad stimulus was not tapped.
+	 */
+	public int getNumBadItemSkips()
+	{
+		return numBadItemSkips;
+	}
+	
+	/**
+	 * Returns the number of touches that landed outside of the stimulus.
+	 * 
+	 * @return The number of touches that landed outside of the stimulus.
+	 */
+	public int getNumOffStimulusTaps()
+	{
+		return numOffStimulusTaps;
+	}
+	
+	/**
+	 * Returns the number of taps on a stimulus that had already been tapped.
+	 * 
+	 * @return The number of taps on a stimulus that had already been tapped.
+	 */
+	public int getNumRepeatTaps()
+	{
+		return numRepeatTaps;
+	}
+	
+	/**
+	 * Returns a score to be returned as a single value.
+	 * 
+	 * There are two "best scores", and this returns the "GO RT" version: the
+	 * mean response time of every tapped good stimulus. The rest of the
+	 * metrics, including % Inhibition, are available from getScores().
+	 * 
+	 * @return A single score for the game.
+	 */
+	public double calculateScore()
+	{
+		return scorer.getGoRtMean();
+	}
+	
+	/**
+	 * Checks if the stimulus was missed then generates a new stimulus for the
+	 * user. It also calculates and sets the timer for when the stimulus
+	 * should be hidden and when to switch to the next stimulus or end the
+	 * game.
+	 * 
+	 * The stimulus is hidden the protocol's visible time after it actually
+	 * appeared, but the next one is scheduled at its onset in the schedule
+	 * relative to the start of the game so that lateness doesn't accumulate.
+	 * 
+	 * @param timeNanos The time at which the stimulus is being shown.
+	 */
+	private void showNewStimulus(long timeNanos)
+	{
+		checkMiss(timeNanos);
+		
+		if(isPreciseEnough())
+		{
+			precise = true;
+			endGame(timeNanos);
+			return;
+		}
+		
+		currItemMissed = true;
+		
+		prevStimulus = currStimulus;
+		prevTrial = currTrial;
+		timePrevItemDisplayed = timeCurrItemDisplayed;
+		
+		int trial = nextTrial++;
+		currStimulus = schedule.getStimulus(trial);
+		timeCurrItemDisplayed = timeNanos;
+		currTrial = trialLog.begin(currStimulus, stimulusSet.isNoGo(currStimulus), timeNanos, schedule.getRound(trial));
+		display.showStimulus(currStimulus);
+		trialChanged(currTrial);
+		
+		timingStats.recordOnset(timeCurrItemScheduled, timeNanos);
+		droppedFramesAtOnset = scheduler.getDroppedFrames();
+		
+		scheduler.schedule(EVENT_CLEAR_STIMULUS, timeCurrItemDisplayed + (schedule.getVisibleMillis() * NANOS_PER_MILLI));
+		
+		if(nextTrial < schedule.size())
+		{
+			timeCurrItemScheduled = timeStarted + (schedule.getOnsetMillis(nextTrial) * NANOS_PER_MILLI);
+		}
+		else
+		{
+			timeCurrItemScheduled = timeStarted + (schedule.getEndMillis() * NANOS_PER_MILLI);
+		}
+		scheduler.schedule((nextTrial < protocol.getMaxTrials()) ? EVENT_NEW_STIMULUS : EVENT_END_GAME, timeCurrItemScheduled);
+	}
+	
+	/**
+	 * Returns whether or not an adaptive game has shown enough trials and
+	 * reached every target precision so that it may stop.
+	 * 
+	 * @return Whether or not the game may stop now.
+	 */
+	private boolean isPreciseEnough()
+	{
+		if((! protocol.isAdaptive()) || (trialLog.size() < protocol.getMinTrials()))
+		{
+			return false;
+		}
+		
+		double rtTarget = protocol.getTargetRtPrecisionMillis();
+		if((rtTarget > 0.0) && (scorer.getGoRtPrecision() > rtTarget))
+		{
+			return false;
+		}
+		
+		double inhibitionTarget = protocol.getTargetInhibitionPrecision();
+		if((inhibitionTarget > 0.0) && (scorer.getInhibitionPrecision() > inhibitionTarget))
+		{
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Records the final response, if necessary, and tells the Display that
+	 * the game is over.
+	 * 
+	 * @param timeNanos The time at which the game ended.
+	 */
+	private void endGame(long timeNanos)
+	{
+		checkMiss(timeNanos);
+		
+		gameOver = true;
+		display.onGameOver();
+	}
+	
+	/**
+	 * If the stimulus was a good stimulus then it increases the number of
+	 * good stimulus misses; if it was the bad stimulus, then it increases the
+	 * number of bad stimulus skips.
+	 * 
+	 * @param timeNanos The time at which the miss is being recorded.
+	 */
+	private void checkMiss(long timeNanos)
+	{
+		prevItemMissed = currItemMissed;
+		if(currItemMissed)
+		{
+			if(stimulusSet.isNoGo(currStimulus))
+			{
+				numBadItemSkips++;
+			}
+			else
+			{
+				numGoodItemMisses++;
+			}
+			
+			trialLog.close(currTrial, timeNanos);
+			scorer.addNoResponse(stimulusSet.isNoGo(currStimulus));
+			trialChanged(currTrial);
+			
+			currItemMissed = false;
+		}
+	}
+	
+	/**
+	 * Turns the previous trial from a miss into a response for a touch that
+	 * happened before the current stimulus appeared but was delivered after.
+	 * If the previous trial was already responded to, it is a repeat tap.
+	 * 
+	 * @param timeNanos The time of the touch.
+	 * 
+	 * @param onStimulus Whether or not the touch landed on the stimulus.
+	 */
+	private void tapPrevious(long timeNanos, boolean onStimulus)
+	{
+		if((! prevItemMissed) || (timeNanos < timePrevItemDisplayed) || (trialLog.size() < 2))
+		{
+			numRepeatTaps++;
+			return;
+		}
+		
+		trialLog.respond(prevTrial, timeNanos, onStimulus);
+		scorer.reviseNoResponse(stimulusSet.isNoGo(prevStimulus), timeNanos - timePrevItemDisplayed);
+		trialChanged(prevTrial);
+		
+		if(stimulusSet.isNoGo(prevStimulus))
+		{
+			numBadItemSkips--;
+			numBadItemHits++;
+		}
+		else
+		{
+			numGoodItemMisses--;
+			numGoodItemHits++;
+		}
+		
+		prevItemMissed = false;
+	}
+	
+	/**
+	 * Tells the Listener, if there is one, that a trial changed.
+	 * 
+	 * @param index The trial's index.
+	 */
+	private void trialChanged(int index)
+	{
+		if(listener != null)
+		{
+			listener.onTrialChanged(trialLog, index);
+		}
+	}
+}
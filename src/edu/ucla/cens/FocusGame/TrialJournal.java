@@ -0,0 +1,876 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * A crash-safe record of a game's trials as they happen, so that a game that
+ * never reaches the SessionStore, because the process died or the Activity
+ * was destroyed part way through, can be recovered the next time the app is
+ * launched.
+ * 
+ * It is the TrialEngine's Listener. Each change to a trial is copied into a
+ * TrialQueue on the engine's thread, which never blocks, allocates, or wakes
+ * anything, and a background thread polls the queue and writes each trial to
+ * its own fixed-size record in a memory-mapped file. The file is fully
+ * allocated for the protocol's most trials before the game starts, so a
+ * write never grows it, and the writes are synced to storage at most once a
+ * second and when the game ends. If the queue is ever full, the trials that
+ * didn't fit are offered again whole with the next update and, when the
+ * game ends, waited for, so no update is lost. The engine's counts of
+ * repeat and off-stimulus taps are kept in volatile fields and written to
+ * the header by the background thread whenever they change.
+ * 
+ * The file is a header followed by one record per trial, all big-endian:
+ * 
+ * 	Header - The magic number, the version, whether or not the game ended,
+ * 			 the number of records there is room for, the wall-clock start
+ * 			 in milliseconds, the start on the game's clock in nanoseconds,
+ * 			 the seed, the repeat taps, the off-stimulus taps, then the
+ * 			 game type and the participant as UTF-8.
+ * 
+ * 	Record - The trial's index plus one, which is written last so that a
+ * 			 record that was never written reads as 0, the stimulus, the
+ * 			 round, the TrialLog.FLAG_* values, the onset, and the response
+ * 			 or close time.
+ * 
+ * A journal is deleted once its session has been saved. Any journal that is
+ * left behind and isn't being written by this process may be recovered with
+ * read().
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TrialJournal implements TrialEngine.Listener
+{
+	private static final String TAG = "FocusGame.TrialJournal";
+	
+	// Where the journals live under the application's files.
+	private static final String DIRECTORY = "journals";
+	private static final String SUFFIX = ".journal";
+	
+	private static final int MAGIC = 0x46474A4C;
+	private static final int VERSION = 2;
+	
+	private static final int STATE_OPEN = 0;
+	private static final int STATE_FINISHED = 1;
+	
+	// The header's layout.
+	private static final int HEADER_MAGIC = 0;
+	private static final int HEADER_VERSION = 4;
+	private static final int HEADER_STATE = 8;
+	private static final int HEADER_CAPACITY = 12;
+	private static final int HEADER_STARTED_MILLIS = 16;
+	private static final int HEADER_STARTED_NANOS = 24;
+	private static final int HEADER_SEED = 32;
+	private static final int HEADER_REPEAT_TAPS = 40;
+	private static final int HEADER_OFF_STIMULUS_TAPS = 44;
+	private static final int HEADER_GAME_TYPE = 48;
+	private static final int MAX_STRING_BYTES = 102;
+	private static final int HEADER_PARTICIPANT = HEADER_GAME_TYPE + 2 + MAX_STRING_BYTES;
+	private static final int HEADER_SIZE = 256;
+	
+	// The record's layout.
+	private static final int RECORD_SEQUENCE = 0;
+	private static final int RECORD_STIMULUS = 4;
+	private static final int RECORD_ROUND = 8;
+	private static final int RECORD_FLAGS = 12;
+	private static final int RECORD_ONSET = 16;
+	private static final int RECORD_RESPONSE = 24;
+	private static final int RECORD_SIZE = 32;
+	
+	// Far more than can change between two polls.
+	private static final int QUEUE_CAPACITY = 256;
+	
+	// Marks that no trials are waiting to be offered again.
+	private static final int NONE = -1;
+	
+	private static final long POLL_NANOS = 10L * 1000000L;
+	private static final long SYNC_INTERVAL_NANOS = 1000L * 1000000L;
+	
+	// The names of the journals that this process is still writing or
+	// hasn't saved yet, which must not be recovered.
+	private static final Set<String> active = new HashSet<String>();
+	
+	private final File file;
+	private final String gameType;
+	private final String participant;
+	private final long startedMillis;
+	private final long startedNanos;
+	private final long seed;
+	private final int capacity;
+	
+	private final TrialQueue queue;
+	private final Thread writer;
+	
+	private volatile boolean stopped;
+	private volatile boolean finished;
+	
+	// Written by the engine's thread and copied into the header by the
+	// background thread.
+	private volatile int numRepeatTaps;
+	private volatile int numOffStimulusTaps;
+	
+	// Only touched by the engine's thread: the trials, the first and last of
+	// those that didn't fit in the queue and must be offered again, and how
+	// many times it was full.
+	private TrialLog trialLog;
+	private int pendingFrom;
+	private int pendingTo;
+	private int numFull;
+	
+	/**
+	 * A journal that was read back.
+	 * 
+	 * @author John Jenkins
+	 * @version 1.0
+	 */
+	public static class Recovered
+	{
+		private final String gameType;
+		private final String participant;
+		private final long startedMillis;
+		private final long startedNanos;
+		private final long seed;
+		private final int numRepeatTaps;
+		private final int numOffStimulusTaps;
+		private final boolean finished;
+		private final TrialLog trials;
+		
+		/**
+		 * Creates a recovered journal.
+		 * 
+		 * @param gameType The name of the stimulus set.
+		 * 
+		 * @param participant Who played or null.
+		 * 
+		 * @param startedMillis The wall-clock start.
+		 * 
+		 * @param startedNanos The start on the game's clock.
+		 * 
+		 * @param seed The seed of the game's schedule.
+		 * 
+		 * @param numRepeatTaps The repeat taps.
+		 * 
+		 * @param numOffStimulusTaps The taps that missed the stimulus.
+		 * 
+		 * @param finished Whether or not the game ended.
+		 * 
+		 * @param trials The trials.
+		 */
+		private Recovered(String gameType, String participant, long startedMillis, long startedNanos, long seed, int numRepeatTaps, int numOffStimulusTaps, boolean finished, TrialLog trials)
+		{
+			this.gameType = gameType;
+			this.participant = participant;
+			this.startedMillis = startedMillis;
+			this.startedNanos = startedNanos;
+			this.seed = seed;
+			this.numRepeatTaps = numRepeatTaps;
+			this.numOffStimulusTaps = numOffStimulusTaps;
+			this.finished = finished;
+			this.trials = trials;
+		}
+		
+		/**
+		 * Returns the name of the game's stimulus set.
+		 * 
+		 * @return The game type.
+		 */
+		public String getGameType()
+		{
+			return gameType;
+		}
+		
+		/**
+		 * Returns who played.
+		 * 
+		 * @return The participant or null if the caller didn't say.
+		 */
+		public String getParticipant()
+		{
+			return participant;
+		}
+		
+		/**
+		 * Returns when the game started.
+		 * 
+		 * @return Milliseconds since the epoch.
+		 */
+		public long getStartedMillis()
+		{
+			return startedMillis;
+		}
+		
+		/**
+		 * Returns when the game started on the same clock as the trials.
+		 * 
+		 * @return The start in nanoseconds.
+		 */
+		public long getStartedNanos()
+		{
+			return startedNanos;
+		}
+		
+		/**
+		 * Returns the seed of the game's schedule.
+		 * 
+		 * @return The seed.
+		 */
+		public long getSeed()
+		{
+			return seed;
+		}
+		
+		/**
+		 * Returns the number of taps after a stimulus had already been
+		 * responded to, as the engine counts them.
+		 * 
+		 * @return The repeat taps.
+		 */
+		public int getNumRepeatTaps()
+		{
+			return numRepeatTaps;
+		}
+		
+		/**
+		 * Returns the number of taps that missed the stimulus.
+		 * 
+		 * @return The off-stimulus taps.
+		 */
+		public int getNumOffStimulusTaps()
+		{
+			return numOffStimulusTaps;
+		}
+		
+		/**
+		 * Returns whether or not the game ended before the journal stopped,
+		 * i.e. only the saving of it was lost.
+		 * 
+		 * @return Whether or not the game ended.
+		 */
+		public boolean isFinished()
+		{
+			return finished;
+		}
+		
+		/**
+		 * Returns every trial that was begun and then responded to or closed.
+		 * 
+		 * @return The trials.
+		 */
+		public TrialLog getTrials()
+		{
+			return trials;
+		}
+	}
+	
+	/**
+	 * Creates a journal for a game that is about to start. Nothing is
+	 * written until start() is called.
+	 * 
+	 * @param directory Where to keep the journal.
+	 * 
+	 * @param gameType The name of the stimulus set.
+	 * 
+	 * @param participant Who is playing or null.
+	 * 
+	 * @param startedMillis The wall-clock start.
+	 * 
+	 * @param startedNanos The start on the game's clock.
+	 * 
+	 * @param seed The seed of the game's schedule.
+	 * 
+	 * @param capacity The most trials the game may have. Trials past this
+	 * 				   are not journaled.
+	 */
+	public TrialJournal(File directory, String gameType, String participant, long startedMillis, long startedNanos, long seed, int capacity)
+	{
+		this.gameType = gameType;
+		this.participant = participant;
+		this.startedMillis = startedMillis;
+		this.startedNanos = startedNanos;
+		this.seed = seed;
+		this.capacity = capacity;
+		
+		pendingFrom = NONE;
+		pendingTo = NONE;
+		
+		file = new File(directory, startedMillis + "-" + Long.toHexString(seed) + SUFFIX);
+		synchronized(active)
+		{
+			active.add(file.getName());
+		}
+		
+		queue = new TrialQueue(QUEUE_CAPACITY);
+		writer = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+				write();
+			}
+		}, "TrialJournal");
+		writer.setDaemon(true);
+	}
+	
+	/**
+	 * Returns the directory that the application keeps its journals in.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return The directory. It may not exist yet.
+	 */
+	public static File getDirectory(Context context)
+	{
+		return new File(context.getFilesDir(), DIRECTORY);
+	}
+	
+	/**
+	 * Starts the background thread, which creates the file and then writes
+	 * the trials as they change.
+	 */
+	public void start()
+	{
+		writer.start();
+	}
+	
+	/**
+	 * Copies the trial that changed, after any that didn't fit before, into
+	 * the queue for the background thread. If it doesn't fit either, it is
+	 * offered again with the next update.
+	 */
+	@Override
+	public void onTrialChanged(TrialLog trialLog, int index)
+	{
+		this.trialLog = trialLog;
+		if(pendingFrom == NONE)
+		{
+			pendingFrom = index;
+			pendingTo = index;
+		}
+		else
+		{
+			pendingFrom = Math.min(pendingFrom, index);
+			pendingTo = Math.max(pendingTo, index);
+		}
+		
+		if(! offerPending())
+		{
+			numFull++;
+		}
+	}
+	
+	/**
+	 * Keeps the counts for the background thread to write to the header.
+	 */
+	@Override
+	public void onTapsCounted(int numRepeatTaps, int numOffStimulusTaps)
+	{
+		this.numRepeatTaps = numRepeatTaps;
+		this.numOffStimulusTaps = numOffStimulusTaps;
+	}
+	
+	/**
+	 * Offers every trial that is waiting to be offered, in order, until the
+	 * queue is full.
+	 * 
+	 * @return Whether or not every one fit.
+	 */
+	private boolean offerPending()
+	{
+		while(pendingFrom != NONE)
+		{
+			int index = pendingFrom;
+			if(! queue.offer(index, trialLog.getStimulus(index), trialLog.getRound(index), trialLog.getFlags(index), trialLog.getOnsetNanos(index), trialLog.getResponseNanos(index)))
+			{
+				return false;
+			}
+			
+			if(index == pendingTo)
+			{
+				pendingFrom = NONE;
+				pendingTo = NONE;
+			}
+			else
+			{
+				pendingFrom++;
+			}
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Offers every trial that is waiting to be offered, waiting for the
+	 * background thread to make room, unless it isn't running to do so.
+	 */
+	private void flushPending()
+	{
+		while((! offerPending()) && writer.isAlive())
+		{
+			LockSupport.parkNanos(POLL_NANOS);
+		}
+	}
+	
+	/**
+	 * Marks the game as having ended and stops the background thread once it
+	 * has written everything. The journal is kept, and won't be recovered by
+	 * this process, until delete() is called once the session is saved,
+	 * which waits for the background thread first.
+	 * 
+	 * This must be called on the engine's thread.
+	 */
+	public void finish()
+	{
+		if(numFull > 0)
+		{
+			Log.w(TAG, "The queue was full for " + numFull + " trial updates.");
+		}
+		flushPending();
+		
+		finished = true;
+		stopped = true;
+	}
+	
+	/**
+	 * Stops the background thread once it has written everything and leaves
+	 * the journal to be recovered, for a game that won't be finished. It
+	 * only becomes recoverable once the background thread has stopped, so
+	 * that it isn't recovered and deleted while it is still being written.
+	 * 
+	 * This must be called on the engine's thread.
+	 */
+	public void close()
+	{
+		flushPending();
+		stopped = true;
+		
+		if(writer.getState() == Thread.State.NEW)
+		{
+			release();
+		}
+	}
+	
+	/**
+	 * Returns whether or not finish() has been called.
+	 * 
+	 * @return Whether or not the game ended.
+	 */
+	public boolean isFinished()
+	{
+		return finished;
+	}
+	
+	/**
+	 * Waits for the background thread to stop and deletes the journal. This
+	 * should only be called, off of the UI thread, once the session has been
+	 * saved.
+	 */
+	public void delete()
+	{
+		stopped = true;
+		
+		try
+		{
+			writer.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		
+		if(file.exists() && (! file.delete()))
+		{
+			Log.w(TAG, "The journal could not be deleted: " + file);
+		}
+		
+		release();
+	}
+	
+	/**
+	 * Lets the journal be recovered by this process.
+	 */
+	private void release()
+	{
+		synchronized(active)
+		{
+			active.remove(file.getName());
+		}
+	}
+	
+	/**
+	 * Returns the journals in a directory that this process isn't writing and
+	 * so may be recovered.
+	 * 
+	 * @param directory The directory.
+	 * 
+	 * @return The journals in the order their games started.
+	 */
+	public static List<File> getRecoverable(File directory)
+	{
+		List<File> journals = new ArrayList<File>();
+		File[] files = directory.listFiles();
+		if(files == null)
+		{
+			return journals;
+		}
+		
+		synchronized(active)
+		{
+			for(File file : files)
+			{
+				if(file.getName().endsWith(SUFFIX) && (! active.contains(file.getName())))
+				{
+					journals.add(file);
+				}
+			}
+		}
+		
+		Collections.sort(journals);
+		return journals;
+	}
+	
+	/**
+	 * Reads a journal back. A trial that was still being shown when the
+	 * journal stopped, and so was neither responded to nor closed, is left
+	 * out.
+	 * 
+	 * @param file The journal.
+	 * 
+	 * @return What it recorded.
+	 * 
+	 * @throws IOException The journal could not be read or is malformed.
+	 */
+	public static Recovered read(File file) throws IOException
+	{
+		RandomAccessFile input = new RandomAccessFile(file, "r");
+		ByteBuffer buffer;
+		try
+		{
+			if(input.length() < HEADER_SIZE)
+			{
+				throw new IOException("The journal is too short.");
+			}
+			
+			byte[] bytes = new byte[(int) input.length()];
+			input.readFully(bytes);
+			buffer = ByteBuffer.wrap(bytes);
+		}
+		finally
+		{
+			input.close();
+		}
+		
+		if(buffer.getInt(HEADER_MAGIC) != MAGIC)
+		{
+			throw new IOException("The file isn't a journal.");
+		}
+		if(buffer.getInt(HEADER_VERSION) != VERSION)
+		{
+			throw new IOException("Unknown journal version: " + buffer.getInt(HEADER_VERSION));
+		}
+		int capacity = buffer.getInt(HEADER_CAPACITY);
+		if((capacity < 0) || (HEADER_SIZE + ((long) capacity * RECORD_SIZE) > buffer.capacity()))
+		{
+			throw new IOException("The journal is truncated.");
+		}
+		
+		int size = 0;
+		while((size < capacity) && (buffer.getInt(HEADER_SIZE + (size * RECORD_SIZE) + RECORD_SEQUENCE) == size + 1))
+		{
+			size++;
+		}
+		
+		TrialLog trials = new TrialLog(size);
+		for(int i = 0; i < size; i++)
+		{
+			int offset = HEADER_SIZE + (i * RECORD_SIZE);
+			int flags = buffer.getInt(offset + RECORD_FLAGS);
+			long onsetNanos = buffer.getLong(offset + RECORD_ONSET);
+			long responseNanos = buffer.getLong(offset + RECORD_RESPONSE);
+			if(((flags & TrialLog.FLAG_RESPONDED) == 0) && (responseNanos == onsetNanos) && (i == size - 1))
+			{
+				break;
+			}
+			
+			int index = trials.begin(buffer.getInt(offset + RECORD_STIMULUS), (flags & TrialLog.FLAG_NO_GO) != 0, onsetNanos, buffer.getInt(offset + RECORD_ROUND));
+			if((flags & TrialLog.FLAG_RESPONDED) != 0)
+			{
+				trials.respond(index, responseNanos, (flags & TrialLog.FLAG_OFF_STIMULUS) == 0);
+			}
+			else
+			{
+				trials.close(index, responseNanos);
+			}
+			trials.addFlags(index, flags & TrialLog.FLAG_STALLED);
+		}
+		
+		return new Recovered(
+			readString(buffer, HEADER_GAME_TYPE),
+			readString(buffer, HEADER_PARTICIPANT),
+			buffer.getLong(HEADER_STARTED_MILLIS),
+			buffer.getLong(HEADER_STARTED_NANOS),
+			buffer.getLong(HEADER_SEED),
+			buffer.getInt(HEADER_REPEAT_TAPS),
+			buffer.getInt(HEADER_OFF_STIMULUS_TAPS),
+			buffer.getInt(HEADER_STATE) == STATE_FINISHED,
+			trials);
+	}
+	
+	/**
+	 * Creates and maps the file, then writes each update as it is taken from
+	 * the queue until the journal is stopped. If the game wasn't finished,
+	 * the journal may be recovered once this returns. This runs on the
+	 * background thread.
+	 */
+	private void write()
+	{
+		RandomAccessFile output = null;
+		try
+		{
+			File directory = file.getParentFile();
+			if((! directory.isDirectory()) && (! directory.mkdirs()))
+			{
+				throw new IOException("The directory could not be created: " + directory);
+			}
+			
+			// Writing every byte up front, rather than just setting the
+			// length, reserves the space so that a write through the map
+			// can't fail for lack of it.
+			int size = HEADER_SIZE + (capacity * RECORD_SIZE);
+			output = new RandomAccessFile(file, "rw");
+			output.setLength(0);
+			output.write(new byte[size]);
+			
+			MappedByteBuffer buffer = output.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			writeHeader(buffer);
+			buffer.force();
+			
+			long[] update = new long[6];
+			long lastSync = System.nanoTime();
+			boolean dirty = false;
+			while(true)
+			{
+				// Read before draining so that everything queued before the
+				// journal was stopped is written.
+				boolean stopping = stopped;
+				
+				boolean drained = false;
+				while(queue.poll(update))
+				{
+					writeRecord(buffer, update);
+					drained = true;
+				}
+				dirty |= drained;
+				dirty |= writeTaps(buffer);
+				
+				if(stopping)
+				{
+					break;
+				}
+				
+				long now = System.nanoTime();
+				if(dirty && (now - lastSync >= SYNC_INTERVAL_NANOS))
+				{
+					buffer.force();
+					dirty = false;
+					lastSync = now;
+				}
+				
+				if(! drained)
+				{
+					LockSupport.parkNanos(POLL_NANOS);
+				}
+			}
+			
+			buffer.putInt(HEADER_STATE, finished ? STATE_FINISHED : STATE_OPEN);
+			buffer.force();
+		}
+		catch(IOException e)
+		{
+			Log.e(TAG, "Error while writing the journal.", e);
+		}
+		finally
+		{
+			if(output != null)
+			{
+				try
+				{
+					output.close();
+				}
+				catch(IOException e)
+				{
+					Log.w(TAG, "Error while closing the journal.", e);
+				}
+			}
+			
+			// A finished journal stays until delete() once it is saved.
+			if(! finished)
+			{
+				release();
+			}
+		}
+	}
+	
+	/**
+	 * Writes the header of a game that hasn't ended.
+	 * 
+	 * @param buffer The mapped file.
+	 */
+	private void writeHeader(ByteBuffer buffer)
+	{
+		buffer.putInt(HEADER_MAGIC, MAGIC);
+		buffer.putInt(HEADER_VERSION, VERSION);
+		buffer.putInt(HEADER_STATE, STATE_OPEN);
+		buffer.putInt(HEADER_CAPACITY, capacity);
+		buffer.putLong(HEADER_STARTED_MILLIS, startedMillis);
+		buffer.putLong(HEADER_STARTED_NANOS, startedNanos);
+		buffer.putLong(HEADER_SEED, seed);
+		writeString(buffer, HEADER_GAME_TYPE, gameType);
+		writeString(buffer, HEADER_PARTICIPANT, participant);
+	}
+	
+	/**
+	 * Writes the engine's latest tap counts to the header.
+	 * 
+	 * @param buffer The mapped file.
+	 * 
+	 * @return Whether or not either count changed.
+	 */
+	private boolean writeTaps(ByteBuffer buffer)
+	{
+		int repeatTaps = numRepeatTaps;
+		int offStimulusTaps = numOffStimulusTaps;
+		if((buffer.getInt(HEADER_REPEAT_TAPS) == repeatTaps) && (buffer.getInt(HEADER_OFF_STIMULUS_TAPS) == offStimulusTaps))
+		{
+			return false;
+		}
+		
+		buffer.putInt(HEADER_REPEAT_TAPS, repeatTaps);
+		buffer.putInt(HEADER_OFF_STIMULUS_TAPS, offStimulusTaps);
+		return true;
+	}
+	
+	/**
+	 * Writes one update to its trial's record.
+	 * 
+	 * @param buffer The mapped file.
+	 * 
+	 * @param update The update as TrialQueue.poll() returns it.
+	 */
+	private void writeRecord(ByteBuffer buffer, long[] update)
+	{
+		int index = (int) update[0];
+		if(index >= capacity)
+		{
+			return;
+		}
+		
+		int offset = HEADER_SIZE + (index * RECORD_SIZE);
+		buffer.putInt(offset + RECORD_STIMULUS, (int) update[1]);
+		buffer.putInt(offset + RECORD_ROUND, (int) update[2]);
+		buffer.putInt(offset + RECORD_FLAGS, (int) update[3]);
+		buffer.putLong(offset + RECORD_ONSET, update[4]);
+		buffer.putLong(offset + RECORD_RESPONSE, update[5]);
+		buffer.putInt(offset + RECORD_SEQUENCE, index + 1);
+	}
+	
+	/**
+	 * Writes a String as its length in bytes, or -1 if it is null, then its
+	 * UTF-8, cutting it short if it is too long.
+	 * 
+	 * @param buffer The buffer.
+	 * 
+	 * @param offset Where to write it.
+	 * 
+	 * @param value The String or null.
+	 */
+	private static void writeString(ByteBuffer buffer, int offset, String value)
+	{
+		if(value == null)
+		{
+			buffer.putShort(offset, (short) -1);
+			return;
+		}
+		
+		byte[] bytes = toUtf8(value);
+		int length = value.length();
+		while(bytes.length > MAX_STRING_BYTES)
+		{
+			length--;
+			bytes = toUtf8(value.substring(0, length));
+		}
+		
+		buffer.putShort(offset, (short) bytes.length);
+		for(int i = 0; i < bytes.length; i++)
+		{
+			buffer.put(offset + 2 + i, bytes[i]);
+		}
+	}
+	
+	/**
+	 * Reads a String written by writeString().
+	 * 
+	 * @param buffer The buffer.
+	 * 
+	 * @param offset Where it was written.
+	 * 
+	 * @return The String or null.
+	 * 
+	 * @throws IOException The length is out of range.
+	 */
+	private static String readString(ByteBuffer buffer, int offset) throws IOException
+	{
+		int length = buffer.getShort(offset);
+		if(length == -1)
+		{
+			return null;
+		}
+		if((length < 0) || (length > MAX_STRING_BYTES))
+		{
+			throw new IOException("The journal's header is malformed.");
+		}
+		
+		byte[] bytes = new byte[length];
+		for(int i = 0; i < length; i++)
+		{
+			bytes[i] = buffer.get(offset + 2 + i);
+		}
+		return new String(bytes, "UTF-8");
+	}
+	
+	/**
+	 * Encodes a String as UTF-8.
+	 * 
+	 * @param value The String.
+	 * 
+	 * @return Its bytes.
+	 */
+	private static byte[] toUtf8(String value)
+	{
+		try
+		{
+			return value.getBytes("UTF-8");
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			throw new IllegalStateException("UTF-8 is not supported.", e);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package edu.ucla.cens.FocusGame;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+/**
+ * Shows one row per trial in a ListView. Rows are only formatted when the
+ * ListView asks for them, and their Views are recycled, so the cost of
+ * showing the results doesn't depend on the number of trials.
+ * 
+ * The trials are decoded from the TrialCodec payload as they are scrolled
+ * to rather than all at once. If only the original JSON response times are
+ * available, those are used instead.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TrialListAdapter extends BaseAdapter
+{
+	private static final String TAG = "FocusGame.TrialListAdapter";
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	private final LayoutInflater inflater;
+	
+	private final TrialCodec.Reader reader;
+	private final JSONArray legacy;
+	private final int count;
+	
+	// The trials that have been decoded so far.
+	private int[] stimuli;
+	private int[] flags;
+	private long[] elapsedMillis;
+	private int numDecoded;
+	
+	private final StringBuilder row = new StringBuilder();
+	
+	/**
+	 * Creates an adapter over an encoded payload. Only its header is read.
+	 * 
+	 * @param context The Context used to inflate the rows.
+	 * 
+	 * @param trials The TrialCodec payload.
+	 * 
+	 * @throws IllegalArgumentException The payload can't be read.
+	 */
+	public TrialListAdapter(Context context, byte[] trials)
+	{
+		inflater = LayoutInflater.from(context);
+		
+		reader = new TrialCodec.Reader(trials);
+		legacy = null;
+		count = reader.getNumTrials();
+		
+		stimuli = new int[16];
+		flags = new int[16];
+		elapsedMillis = new long[16];
+		numDecoded = 0;
+	}
+	
+	/**
+	 * Creates an adapter over the original JSON response times.
+	 * 
+	 * @param context The Context used to inflate the rows.
+	 * 
+	 * @param responseTimes The JSON array.
+	 */
+	public TrialListAdapter(Context context, JSONArray responseTimes)
+	{
+		inflater = LayoutInflater.from(context);
+		
+		reader = null;
+		legacy = responseTimes;
+		count = responseTimes.length();
+	}
+	
+	@Override
+	public int getCount()
+	{
+		return count;
+	}
+	
+	/**
+	 * The rows are only text, so there is no item.
+	 */
+	@Override
+	public Object getItem(int position)
+	{
+		return null;
+	}
+	
+	@Override
+	public long getItemId(int position)
+	{
+		return position;
+	}
+	
+	@Override
+	public boolean hasStableIds()
+	{
+		return true;
+	}
+	
+	/**
+	 * Formats a row into a new or recycled TextView.
+	 */
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent)
+	{
+		TextView text = (TextView) convertView;
+		if(text == null)
+		{
+			text = (TextView) inflater.inflate(R.layout.results_trial, parent, false);
+		}
+		
+		row.setLength(0);
+		if(reader != null)
+		{
+			decodeThrough(position);
+			row.append(reader.getStimulusNames()[stimuli[position]]).append(": ")
+			   .append(elapsedMillis[position]).append(" milliseconds");
+			if((flags[position] & TrialLog.FLAG_RESPONDED) == 0)
+			{
+				row.append(" (no tap)");
+			}
+			else if((flags[position] & TrialLog.FLAG_OFF_STIMULUS) != 0)
+			{
+				row.append(" (off the item)");
+			}
+		}
+		else
+		{
+			try
+			{
+				JSONObject response = legacy.getJSONObject(position);
+				String key = (String) response.keys().next();
+				row.append(key).append(": ").append(response.getLong(key)).append(" milliseconds");
+			}
+			catch(JSONException e)
+			{
+				Log.e(TAG, "Error while reading a response time.", e);
+			}
+		}
+		text.setText(row.toString());
+		
+		return text;
+	}
+	
+	/**
+	 * Decodes trials up to and including some position if they haven't been
+	 * already.
+	 * 
+	 * @param position The trial that is needed.
+	 */
+	private void decodeThrough(int position)
+	{
+		while(numDecoded <= position)
+		{
+			if(! reader.next())
+			{
+				throw new IllegalStateException("The payload has fewer trials than its count.");
+			}
+			
+			if(numDecoded == stimuli.length)
+			{
+				int capacity = Math.min(stimuli.length * 2, count);
+				
+				int[] newStimuli = new int[capacity];
+				System.arraycopy(stimuli, 0, newStimuli, 0, numDecoded);
+				stimuli = newStimuli;
+				
+				int[] newFlags = new int[capacity];
+				System.arraycopy(flags, 0, newFlags, 0, numDecoded);
+				flags = newFlags;
+				
+				long[] newElapsedMillis = new long[capacity];
+				System.arraycopy(elapsedMillis, 0, newElapsedMillis, 0, numDecoded);
+				elapsedMillis = newElapsedMillis;
+			}
+			
+			stimuli[numDecoded] = reader.getStimulus();
+			flags[numDecoded] = reader.getFlags();
+			elapsedMillis[numDecoded] = reader.getElapsedNanos() / NANOS_PER_MILLI;
+			numDecoded++;
+		}
+	}
+}
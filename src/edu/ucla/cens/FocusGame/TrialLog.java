@@ -0,0 +1,351 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * A record of every trial in a game kept as parallel, primitive arrays: one
+ * entry per stimulus shown with its identifier, when it was shown, when it
+ * was responded to or closed, some flags about the outcome, and the round.
+ * 
+ * The arrays are allocated up front for the expected number of trials, so
+ * recording a trial does no allocation, boxing, or parsing. Only when the
+ * game is over is the log serialized into whatever format the caller needs.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TrialLog
+{
+	// Set when the stimulus was tapped.
+	public static final int FLAG_RESPONDED = 0x01;
+	
+	// Set when the stimulus was the bad stimulus.
+	public static final int FLAG_NO_GO = 0x02;
+	
+	// Set when the tap that responded to the stimulus landed outside of it.
+	public static final int FLAG_OFF_STIMULUS = 0x04;
+	
+	// Set when the UI thread stalled while the stimulus was shown or awaiting
+	// a response, so its timing may be off.
+	public static final int FLAG_STALLED = 0x08;
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	private int[] stimuli;
+	private long[] onsetNanos;
+	private long[] responseNanos;
+	private byte[] flags;
+	private int[] rounds;
+	
+	private int size;
+	
+	/**
+	 * Creates a new, empty log.
+	 * 
+	 * @param capacity The expected number of trials. If more trials than
+	 * 				   this are recorded the arrays will be grown, which
+	 * 				   allocates.
+	 */
+	public TrialLog(int capacity)
+	{
+		if(capacity < 1)
+		{
+			capacity = 1;
+		}
+		
+		stimuli = new int[capacity];
+		onsetNanos = new long[capacity];
+		responseNanos = new long[capacity];
+		flags = new byte[capacity];
+		rounds = new int[capacity];
+		
+		size = 0;
+	}
+	
+	/**
+	 * Creates a copy of another log that is only as large as it needs to be.
+	 * 
+	 * @param other The log to copy.
+	 */
+	public TrialLog(TrialLog other)
+	{
+		this(other.size);
+		
+		System.arraycopy(other.stimuli, 0, stimuli, 0, other.size);
+		System.arraycopy(other.onsetNanos, 0, onsetNanos, 0, other.size);
+		System.arraycopy(other.responseNanos, 0, responseNanos, 0, other.size);
+		System.arraycopy(other.flags, 0, flags, 0, other.size);
+		System.arraycopy(other.rounds, 0, rounds, 0, other.size);
+		
+		size = other.size;
+	}
+	
+	/**
+	 * Drops all of the trials but keeps the arrays for reuse.
+	 */
+	public void clear()
+	{
+		size = 0;
+	}
+	
+	/**
+	 * Records a stimulus being shown.
+	 * 
+	 * @param stimulus The stimulus' identifier.
+	 * 
+	 * @param noGo Whether or not this is the bad stimulus.
+	 * 
+	 * @param timeNanos The time at which it was shown.
+	 * 
+	 * @param round The round that it is a part of.
+	 * 
+	 * @return The index of the new trial.
+	 */
+	public int begin(int stimulus, boolean noGo, long timeNanos, int round)
+	{
+		if(size == stimuli.length)
+		{
+			grow();
+		}
+		
+		stimuli[size] = stimulus;
+		onsetNanos[size] = timeNanos;
+		responseNanos[size] = timeNanos;
+		flags[size] = (byte) (noGo ? FLAG_NO_GO : 0);
+		rounds[size] = round;
+		
+		return size++;
+	}
+	
+	/**
+	 * Records that a trial's stimulus was tapped.
+	 * 
+	 * @param index The trial's index as returned by begin().
+	 * 
+	 * @param timeNanos The time of the tap.
+	 * 
+	 * @param onStimulus Whether or not the tap landed on the stimulus.
+	 */
+	public void respond(int index, long timeNanos, boolean onStimulus)
+	{
+		responseNanos[index] = timeNanos;
+		flags[index] |= FLAG_RESPONDED;
+		if(! onStimulus)
+		{
+			flags[index] |= FLAG_OFF_STIMULUS;
+		}
+	}
+	
+	/**
+	 * Records that a trial ended without its stimulus being tapped.
+	 * 
+	 * @param index The trial's index as returned by begin().
+	 * 
+	 * @param timeNanos The time at which the trial ended.
+	 */
+	public void close(int index, long timeNanos)
+	{
+		responseNanos[index] = timeNanos;
+	}
+	
+	/**
+	 * Sets more of a trial's flags, e.g. FLAG_STALLED.
+	 * 
+	 * @param index The trial's index as returned by begin().
+	 * 
+	 * @param flags The FLAG_* values to set. Those already set are kept.
+	 */
+	public void addFlags(int index, int flags)
+	{
+		this.flags[index] |= (byte) flags;
+	}
+	
+	/**
+	 * Returns the number of trials that have been recorded.
+	 * 
+	 * @return The number of trials.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * Returns a trial's stimulus.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return The stimulus' identifier.
+	 */
+	public int getStimulus(int index)
+	{
+		return stimuli[index];
+	}
+	
+	/**
+	 * Returns the time a trial's stimulus was shown.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return The onset time in nanoseconds.
+	 */
+	public long getOnsetNanos(int index)
+	{
+		return onsetNanos[index];
+	}
+	
+	/**
+	 * Returns the time a trial was responded to or, if it never was, when it
+	 * was closed.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return The response time in nanoseconds.
+	 */
+	public long getResponseNanos(int index)
+	{
+		return responseNanos[index];
+	}
+	
+	/**
+	 * Returns the time between a trial's stimulus being shown and it being
+	 * responded to or closed.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return The elapsed time in nanoseconds.
+	 */
+	public long getElapsedNanos(int index)
+	{
+		return responseNanos[index] - onsetNanos[index];
+	}
+	
+	/**
+	 * Returns a trial's flags.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return The FLAG_* values that apply to the trial.
+	 */
+	public int getFlags(int index)
+	{
+		return flags[index] & 0xFF;
+	}
+	
+	/**
+	 * Returns whether or not a trial's stimulus was tapped.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return Whether or not the stimulus was tapped.
+	 */
+	public boolean isResponded(int index)
+	{
+		return (flags[index] & FLAG_RESPONDED) != 0;
+	}
+	
+	/**
+	 * Returns whether or not a trial's stimulus was the bad stimulus.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return Whether or not the stimulus was the bad stimulus.
+	 */
+	public boolean isNoGo(int index)
+	{
+		return (flags[index] & FLAG_NO_GO) != 0;
+	}
+	
+	/**
+	 * Returns the round a trial was a part of.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @return The round.
+	 */
+	public int getRound(int index)
+	{
+		return rounds[index];
+	}
+	
+	/**
+	 * Serializes the log in the original "response_times" format: a JSON
+	 * array with one object per trial whose only key is the stimulus' name
+	 * and whose value is the elapsed time in milliseconds.
+	 * 
+	 * @param names The name of each stimulus, indexed by its identifier.
+	 * 
+	 * @return The JSON array as a String.
+	 */
+	public String toJson(String[] names)
+	{
+		StringBuilder builder = new StringBuilder(16 * (size + 1));
+		builder.append('[');
+		for(int i = 0; i < size; i++)
+		{
+			if(i > 0)
+			{
+				builder.append(',');
+			}
+			
+			builder.append("{\"");
+			appendEscaped(builder, names[stimuli[i]]);
+			builder.append("\":").append(getElapsedNanos(i) / NANOS_PER_MILLI).append('}');
+		}
+		builder.append(']');
+		return builder.toString();
+	}
+	
+	/**
+	 * Doubles the size of all of the arrays.
+	 */
+	private void grow()
+	{
+		int capacity = stimuli.length * 2;
+		
+		int[] newStimuli = new int[capacity];
+		System.arraycopy(stimuli, 0, newStimuli, 0, size);
+		stimuli = newStimuli;
+		
+		long[] newOnsetNanos = new long[capacity];
+		System.arraycopy(onsetNanos, 0, newOnsetNanos, 0, size);
+		onsetNanos = newOnsetNanos;
+		
+		long[] newResponseNanos = new long[capacity];
+		System.arraycopy(responseNanos, 0, newResponseNanos, 0, size);
+		responseNanos = newResponseNanos;
+		
+		byte[] newFlags = new byte[capacity];
+		System.arraycopy(flags, 0, newFlags, 0, size);
+		flags = newFlags;
+		
+		int[] newRounds = new int[capacity];
+		System.arraycopy(rounds, 0, newRounds, 0, size);
+		rounds = newRounds;
+	}
+	
+	/**
+	 * Appends a String to a JSON string literal, escaping it as necessary.
+	 * 
+	 * @param builder The builder to append to.
+	 * 
+	 * @param value The value to append.
+	 */
+	static void appendEscaped(StringBuilder builder, String value)
+	{
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if((c == '"') || (c == '\\'))
+			{
+				builder.append('\\').append(c);
+			}
+			else if(c < 0x20)
+			{
+				builder.append(String.format("\\u%04x", (int) c));
+			}
+			else
+			{
+				builder.append(c);
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package edu.ucla.cens.FocusGame;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue of trial updates from exactly one producer thread to
+ * exactly one consumer thread, without locks or allocation.
+ * 
+ * Each update is a copy of one trial's state, kept as four longs in one
+ * preallocated ring. The producer only ever writes the tail and the consumer
+ * only ever writes the head, each with an ordered store rather than a full
+ * fence, and each side keeps its own copy of the other's counter so that it
+ * only reads the shared one when the queue looks full or empty. Offering an
+ * update is a handful of array stores and never blocks or signals the
+ * consumer; the consumer is expected to poll.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TrialQueue
+{
+	// The longs that make up one update: the index and the stimulus, the
+	// round and the flags, the onset, and the response.
+	private static final int LONGS_PER_UPDATE = 4;
+	
+	private static final long LOW_INT = 0xFFFFFFFFL;
+	
+	private final long[] updates;
+	private final int mask;
+	
+	// The number of updates that have been taken, written by the consumer.
+	private final AtomicLong head;
+	
+	// The number of updates that have been offered, written by the producer.
+	private final AtomicLong tail;
+	
+	// The producer's last look at the head.
+	private long producerHead;
+	
+	// The consumer's last look at the tail.
+	private long consumerTail;
+	
+	/**
+	 * Creates an empty queue.
+	 * 
+	 * @param capacity The most updates that may be waiting at once. It is
+	 * 				   rounded up to a power of two.
+	 */
+	public TrialQueue(int capacity)
+	{
+		int size = 1;
+		while(size < capacity)
+		{
+			size <<= 1;
+		}
+		
+		updates = new long[size * LONGS_PER_UPDATE];
+		mask = size - 1;
+		
+		head = new AtomicLong();
+		tail = new AtomicLong();
+	}
+	
+	/**
+	 * Returns the most updates that may be waiting at once.
+	 * 
+	 * @return The capacity.
+	 */
+	public int getCapacity()
+	{
+		return mask + 1;
+	}
+	
+	/**
+	 * Adds a copy of a trial's state. This must only be called from the
+	 * producer thread.
+	 * 
+	 * @param index The trial's index.
+	 * 
+	 * @param stimulus The trial's stimulus.
+	 * 
+	 * @param round The trial's round.
+	 * 
+	 * @param flags The trial's TrialLog.FLAG_* values.
+	 * 
+	 * @param onsetNanos The time the trial's stimulus was shown.
+	 * 
+	 * @param responseNanos The time the trial was responded to or closed.
+	 * 
+	 * @return False if the queue was full, in which case nothing was added.
+	 */
+	public boolean offer(int index, int stimulus, int round, int flags, long onsetNanos, long responseNanos)
+	{
+		long position = tail.get();
+		if(position - producerHead > mask)
+		{
+			producerHead = head.get();
+			if(position - producerHead > mask)
+			{
+				return false;
+			}
+		}
+		
+		int offset = ((int) position & mask) * LONGS_PER_UPDATE;
+		updates[offset] = ((long) index << 32) | (stimulus & LOW_INT);
+		updates[offset + 1] = ((long) round << 32) | (flags & LOW_INT);
+		updates[offset + 2] = onsetNanos;
+		updates[offset + 3] = responseNanos;
+		
+		// Publishes the update's longs along with it.
+		tail.lazySet(position + 1);
+		return true;
+	}
+	
+	/**
+	 * Takes the oldest update. This must only be called from the consumer
+	 * thread.
+	 * 
+	 * @param update Where to copy the update: the index, the stimulus, the
+	 * 				 round, the flags, the onset, and the response, in that
+	 * 				 order. It must have room for at least six longs.
+	 * 
+	 * @return False if the queue was empty, in which case the array is left
+	 * 		   as it was.
+	 */
+	public boolean poll(long[] update)
+	{
+		long position = head.get();
+		if(position >= consumerTail)
+		{
+			consumerTail = tail.get();
+			if(position >= consumerTail)
+			{
+				return false;
+			}
+		}
+		
+		int offset = ((int) position & mask) * LONGS_PER_UPDATE;
+		long indexAndStimulus = updates[offset];
+		long roundAndFlags = updates[offset + 1];
+		update[0] = indexAndStimulus >>> 32;
+		update[1] = (int) indexAndStimulus;
+		update[2] = roundAndFlags >>> 32;
+		update[3] = (int) roundAndFlags;
+		update[4] = updates[offset + 2];
+		update[5] = updates[offset + 3];
+		
+		// Hands the slot back to the producer only once it has been read.
+		head.lazySet(position + 1);
+		return true;
+	}
+}
@@ -0,0 +1,121 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * Every trial of one game as compiled from a Protocol: which stimulus each
+ * trial shows, its round, and its onset relative to the start of the game.
+ * The engine steps through it during the game, so nothing is drawn or
+ * decided while the stimuli are being shown.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class TrialSchedule
+{
+	private final long seed;
+	private final int[] stimuli;
+	private final int[] rounds;
+	private final long[] onsetMillis;
+	private final long endMillis;
+	private final long visibleMillis;
+	
+	/**
+	 * Creates a schedule. The arrays are kept, not copied.
+	 * 
+	 * @param seed The seed it was compiled with.
+	 * 
+	 * @param stimuli Each trial's stimulus.
+	 * 
+	 * @param rounds Each trial's round.
+	 * 
+	 * @param onsetMillis Each trial's onset in milliseconds after the start.
+	 * 
+	 * @param endMillis When the game ends in milliseconds after the start.
+	 * 
+	 * @param visibleMillis How long each stimulus is visible.
+	 */
+	TrialSchedule(long seed, int[] stimuli, int[] rounds, long[] onsetMillis, long endMillis, long visibleMillis)
+	{
+		this.seed = seed;
+		this.stimuli = stimuli;
+		this.rounds = rounds;
+		this.onsetMillis = onsetMillis;
+		this.endMillis = endMillis;
+		this.visibleMillis = visibleMillis;
+	}
+	
+	/**
+	 * Returns the seed that reproduces this schedule.
+	 * 
+	 * @return The seed.
+	 */
+	public long getSeed()
+	{
+		return seed;
+	}
+	
+	/**
+	 * Returns the number of trials.
+	 * 
+	 * @return The number of trials.
+	 */
+	public int size()
+	{
+		return stimuli.length;
+	}
+	
+	/**
+	 * Returns a trial's stimulus.
+	 * 
+	 * @param trial The trial.
+	 * 
+	 * @return The stimulus' identifier.
+	 */
+	public int getStimulus(int trial)
+	{
+		return stimuli[trial];
+	}
+	
+	/**
+	 * Returns a trial's round.
+	 * 
+	 * @param trial The trial.
+	 * 
+	 * @return The round.
+	 */
+	public int getRound(int trial)
+	{
+		return rounds[trial];
+	}
+	
+	/**
+	 * Returns when a trial's stimulus is to be shown.
+	 * 
+	 * @param trial The trial.
+	 * 
+	 * @return The onset in milliseconds after the start of the game.
+	 */
+	public long getOnsetMillis(int trial)
+	{
+		return onsetMillis[trial];
+	}
+	
+	/**
+	 * Returns when the game ends.
+	 * 
+	 * @return The end in milliseconds after the start of the game.
+	 */
+	public long getEndMillis()
+	{
+		return endMillis;
+	}
+	
+	/**
+	 * Returns how long each stimulus is visible.
+	 * 
+	 * @return The time in milliseconds.
+	 */
+	public long getVisibleMillis()
+	{
+		return visibleMillis;
+	}
+}
@@ -0,0 +1,218 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The body of one upload: any number of completed sessions under a batch ID,
+ * as gzipped JSON:
+ * 
+ * 	{"batch_id":"...","sessions":[SESSION, ...]}
+ * 
+ * where each SESSION is:
+ * 
+ * 	{"session":{COLUMN:VALUE, ...},
+ * 	 "trials":[[STIMULUS, NO_GO, ROUND, ONSET_MS, RESPONSE_MS, FLAGS], ...]}
+ * 
+ * with the columns from SessionContract.Sessions and the trials as they are
+ * in SessionContract.Trials. Each session's JSON is built once when it is
+ * saved and kept as is until its batch is accepted. A batch that is retried
+ * is sent again with the same ID and the same sessions, so the server can
+ * drop any batch it has already seen.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class UploadBatch
+{
+	private static final double NANOS_PER_MILLI = 1000000.0;
+	
+	/**
+	 * Only static methods.
+	 */
+	private UploadBatch()
+	{
+		// Only static methods.
+	}
+	
+	/**
+	 * Returns a new, unique batch ID.
+	 * 
+	 * @return The ID.
+	 */
+	public static String newBatchId()
+	{
+		return UUID.randomUUID().toString();
+	}
+	
+	/**
+	 * Builds the JSON of one session.
+	 * 
+	 * @param columns The session's columns. Values may be null, Strings,
+	 * 				  Numbers, or Booleans. Numbers that aren't finite are
+	 * 				  written as null.
+	 * 
+	 * @param trials The session's trials.
+	 * 
+	 * @param names The name of each stimulus, indexed by its identifier.
+	 * 
+	 * @return The session's JSON as UTF-8.
+	 */
+	public static byte[] encodeSession(Map<String, Object> columns, TrialLog trials, String[] names)
+	{
+		StringBuilder builder = new StringBuilder(256 + (32 * trials.size()));
+		
+		builder.append("{\"session\":{");
+		boolean first = true;
+		for(Map.Entry<String, Object> column : columns.entrySet())
+		{
+			if(! first)
+			{
+				builder.append(',');
+			}
+			first = false;
+			
+			appendString(builder, column.getKey());
+			builder.append(':');
+			appendValue(builder, column.getValue());
+		}
+		
+		builder.append("},\"trials\":[");
+		long firstOnset = (trials.size() == 0) ? 0 : trials.getOnsetNanos(0);
+		for(int i = 0; i < trials.size(); i++)
+		{
+			if(i > 0)
+			{
+				builder.append(',');
+			}
+			
+			builder.append('[');
+			appendString(builder, names[trials.getStimulus(i)]);
+			builder.append(',').append(trials.isNoGo(i) ? 1 : 0);
+			builder.append(',').append(trials.getRound(i));
+			builder.append(',').append((trials.getOnsetNanos(i) - firstOnset) / NANOS_PER_MILLI);
+			builder.append(',').append(trials.getElapsedNanos(i) / NANOS_PER_MILLI);
+			builder.append(',').append(trials.getFlags(i));
+			builder.append(']');
+		}
+		builder.append("]}");
+		
+		return toUtf8(builder.toString());
+	}
+	
+	/**
+	 * Builds the gzipped body of a batch.
+	 * 
+	 * @param batchId The batch's ID.
+	 * 
+	 * @param sessions Each session's JSON as returned by encodeSession().
+	 * 
+	 * @return The gzipped body.
+	 */
+	public static byte[] encode(String batchId, List<byte[]> sessions)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+			
+			StringBuilder header = new StringBuilder();
+			header.append("{\"batch_id\":");
+			appendString(header, batchId);
+			header.append(",\"sessions\":[");
+			gzip.write(toUtf8(header.toString()));
+			
+			for(int i = 0; i < sessions.size(); i++)
+			{
+				if(i > 0)
+				{
+					gzip.write(',');
+				}
+				gzip.write(sessions.get(i));
+			}
+			
+			gzip.write(toUtf8("]}"));
+			gzip.close();
+			return bytes.toByteArray();
+		}
+		catch(IOException e)
+		{
+			// Writing to memory doesn't fail.
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Appends a value as JSON.
+	 * 
+	 * @param builder The builder to append to.
+	 * 
+	 * @param value The value.
+	 */
+	private static void appendValue(StringBuilder builder, Object value)
+	{
+		if(value == null)
+		{
+			builder.append("null");
+		}
+		else if(value instanceof Number)
+		{
+			double number = ((Number) value).doubleValue();
+			if(Double.isNaN(number) || Double.isInfinite(number))
+			{
+				builder.append("null");
+			}
+			else
+			{
+				builder.append(value);
+			}
+		}
+		else if(value instanceof Boolean)
+		{
+			builder.append(value);
+		}
+		else
+		{
+			appendString(builder, value.toString());
+		}
+	}
+	
+	/**
+	 * Appends a quoted, escaped JSON string.
+	 * 
+	 * @param builder The builder to append to.
+	 * 
+	 * @param value The string.
+	 */
+	private static void appendString(StringBuilder builder, String value)
+	{
+		builder.append('"');
+		TrialLog.appendEscaped(builder, value);
+		builder.append('"');
+	}
+	
+	/**
+	 * Encodes a string as UTF-8.
+	 * 
+	 * @param value The string.
+	 * 
+	 * @return Its bytes.
+	 */
+	private static byte[] toUtf8(String value)
+	{
+		try
+		{
+			return value.getBytes("UTF-8");
+		}
+		catch(UnsupportedEncodingException e)
+		{
+			// Every platform has UTF-8.
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Random;
+
+/**
+ * Posts UploadBatches to the server and decides what to do when that fails.
+ * 
+ * Each batch is POSTed gzipped with its ID in the "Idempotency-Key" header.
+ * Any 2xx means the server has the batch, as does a 409, which is what the
+ * server answers for a batch ID it has already accepted. Timeouts, 408, 429,
+ * and 5xx are worth retrying after a backoff. A redirect, 401, 403, 404, 405,
+ * or 407 says that the URL or the credentials are wrong rather than the
+ * batch, so it is kept and retried after a backoff as well. Any other answer
+ * never will succeed.
+ * 
+ * The backoff doubles with every failed attempt up to a limit, and the actual
+ * wait is chosen at random below that so that devices that failed together
+ * don't all retry together.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class UploadClient
+{
+	public static final String HEADER_IDEMPOTENCY_KEY = "Idempotency-Key";
+	
+	// The backoff before the first retry and the longest backoff.
+	public static final long BASE_BACKOFF_MILLIS = 30 * 1000L;
+	public static final long MAX_BACKOFF_MILLIS = 60 * 60 * 1000L;
+	
+	private static final int TIMEOUT_MILLIS = 30 * 1000;
+	
+	private final URL url;
+	
+	/**
+	 * Creates a client for an endpoint.
+	 * 
+	 * @param url The URL to post batches to.
+	 */
+	public UploadClient(URL url)
+	{
+		this.url = url;
+	}
+	
+	/**
+	 * Posts a batch on the calling thread.
+	 * 
+	 * @param batchId The batch's ID.
+	 * 
+	 * @param body The batch's gzipped body from UploadBatch.encode().
+	 * 
+	 * @return The HTTP status code.
+	 * 
+	 * @throws IOException The server could not be reached or didn't answer,
+	 * 					   or the URL isn't an HTTP one.
+	 */
+	public int post(String batchId, byte[] body) throws IOException
+	{
+		URLConnection opened = url.openConnection();
+		if(! (opened instanceof HttpURLConnection))
+		{
+			throw new IOException("Not an HTTP URL: " + url);
+		}
+		
+		HttpURLConnection connection = (HttpURLConnection) opened;
+		try
+		{
+			connection.setConnectTimeout(TIMEOUT_MILLIS);
+			connection.setReadTimeout(TIMEOUT_MILLIS);
+			connection.setDoOutput(true);
+			connection.setUseCaches(false);
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+			connection.setRequestProperty("Content-Encoding", "gzip");
+			connection.setRequestProperty(HEADER_IDEMPOTENCY_KEY, batchId);
+			connection.setFixedLengthStreamingMode(body.length);
+			
+			OutputStream output = connection.getOutputStream();
+			try
+			{
+				output.write(body);
+			}
+			finally
+			{
+				output.close();
+			}
+			
+			int status = connection.getResponseCode();
+			drain(connection, status);
+			return status;
+		}
+		finally
+		{
+			connection.disconnect();
+		}
+	}
+	
+	/**
+	 * Returns whether or not the server has a batch after answering with a
+	 * status.
+	 * 
+	 * @param status The HTTP status code.
+	 * 
+	 * @return True for 2xx and for 409, a batch it already had.
+	 */
+	public static boolean isAccepted(int status)
+	{
+		return ((status >= 200) && (status < 300)) || (status == HttpURLConnection.HTTP_CONFLICT);
+	}
+	
+	/**
+	 * Returns whether or not a batch that the server didn't accept may
+	 * succeed if it is sent again later.
+	 * 
+	 * @param status The HTTP status code.
+	 * 
+	 * @return True for 408, 429, and 5xx.
+	 */
+	public static boolean isRetryable(int status)
+	{
+		return (status == HttpURLConnection.HTTP_CLIENT_TIMEOUT) || (status == 429) || (status >= 500);
+	}
+	
+	/**
+	 * Returns whether or not a batch that the server didn't accept was
+	 * refused because of where or how it was sent rather than what is in it,
+	 * so that it may succeed once that is fixed.
+	 * 
+	 * @param status The HTTP status code.
+	 * 
+	 * @return True for 3xx, 401, 403, 404, 405, and 407.
+	 */
+	public static boolean isConfigurationError(int status)
+	{
+		return ((status >= 300) && (status < 400)) ||
+			(status == HttpURLConnection.HTTP_UNAUTHORIZED) ||
+			(status == HttpURLConnection.HTTP_FORBIDDEN) ||
+			(status == HttpURLConnection.HTTP_NOT_FOUND) ||
+			(status == HttpURLConnection.HTTP_BAD_METHOD) ||
+			(status == HttpURLConnection.HTTP_PROXY_AUTH);
+	}
+	
+	/**
+	 * Returns how long to wait before the next attempt.
+	 * 
+	 * @param failures The number of attempts that have failed in a row, at
+	 * 				   least 1.
+	 * 
+	 * @param random The source of the jitter.
+	 * 
+	 * @return A time in milliseconds between BASE_BACKOFF_MILLIS / 2 and the
+	 * 		   capped exponential backoff.
+	 */
+	public static long getBackoffMillis(int failures, Random random)
+	{
+		long ceiling = MAX_BACKOFF_MILLIS;
+		if(failures <= 20)
+		{
+			ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.max(0, failures - 1));
+		}
+		
+		long floor = BASE_BACKOFF_MILLIS / 2;
+		return floor + (long) (random.nextDouble() * (ceiling - floor));
+	}
+	
+	/**
+	 * Reads and discards the response so that the connection may be reused.
+	 * 
+	 * @param connection The connection.
+	 * 
+	 * @param status Its status code.
+	 */
+	private static void drain(HttpURLConnection connection, int status)
+	{
+		try
+		{
+			InputStream input = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+			if(input == null)
+			{
+				return;
+			}
+			
+			try
+			{
+				byte[] buffer = new byte[1024];
+				while(input.read(buffer) != -1)
+				{
+					// Discard it.
+				}
+			}
+			finally
+			{
+				input.close();
+			}
+		}
+		catch(IOException e)
+		{
+			// The status is all that matters.
+		}
+	}
+}
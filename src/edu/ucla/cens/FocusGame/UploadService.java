@@ -0,0 +1,273 @@
+package edu.ucla.cens.FocusGame;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Random;
+
+import android.app.AlarmManager;
+import android.app.IntentService;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.database.sqlite.SQLiteException;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Uploads the sessions in the SessionStore's outbox in batches on its own
+ * background thread. It runs until the outbox is empty or a batch fails, in
+ * which case it sets an alarm to try again after a backoff and stops. It is
+ * started whenever a session is saved, when the app is launched, and by its
+ * own alarms.
+ * 
+ * Nothing is uploaded until there is a URL to upload to. It comes from the
+ * "upload_url" string resource, which is set when the app is built and is
+ * empty by default, unless it has been replaced with setUrl() from within
+ * the app. Only https URLs are used, since every session, including who
+ * played it, is sent, except that a debuggable build also uploads over http
+ * so that it can be pointed at the UploadEndpoint tool. Other apps can't
+ * change where sessions go.
+ * 
+ * A batch that is answered with a redirect or an authentication or "not
+ * found" error is kept and retried after a backoff, since that means the
+ * server or its credentials need fixing rather than that the batch is bad.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class UploadService extends IntentService
+{
+	private static final String TAG = "FocusGame.UploadService";
+	
+	// The most sessions in one batch.
+	public static final int MAX_BATCH_SESSIONS = 20;
+	
+	private static final String PREFERENCES = "uploads";
+	private static final String PREFERENCE_URL = "url";
+	private static final String PREFERENCE_FAILURES = "failures";
+	
+	private final Random random = new Random();
+	
+	/**
+	 * Replaces the URL to upload to from the "upload_url" resource. Sessions
+	 * saved afterwards are added to the outbox. This must only be called
+	 * with a URL that this app chose, never one from another app.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @param url The https URL or null to go back to the resource's.
+	 * 
+	 * @return False if the URL isn't https, or http in a debuggable build, in
+	 * 		   which case the URL that was set before is kept.
+	 */
+	public static boolean setUrl(Context context, String url)
+	{
+		if((url != null) && (! isValidUrl(context, url)))
+		{
+			Log.e(TAG, "Only https URLs may be uploaded to: " + url);
+			return false;
+		}
+		
+		getPreferences(context).edit().putString(PREFERENCE_URL, url).apply();
+		return true;
+	}
+	
+	/**
+	 * Returns whether or not there is a URL to upload to.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return Whether or not sessions should be added to the outbox.
+	 */
+	public static boolean isConfigured(Context context)
+	{
+		return getUrl(context) != null;
+	}
+	
+	/**
+	 * Returns the URL to upload to: the one from setUrl() or, if there isn't
+	 * one, the "upload_url" resource's. Either is ignored if it isn't https
+	 * or, in a debuggable build, http.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return The URL or null if there isn't a valid one.
+	 */
+	private static String getUrl(Context context)
+	{
+		String url = getPreferences(context).getString(PREFERENCE_URL, null);
+		if((url != null) && isValidUrl(context, url))
+		{
+			return url;
+		}
+		
+		url = context.getString(R.string.upload_url);
+		if((url.length() != 0) && isValidUrl(context, url))
+		{
+			return url;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns whether or not a URL may be uploaded to.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @param url The URL.
+	 * 
+	 * @return True if it is a well-formed https URL with a host or, if this
+	 * 		   is a debuggable build, a well-formed http one.
+	 */
+	private static boolean isValidUrl(Context context, String url)
+	{
+		try
+		{
+			URL parsed = new URL(url);
+			if(parsed.getHost().length() == 0)
+			{
+				return false;
+			}
+			
+			String protocol = parsed.getProtocol();
+			if("https".equals(protocol))
+			{
+				return true;
+			}
+			return "http".equals(protocol) && ((context.getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0);
+		}
+		catch(MalformedURLException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Starts uploading whatever is in the outbox. This returns immediately.
+	 * 
+	 * @param context Any Context in this application.
+	 */
+	public static void start(Context context)
+	{
+		context.startService(new Intent(context, UploadService.class));
+	}
+	
+	/**
+	 * Creates the service.
+	 */
+	public UploadService()
+	{
+		super("UploadService");
+	}
+	
+	/**
+	 * Uploads batches until the outbox is empty or one fails.
+	 */
+	@Override
+	protected void onHandleIntent(Intent intent)
+	{
+		Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+		
+		SharedPreferences preferences = getPreferences(this);
+		String url = getUrl(this);
+		if(url == null)
+		{
+			return;
+		}
+		
+		UploadClient client;
+		try
+		{
+			client = new UploadClient(new URL(url));
+		}
+		catch(MalformedURLException e)
+		{
+			Log.e(TAG, "The upload URL is invalid: " + url, e);
+			return;
+		}
+		
+		SessionStore store = SessionStore.getInstance(this);
+		try
+		{
+			String batchId;
+			while((batchId = store.claimBatch(MAX_BATCH_SESSIONS)) != null)
+			{
+				int status;
+				try
+				{
+					status = client.post(batchId, UploadBatch.encode(batchId, store.getBatch(batchId)));
+				}
+				catch(IOException e)
+				{
+					Log.w(TAG, "Batch " + batchId + " could not be uploaded.", e);
+					retryLater(preferences);
+					return;
+				}
+				
+				if(UploadClient.isAccepted(status))
+				{
+					store.removeBatch(batchId);
+					preferences.edit().putInt(PREFERENCE_FAILURES, 0).apply();
+				}
+				else if(UploadClient.isRetryable(status))
+				{
+					Log.w(TAG, "Batch " + batchId + " was not accepted: " + status);
+					retryLater(preferences);
+					return;
+				}
+				else if(UploadClient.isConfigurationError(status))
+				{
+					// Every batch would get the same answer until the URL or
+					// the server is fixed, so they are all kept until then.
+					Log.e(TAG, "Batch " + batchId + " was refused, so the upload URL or the server needs fixing: " + status);
+					retryLater(preferences);
+					return;
+				}
+				else
+				{
+					// It will never be accepted, and it mustn't hold up the
+					// batches behind it. Its sessions are still in the store.
+					Log.e(TAG, "Batch " + batchId + " was rejected and won't be retried: " + status);
+					store.removeBatch(batchId);
+				}
+			}
+		}
+		catch(SQLiteException e)
+		{
+			Log.e(TAG, "Error while reading the outbox.", e);
+		}
+	}
+	
+	/**
+	 * Counts a failure and sets an alarm to start this again after the
+	 * backoff for that many failures in a row.
+	 * 
+	 * @param preferences The upload preferences.
+	 */
+	private void retryLater(SharedPreferences preferences)
+	{
+		int failures = preferences.getInt(PREFERENCE_FAILURES, 0) + 1;
+		preferences.edit().putInt(PREFERENCE_FAILURES, failures).apply();
+		
+		long delayMillis = UploadClient.getBackoffMillis(failures, random);
+		PendingIntent retry = PendingIntent.getService(this, 0, new Intent(this, UploadService.class), PendingIntent.FLAG_UPDATE_CURRENT);
+		AlarmManager alarms = (AlarmManager) getSystemService(Context.ALARM_SERVICE);
+		alarms.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + delayMillis, retry);
+	}
+	
+	/**
+	 * Returns the upload preferences.
+	 * 
+	 * @param context Any Context in this application.
+	 * 
+	 * @return The preferences.
+	 */
+	private static SharedPreferences getPreferences(Context context)
+	{
+		return context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+	}
+}
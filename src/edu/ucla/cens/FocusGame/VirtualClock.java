@@ -0,0 +1,193 @@
+package edu.ucla.cens.FocusGame;
+
+/**
+ * A Clock and Scheduler whose time only moves when an event is dispatched.
+ * Running a game on it takes as long as the trial logic itself takes, not as
+ * long as the game would take on a device.
+ * 
+ * The pending events are kept in an array indexed by the event, so
+ * scheduling and dispatching never allocate.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class VirtualClock implements Clock, Scheduler
+{
+	// Marks an event that is not pending.
+	private static final long NOT_PENDING = Long.MIN_VALUE;
+	
+	// The largest event that may be scheduled.
+	private static final int MAX_EVENT = 15;
+	
+	private final long[] pending;
+	
+	private Target target;
+	private long now;
+	
+	/**
+	 * Creates a new clock whose time starts at 0.
+	 */
+	public VirtualClock()
+	{
+		this(0);
+	}
+	
+	/**
+	 * Creates a new clock.
+	 * 
+	 * @param startNanos The initial time.
+	 */
+	public VirtualClock(long startNanos)
+	{
+		pending = new long[MAX_EVENT + 1];
+		reset(startNanos);
+	}
+	
+	/**
+	 * Drops all pending events and moves the time to some value so that this
+	 * may be reused for another run.
+	 * 
+	 * @param startNanos The new time.
+	 */
+	public void reset(long startNanos)
+	{
+		cancelAll();
+		now = startNanos;
+	}
+	
+	@Override
+	public long nanoTime()
+	{
+		return now;
+	}
+	
+	@Override
+	public void setTarget(Target target)
+	{
+		this.target = target;
+	}
+	
+	@Override
+	public void schedule(int event, long timeNanos)
+	{
+		if((event < 0) || (event > MAX_EVENT))
+		{
+			throw new IllegalArgumentException("Event out of range: " + event);
+		}
+		
+		// Like the Android message queue, an event in the past is delivered
+		// as soon as possible rather than moving time backwards.
+		pending[event] = Math.max(timeNanos, now);
+	}
+	
+	@Override
+	public void cancel(int event)
+	{
+		if((event >= 0) && (event <= MAX_EVENT))
+		{
+			pending[event] = NOT_PENDING;
+		}
+	}
+	
+	@Override
+	public void cancelAll()
+	{
+		for(int i = 0; i <= MAX_EVENT; i++)
+		{
+			pending[i] = NOT_PENDING;
+		}
+	}
+	
+	/**
+	 * There is no display, so no frames are ever dropped.
+	 */
+	@Override
+	public int getDroppedFrames()
+	{
+		return 0;
+	}
+	
+	/**
+	 * Returns the time of the earliest pending event.
+	 * 
+	 * @return The time of the earliest pending event or Long.MAX_VALUE if
+	 * 		   nothing is pending.
+	 */
+	public long nextEventTime()
+	{
+		long earliest = Long.MAX_VALUE;
+		for(int i = 0; i <= MAX_EVENT; i++)
+		{
+			if((pending[i] != NOT_PENDING) && (pending[i] < earliest))
+			{
+				earliest = pending[i];
+			}
+		}
+		return earliest;
+	}
+	
+	/**
+	 * Moves time forward to some point, dispatching every event that is due
+	 * on the way in order. Ties are broken by the lower event first.
+	 * 
+	 * @param timeNanos The time to move to. If it is in the past, only the
+	 * 					events that are already due are dispatched.
+	 */
+	public void advanceTo(long timeNanos)
+	{
+		while(dispatchNext(timeNanos))
+		{
+			// Keep going.
+		}
+		
+		if(timeNanos > now)
+		{
+			now = timeNanos;
+		}
+	}
+	
+	/**
+	 * Dispatches events until there are none left.
+	 */
+	public void run()
+	{
+		while(dispatchNext(Long.MAX_VALUE))
+		{
+			// Keep going.
+		}
+	}
+	
+	/**
+	 * Dispatches the earliest pending event if it is due by some time.
+	 * 
+	 * @param limitNanos The latest time an event may be due.
+	 * 
+	 * @return Whether or not an event was dispatched.
+	 */
+	private boolean dispatchNext(long limitNanos)
+	{
+		int next = -1;
+		long earliest = Long.MAX_VALUE;
+		for(int i = 0; i <= MAX_EVENT; i++)
+		{
+			if((pending[i] != NOT_PENDING) && (pending[i] < earliest))
+			{
+				earliest = pending[i];
+				next = i;
+			}
+		}
+		
+		if((next == -1) || (earliest > limitNanos))
+		{
+			return false;
+		}
+		
+		pending[next] = NOT_PENDING;
+		now = earliest;
+		if(target != null)
+		{
+			target.onEvent(next, now);
+		}
+		return true;
+	}
+}
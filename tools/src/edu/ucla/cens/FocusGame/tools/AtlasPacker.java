@@ -0,0 +1,314 @@
+package edu.ucla.cens.FocusGame.tools;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Build step that packs every stimulus image into a single, compressed atlas
+ * per density bucket along with an index of where each image ended up.
+ * 
+ * The source images are read from a directory (the "stimuli" directory at the
+ * root of the project) and are assumed to be drawn for hdpi. For each bucket
+ * they are scaled, packed into shelves, and written as a JPEG to
+ * res/drawable-BUCKET/stimulus_atlas.jpg with the index written to
+ * res/raw-BUCKET/stimulus_atlas_index.txt. The index has one line per image:
+ * 
+ * 	name left top width height
+ * 
+ * The images are separated by a border whose pixels repeat the image's edge
+ * so that filtering when the image is drawn scaled never picks up a
+ * neighbor.
+ * 
+ * Usage: AtlasPacker SOURCE_DIRECTORY RES_DIRECTORY
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class AtlasPacker
+{
+	// The density buckets and their scale relative to hdpi.
+	private static final String[] BUCKETS = { "ldpi", "mdpi", "hdpi" };
+	private static final double[] BUCKET_SCALES = { 120.0 / 240.0, 160.0 / 240.0, 1.0 };
+	
+	// The number of pixels around each image, half of which repeat its edge.
+	private static final int BORDER = 2;
+	
+	// The stimuli are opaque, rendered images, so they compress far better as
+	// a high quality JPEG than as a PNG.
+	private static final float JPEG_QUALITY = 0.9f;
+	
+	// The file names that are generated.
+	public static final String ATLAS_NAME = "stimulus_atlas";
+	public static final String INDEX_NAME = "stimulus_atlas_index";
+	
+	/**
+	 * An image and where it has been placed.
+	 */
+	private static class Entry
+	{
+		public final String name;
+		public final BufferedImage image;
+		public int left;
+		public int top;
+		
+		public Entry(String name, BufferedImage image)
+		{
+			this.name = name;
+			this.image = image;
+		}
+	}
+	
+	/**
+	 * Reads the source images and writes out an atlas and index for each
+	 * density bucket.
+	 * 
+	 * @param args The source directory and the "res" directory.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if(args.length != 2)
+		{
+			System.err.println("Usage: AtlasPacker SOURCE_DIRECTORY RES_DIRECTORY");
+			System.exit(1);
+		}
+		
+		File source = new File(args[0]);
+		File res = new File(args[1]);
+		
+		File[] files = source.listFiles();
+		if(files == null)
+		{
+			throw new IOException("Not a directory: " + source);
+		}
+		Arrays.sort(files);
+		
+		List<Entry> originals = new ArrayList<Entry>();
+		for(File file : files)
+		{
+			String fileName = file.getName();
+			int dot = fileName.lastIndexOf('.');
+			if(dot <= 0)
+			{
+				continue;
+			}
+			
+			BufferedImage image = ImageIO.read(file);
+			if(image == null)
+			{
+				System.err.println("Skipping unreadable file: " + file);
+				continue;
+			}
+			originals.add(new Entry(fileName.substring(0, dot), image));
+		}
+		
+		if(originals.isEmpty())
+		{
+			throw new IOException("No images found in: " + source);
+		}
+		
+		for(int i = 0; i < BUCKETS.length; i++)
+		{
+			List<Entry> scaled = new ArrayList<Entry>(originals.size());
+			for(Entry original : originals)
+			{
+				scaled.add(new Entry(original.name, scale(original.image, BUCKET_SCALES[i])));
+			}
+			
+			BufferedImage atlas = pack(scaled);
+			
+			File drawable = new File(res, "drawable-" + BUCKETS[i]);
+			File raw = new File(res, "raw-" + BUCKETS[i]);
+			drawable.mkdirs();
+			raw.mkdirs();
+			
+			File atlasFile = new File(drawable, ATLAS_NAME + ".jpg");
+			writeJpeg(atlas, atlasFile);
+			writeIndex(scaled, new File(raw, INDEX_NAME + ".txt"));
+			
+			System.out.println(BUCKETS[i] + ": " + atlas.getWidth() + "x" + atlas.getHeight() + ", " + atlasFile.length() + " bytes");
+		}
+	}
+	
+	/**
+	 * Scales an image.
+	 * 
+	 * @param image The image to scale.
+	 * 
+	 * @param scale The factor to scale it by.
+	 * 
+	 * @return The scaled image or the original if the scale is 1.
+	 */
+	private static BufferedImage scale(BufferedImage image, double scale)
+	{
+		int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+		if((width == image.getWidth()) && (height == image.getHeight()))
+		{
+			return image;
+		}
+		
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D graphics = result.createGraphics();
+		graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+		graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+		graphics.drawImage(image, 0, 0, width, height, null);
+		graphics.dispose();
+		return result;
+	}
+	
+	/**
+	 * Places the images into shelves, tallest first, in an atlas that is
+	 * roughly square, and draws them into it.
+	 * 
+	 * @param entries The images. Their positions are set.
+	 * 
+	 * @return The atlas.
+	 */
+	private static BufferedImage pack(List<Entry> entries)
+	{
+		long area = 0;
+		int widest = 0;
+		for(Entry entry : entries)
+		{
+			int width = entry.image.getWidth() + (2 * BORDER);
+			int height = entry.image.getHeight() + (2 * BORDER);
+			area += (long) width * height;
+			widest = Math.max(widest, width);
+		}
+		int atlasWidth = Math.max(widest, (int) Math.ceil(Math.sqrt(area)));
+		
+		List<Entry> byHeight = new ArrayList<Entry>(entries);
+		Collections.sort(byHeight, new Comparator<Entry>()
+		{
+			@Override
+			public int compare(Entry a, Entry b)
+			{
+				return b.image.getHeight() - a.image.getHeight();
+			}
+		});
+		
+		int x = 0;
+		int y = 0;
+		int shelfHeight = 0;
+		int usedWidth = 0;
+		for(Entry entry : byHeight)
+		{
+			int width = entry.image.getWidth() + (2 * BORDER);
+			int height = entry.image.getHeight() + (2 * BORDER);
+			if((x + width) > atlasWidth)
+			{
+				x = 0;
+				y += shelfHeight;
+				shelfHeight = 0;
+			}
+			
+			entry.left = x + BORDER;
+			entry.top = y + BORDER;
+			
+			x += width;
+			usedWidth = Math.max(usedWidth, x);
+			shelfHeight = Math.max(shelfHeight, height);
+		}
+		int atlasHeight = y + shelfHeight;
+		
+		BufferedImage atlas = new BufferedImage(usedWidth, atlasHeight, BufferedImage.TYPE_INT_RGB);
+		for(Entry entry : entries)
+		{
+			draw(atlas, entry);
+		}
+		return atlas;
+	}
+	
+	/**
+	 * Draws an image into the atlas at its position and repeats its edge
+	 * pixels into the border.
+	 * 
+	 * @param atlas The atlas.
+	 * 
+	 * @param entry The image and its position.
+	 */
+	private static void draw(BufferedImage atlas, Entry entry)
+	{
+		int width = entry.image.getWidth();
+		int height = entry.image.getHeight();
+		for(int y = -BORDER / 2; y < (height + (BORDER / 2)); y++)
+		{
+			int sourceY = Math.min(height - 1, Math.max(0, y));
+			for(int x = -BORDER / 2; x < (width + (BORDER / 2)); x++)
+			{
+				int sourceX = Math.min(width - 1, Math.max(0, x));
+				atlas.setRGB(entry.left + x, entry.top + y, entry.image.getRGB(sourceX, sourceY));
+			}
+		}
+	}
+	
+	/**
+	 * Writes an image as a JPEG.
+	 * 
+	 * @param image The image to write.
+	 * 
+	 * @param file The file to write.
+	 */
+	private static void writeJpeg(BufferedImage image, File file) throws IOException
+	{
+		ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(JPEG_QUALITY);
+		
+		file.delete();
+		ImageOutputStream output = ImageIO.createImageOutputStream(file);
+		try
+		{
+			writer.setOutput(output);
+			writer.write(null, new IIOImage(image, null, null), param);
+		}
+		finally
+		{
+			output.close();
+			writer.dispose();
+		}
+	}
+	
+	/**
+	 * Writes the index of where each image is in the atlas.
+	 * 
+	 * @param entries The images in the order they were read.
+	 * 
+	 * @param file The file to write.
+	 */
+	private static void writeIndex(List<Entry> entries, File file) throws IOException
+	{
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try
+		{
+			writer.write("# Generated by AtlasPacker. Do not edit.\n");
+			writer.write("# name left top width height\n");
+			for(Entry entry : entries)
+			{
+				writer.write(entry.name + " " + entry.left + " " + entry.top + " " + entry.image.getWidth() + " " + entry.image.getHeight() + "\n");
+			}
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
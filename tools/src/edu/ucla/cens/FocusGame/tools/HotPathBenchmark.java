@@ -0,0 +1,538 @@
+package edu.ucla.cens.FocusGame.tools;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import edu.ucla.cens.FocusGame.Protocol;
+import edu.ucla.cens.FocusGame.ScoreAggregator;
+import edu.ucla.cens.FocusGame.StimulusCatalog;
+import edu.ucla.cens.FocusGame.StimulusSet;
+import edu.ucla.cens.FocusGame.TrialCodec;
+import edu.ucla.cens.FocusGame.TrialEngine;
+import edu.ucla.cens.FocusGame.TrialLog;
+import edu.ucla.cens.FocusGame.TrialSchedule;
+import edu.ucla.cens.FocusGame.UploadBatch;
+import edu.ucla.cens.FocusGame.VirtualClock;
+
+/**
+ * Measures the time and the memory allocated by the code that runs while a
+ * game is being played and when it ends, at the size of a real game and at
+ * stress sizes, so that a change in the cost of a trial shows up here before
+ * it shows up as skewed RTs.
+ * 
+ * schedule - Compiling the protocol into the game's trials, which is where
+ * 			  each stimulus is chosen.
+ * engine - A whole game on a VirtualClock with every good stimulus tapped:
+ * 			each trial's onset, miss check, tap, and offset, as the Game
+ * 			Activity drives them.
+ * score - Scoring a finished game's trials and reading every metric, as
+ * 		   calculateScore() and the results do.
+ * encode - The binary trials that are returned with the results.
+ * json - The legacy JSON response times.
+ * upload - A session's JSON for the upload outbox.
+ * 
+ * Each benchmark is run for a warmup period and then for a number of timed
+ * iterations, each of which repeats it for about the same amount of time.
+ * The time is the mean over the iterations with their standard deviation,
+ * and the allocation is what the benchmark's thread allocated over all of
+ * them, as counted by the JVM. Each is also divided by the number of trials.
+ * Results are consumed so that the JIT can't remove the work.
+ * 
+ * Usage: HotPathBenchmark [-catalog FILE] [-benchmark NAME]...
+ * 						   [-trials N]... [-warmup MILLIS] [-iterations N]
+ * 						   [-time MILLIS]
+ * 
+ * Every benchmark is run by default, each with 60, 1,000, and 100,000
+ * trials. One CSV row per benchmark and size goes to standard out.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class HotPathBenchmark
+{
+	private static final String[] BENCHMARKS = { "schedule", "engine", "score", "encode", "json", "upload" };
+	
+	private static final String DEFAULT_CATALOG = "res/raw/stimuli.txt";
+	
+	private static final int[] DEFAULT_TRIALS = { 60, 1000, 100000 };
+	
+	private static final long DEFAULT_WARMUP_MILLIS = 2000;
+	private static final int DEFAULT_ITERATIONS = 10;
+	private static final long DEFAULT_ITERATION_MILLIS = 500;
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	// The RT of every tap in the engine benchmark.
+	private static final long RT_NANOS = 350L * NANOS_PER_MILLI;
+	
+	private static final String HEADER = "benchmark,trials,iterations,ops,ns_per_op,ns_per_op_sd,ns_per_trial,bytes_per_op,bytes_per_trial";
+	
+	// Where results are consumed. It is volatile so that it is never elided.
+	private static volatile long sink;
+	
+	/**
+	 * One benchmark, set up for one number of trials.
+	 */
+	private abstract static class Benchmark
+	{
+		protected final StimulusSet stimulusSet;
+		protected final Protocol protocol;
+		protected final TrialLog trialLog;
+		
+		/**
+		 * Creates a benchmark and plays a game of its size for it to use.
+		 * 
+		 * @param stimulusSet The stimuli.
+		 * 
+		 * @param numTrials The number of trials.
+		 */
+		protected Benchmark(StimulusSet stimulusSet, int numTrials)
+		{
+			this.stimulusSet = stimulusSet;
+			
+			// The original protocol, only longer.
+			protocol = new Protocol.Builder()
+				.addRound(numTrials - (numTrials / 2), TrialEngine.DELAYS_MILLIS[0])
+				.addRound(numTrials / 2, TrialEngine.DELAYS_MILLIS[1])
+				.build();
+			
+			Player player = new Player(stimulusSet);
+			player.play(protocol, 1);
+			trialLog = new TrialLog(player.engine.getTrialLog());
+		}
+		
+		/**
+		 * Runs the benchmark once.
+		 * 
+		 * @param seed A different value every time.
+		 * 
+		 * @return Something that depends on all of the work.
+		 */
+		public abstract long run(long seed);
+	}
+	
+	/**
+	 * Plays a game on a VirtualClock, tapping every good stimulus.
+	 */
+	private static class Player implements TrialEngine.Display
+	{
+		private final StimulusSet stimulusSet;
+		private final VirtualClock clock;
+		private TrialEngine engine;
+		
+		// The time of the tap that is still to come or -1.
+		private long tapNanos;
+		
+		/**
+		 * Creates a player.
+		 * 
+		 * @param stimulusSet The stimuli.
+		 */
+		public Player(StimulusSet stimulusSet)
+		{
+			this.stimulusSet = stimulusSet;
+			
+			clock = new VirtualClock();
+		}
+		
+		/**
+		 * Plays a whole game, reusing the engine if it has the protocol.
+		 * 
+		 * @param protocol The protocol.
+		 * 
+		 * @param seed The game's seed.
+		 */
+		public void play(Protocol protocol, long seed)
+		{
+			if((engine == null) || (engine.getProtocol() != protocol))
+			{
+				engine = new TrialEngine(clock, clock, this, stimulusSet, protocol, new Random(seed));
+			}
+			
+			tapNanos = -1;
+			clock.reset(0);
+			engine.start(seed);
+			while(! engine.isGameOver())
+			{
+				long nextEvent = clock.nextEventTime();
+				if((tapNanos >= 0) && (tapNanos <= nextEvent))
+				{
+					long tap = tapNanos;
+					tapNanos = -1;
+					clock.advanceTo(tap);
+					engine.tap(tap, true);
+				}
+				else
+				{
+					clock.advanceTo(nextEvent);
+				}
+			}
+		}
+		
+		/**
+		 * Taps good stimuli after a fixed RT.
+		 */
+		@Override
+		public void showStimulus(int stimulus)
+		{
+			if(! stimulusSet.isNoGo(stimulus))
+			{
+				tapNanos = clock.nanoTime() + RT_NANOS;
+			}
+		}
+		
+		/**
+		 * Does nothing.
+		 */
+		@Override
+		public void clearStimulus()
+		{
+			// Nothing is drawn.
+		}
+		
+		/**
+		 * Drops a tap that would come after the end.
+		 */
+		@Override
+		public void onGameOver()
+		{
+			tapNanos = -1;
+		}
+	}
+	
+	/**
+	 * Creates the benchmark with a name.
+	 * 
+	 * @param name The benchmark's name.
+	 * 
+	 * @param stimulusSet The stimuli.
+	 * 
+	 * @param numTrials The number of trials.
+	 * 
+	 * @return The benchmark.
+	 */
+	private static Benchmark create(String name, StimulusSet stimulusSet, int numTrials)
+	{
+		if("schedule".equals(name))
+		{
+			return new Benchmark(stimulusSet, numTrials)
+			{
+				@Override
+				public long run(long seed)
+				{
+					TrialSchedule schedule = protocol.compile(stimulusSet, seed);
+					return schedule.getStimulus(schedule.size() - 1);
+				}
+			};
+		}
+		else if("engine".equals(name))
+		{
+			return new Benchmark(stimulusSet, numTrials)
+			{
+				private final Player player = new Player(stimulusSet);
+				
+				@Override
+				public long run(long seed)
+				{
+					player.play(protocol, seed);
+					return player.engine.getNumGoodItemHits();
+				}
+			};
+		}
+		else if("score".equals(name))
+		{
+			return new Benchmark(stimulusSet, numTrials)
+			{
+				private final ScoreAggregator scores = new ScoreAggregator();
+				
+				@Override
+				public long run(long seed)
+				{
+					scores.reset();
+					scores.addAll(trialLog);
+					double sum = scores.getGoRtMean() + scores.getGoRtStandardDeviation() + scores.getGoRtMedian() +
+								 scores.getGoRtP90() + scores.getCommissionRate() + scores.getOmissionRate() +
+								 scores.getPercentInhibition() + scores.getDPrime() + scores.getCriterion() +
+								 scores.getGoRtPrecision() + scores.getInhibitionPrecision();
+					return Double.doubleToLongBits(sum);
+				}
+			};
+		}
+		else if("encode".equals(name))
+		{
+			return new Benchmark(stimulusSet, numTrials)
+			{
+				@Override
+				public long run(long seed)
+				{
+					return TrialCodec.encode(trialLog, stimulusSet.getStimulusNames()).length;
+				}
+			};
+		}
+		else if("json".equals(name))
+		{
+			return new Benchmark(stimulusSet, numTrials)
+			{
+				@Override
+				public long run(long seed)
+				{
+					return trialLog.toJson(stimulusSet.getStimulusNames()).length();
+				}
+			};
+		}
+		else if("upload".equals(name))
+		{
+			return new Benchmark(stimulusSet, numTrials)
+			{
+				private final Map<String, Object> columns = new LinkedHashMap<String, Object>();
+				
+				@Override
+				public long run(long seed)
+				{
+					columns.put("_id", Long.valueOf(seed));
+					columns.put("game_type", stimulusSet.getName());
+					return UploadBatch.encodeSession(columns, trialLog, stimulusSet.getStimulusNames()).length;
+				}
+			};
+		}
+		return null;
+	}
+	
+	/**
+	 * Reads the arguments and runs the benchmarks.
+	 * 
+	 * @param args See the class' documentation.
+	 * 
+	 * @throws IOException The catalog could not be read.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		String catalogFile = DEFAULT_CATALOG;
+		List<String> names = new ArrayList<String>();
+		List<Integer> sizes = new ArrayList<Integer>();
+		long warmupMillis = DEFAULT_WARMUP_MILLIS;
+		int iterations = DEFAULT_ITERATIONS;
+		long iterationMillis = DEFAULT_ITERATION_MILLIS;
+		boolean usage = false;
+		
+		for(int i = 0; i < args.length; i++)
+		{
+			if("-catalog".equals(args[i]) && (i + 1 < args.length))
+			{
+				catalogFile = args[++i];
+			}
+			else if("-benchmark".equals(args[i]) && (i + 1 < args.length) && Arrays.asList(BENCHMARKS).contains(args[i + 1]))
+			{
+				names.add(args[++i]);
+			}
+			else if("-trials".equals(args[i]) && (i + 1 < args.length))
+			{
+				sizes.add(Integer.valueOf(args[++i]));
+			}
+			else if("-warmup".equals(args[i]) && (i + 1 < args.length))
+			{
+				warmupMillis = Long.parseLong(args[++i]);
+			}
+			else if("-iterations".equals(args[i]) && (i + 1 < args.length))
+			{
+				iterations = Integer.parseInt(args[++i]);
+			}
+			else if("-time".equals(args[i]) && (i + 1 < args.length))
+			{
+				iterationMillis = Long.parseLong(args[++i]);
+			}
+			else
+			{
+				usage = true;
+			}
+		}
+		for(Integer size : sizes)
+		{
+			usage |= (size.intValue() < 2);
+		}
+		
+		if(usage || (iterations < 2) || (iterationMillis < 1) || (warmupMillis < 0))
+		{
+			System.err.println("Usage: HotPathBenchmark [-catalog FILE] [-benchmark " + Arrays.toString(BENCHMARKS).replace(", ", "|") + "]... [-trials N]... [-warmup MILLIS] [-iterations N] [-time MILLIS]");
+			System.exit(1);
+		}
+		if(names.isEmpty())
+		{
+			names.addAll(Arrays.asList(BENCHMARKS));
+		}
+		if(sizes.isEmpty())
+		{
+			for(int size : DEFAULT_TRIALS)
+			{
+				sizes.add(Integer.valueOf(size));
+			}
+		}
+		
+		StimulusCatalog catalog;
+		Reader catalogReader = new InputStreamReader(new FileInputStream(catalogFile), "UTF-8");
+		try
+		{
+			catalog = StimulusCatalog.read(catalogReader);
+		}
+		finally
+		{
+			catalogReader.close();
+		}
+		StimulusSet stimulusSet = catalog.getDefaultSet();
+		
+		com.sun.management.ThreadMXBean threads = getThreadMXBean();
+		if(threads == null)
+		{
+			System.err.println("This JVM can't count allocated bytes, so they are left empty.");
+		}
+		
+		System.out.println(HEADER);
+		StringBuilder row = new StringBuilder();
+		for(String name : names)
+		{
+			for(Integer size : sizes)
+			{
+				int numTrials = size.intValue();
+				Benchmark benchmark = create(name, stimulusSet, numTrials);
+				
+				// Warm up, and find how many runs take about one iteration.
+				long ops = 1;
+				long warmupEnd = System.nanoTime() + (warmupMillis * NANOS_PER_MILLI);
+				do
+				{
+					long elapsed = time(benchmark, ops);
+					if(elapsed < (iterationMillis * NANOS_PER_MILLI))
+					{
+						ops = Math.max(ops + 1, (long) (ops * ((double) (iterationMillis * NANOS_PER_MILLI) / Math.max(1, elapsed))));
+					}
+				}
+				while(System.nanoTime() < warmupEnd);
+				
+				long allocatedBefore = getAllocatedBytes(threads);
+				double[] nanosPerOp = new double[iterations];
+				for(int i = 0; i < iterations; i++)
+				{
+					nanosPerOp[i] = (double) time(benchmark, ops) / ops;
+				}
+				long allocated = getAllocatedBytes(threads) - allocatedBefore;
+				
+				double mean = 0.0;
+				for(double value : nanosPerOp)
+				{
+					mean += value / iterations;
+				}
+				double variance = 0.0;
+				for(double value : nanosPerOp)
+				{
+					variance += ((value - mean) * (value - mean)) / (iterations - 1);
+				}
+				double bytesPerOp = (threads == null) ? Double.NaN : ((double) allocated / (ops * iterations));
+				
+				row.setLength(0);
+				row.append(name);
+				row.append(',').append(numTrials);
+				row.append(',').append(iterations);
+				row.append(',').append(ops);
+				appendNumber(row, mean);
+				appendNumber(row, Math.sqrt(variance));
+				appendNumber(row, mean / numTrials);
+				appendNumber(row, bytesPerOp);
+				appendNumber(row, bytesPerOp / numTrials);
+				System.out.println(row);
+			}
+		}
+		
+		// Only ever read so that it is never written for nothing.
+		if(sink == 42)
+		{
+			System.err.println();
+		}
+	}
+	
+	/**
+	 * Runs a benchmark a number of times.
+	 * 
+	 * @param benchmark The benchmark.
+	 * 
+	 * @param ops The number of times.
+	 * 
+	 * @return The time it took in nanoseconds.
+	 */
+	private static long time(Benchmark benchmark, long ops)
+	{
+		long result = 0;
+		long start = System.nanoTime();
+		for(long i = 0; i < ops; i++)
+		{
+			result ^= benchmark.run(i);
+		}
+		long elapsed = System.nanoTime() - start;
+		sink ^= result;
+		return elapsed;
+	}
+	
+	/**
+	 * Returns the JVM's thread bean with allocation counting turned on, if
+	 * it has one.
+	 * 
+	 * @return The bean or null.
+	 */
+	private static com.sun.management.ThreadMXBean getThreadMXBean()
+	{
+		try
+		{
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if(! threads.isThreadAllocatedMemorySupported())
+			{
+				return null;
+			}
+			threads.setThreadAllocatedMemoryEnabled(true);
+			return threads;
+		}
+		catch(ClassCastException e)
+		{
+			return null;
+		}
+		catch(UnsupportedOperationException e)
+		{
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes this thread has allocated so far.
+	 * 
+	 * @param threads The thread bean or null.
+	 * 
+	 * @return The number of bytes or 0 if they can't be counted.
+	 */
+	private static long getAllocatedBytes(com.sun.management.ThreadMXBean threads)
+	{
+		return (threads == null) ? 0 : threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/**
+	 * Appends a number to a CSV row, leaving it empty if it isn't finite.
+	 * 
+	 * @param row The row.
+	 * 
+	 * @param value The number.
+	 */
+	private static void appendNumber(StringBuilder row, double value)
+	{
+		row.append(',');
+		if(! (Double.isNaN(value) || Double.isInfinite(value)))
+		{
+			row.append(value);
+		}
+	}
+}
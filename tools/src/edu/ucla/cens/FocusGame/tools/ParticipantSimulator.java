@@ -0,0 +1,809 @@
+package edu.ucla.cens.FocusGame.tools;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import edu.ucla.cens.FocusGame.Protocol;
+import edu.ucla.cens.FocusGame.ScoreAggregator;
+import edu.ucla.cens.FocusGame.StimulusCatalog;
+import edu.ucla.cens.FocusGame.StimulusSet;
+import edu.ucla.cens.FocusGame.TrialEngine;
+import edu.ucla.cens.FocusGame.VirtualClock;
+
+/**
+ * Plays games with simulated participants to show how well each metric
+ * measures what it is meant to under each protocol, without running any real
+ * people.
+ * 
+ * Each participant type has fixed parameters:
+ * 
+ * 	MU, SIGMA, TAU - The ex-Gaussian distribution of their GO RTs in
+ * 					 milliseconds: a normal with mean MU and standard
+ * 					 deviation SIGMA plus an exponential with mean TAU.
+ * 	LAPSE - The probability that they don't respond to a good stimulus at
+ * 			all.
+ * 	COMMISSION - The probability that they respond to the bad stimulus.
+ * 				 These are impulsive responses, so their RTs are only the
+ * 				 normal part of the distribution, without the slow tail.
+ * 
+ * Every session is played by the real TrialEngine on a VirtualClock, and
+ * taps are delivered at the time they happen, so late responses are scored
+ * exactly as they would be on a device. From the parameters it follows what
+ * each metric would be if it were measured perfectly, e.g. the mean GO RT is
+ * MU + TAU and the commission rate is COMMISSION. Each metric's bias is the
+ * mean of its estimates over every session less that value, and its SD is
+ * the standard deviation of the estimates. Together these give its RMSE.
+ * Sessions for which a metric is undefined, e.g. the GO RT of a session
+ * without any hits, are left out of that metric.
+ * 
+ * The sessions are split into chunks, each with its own seed derived from
+ * -seed, and the chunks are played on a fork-join pool, so the output only
+ * depends on the seed and not on the number of threads.
+ * 
+ * Usage: ParticipantSimulator [-threads N] [-sessions N] [-seed N]
+ * 							   [-catalog FILE] [-game-type NAME]
+ * 							   [-protocol FILE]...
+ * 							   [-participant NAME MU SIGMA TAU LAPSE COMMISSION]...
+ * 
+ * Each protocol is played by each participant type -sessions times,
+ * 100,000 by default. The protocol defaults to res/raw/protocol.txt, and if
+ * no participant types are given a typical, a slow, an impulsive, and an
+ * inattentive one are used. One CSV row per protocol, participant type, and
+ * metric goes to standard out.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class ParticipantSimulator
+{
+	// The number of sessions played with one seed, one engine, and one clock.
+	private static final int CHUNK_SIZE = 1000;
+	
+	private static final int DEFAULT_SESSIONS = 100000;
+	
+	private static final String DEFAULT_CATALOG = "res/raw/stimuli.txt";
+	private static final String DEFAULT_PROTOCOL = "res/raw/protocol.txt";
+	
+	private static final long NANOS_PER_MILLI = 1000000L;
+	
+	// Games are started this far from 0 so that no time is ever negative.
+	private static final long START_NANOS = 1000L * 1000L * NANOS_PER_MILLI;
+	
+	private static final String HEADER = "protocol,participant,metric,sessions,true,mean,bias,sd,rmse";
+	
+	private static final String[] METRICS =
+		{ "go_rt_mean", "go_rt_sd", "go_rt_median", "go_rt_p90", "commission_rate", "omission_rate",
+		  "percent_inhibition", "d_prime", "criterion", "trials" };
+	
+	private static final int GO_RT_MEAN = 0;
+	private static final int GO_RT_SD = 1;
+	private static final int GO_RT_MEDIAN = 2;
+	private static final int GO_RT_P90 = 3;
+	private static final int COMMISSION_RATE = 4;
+	private static final int OMISSION_RATE = 5;
+	private static final int PERCENT_INHIBITION = 6;
+	private static final int D_PRIME = 7;
+	private static final int CRITERION = 8;
+	private static final int TRIALS = 9;
+	
+	/**
+	 * A type of participant.
+	 */
+	private static class Participant
+	{
+		private final String name;
+		private final double mu;
+		private final double sigma;
+		private final double tau;
+		private final double lapse;
+		private final double commission;
+		
+		/**
+		 * Creates a participant type.
+		 * 
+		 * @param name The type's name.
+		 * 
+		 * @param mu The mean of the normal part of the GO RTs.
+		 * 
+		 * @param sigma The standard deviation of the normal part.
+		 * 
+		 * @param tau The mean of the exponential part.
+		 * 
+		 * @param lapse The probability of not responding to a good stimulus.
+		 * 
+		 * @param commission The probability of responding to the bad
+		 * 					 stimulus.
+		 */
+		public Participant(String name, double mu, double sigma, double tau, double lapse, double commission)
+		{
+			if((mu <= 0.0) || (sigma < 0.0) || (tau < 0.0))
+			{
+				throw new IllegalArgumentException("The RT distribution of '" + name + "' must have a positive MU and a non-negative SIGMA and TAU.");
+			}
+			if((lapse < 0.0) || (lapse >= 1.0) || (commission < 0.0) || (commission > 1.0))
+			{
+				throw new IllegalArgumentException("The LAPSE of '" + name + "' must be in [0, 1) and its COMMISSION in [0, 1].");
+			}
+			
+			this.name = name;
+			this.mu = mu;
+			this.sigma = sigma;
+			this.tau = tau;
+			this.lapse = lapse;
+			this.commission = commission;
+		}
+		
+		/**
+		 * Draws a GO RT.
+		 * 
+		 * @param random The source of randomness.
+		 * 
+		 * @return The RT in milliseconds, at least 1.
+		 */
+		public double drawGoRt(Random random)
+		{
+			return Math.max(1.0, mu + (sigma * random.nextGaussian()) - (tau * Math.log(1.0 - random.nextDouble())));
+		}
+		
+		/**
+		 * Draws the RT of an impulsive response to the bad stimulus.
+		 * 
+		 * @param random The source of randomness.
+		 * 
+		 * @return The RT in milliseconds, at least 1.
+		 */
+		public double drawCommissionRt(Random random)
+		{
+			return Math.max(1.0, mu + (sigma * random.nextGaussian()));
+		}
+		
+		/**
+		 * Returns what a metric would be if it were measured perfectly.
+		 * 
+		 * @param metric The metric's index in METRICS.
+		 * 
+		 * @return The value or NaN if there isn't one.
+		 */
+		public double getTrueValue(int metric)
+		{
+			switch(metric)
+			{
+			case GO_RT_MEAN:
+				return mu + tau;
+			
+			case GO_RT_SD:
+				return Math.sqrt((sigma * sigma) + (tau * tau));
+			
+			case GO_RT_MEDIAN:
+				return getGoRtQuantile(0.5);
+			
+			case GO_RT_P90:
+				return getGoRtQuantile(0.9);
+			
+			case COMMISSION_RATE:
+				return commission;
+			
+			case OMISSION_RATE:
+				return lapse;
+			
+			case PERCENT_INHIBITION:
+				return 100.0 * (1.0 - commission);
+			
+			case D_PRIME:
+				return ScoreAggregator.inverseNormal(1.0 - lapse) - ScoreAggregator.inverseNormal(commission);
+			
+			case CRITERION:
+				return -(ScoreAggregator.inverseNormal(1.0 - lapse) + ScoreAggregator.inverseNormal(commission)) / 2.0;
+			
+			default:
+				return Double.NaN;
+			}
+		}
+		
+		/**
+		 * Finds a quantile of the GO RT distribution by bisecting its CDF.
+		 * 
+		 * @param quantile The quantile.
+		 * 
+		 * @return The RT in milliseconds.
+		 */
+		private double getGoRtQuantile(double quantile)
+		{
+			double low = mu - (10.0 * sigma);
+			double high = mu + (10.0 * sigma) + (50.0 * tau);
+			for(int i = 0; i < 100; i++)
+			{
+				double middle = (low + high) / 2.0;
+				if(getGoRtCdf(middle) < quantile)
+				{
+					low = middle;
+				}
+				else
+				{
+					high = middle;
+				}
+			}
+			return (low + high) / 2.0;
+		}
+		
+		/**
+		 * Returns the CDF of the ex-Gaussian GO RT distribution.
+		 * 
+		 * @param rt The RT in milliseconds.
+		 * 
+		 * @return The probability that an RT is at most rt.
+		 */
+		private double getGoRtCdf(double rt)
+		{
+			if(sigma == 0.0)
+			{
+				return (rt < mu) ? 0.0 : ((tau == 0.0) ? 1.0 : (1.0 - Math.exp(-(rt - mu) / tau)));
+			}
+			
+			double z = (rt - mu) / sigma;
+			if(tau == 0.0)
+			{
+				return normalCdf(z);
+			}
+			
+			// Written so that the exponential can't overflow when the normal
+			// CDF that it multiplies is tiny.
+			double exponent = (-(rt - mu) / tau) + ((sigma * sigma) / (2.0 * tau * tau));
+			double tail = normalCdf(z - (sigma / tau));
+			return normalCdf(z) - ((tail == 0.0) ? 0.0 : Math.exp(exponent + Math.log(tail)));
+		}
+	}
+	
+	/**
+	 * Plays the participant's side of a game: it watches the stimuli that
+	 * the engine shows and queues the taps that the participant makes.
+	 */
+	private static class Player implements TrialEngine.Display
+	{
+		private final Participant participant;
+		private final StimulusSet stimulusSet;
+		private final VirtualClock clock;
+		private final Random random;
+		
+		// The times of the taps that haven't happened yet, earliest first.
+		private final long[] taps;
+		private int numTaps;
+		
+		/**
+		 * Creates a player.
+		 * 
+		 * @param participant The participant type.
+		 * 
+		 * @param stimulusSet The stimuli.
+		 * 
+		 * @param clock The game's clock.
+		 * 
+		 * @param random The source of randomness.
+		 */
+		public Player(Participant participant, StimulusSet stimulusSet, VirtualClock clock, Random random)
+		{
+			this.participant = participant;
+			this.stimulusSet = stimulusSet;
+			this.clock = clock;
+			this.random = random;
+			
+			taps = new long[16];
+		}
+		
+		/**
+		 * Decides whether and when to tap the new stimulus.
+		 */
+		@Override
+		public void showStimulus(int stimulus)
+		{
+			double rt;
+			if(stimulusSet.isNoGo(stimulus))
+			{
+				if(random.nextDouble() >= participant.commission)
+				{
+					return;
+				}
+				rt = participant.drawCommissionRt(random);
+			}
+			else
+			{
+				if(random.nextDouble() < participant.lapse)
+				{
+					return;
+				}
+				rt = participant.drawGoRt(random);
+			}
+			
+			addTap(clock.nanoTime() + (long) (rt * NANOS_PER_MILLI));
+		}
+		
+		/**
+		 * Nothing to do; the participant may still respond.
+		 */
+		@Override
+		public void clearStimulus()
+		{
+			// Late taps still count.
+		}
+		
+		/**
+		 * Forgets any taps that were still to come.
+		 */
+		@Override
+		public void onGameOver()
+		{
+			numTaps = 0;
+		}
+		
+		/**
+		 * Plays a whole game.
+		 * 
+		 * @param engine The engine, which must be driven by this player's
+		 * 				 clock and must show its stimuli to this player.
+		 * 
+		 * @param seed The game's seed.
+		 */
+		public void play(TrialEngine engine, long seed)
+		{
+			numTaps = 0;
+			clock.reset(START_NANOS);
+			engine.start(seed);
+			
+			while(! engine.isGameOver())
+			{
+				long nextEvent = clock.nextEventTime();
+				if((numTaps > 0) && (taps[0] <= nextEvent))
+				{
+					long tap = taps[0];
+					numTaps--;
+					System.arraycopy(taps, 1, taps, 0, numTaps);
+					
+					clock.advanceTo(tap);
+					engine.tap(tap, true);
+				}
+				else if(nextEvent == Long.MAX_VALUE)
+				{
+					// Nothing is left to happen.
+					engine.finish();
+				}
+				else
+				{
+					clock.advanceTo(nextEvent);
+				}
+			}
+		}
+		
+		/**
+		 * Queues a tap in order of time.
+		 * 
+		 * @param timeNanos The tap's time.
+		 */
+		private void addTap(long timeNanos)
+		{
+			if(numTaps == taps.length)
+			{
+				// Far more taps are pending than could ever be from a real
+				// participant, so drop the latest.
+				numTaps--;
+			}
+			
+			int i = numTaps;
+			while((i > 0) && (taps[i - 1] > timeNanos))
+			{
+				taps[i] = taps[i - 1];
+				i--;
+			}
+			taps[i] = timeNanos;
+			numTaps++;
+		}
+	}
+	
+	/**
+	 * The count, mean, and sum of squared differences from the mean of some
+	 * values, which may be merged with another's in any order.
+	 */
+	private static class Moments
+	{
+		private long count;
+		private double mean;
+		private double m2;
+		
+		/**
+		 * Adds a value. NaNs and infinities are ignored.
+		 * 
+		 * @param value The value.
+		 */
+		public void add(double value)
+		{
+			if(Double.isNaN(value) || Double.isInfinite(value))
+			{
+				return;
+			}
+			
+			count++;
+			double delta = value - mean;
+			mean += delta / count;
+			m2 += delta * (value - mean);
+		}
+		
+		/**
+		 * Adds all of another's values.
+		 * 
+		 * @param other The other values.
+		 */
+		public void merge(Moments other)
+		{
+			if(other.count == 0)
+			{
+				return;
+			}
+			
+			long total = count + other.count;
+			double delta = other.mean - mean;
+			mean += delta * other.count / total;
+			m2 += other.m2 + (delta * delta * count * other.count / total);
+			count = total;
+		}
+		
+		/**
+		 * Returns the mean.
+		 * 
+		 * @return The mean or NaN if there are no values.
+		 */
+		public double getMean()
+		{
+			return (count == 0) ? Double.NaN : mean;
+		}
+		
+		/**
+		 * Returns the population variance, which is what the RMSE is built
+		 * from.
+		 * 
+		 * @return The variance or NaN if there are no values.
+		 */
+		public double getVariance()
+		{
+			return (count == 0) ? Double.NaN : (m2 / count);
+		}
+	}
+	
+	/**
+	 * Plays some chunks of sessions of one protocol by one participant type,
+	 * splitting them in half until there is only one chunk left.
+	 */
+	private static class SimulateTask extends RecursiveTask<Moments[]>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final StimulusSet stimulusSet;
+		private final Protocol protocol;
+		private final Participant participant;
+		private final long seed;
+		private final int numSessions;
+		private final int startChunk;
+		private final int endChunk;
+		
+		/**
+		 * Creates a task.
+		 * 
+		 * @param stimulusSet The stimuli.
+		 * 
+		 * @param protocol The protocol.
+		 * 
+		 * @param participant The participant type.
+		 * 
+		 * @param seed The seed of this protocol and participant type.
+		 * 
+		 * @param numSessions The total number of sessions.
+		 * 
+		 * @param startChunk The first chunk for this task.
+		 * 
+		 * @param endChunk The chunk after the last chunk for this task.
+		 */
+		public SimulateTask(StimulusSet stimulusSet, Protocol protocol, Participant participant, long seed, int numSessions, int startChunk, int endChunk)
+		{
+			this.stimulusSet = stimulusSet;
+			this.protocol = protocol;
+			this.participant = participant;
+			this.seed = seed;
+			this.numSessions = numSessions;
+			this.startChunk = startChunk;
+			this.endChunk = endChunk;
+		}
+		
+		/**
+		 * Plays the chunk or splits the chunks up.
+		 */
+		@Override
+		protected Moments[] compute()
+		{
+			if((endChunk - startChunk) == 1)
+			{
+				return playChunk();
+			}
+			
+			int middle = (startChunk + endChunk) >>> 1;
+			SimulateTask left = new SimulateTask(stimulusSet, protocol, participant, seed, numSessions, startChunk, middle);
+			SimulateTask right = new SimulateTask(stimulusSet, protocol, participant, seed, numSessions, middle, endChunk);
+			left.fork();
+			Moments[] rightMoments = right.compute();
+			Moments[] leftMoments = left.join();
+			for(int i = 0; i < METRICS.length; i++)
+			{
+				leftMoments[i].merge(rightMoments[i]);
+			}
+			return leftMoments;
+		}
+		
+		/**
+		 * Plays one chunk of sessions.
+		 * 
+		 * @return The moments of each metric's estimates.
+		 */
+		private Moments[] playChunk()
+		{
+			Moments[] moments = new Moments[METRICS.length];
+			for(int i = 0; i < METRICS.length; i++)
+			{
+				moments[i] = new Moments();
+			}
+			
+			Random random = new Random(mix(seed + startChunk));
+			VirtualClock clock = new VirtualClock();
+			Player player = new Player(participant, stimulusSet, clock, random);
+			TrialEngine engine = new TrialEngine(clock, clock, player, stimulusSet, protocol, random);
+			
+			int end = Math.min(numSessions, (startChunk + 1) * CHUNK_SIZE);
+			for(int session = startChunk * CHUNK_SIZE; session < end; session++)
+			{
+				player.play(engine, random.nextLong());
+				
+				ScoreAggregator scores = engine.getScores();
+				moments[GO_RT_MEAN].add(scores.getGoRtMean());
+				moments[GO_RT_SD].add(scores.getGoRtStandardDeviation());
+				moments[GO_RT_MEDIAN].add(scores.getGoRtMedian());
+				moments[GO_RT_P90].add(scores.getGoRtP90());
+				moments[COMMISSION_RATE].add(scores.getCommissionRate());
+				moments[OMISSION_RATE].add(scores.getOmissionRate());
+				moments[PERCENT_INHIBITION].add(scores.getPercentInhibition());
+				moments[D_PRIME].add(scores.getDPrime());
+				moments[CRITERION].add(scores.getCriterion());
+				moments[TRIALS].add(scores.getNumTrials());
+			}
+			return moments;
+		}
+	}
+	
+	/**
+	 * Reads the arguments and simulates every protocol with every participant
+	 * type.
+	 * 
+	 * @param args See the class' documentation.
+	 * 
+	 * @throws IOException The catalog or a protocol could not be read.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		int numSessions = DEFAULT_SESSIONS;
+		long seed = 0;
+		String catalogFile = DEFAULT_CATALOG;
+		String gameType = null;
+		List<String> protocolFiles = new ArrayList<String>();
+		List<Participant> participants = new ArrayList<Participant>();
+		boolean usage = false;
+		
+		try
+		{
+			for(int i = 0; i < args.length; i++)
+			{
+				if("-threads".equals(args[i]) && (i + 1 < args.length))
+				{
+					threads = Integer.parseInt(args[++i]);
+				}
+				else if("-sessions".equals(args[i]) && (i + 1 < args.length))
+				{
+					numSessions = Integer.parseInt(args[++i]);
+				}
+				else if("-seed".equals(args[i]) && (i + 1 < args.length))
+				{
+					seed = Long.parseLong(args[++i]);
+				}
+				else if("-catalog".equals(args[i]) && (i + 1 < args.length))
+				{
+					catalogFile = args[++i];
+				}
+				else if("-game-type".equals(args[i]) && (i + 1 < args.length))
+				{
+					gameType = args[++i];
+				}
+				else if("-protocol".equals(args[i]) && (i + 1 < args.length))
+				{
+					protocolFiles.add(args[++i]);
+				}
+				else if("-participant".equals(args[i]) && (i + 6 < args.length))
+				{
+					participants.add(new Participant(args[i + 1], Double.parseDouble(args[i + 2]), Double.parseDouble(args[i + 3]), Double.parseDouble(args[i + 4]), Double.parseDouble(args[i + 5]), Double.parseDouble(args[i + 6])));
+					i += 6;
+				}
+				else
+				{
+					usage = true;
+				}
+			}
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			usage = true;
+		}
+		
+		if(usage || (threads < 1) || (numSessions < 1))
+		{
+			System.err.println("Usage: ParticipantSimulator [-threads N] [-sessions N] [-seed N] [-catalog FILE] [-game-type NAME] [-protocol FILE]... [-participant NAME MU SIGMA TAU LAPSE COMMISSION]...");
+			System.exit(1);
+		}
+		
+		if(protocolFiles.isEmpty())
+		{
+			protocolFiles.add(DEFAULT_PROTOCOL);
+		}
+		if(participants.isEmpty())
+		{
+			participants.add(new Participant("typical", 350, 40, 80, 0.03, 0.15));
+			participants.add(new Participant("slow", 450, 60, 150, 0.05, 0.10));
+			participants.add(new Participant("impulsive", 300, 40, 60, 0.02, 0.40));
+			participants.add(new Participant("inattentive", 380, 70, 250, 0.15, 0.25));
+		}
+		
+		StimulusCatalog catalog;
+		Reader catalogReader = new InputStreamReader(new FileInputStream(catalogFile), "UTF-8");
+		try
+		{
+			catalog = StimulusCatalog.read(catalogReader);
+		}
+		finally
+		{
+			catalogReader.close();
+		}
+		StimulusSet stimulusSet = (gameType == null) ? catalog.getDefaultSet() : catalog.getSet(gameType);
+		if(stimulusSet == null)
+		{
+			System.err.println("Unknown game type '" + gameType + "'.");
+			System.exit(1);
+		}
+		
+		List<Protocol> protocols = new ArrayList<Protocol>();
+		for(String protocolFile : protocolFiles)
+		{
+			Reader protocolReader = new InputStreamReader(new FileInputStream(protocolFile), "UTF-8");
+			try
+			{
+				protocols.add(Protocol.read(protocolReader));
+			}
+			catch(IOException e)
+			{
+				throw new IOException(protocolFile + ": " + e.getMessage(), e);
+			}
+			finally
+			{
+				protocolReader.close();
+			}
+		}
+		
+		System.out.println(HEADER);
+		
+		int numChunks = (numSessions + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		long startNanos = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			StringBuilder row = new StringBuilder();
+			for(int p = 0; p < protocols.size(); p++)
+			{
+				for(int q = 0; q < participants.size(); q++)
+				{
+					Participant participant = participants.get(q);
+					
+					// Each chunk's seed is distinct across protocols and
+					// participant types as well as within them.
+					long cellSeed = seed + ((((long) p * participants.size()) + q) * numChunks);
+					Moments[] moments = pool.invoke(new SimulateTask(stimulusSet, protocols.get(p), participant, cellSeed, numSessions, 0, numChunks));
+					
+					for(int m = 0; m < METRICS.length; m++)
+					{
+						double trueValue = participant.getTrueValue(m);
+						double mean = moments[m].getMean();
+						double variance = moments[m].getVariance();
+						double bias = mean - trueValue;
+						
+						row.setLength(0);
+						row.append(protocolFiles.get(p));
+						row.append(',').append(participant.name);
+						row.append(',').append(METRICS[m]);
+						row.append(',').append(moments[m].count);
+						appendNumber(row, trueValue);
+						appendNumber(row, mean);
+						appendNumber(row, bias);
+						appendNumber(row, Math.sqrt(variance));
+						appendNumber(row, Math.sqrt((bias * bias) + variance));
+						System.out.println(row);
+					}
+				}
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		long elapsedMillis = (System.nanoTime() - startNanos) / 1000000L;
+		
+		long total = (long) numSessions * protocols.size() * participants.size();
+		System.err.println(total + " sessions played in " + elapsedMillis + " ms on " + threads + " threads.");
+	}
+	
+	/**
+	 * Scrambles a seed with the SplitMix64 finalizer so that consecutive
+	 * seeds give unrelated Randoms.
+	 * 
+	 * @param seed The seed.
+	 * 
+	 * @return The scrambled seed.
+	 */
+	private static long mix(long seed)
+	{
+		long z = seed + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+	
+	/**
+	 * Returns the standard normal CDF using the complementary error function
+	 * of Numerical Recipes' erfcc, which has a relative error of less than
+	 * 1.2e-7.
+	 * 
+	 * @param z The z-score.
+	 * 
+	 * @return The probability of a value of at most z.
+	 */
+	private static double normalCdf(double z)
+	{
+		double x = Math.abs(z) / Math.sqrt(2.0);
+		double t = 1.0 / (1.0 + (0.5 * x));
+		double polynomial = -0.82215223 + (t * 0.17087277);
+		polynomial = 1.48851587 + (t * polynomial);
+		polynomial = -1.13520398 + (t * polynomial);
+		polynomial = 0.27886807 + (t * polynomial);
+		polynomial = -0.18628806 + (t * polynomial);
+		polynomial = 0.09678418 + (t * polynomial);
+		polynomial = 0.37409196 + (t * polynomial);
+		polynomial = 1.00002368 + (t * polynomial);
+		polynomial = -1.26551223 + (t * polynomial);
+		double erfc = t * Math.exp(-(x * x) + polynomial);
+		return (z >= 0.0) ? (1.0 - (erfc / 2.0)) : (erfc / 2.0);
+	}
+	
+	/**
+	 * Appends a number to a CSV row, leaving it empty if it isn't finite.
+	 * 
+	 * @param row The row.
+	 * 
+	 * @param value The number.
+	 */
+	private static void appendNumber(StringBuilder row, double value)
+	{
+		row.append(',');
+		if(! (Double.isNaN(value) || Double.isInfinite(value)))
+		{
+			row.append(value);
+		}
+	}
+}
@@ -0,0 +1,1082 @@
+package edu.ucla.cens.FocusGame.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.GZIPInputStream;
+
+import edu.ucla.cens.FocusGame.LegacyResponseTimes;
+import edu.ucla.cens.FocusGame.PopulationNorms;
+import edu.ucla.cens.FocusGame.ScoreAggregator;
+import edu.ucla.cens.FocusGame.StimulusCatalog;
+import edu.ucla.cens.FocusGame.StimulusSet;
+import edu.ucla.cens.FocusGame.TrialEngine;
+import edu.ucla.cens.FocusGame.TrialLog;
+
+/**
+ * Scores exported sessions in bulk with the same ScoreAggregator that the game
+ * uses, and writes one row per session and one row per cohort.
+ * 
+ * Each line of an export is one session: either a JSON object with a
+ * "response_times" field, which may be the array itself or the array as a
+ * string, or just the array. The object's "id", "participant", "game_type",
+ * and "cohort" fields are used if they are there. A session's cohort is its
+ * "cohort", else its game type, and its game type is its "game_type", else
+ * the first set in the catalog that has its first stimulus. Files ending in
+ * ".gz" are decompressed.
+ * 
+ * The files are read on the calling thread in batches, and each batch is
+ * split up and scored on a fork-join pool. Only a fixed number of batches
+ * are in flight at once, so memory doesn't grow with the size of the input,
+ * and the rows are written in the order the sessions were read.
+ * 
+ * It can also build the PopulationNorms that the game ranks players against,
+ * one digest per game type per metric. Each batch builds its own, and they
+ * are merged as the batches are, along with any norms given with
+ * -merge-norms, so existing norms can be extended with new exports or norms
+ * built separately can be combined without the sessions they came from.
+ * 
+ * Usage: SessionAnalyzer [-threads N] [-catalog FILE] [-sessions FILE]
+ * 						  [-cohorts FILE] [-norms FILE]
+ * 						  [-merge-norms FILE]... [EXPORT...]
+ * 
+ * The session rows go to standard out unless -sessions is given, and the
+ * cohort rows go to standard error unless -cohorts is given. The norms are
+ * only written if -norms is given, and may be written over one of the norms
+ * being merged. The catalog defaults to res/raw/stimuli.txt.
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class SessionAnalyzer
+{
+	// The number of lines read before they are handed to the pool.
+	private static final int BATCH_SIZE = 4096;
+	
+	// Batches are split until they are at most this many lines.
+	private static final int LEAF_SIZE = 256;
+	
+	// The number of batches per thread that may be in flight at once.
+	private static final int BATCHES_PER_THREAD = 4;
+	
+	private static final String DEFAULT_CATALOG = "res/raw/stimuli.txt";
+	
+	private static final String SESSION_HEADER =
+		"id,participant,cohort,game_type,trials,go_trials,go_hits,nogo_trials,nogo_hits," +
+		"score,go_rt_sd,go_rt_median,go_rt_p90,commission_rate,omission_rate," +
+		"percent_inhibition,d_prime,criterion";
+	
+	private static final String COHORT_HEADER =
+		"cohort,sessions,trials,go_trials,go_hits,nogo_trials,nogo_hits," +
+		"score_mean,score_sd,go_rt_sd_mean,commission_rate_mean,omission_rate_mean," +
+		"percent_inhibition_mean,d_prime_mean,d_prime_sd,criterion_mean,criterion_sd," +
+		"pooled_commission_rate,pooled_omission_rate";
+	
+	/**
+	 * The count, mean, and sum of squared differences from the mean of some
+	 * values, which may be merged with another's in any order.
+	 */
+	private static class Moments
+	{
+		private long count;
+		private double mean;
+		private double m2;
+		
+		/**
+		 * Adds a value. NaNs are ignored.
+		 * 
+		 * @param value The value.
+		 */
+		public void add(double value)
+		{
+			if(Double.isNaN(value))
+			{
+				return;
+			}
+			
+			count++;
+			double delta = value - mean;
+			mean += delta / count;
+			m2 += delta * (value - mean);
+		}
+		
+		/**
+		 * Adds all of another's values.
+		 * 
+		 * @param other The other values.
+		 */
+		public void merge(Moments other)
+		{
+			if(other.count == 0)
+			{
+				return;
+			}
+			
+			long total = count + other.count;
+			double delta = other.mean - mean;
+			mean += delta * other.count / total;
+			m2 += other.m2 + (delta * delta * count * other.count / total);
+			count = total;
+		}
+		
+		/**
+		 * Returns the mean.
+		 * 
+		 * @return The mean or NaN if there are no values.
+		 */
+		public double getMean()
+		{
+			return (count == 0) ? Double.NaN : mean;
+		}
+		
+		/**
+		 * Returns the sample standard deviation.
+		 * 
+		 * @return The standard deviation or NaN if there are fewer than two
+		 * 		   values.
+		 */
+		public double getStandardDeviation()
+		{
+			return (count < 2) ? Double.NaN : Math.sqrt(m2 / (count - 1));
+		}
+	}
+	
+	/**
+	 * The aggregates of every session in a cohort.
+	 */
+	private static class Cohort
+	{
+		private long sessions;
+		private long trials;
+		private long goTrials;
+		private long goHits;
+		private long noGoTrials;
+		private long noGoHits;
+		
+		private final Moments score = new Moments();
+		private final Moments goRtSd = new Moments();
+		private final Moments commissionRate = new Moments();
+		private final Moments omissionRate = new Moments();
+		private final Moments percentInhibition = new Moments();
+		private final Moments dPrime = new Moments();
+		private final Moments criterion = new Moments();
+		
+		/**
+		 * Adds a session.
+		 * 
+		 * @param scores The session's scores.
+		 */
+		public void add(ScoreAggregator scores)
+		{
+			sessions++;
+			trials += scores.getNumTrials();
+			goTrials += scores.getNumGoTrials();
+			goHits += scores.getNumGoHits();
+			noGoTrials += scores.getNumNoGoTrials();
+			noGoHits += scores.getNumNoGoHits();
+			
+			score.add(scores.getGoRtMean());
+			goRtSd.add(scores.getGoRtStandardDeviation());
+			commissionRate.add(scores.getCommissionRate());
+			omissionRate.add(scores.getOmissionRate());
+			percentInhibition.add(scores.getPercentInhibition());
+			dPrime.add(scores.getDPrime());
+			criterion.add(scores.getCriterion());
+		}
+		
+		/**
+		 * Adds all of another cohort's sessions.
+		 * 
+		 * @param other The other cohort.
+		 */
+		public void merge(Cohort other)
+		{
+			sessions += other.sessions;
+			trials += other.trials;
+			goTrials += other.goTrials;
+			goHits += other.goHits;
+			noGoTrials += other.noGoTrials;
+			noGoHits += other.noGoHits;
+			
+			score.merge(other.score);
+			goRtSd.merge(other.goRtSd);
+			commissionRate.merge(other.commissionRate);
+			omissionRate.merge(other.omissionRate);
+			percentInhibition.merge(other.percentInhibition);
+			dPrime.merge(other.dPrime);
+			criterion.merge(other.criterion);
+		}
+		
+		/**
+		 * Appends this cohort as a CSV row.
+		 * 
+		 * @param name The cohort's name.
+		 * 
+		 * @param row The builder to append to.
+		 */
+		public void appendRow(String name, StringBuilder row)
+		{
+			appendCsv(row, name);
+			row.append(',').append(sessions);
+			row.append(',').append(trials);
+			row.append(',').append(goTrials);
+			row.append(',').append(goHits);
+			row.append(',').append(noGoTrials);
+			row.append(',').append(noGoHits);
+			appendNumber(row, score.getMean());
+			appendNumber(row, score.getStandardDeviation());
+			appendNumber(row, goRtSd.getMean());
+			appendNumber(row, commissionRate.getMean());
+			appendNumber(row, omissionRate.getMean());
+			appendNumber(row, percentInhibition.getMean());
+			appendNumber(row, dPrime.getMean());
+			appendNumber(row, dPrime.getStandardDeviation());
+			appendNumber(row, criterion.getMean());
+			appendNumber(row, criterion.getStandardDeviation());
+			appendNumber(row, (noGoTrials == 0) ? Double.NaN : ((double) noGoHits / noGoTrials));
+			appendNumber(row, (goTrials == 0) ? Double.NaN : ((double) (goTrials - goHits) / goTrials));
+		}
+	}
+	
+	/**
+	 * The output of scoring some lines.
+	 */
+	private static class Result
+	{
+		public final StringBuilder rows = new StringBuilder();
+		public final Map<String, Cohort> cohorts = new HashMap<String, Cohort>();
+		public final PopulationNorms norms = new PopulationNorms();
+		public final StringBuilder errors = new StringBuilder();
+		public int numErrors;
+		
+		/**
+		 * Appends another result that came after this one.
+		 * 
+		 * @param other The other result.
+		 */
+		public void merge(Result other)
+		{
+			rows.append(other.rows);
+			errors.append(other.errors);
+			numErrors += other.numErrors;
+			mergeCohorts(cohorts, other.cohorts);
+			norms.merge(other.norms);
+		}
+	}
+	
+	/**
+	 * What each thread reuses from one session to the next.
+	 */
+	private static class Scratch
+	{
+		public final TrialLog trialLog = new TrialLog(TrialEngine.DELAYS_MILLIS.length * TrialEngine.NUM_ITEMS_PER_ROUND);
+		public final ScoreAggregator scores = new ScoreAggregator();
+		public final StringBuilder unescaped = new StringBuilder();
+		
+		// The fields of the current line.
+		public String id;
+		public String participant;
+		public String gameType;
+		public String cohort;
+		public CharSequence responseTimes;
+		public int responseTimesStart;
+		public int responseTimesEnd;
+	}
+	
+	private static final ThreadLocal<Scratch> SCRATCH = new ThreadLocal<Scratch>()
+	{
+		@Override
+		protected Scratch initialValue()
+		{
+			return new Scratch();
+		}
+	};
+	
+	/**
+	 * Scores some of the lines in a batch, splitting them in half until there
+	 * are few enough to score directly.
+	 */
+	private static class ScoreTask extends RecursiveTask<Result>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final StimulusCatalog catalog;
+		private final String fileName;
+		private final long firstLineNumber;
+		private final String[] lines;
+		private final int start;
+		private final int end;
+		
+		/**
+		 * Creates a task.
+		 * 
+		 * @param catalog The catalog of stimulus sets.
+		 * 
+		 * @param fileName The name of the file that the lines came from.
+		 * 
+		 * @param firstLineNumber The line number of lines[0].
+		 * 
+		 * @param lines The batch's lines.
+		 * 
+		 * @param start The first line for this task.
+		 * 
+		 * @param end The line after the last line for this task.
+		 */
+		public ScoreTask(StimulusCatalog catalog, String fileName, long firstLineNumber, String[] lines, int start, int end)
+		{
+			this.catalog = catalog;
+			this.fileName = fileName;
+			this.firstLineNumber = firstLineNumber;
+			this.lines = lines;
+			this.start = start;
+			this.end = end;
+		}
+		
+		/**
+		 * Scores the lines or splits them up.
+		 */
+		@Override
+		protected Result compute()
+		{
+			if((end - start) <= LEAF_SIZE)
+			{
+				Result result = new Result();
+				Scratch scratch = SCRATCH.get();
+				for(int i = start; i < end; i++)
+				{
+					scoreLine(catalog, fileName, firstLineNumber + i, lines[i], scratch, result);
+				}
+				return result;
+			}
+			
+			int middle = (start + end) >>> 1;
+			ScoreTask left = new ScoreTask(catalog, fileName, firstLineNumber, lines, start, middle);
+			ScoreTask right = new ScoreTask(catalog, fileName, firstLineNumber, lines, middle, end);
+			left.fork();
+			Result rightResult = right.compute();
+			Result leftResult = left.join();
+			leftResult.merge(rightResult);
+			return leftResult;
+		}
+	}
+	
+	/**
+	 * Reads the arguments and scores every export.
+	 * 
+	 * @param args The options followed by the exports.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int threads = Runtime.getRuntime().availableProcessors();
+		String catalogFile = DEFAULT_CATALOG;
+		String sessionsFile = null;
+		String cohortsFile = null;
+		String normsFile = null;
+		List<String> mergeNorms = new ArrayList<String>();
+		List<String> exports = new ArrayList<String>();
+		
+		for(int i = 0; i < args.length; i++)
+		{
+			if("-threads".equals(args[i]) && (i + 1 < args.length))
+			{
+				threads = Integer.parseInt(args[++i]);
+			}
+			else if("-catalog".equals(args[i]) && (i + 1 < args.length))
+			{
+				catalogFile = args[++i];
+			}
+			else if("-sessions".equals(args[i]) && (i + 1 < args.length))
+			{
+				sessionsFile = args[++i];
+			}
+			else if("-cohorts".equals(args[i]) && (i + 1 < args.length))
+			{
+				cohortsFile = args[++i];
+			}
+			else if("-norms".equals(args[i]) && (i + 1 < args.length))
+			{
+				normsFile = args[++i];
+			}
+			else if("-merge-norms".equals(args[i]) && (i + 1 < args.length))
+			{
+				mergeNorms.add(args[++i]);
+			}
+			else if(args[i].startsWith("-"))
+			{
+				exports.clear();
+				mergeNorms.clear();
+				break;
+			}
+			else
+			{
+				exports.add(args[i]);
+			}
+		}
+		
+		if((exports.isEmpty() && mergeNorms.isEmpty()) || (threads < 1))
+		{
+			System.err.println("Usage: SessionAnalyzer [-threads N] [-catalog FILE] [-sessions FILE] [-cohorts FILE] [-norms FILE] [-merge-norms FILE]... [EXPORT...]");
+			System.exit(1);
+		}
+		
+		// Read everything that is being merged before anything is written in
+		// case the norms are written over one of them.
+		PopulationNorms norms = new PopulationNorms();
+		for(String mergeFile : mergeNorms)
+		{
+			Reader normsReader = new InputStreamReader(new FileInputStream(mergeFile), "UTF-8");
+			try
+			{
+				norms.merge(PopulationNorms.read(normsReader));
+			}
+			finally
+			{
+				normsReader.close();
+			}
+		}
+		
+		StimulusCatalog catalog;
+		Reader catalogReader = new InputStreamReader(new FileInputStream(catalogFile), "UTF-8");
+		try
+		{
+			catalog = StimulusCatalog.read(catalogReader);
+		}
+		finally
+		{
+			catalogReader.close();
+		}
+		
+		Writer sessions = openWriter(sessionsFile, System.out);
+		Map<String, Cohort> cohorts = new TreeMap<String, Cohort>();
+		int numSessions = 0;
+		int numErrors = 0;
+		
+		long startNanos = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			sessions.write(SESSION_HEADER);
+			sessions.write('\n');
+			
+			ArrayDeque<ForkJoinTask<Result>> inFlight = new ArrayDeque<ForkJoinTask<Result>>();
+			int maxInFlight = threads * BATCHES_PER_THREAD;
+			
+			for(String export : exports)
+			{
+				BufferedReader reader = openReader(export);
+				try
+				{
+					long lineNumber = 1;
+					while(true)
+					{
+						String[] lines = new String[BATCH_SIZE];
+						int count = 0;
+						String line;
+						while((count < BATCH_SIZE) && ((line = reader.readLine()) != null))
+						{
+							lines[count++] = line;
+						}
+						if(count == 0)
+						{
+							break;
+						}
+						
+						if(inFlight.size() >= maxInFlight)
+						{
+							Result result = inFlight.removeFirst().join();
+							numSessions += write(result, sessions, cohorts, norms);
+							numErrors += result.numErrors;
+						}
+						inFlight.addLast(pool.submit(new ScoreTask(catalog, export, lineNumber, lines, 0, count)));
+						lineNumber += count;
+						
+						if(count < BATCH_SIZE)
+						{
+							break;
+						}
+					}
+				}
+				finally
+				{
+					reader.close();
+				}
+			}
+			
+			while(! inFlight.isEmpty())
+			{
+				Result result = inFlight.removeFirst().join();
+				numSessions += write(result, sessions, cohorts, norms);
+				numErrors += result.numErrors;
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+			sessions.flush();
+			if(sessionsFile != null)
+			{
+				sessions.close();
+			}
+		}
+		long elapsedMillis = (System.nanoTime() - startNanos) / 1000000L;
+		
+		Writer cohortWriter = openWriter(cohortsFile, System.err);
+		try
+		{
+			cohortWriter.write(COHORT_HEADER);
+			cohortWriter.write('\n');
+			StringBuilder row = new StringBuilder();
+			for(Map.Entry<String, Cohort> cohort : cohorts.entrySet())
+			{
+				row.setLength(0);
+				cohort.getValue().appendRow(cohort.getKey(), row);
+				row.append('\n');
+				cohortWriter.write(row.toString());
+			}
+		}
+		finally
+		{
+			cohortWriter.flush();
+			if(cohortsFile != null)
+			{
+				cohortWriter.close();
+			}
+		}
+		
+		if(normsFile != null)
+		{
+			Writer normsWriter = openWriter(normsFile, System.err);
+			try
+			{
+				normsWriter.write("# Population norms built by SessionAnalyzer. See PopulationNorms for the\n");
+				normsWriter.write("# format.\n");
+				norms.write(normsWriter);
+			}
+			finally
+			{
+				normsWriter.close();
+			}
+		}
+		
+		System.err.println(numSessions + " sessions scored, " + numErrors + " skipped, in " + elapsedMillis + " ms on " + threads + " threads.");
+	}
+	
+	/**
+	 * Writes a batch's rows and errors and adds its cohorts and norms.
+	 * 
+	 * @param result The batch's result.
+	 * 
+	 * @param sessions Where the rows go.
+	 * 
+	 * @param cohorts The cohorts so far.
+	 * 
+	 * @param norms The norms so far.
+	 * 
+	 * @return The number of sessions in the batch.
+	 */
+	private static int write(Result result, Writer sessions, Map<String, Cohort> cohorts, PopulationNorms norms) throws IOException
+	{
+		sessions.append(result.rows);
+		if(result.errors.length() > 0)
+		{
+			System.err.print(result.errors);
+		}
+		mergeCohorts(cohorts, result.cohorts);
+		norms.merge(result.norms);
+		
+		int numSessions = 0;
+		for(Cohort cohort : result.cohorts.values())
+		{
+			numSessions += cohort.sessions;
+		}
+		return numSessions;
+	}
+	
+	/**
+	 * Scores one line and adds it to a result. A line that can't be scored is
+	 * added as an error.
+	 * 
+	 * @param catalog The catalog of stimulus sets.
+	 * 
+	 * @param fileName The name of the file that the line came from.
+	 * 
+	 * @param lineNumber The line's number.
+	 * 
+	 * @param line The line.
+	 * 
+	 * @param scratch The thread's scratch space.
+	 * 
+	 * @param result The result to add to.
+	 */
+	private static void scoreLine(StimulusCatalog catalog, String fileName, long lineNumber, String line, Scratch scratch, Result result)
+	{
+		if(line.trim().length() == 0)
+		{
+			return;
+		}
+		
+		try
+		{
+			readFields(line, scratch);
+			if(scratch.responseTimes == null)
+			{
+				throw new IllegalArgumentException("No response_times.");
+			}
+			
+			StimulusSet set;
+			if(scratch.gameType != null)
+			{
+				set = catalog.getSet(scratch.gameType);
+				if(set == null)
+				{
+					throw new IllegalArgumentException("Unknown game type '" + scratch.gameType + "'.");
+				}
+			}
+			else
+			{
+				set = LegacyResponseTimes.findSet(scratch.responseTimes, scratch.responseTimesStart, scratch.responseTimesEnd, catalog.getSets());
+				if(set == null)
+				{
+					throw new IllegalArgumentException("No set has the first stimulus.");
+				}
+			}
+			
+			LegacyResponseTimes.read(scratch.responseTimes, scratch.responseTimesStart, scratch.responseTimesEnd, set, scratch.trialLog);
+			
+			ScoreAggregator scores = scratch.scores;
+			scores.reset();
+			scores.addAll(scratch.trialLog);
+			
+			String cohortName = (scratch.cohort != null) ? scratch.cohort : set.getName();
+			Cohort cohort = result.cohorts.get(cohortName);
+			if(cohort == null)
+			{
+				cohort = new Cohort();
+				result.cohorts.put(cohortName, cohort);
+			}
+			cohort.add(scores);
+			result.norms.addSession(set.getName(), scores);
+			
+			StringBuilder row = result.rows;
+			if(scratch.id != null)
+			{
+				appendCsv(row, scratch.id);
+			}
+			else
+			{
+				appendCsv(row, fileName + ":" + lineNumber);
+			}
+			row.append(',');
+			if(scratch.participant != null)
+			{
+				appendCsv(row, scratch.participant);
+			}
+			row.append(',');
+			appendCsv(row, cohortName);
+			row.append(',');
+			appendCsv(row, set.getName());
+			row.append(',').append(scores.getNumTrials());
+			row.append(',').append(scores.getNumGoTrials());
+			row.append(',').append(scores.getNumGoHits());
+			row.append(',').append(scores.getNumNoGoTrials());
+			row.append(',').append(scores.getNumNoGoHits());
+			appendNumber(row, scores.getGoRtMean());
+			appendNumber(row, scores.getGoRtStandardDeviation());
+			appendNumber(row, scores.getGoRtMedian());
+			appendNumber(row, scores.getGoRtP90());
+			appendNumber(row, scores.getCommissionRate());
+			appendNumber(row, scores.getOmissionRate());
+			appendNumber(row, scores.getPercentInhibition());
+			appendNumber(row, scores.getDPrime());
+			appendNumber(row, scores.getCriterion());
+			row.append('\n');
+		}
+		catch(IllegalArgumentException e)
+		{
+			result.numErrors++;
+			result.errors.append(fileName).append(':').append(lineNumber).append(": ").append(e.getMessage()).append('\n');
+		}
+	}
+	
+	/**
+	 * Finds the fields of interest in a line. Only the top level of an object
+	 * is looked at, and everything else is skipped without being parsed.
+	 * 
+	 * @param line The line.
+	 * 
+	 * @param scratch Where the fields are put.
+	 * 
+	 * @throws IllegalArgumentException The line isn't JSON.
+	 */
+	private static void readFields(String line, Scratch scratch)
+	{
+		scratch.id = null;
+		scratch.participant = null;
+		scratch.gameType = null;
+		scratch.cohort = null;
+		scratch.responseTimes = null;
+		
+		int end = line.length();
+		int i = skipWhitespace(line, 0);
+		if((i < end) && (line.charAt(i) == '['))
+		{
+			scratch.responseTimes = line;
+			scratch.responseTimesStart = i;
+			scratch.responseTimesEnd = end;
+			return;
+		}
+		
+		i = expect(line, i, '{');
+		i = skipWhitespace(line, i);
+		if((i < end) && (line.charAt(i) == '}'))
+		{
+			return;
+		}
+		
+		while(true)
+		{
+			i = expect(line, skipWhitespace(line, i), '"');
+			int keyStart = i;
+			i = skipString(line, i);
+			int keyEnd = i - 1;
+			i = expect(line, skipWhitespace(line, i), ':');
+			i = skipWhitespace(line, i);
+			
+			if(isKey(line, keyStart, keyEnd, "response_times"))
+			{
+				if((i < end) && (line.charAt(i) == '"'))
+				{
+					int valueEnd = skipString(line, i + 1);
+					scratch.unescaped.setLength(0);
+					unescape(line, i + 1, valueEnd - 1, scratch.unescaped);
+					scratch.responseTimes = scratch.unescaped;
+					scratch.responseTimesStart = 0;
+					scratch.responseTimesEnd = scratch.unescaped.length();
+					i = valueEnd;
+				}
+				else
+				{
+					int valueEnd = skipValue(line, i);
+					scratch.responseTimes = line;
+					scratch.responseTimesStart = i;
+					scratch.responseTimesEnd = valueEnd;
+					i = valueEnd;
+				}
+			}
+			else if(isKey(line, keyStart, keyEnd, "id"))
+			{
+				int valueEnd = skipValue(line, i);
+				scratch.id = readScalar(line, i, valueEnd);
+				i = valueEnd;
+			}
+			else if(isKey(line, keyStart, keyEnd, "participant"))
+			{
+				int valueEnd = skipValue(line, i);
+				scratch.participant = readScalar(line, i, valueEnd);
+				i = valueEnd;
+			}
+			else if(isKey(line, keyStart, keyEnd, "game_type"))
+			{
+				int valueEnd = skipValue(line, i);
+				scratch.gameType = readScalar(line, i, valueEnd);
+				i = valueEnd;
+			}
+			else if(isKey(line, keyStart, keyEnd, "cohort"))
+			{
+				int valueEnd = skipValue(line, i);
+				scratch.cohort = readScalar(line, i, valueEnd);
+				i = valueEnd;
+			}
+			else
+			{
+				i = skipValue(line, i);
+			}
+			
+			i = skipWhitespace(line, i);
+			if((i < end) && (line.charAt(i) == '}'))
+			{
+				return;
+			}
+			i = expect(line, i, ',');
+		}
+	}
+	
+	/**
+	 * Returns whether or not a key is some name.
+	 */
+	private static boolean isKey(String line, int start, int end, String name)
+	{
+		return ((end - start) == name.length()) && line.regionMatches(start, name, 0, name.length());
+	}
+	
+	/**
+	 * Returns a string or other scalar value as a String, or null if it is
+	 * JSON's null.
+	 */
+	private static String readScalar(String line, int start, int end)
+	{
+		if(line.charAt(start) == '"')
+		{
+			StringBuilder value = new StringBuilder(end - start);
+			unescape(line, start + 1, end - 1, value);
+			return value.toString();
+		}
+		
+		String value = line.substring(start, end).trim();
+		return "null".equals(value) ? null : value;
+	}
+	
+	/**
+	 * Returns the index after any whitespace.
+	 */
+	private static int skipWhitespace(String line, int i)
+	{
+		while((i < line.length()) && (line.charAt(i) <= ' '))
+		{
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * Checks that a character is where it is expected and returns the index
+	 * after it.
+	 */
+	private static int expect(String line, int i, char c)
+	{
+		if((i >= line.length()) || (line.charAt(i) != c))
+		{
+			throw new IllegalArgumentException("Expected '" + c + "' at " + i + ".");
+		}
+		return i + 1;
+	}
+	
+	/**
+	 * Returns the index after the closing quote of a string that starts at
+	 * the index after its opening quote.
+	 */
+	private static int skipString(String line, int i)
+	{
+		while(i < line.length())
+		{
+			char c = line.charAt(i);
+			if(c == '\\')
+			{
+				i += 2;
+			}
+			else if(c == '"')
+			{
+				return i + 1;
+			}
+			else
+			{
+				i++;
+			}
+		}
+		throw new IllegalArgumentException("Unterminated string.");
+	}
+	
+	/**
+	 * Returns the index after a value of any type.
+	 */
+	private static int skipValue(String line, int i)
+	{
+		if(i >= line.length())
+		{
+			throw new IllegalArgumentException("Expected a value at " + i + ".");
+		}
+		
+		char c = line.charAt(i);
+		if(c == '"')
+		{
+			return skipString(line, i + 1);
+		}
+		else if((c == '{') || (c == '['))
+		{
+			int depth = 0;
+			while(i < line.length())
+			{
+				c = line.charAt(i);
+				if(c == '"')
+				{
+					i = skipString(line, i + 1);
+					continue;
+				}
+				else if((c == '{') || (c == '['))
+				{
+					depth++;
+				}
+				else if((c == '}') || (c == ']'))
+				{
+					depth--;
+					if(depth == 0)
+					{
+						return i + 1;
+					}
+				}
+				i++;
+			}
+			throw new IllegalArgumentException("Unterminated value.");
+		}
+		
+		while((i < line.length()) && (line.charAt(i) != ',') && (line.charAt(i) != '}') && (line.charAt(i) != ']'))
+		{
+			i++;
+		}
+		return i;
+	}
+	
+	/**
+	 * Appends the contents of a JSON string with its escapes undone.
+	 */
+	private static void unescape(String line, int start, int end, StringBuilder out)
+	{
+		for(int i = start; i < end; i++)
+		{
+			char c = line.charAt(i);
+			if(c != '\\')
+			{
+				out.append(c);
+				continue;
+			}
+			
+			i++;
+			if(i >= end)
+			{
+				throw new IllegalArgumentException("Unterminated escape.");
+			}
+			c = line.charAt(i);
+			switch(c)
+			{
+			case 'n':
+				out.append('\n');
+				break;
+			
+			case 't':
+				out.append('\t');
+				break;
+			
+			case 'r':
+				out.append('\r');
+				break;
+			
+			case 'b':
+				out.append('\b');
+				break;
+			
+			case 'f':
+				out.append('\f');
+				break;
+			
+			case 'u':
+				if(i + 4 >= end)
+				{
+					throw new IllegalArgumentException("Unterminated escape.");
+				}
+				out.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+				i += 4;
+				break;
+			
+			default:
+				out.append(c);
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Adds each cohort in one map to the same cohort in another.
+	 */
+	private static void mergeCohorts(Map<String, Cohort> into, Map<String, Cohort> from)
+	{
+		for(Map.Entry<String, Cohort> entry : from.entrySet())
+		{
+			Cohort cohort = into.get(entry.getKey());
+			if(cohort == null)
+			{
+				cohort = new Cohort();
+				into.put(entry.getKey(), cohort);
+			}
+			cohort.merge(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Appends a comma and a number, or just a comma if it is undefined.
+	 */
+	private static void appendNumber(StringBuilder row, double value)
+	{
+		row.append(',');
+		if(! (Double.isNaN(value) || Double.isInfinite(value)))
+		{
+			row.append(value);
+		}
+	}
+	
+	/**
+	 * Appends a CSV field, quoting it if necessary.
+	 */
+	private static void appendCsv(StringBuilder row, String value)
+	{
+		if((value.indexOf(',') == -1) && (value.indexOf('"') == -1) && (value.indexOf('\n') == -1))
+		{
+			row.append(value);
+			return;
+		}
+		
+		row.append('"');
+		for(int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+			if(c == '"')
+			{
+				row.append('"');
+			}
+			row.append(c);
+		}
+		row.append('"');
+	}
+	
+	/**
+	 * Opens an export, decompressing it if it ends with ".gz".
+	 */
+	private static BufferedReader openReader(String fileName) throws IOException
+	{
+		InputStream input = new FileInputStream(new File(fileName));
+		if(fileName.endsWith(".gz"))
+		{
+			input = new GZIPInputStream(input, 1 << 16);
+		}
+		return new BufferedReader(new InputStreamReader(input, "UTF-8"), 1 << 16);
+	}
+	
+	/**
+	 * Opens a file for writing or wraps a stream if there is no file.
+	 */
+	private static Writer openWriter(String fileName, PrintStream fallback) throws IOException
+	{
+		if(fileName == null)
+		{
+			return new BufferedWriter(new OutputStreamWriter(fallback, "UTF-8"), 1 << 16);
+		}
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName), "UTF-8"), 1 << 16);
+	}
+}
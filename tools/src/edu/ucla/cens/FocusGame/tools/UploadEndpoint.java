@@ -0,0 +1,330 @@
+package edu.ucla.cens.FocusGame.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import edu.ucla.cens.FocusGame.TrialLog;
+import edu.ucla.cens.FocusGame.UploadBatch;
+import edu.ucla.cens.FocusGame.UploadClient;
+
+/**
+ * A stand-in for the server that the UploadService posts batches to, for
+ * testing uploads end to end without the real one.
+ * 
+ * It accepts POSTs of gzipped UploadBatches on any path. A batch whose ID it
+ * has already accepted is answered with 409 and otherwise ignored, as the real
+ * server must do. Every new batch is logged and, with -out, its JSON is
+ * appended to a file, one batch per line. With -fail-rate, that fraction of
+ * requests is answered with 503 so that the app's backoff can be watched.
+ * 
+ * With -selftest, it starts on a free port, posts a batch to itself twice
+ * with the app's UploadClient, checks that the second is a duplicate, and
+ * exits.
+ * 
+ * An emulator reaches the host at 10.0.2.2. A debug build of the app may
+ * upload here directly over http, by building it with its "upload_url"
+ * resource set to "http://10.0.2.2:8080/". A release build only uploads over
+ * https, so to upload here from one, put this behind a TLS proxy whose
+ * certificate the emulator trusts and set the resource to the proxy, e.g.
+ * "https://10.0.2.2:8443/".
+ * 
+ * Usage: UploadEndpoint [-port N] [-out FILE] [-fail-rate FRACTION]
+ * 		  UploadEndpoint -selftest
+ * 
+ * @author John Jenkins
+ * @version 1.0
+ */
+public class UploadEndpoint implements HttpHandler
+{
+	private static final int DEFAULT_PORT = 8080;
+	
+	private static final Pattern BATCH_ID = Pattern.compile("^\\{\"batch_id\":\"([^\"]*)\"");
+	private static final Pattern SESSION = Pattern.compile("\\{\"session\":");
+	
+	private final OutputStream out;
+	private final double failRate;
+	private final Random random;
+	
+	private final Set<String> accepted;
+	private int numSessions;
+	
+	/**
+	 * Creates an endpoint.
+	 * 
+	 * @param out Where to append each new batch's JSON or null.
+	 * 
+	 * @param failRate The fraction of requests to answer with 503.
+	 */
+	public UploadEndpoint(OutputStream out, double failRate)
+	{
+		this.out = out;
+		this.failRate = failRate;
+		
+		random = new Random();
+		accepted = new HashSet<String>();
+	}
+	
+	/**
+	 * Answers one request.
+	 */
+	@Override
+	public void handle(HttpExchange exchange) throws IOException
+	{
+		try
+		{
+			if(! "POST".equals(exchange.getRequestMethod()))
+			{
+				respond(exchange, 405, "Only POST is allowed.");
+				return;
+			}
+			if(random.nextDouble() < failRate)
+			{
+				respond(exchange, 503, "Failing on purpose.");
+				return;
+			}
+			
+			InputStream body = exchange.getRequestBody();
+			if("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding")))
+			{
+				body = new GZIPInputStream(body);
+			}
+			byte[] bytes = readAll(body);
+			String json = new String(bytes, "UTF-8");
+			
+			Matcher batchId = BATCH_ID.matcher(json);
+			if(! batchId.find())
+			{
+				respond(exchange, 400, "The body isn't a batch.");
+				return;
+			}
+			String id = batchId.group(1);
+			String key = exchange.getRequestHeaders().getFirst(UploadClient.HEADER_IDEMPOTENCY_KEY);
+			if((key != null) && (! key.equals(id)))
+			{
+				respond(exchange, 400, "The idempotency key doesn't match the batch ID.");
+				return;
+			}
+			
+			int sessions = 0;
+			Matcher session = SESSION.matcher(json);
+			while(session.find())
+			{
+				sessions++;
+			}
+			
+			synchronized(this)
+			{
+				if(! accepted.add(id))
+				{
+					System.err.println("Duplicate batch " + id);
+					respond(exchange, 409, "Already accepted.");
+					return;
+				}
+				
+				numSessions += sessions;
+				System.err.println("Batch " + id + ": " + sessions + " sessions, " + bytes.length + " bytes (" + numSessions + " sessions in " + accepted.size() + " batches so far)");
+				if(out != null)
+				{
+					out.write(bytes);
+					out.write('\n');
+					out.flush();
+				}
+			}
+			
+			respond(exchange, 200, "OK");
+		}
+		catch(IOException e)
+		{
+			System.err.println("Error while reading a request: " + e);
+			respond(exchange, 400, "The body couldn't be read.");
+		}
+	}
+	
+	/**
+	 * Returns the number of distinct batches that have been accepted.
+	 * 
+	 * @return The number of batches.
+	 */
+	public synchronized int getNumBatches()
+	{
+		return accepted.size();
+	}
+	
+	/**
+	 * Starts an endpoint and serves until killed, or runs the self-test.
+	 * 
+	 * @param args See the class' documentation.
+	 * 
+	 * @throws IOException The server could not be started.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		int port = DEFAULT_PORT;
+		String outFile = null;
+		double failRate = 0.0;
+		boolean selfTest = false;
+		boolean usage = false;
+		
+		for(int i = 0; i < args.length; i++)
+		{
+			if("-port".equals(args[i]) && (i + 1 < args.length))
+			{
+				port = Integer.parseInt(args[++i]);
+			}
+			else if("-out".equals(args[i]) && (i + 1 < args.length))
+			{
+				outFile = args[++i];
+			}
+			else if("-fail-rate".equals(args[i]) && (i + 1 < args.length))
+			{
+				failRate = Double.parseDouble(args[++i]);
+			}
+			else if("-selftest".equals(args[i]))
+			{
+				selfTest = true;
+			}
+			else
+			{
+				usage = true;
+			}
+		}
+		
+		if(usage || (failRate < 0.0) || (failRate > 1.0))
+		{
+			System.err.println("Usage: UploadEndpoint [-port N] [-out FILE] [-fail-rate FRACTION]");
+			System.err.println("       UploadEndpoint -selftest");
+			System.exit(1);
+		}
+		
+		if(selfTest)
+		{
+			System.exit(selfTest() ? 0 : 1);
+		}
+		
+		OutputStream out = (outFile == null) ? null : new FileOutputStream(outFile, true);
+		HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/", new UploadEndpoint(out, failRate));
+		server.start();
+		System.err.println("Listening on port " + server.getAddress().getPort());
+	}
+	
+	/**
+	 * Posts the same batch twice to an endpoint on a free port and checks
+	 * that it is accepted once.
+	 * 
+	 * @return Whether or not the test passed.
+	 * 
+	 * @throws IOException The server could not be started or reached.
+	 */
+	private static boolean selfTest() throws IOException
+	{
+		UploadEndpoint endpoint = new UploadEndpoint(null, 0.0);
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", endpoint);
+		server.start();
+		try
+		{
+			TrialLog trials = new TrialLog(2);
+			int first = trials.begin(0, false, 0L, 0);
+			trials.respond(first, 350000000L, true);
+			int second = trials.begin(1, true, 1000000000L, 0);
+			trials.close(second, 2000000000L);
+			
+			Map<String, Object> columns = new LinkedHashMap<String, Object>();
+			columns.put("_id", Long.valueOf(1));
+			columns.put("game_type", "letter");
+			columns.put("score", Double.valueOf(Double.NaN));
+			
+			List<byte[]> sessions = new ArrayList<byte[]>();
+			sessions.add(UploadBatch.encodeSession(columns, trials, new String[] { "B", "X" }));
+			String batchId = UploadBatch.newBatchId();
+			byte[] body = UploadBatch.encode(batchId, sessions);
+			
+			UploadClient client = new UploadClient(new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/"));
+			int firstStatus = client.post(batchId, body);
+			int secondStatus = client.post(batchId, body);
+			
+			boolean passed = (firstStatus == 200) && (secondStatus == 409) && UploadClient.isAccepted(secondStatus) && (endpoint.getNumBatches() == 1);
+			System.err.println("First post: " + firstStatus + ", retry: " + secondStatus + ", batches accepted: " + endpoint.getNumBatches() + (passed ? " - passed" : " - FAILED"));
+			return passed;
+		}
+		finally
+		{
+			server.stop(0);
+		}
+	}
+	
+	/**
+	 * Sends a plain text response.
+	 * 
+	 * @param exchange The exchange to respond to.
+	 * 
+	 * @param status The HTTP status code.
+	 * 
+	 * @param message The body.
+	 * 
+	 * @throws IOException The response could not be sent.
+	 */
+	private static void respond(HttpExchange exchange, int status, String message) throws IOException
+	{
+		byte[] bytes = message.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream body = exchange.getResponseBody();
+		try
+		{
+			body.write(bytes);
+		}
+		finally
+		{
+			body.close();
+		}
+	}
+	
+	/**
+	 * Reads a stream to its end.
+	 * 
+	 * @param input The stream. It is closed.
+	 * 
+	 * @return Its bytes.
+	 * 
+	 * @throws IOException The stream could not be read.
+	 */
+	private static byte[] readAll(InputStream input) throws IOException
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = input.read(buffer)) != -1)
+			{
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toByteArray();
+		}
+		finally
+		{
+			input.close();
+		}
+	}
+}